@@ -0,0 +1,146 @@
+package com.james;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Single threaded cost of each {@link Bank} operation across drawer states.  Mutating benchmarks put and take back 
+ * the same bills so the drawer stays in its state for the whole run.
+ *  
+ * @author james
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BankBenchmark {
+    
+    public static enum Drawer {
+        EMPTY(0, 0, 0, 0, 0),
+        // mid shift, out of ones
+        TYPICAL(5, 10, 10, 20, 0),
+        FULL(1000, 1000, 1000, 1000, 1000);
+        
+        private final int[] counts;
+        
+        private Drawer(final int... counts) {
+            this.counts = counts;
+        }
+        
+        Bank newBank() {
+            return new Bank(counts[0], counts[1], counts[2], counts[3], counts[4]);
+        }
+    };
+    
+    public static enum Amount {
+        // largest bills first just works
+        GREEDY_FRIENDLY(40),
+        // with no ones, largest first takes a five and strands an odd remainder, the fewest bills are 20 20 20 2 2 2 2
+        GREEDY_HOSTILE(68);
+        
+        private final int amount;
+        
+        private Amount(final int amount) {
+            this.amount = amount;
+        }
+    };
+    
+    @Param
+    private Drawer drawer;
+    
+    @Param
+    private Amount amount;
+    
+    private static final int BATCH_SIZE = 16;
+    
+    private Bank register;
+    private Bank transaction;
+    private int[] out;
+    private int[] batchAmounts;
+    private int[] batchOut;
+    private StringBuilder shown;
+    private ByteBuffer shownBytes;
+    
+    @Setup
+    public void setUp() {
+        register = drawer.newBank();
+        transaction = new Bank(1, 1, 1, 1, 1);
+        out = new int[BillType.values().length];
+        batchAmounts = new int[BATCH_SIZE];
+        Arrays.fill(batchAmounts, amount.amount);
+        batchOut = new int[BATCH_SIZE * BillType.values().length];
+        shown = new StringBuilder(64);
+        shownBytes = ByteBuffer.allocateDirect(64);
+    }
+    
+    @Benchmark
+    public Status putAndTake() {
+        register.tryPut(transaction);
+        return register.tryTake(transaction);
+    }
+    
+    /**
+     * Quote only, declined on the empty drawer.
+     */
+    @Benchmark
+    public Status change() {
+        return register.tryChange(amount.amount, out);
+    }
+    
+    /**
+     * Change taken and put back, declined on the empty drawer.
+     */
+    @Benchmark
+    public Status changeAndTake() {
+        Status status = register.tryChangeAndTake(amount.amount, out);
+        if(status.isOk()) {
+            for(BillType billType : BillType.values()) {
+                transaction.setBills(new BillsBundle(billType, out[billType.ordinal()]));
+            }
+            register.tryPut(transaction);
+        }
+        return status;
+    }
+    
+    /**
+     * {@value #BATCH_SIZE} of the amount quoted in order against one drawer, each as if the ones before were taken.
+     */
+    @Benchmark
+    public int changeEach() throws SimpleException {
+        return register.changeEach(batchAmounts, batchOut);
+    }
+    
+    @Benchmark
+    public String show() {
+        return register.show();
+    }
+    
+    /**
+     * Rendered into a reused builder as the console and text servers do, allocation free.
+     */
+    @Benchmark
+    public StringBuilder appendShow() {
+        shown.setLength(0);
+        return register.appendShow(shown);
+    }
+    
+    @Benchmark
+    public ByteBuffer appendShowBytes() {
+        shownBytes.clear();
+        return register.appendShow(shownBytes);
+    }
+    
+    @Benchmark
+    public long getTotalValue() {
+        return register.getTotalValue();
+    }
+}
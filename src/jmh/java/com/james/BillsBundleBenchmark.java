@@ -0,0 +1,51 @@
+package com.james;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Single threaded cost of each {@link BillsBundle} operation, empty and full.
+ *  
+ * @author james
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BillsBundleBenchmark {
+    
+    @Param({ "0", "1000" })
+    private int numOfBills;
+    
+    private BillsBundle bundle;
+    private BillsBundle one;
+    
+    @Setup
+    public void setUp() {
+        bundle = new BillsBundle(BillType.FIVE, numOfBills);
+        one = new BillsBundle(BillType.FIVE, 1);
+    }
+    
+    @Benchmark
+    public Status putAndTake() {
+        bundle.tryPut(one);
+        return bundle.tryTake(one);
+    }
+    
+    @Benchmark
+    public int getMaxAvailableChange() throws SimpleException {
+        return bundle.getMaxAvailableChange(68);
+    }
+    
+    @Benchmark
+    public long getTotalValue() {
+        return bundle.getTotalValue();
+    }
+}
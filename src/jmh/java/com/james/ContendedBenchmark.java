@@ -0,0 +1,99 @@
+package com.james;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Throughput of tellers sharing one drawer, each making change for $38 and putting the bills back: a {@link Bank} 
+ * behind a lock, the lock-free {@link ConcurrentRegister}, a sharded {@link RegisterPool}, and a {@link RegisterEngine}
+ * waited on for each request.  Run single threaded as well with -t 1 to see the cost of contention, and with -bm
+ * sample for the tail latencies.
+ *  
+ * @author james
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ContendedBenchmark {
+    
+    private static final int AMOUNT = 38;
+    
+    @State(Scope.Benchmark)
+    public static class Shared {
+        
+        private Bank lockedBank;
+        private ConcurrentRegister concurrentRegister;
+        private RegisterPool pool;
+        private RegisterEngine engine;
+        
+        @Setup
+        public void setUp() throws SimpleException {
+            lockedBank = new Bank(100, 100, 100, 100, 100);
+            concurrentRegister = new ConcurrentRegister(100, 100, 100, 100, 100);
+            
+            pool = new RegisterPool();
+            for(int shard = 0; shard < pool.getNumShards(); shard++) {
+                pool.put(shard, new Bank(100, 100, 100, 100, 100));
+            }
+            
+            engine = new RegisterEngine(new Bank(100, 100, 100, 100, 100));
+        }
+        
+        @TearDown
+        public void tearDown() {
+            engine.close();
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Teller {
+        
+        private final int[] out = new int[BillType.values().length];
+        private final Bank change = new Bank();
+        
+        Bank changeOf(final int[] numOfBills) {
+            for(BillType billType : BillType.values()) {
+                change.setBills(new BillsBundle(billType, numOfBills[billType.ordinal()]));
+            }
+            return change;
+        }
+    }
+    
+    @Benchmark
+    public Status lockedBank(final Shared shared, final Teller teller) {
+        synchronized(shared.lockedBank) {
+            Status status = shared.lockedBank.tryChangeAndTake(AMOUNT, teller.out);
+            shared.lockedBank.tryPut(teller.changeOf(teller.out));
+            return status;
+        }
+    }
+    
+    @Benchmark
+    public int concurrentRegister(final Shared shared, final Teller teller) throws SimpleException {
+        int numOfBills = shared.concurrentRegister.changeAndTake(AMOUNT, teller.out);
+        shared.concurrentRegister.put(teller.changeOf(teller.out));
+        return numOfBills;
+    }
+    
+    @Benchmark
+    public int registerPool(final Shared shared, final Teller teller) throws SimpleException {
+        int numOfBills = shared.pool.changeAndTake(AMOUNT, teller.out);
+        shared.pool.put(teller.changeOf(teller.out));
+        return numOfBills;
+    }
+    
+    @Benchmark
+    public String registerEngine(final Shared shared, final Teller teller) {
+        shared.engine.changeAndTake(AMOUNT, teller.out).join();
+        return shared.engine.put(teller.changeOf(teller.out)).join();
+    }
+}
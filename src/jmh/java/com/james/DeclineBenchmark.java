@@ -0,0 +1,62 @@
+package com.james;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of a declined change request through each error reporting path: a freshly constructed exception with a full 
+ * stack trace (the old behavior), the shared stackless exception, and the non-throwing status API.
+ * 
+ * @author james
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeclineBenchmark {
+    
+    // drawer of twos cannot make an odd amount
+    private static final int DECLINED_AMOUNT = 7;
+    
+    private Bank register;
+    private int[] out;
+    
+    @Setup
+    public void setUp() {
+        register = new Bank(0, 0, 0, 10, 0);
+        out = new int[BillType.values().length];
+    }
+    
+    @Benchmark
+    public Object declineWithNewException() {
+        try {
+            Status status = register.tryChange(DECLINED_AMOUNT, out);
+            if(!status.isOk()) {
+                throw new SimpleException(status.getError());
+            }
+            return status;
+        } catch(SimpleException e) {
+            return e;
+        }
+    }
+    
+    @Benchmark
+    public Object declineWithSharedException() {
+        try {
+            return register.change(DECLINED_AMOUNT, out);
+        } catch(SimpleException e) {
+            return e;
+        }
+    }
+    
+    @Benchmark
+    public Object declineWithStatus() {
+        return register.tryChange(DECLINED_AMOUNT, out);
+    }
+}
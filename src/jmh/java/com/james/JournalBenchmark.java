@@ -0,0 +1,67 @@
+package com.james;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Throughput of a journaled register, a put followed by change for the same amount, under each 
+ * {@link RegisterJournal.Durability}, against an unjournaled register.
+ *  
+ * @author james
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JournalBenchmark {
+    
+    @Param({ "NONE", "ASYNC", "BATCHED", "PER_OP" })
+    private String durability;
+    
+    private Path file;
+    private RegisterJournal journal;
+    
+    private Bank register;
+    private Bank toPut;
+    private int[] out;
+    
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        register = new Bank();
+        toPut = new Bank(1, 1, 1, 1, 1);
+        out = new int[BillType.values().length];
+        
+        if(!"NONE".equals(durability)) {
+            file = Files.createTempFile("benchmark", ".journal");
+            journal = new RegisterJournal(file, RegisterJournal.Durability.valueOf(durability));
+            register.setJournal(journal, 0);
+        }
+    }
+    
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if(journal != null) {
+            journal.close();
+            Files.delete(file);
+            journal = null;
+        }
+    }
+    
+    @Benchmark
+    public int putAndChange() throws SimpleException {
+        register.put(toPut);
+        return register.changeAndTake(38, out);
+    }
+}
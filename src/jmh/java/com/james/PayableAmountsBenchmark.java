@@ -0,0 +1,96 @@
+package com.james;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Keeping {@link PayableAmounts} up to date against the ceiling tracked, and counting the payable amounts from it
+ * against making change for every amount up to the ceiling.  Each update benchmark puts bills and takes them back, so it pays for one growing update and one
+ * rebuild: a one, the last layer only, or a twenty, every layer.  The drawer holds $19,000, so below that the
+ * ceiling bounds every pass, and counts above ceiling / denomination cost nothing to change.  The untracked variant
+ * is the same put and take without payable amounts attached.
+ * 
+ * @author james
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayableAmountsBenchmark {
+    
+    @Param({"100", "1000", "10000", "100000"})
+    private int ceiling;
+    
+    private Bank register;
+    private Bank untracked;
+    private PayableAmounts payable;
+    private Bank one;
+    private Bank twenty;
+    private int[] out;
+    
+    @Setup
+    public void setUp() {
+        register = new Bank(500, 500, 500, 500, 500);
+        payable = new PayableAmounts(register.getProfile(), ceiling);
+        register.setPayableAmounts(payable);
+        
+        untracked = new Bank(500, 500, 500, 500, 500);
+        one = new Bank(0, 0, 0, 0, 1);
+        twenty = new Bank(1, 0, 0, 0, 0);
+        out = new int[BillType.values().length];
+    }
+    
+    @Benchmark
+    public long putTakeOne() throws SimpleException {
+        register.put(one);
+        register.take(one);
+        return register.getTotalValue();
+    }
+    
+    @Benchmark
+    public long putTakeTwenty() throws SimpleException {
+        register.put(twenty);
+        register.take(twenty);
+        return register.getTotalValue();
+    }
+    
+    @Benchmark
+    public long putTakeOneUntracked() throws SimpleException {
+        untracked.put(one);
+        untracked.take(one);
+        return untracked.getTotalValue();
+    }
+    
+    @Benchmark
+    public boolean canPay() {
+        return payable.canPay(ceiling / 2 + 1);
+    }
+    
+    @Benchmark
+    public int nextPayable() {
+        return payable.nextPayable(ceiling / 2 + 1);
+    }
+    
+    @Benchmark
+    public int countPayable() {
+        return payable.countPayable();
+    }
+    
+    @Benchmark
+    public int countPayableByChange() {
+        int count = 0;
+        for(int amount = 0; amount <= ceiling; amount++) {
+            if(register.tryChange(amount, out).isOk()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
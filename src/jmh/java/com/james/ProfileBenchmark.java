@@ -0,0 +1,101 @@
+package com.james;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of quoting change as the number of denominations grows, from the five default bills to the fifteen euro coins
+ * and notes, canonical or not.  Amounts cycle through a fixed random sample up to the value of a few of the largest
+ * denomination, so each score averages easy and hard amounts alike.
+ * 
+ * Drawers hold {@value #NUM_OF_EACH} of every denomination, so greedy is usually but not always able to pay, and
+ * a sparse drawer of one or two of each, where the search does most of the work.
+ * 
+ * @author james
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProfileBenchmark {
+    
+    private static final int NUM_OF_EACH = 10;
+    
+    private static final int NUM_AMOUNTS = 1024;
+    
+    public static enum Drawer {
+        STOCKED,
+        SPARSE
+    };
+    
+    /**
+     * default (5), lsd (9, not canonical), gbp (12), usd (12), eur (15)
+     */
+    @Param({"default", "lsd", "gbp", "usd", "eur"})
+    private String profile;
+    
+    @Param
+    private Drawer drawer;
+    
+    private Bank register;
+    private int[] amounts;
+    private int[] out;
+    private int next;
+    
+    private ChangeSolver solver;
+    private int[] denominations;
+    private int[] available;
+    
+    @Setup
+    public void setUp() throws IOException {
+        CurrencyProfile currency = CurrencyProfile.load(profile);
+        
+        register = new Bank(currency);
+        for(int i = 0; i < currency.size(); i++) {
+            register.setNumOfBills(i, drawer == Drawer.STOCKED ? NUM_OF_EACH : 1 + i % 2);
+        }
+        
+        Random random = new Random(42);
+        int maxAmount = (int) Math.min(register.getTotalValue(), 3 * currency.getDenomination(0));
+        amounts = new int[NUM_AMOUNTS];
+        for(int i = 0; i < NUM_AMOUNTS; i++) {
+            amounts[i] = random.nextInt(maxAmount + 1);
+        }
+        
+        out = new int[currency.size()];
+        
+        solver = new ChangeSolver();
+        denominations = currency.getDenominations();
+        available = new int[currency.size()];
+        for(int i = 0; i < available.length; i++) {
+            available[i] = register.getNumOfBills(i);
+        }
+    }
+    
+    /**
+     * Quote through the bank, greedy answering when the profile is canonical and the drawer can pay greedy's answer.
+     */
+    @Benchmark
+    public Status change() {
+        next = (next + 1) & (NUM_AMOUNTS - 1);
+        return register.tryChange(amounts[next], out);
+    }
+    
+    /**
+     * Same amounts solved by search alone, what every quote cost before canonical profiles skipped it.
+     */
+    @Benchmark
+    public int searchOnly() {
+        next = (next + 1) & (NUM_AMOUNTS - 1);
+        return solver.solveFewest(amounts[next], denominations, false, available, out);
+    }
+}
@@ -0,0 +1,70 @@
+package com.james;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reconciling a day's registers on pools of growing parallelism.  One register in a hundred is off by a bill, so the
+ * report carries discrepancies as a real close would.  Scores per parallelism show how close the work comes to
+ * scaling with cores.
+ * 
+ * @author james
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReconciliationBenchmark {
+    
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+    
+    @Param({"100000", "1000000"})
+    private int numRegisters;
+    
+    private Bank[] registers;
+    private int[][] expectedCounts;
+    private ForkJoinPool pool;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        registers = new Bank[numRegisters];
+        expectedCounts = new int[numRegisters][];
+        
+        for(int n = 0; n < numRegisters; n++) {
+            int[] counts = new int[BillType.values().length];
+            for(int i = 0; i < counts.length; i++) {
+                counts[i] = random.nextInt(50);
+            }
+            registers[n] = new Bank(CurrencyProfile.DEFAULT, counts);
+            
+            expectedCounts[n] = counts.clone();
+            if(n % 100 == 0) {
+                expectedCounts[n][random.nextInt(counts.length)]++;
+            }
+        }
+        
+        pool = new ForkJoinPool(parallelism);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+    
+    @Benchmark
+    public Reconciliation reconcile() {
+        return Reconciliation.reconcile(registers, expectedCounts, pool);
+    }
+}
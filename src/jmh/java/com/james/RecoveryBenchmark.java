@@ -0,0 +1,109 @@
+package com.james;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures restart time against journal length: opening the journal and rebuilding a register by replaying all of 
+ * it, against loading the latest snapshot and replaying only the tail written since, which is all the journal holds
+ * once the snapshot has rolled it.
+ * 
+ * @author james
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecoveryBenchmark {
+    
+    @Param({ "100000", "1000000", "10000000" })
+    private long journalLength;
+    
+    @Param({ "10000" })
+    private int tailLength;
+    
+    private Path directory;
+    private Path fullFile;
+    private Path journalFile;
+    private Path snapshotFile;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SimpleException {
+        directory = Files.createTempDirectory("recovery");
+        fullFile = directory.resolve("full.journal");
+        journalFile = directory.resolve("register.journal");
+        snapshotFile = directory.resolve("register.journal.snapshot");
+        
+        write(fullFile, null);
+        write(journalFile, snapshotFile);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(fullFile);
+        Files.deleteIfExists(journalFile);
+        Files.deleteIfExists(snapshotFile);
+        Files.delete(directory);
+    }
+    
+    @Benchmark
+    public Bank fullReplay() throws IOException {
+        Bank register = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(fullFile, RegisterJournal.Durability.ASYNC)) {
+            journal.replay(register);
+        }
+        return register;
+    }
+    
+    @Benchmark
+    public Bank snapshotPlusTail() throws IOException {
+        Bank register = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(journalFile, RegisterJournal.Durability.ASYNC)) {
+            RegisterCheckpointer.recover(journal, snapshotFile, register);
+        }
+        return register;
+    }
+    
+    
+    
+    /**
+     * Journals a day of put and change, checkpointing before the last tailLength records.
+     * 
+     * @param snapshotFile null to never checkpoint, keeping the whole journal
+     */
+    private void write(final Path file, final Path snapshotFile) throws IOException, SimpleException {
+        Bank register = new Bank();
+        Bank toPut = new Bank(1, 1, 1, 1, 1);
+        int[] out = new int[BillType.values().length];
+        
+        try (RegisterJournal journal = new RegisterJournal(file, RegisterJournal.Durability.ASYNC)) {
+            register.setJournal(journal, 0);
+            RegisterCheckpointer checkpointer = snapshotFile == null ? null
+                    : new RegisterCheckpointer(journal, snapshotFile, 1);
+            
+            for(long i = 0; i < journalLength; i++) {
+                if(checkpointer != null && i == journalLength - tailLength) {
+                    checkpointer.checkpoint();
+                }
+                
+                if((i & 1) == 0) {
+                    register.put(toPut);
+                } else {
+                    register.changeAndTake(38, out);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.james;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * What a {@link RegisterFeed} adds to a put then change for the same amount, by number of subscribers: 0 for a feed
+ * attached but unsubscribed.  Subscribers count their events and drop the newest when behind, so the register never
+ * waits on them.
+ * 
+ * @author james
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RegisterFeedBenchmark {
+    
+    @Param({"0", "1", "4"})
+    private int numSubscribers;
+    
+    private RegisterFeed feed;
+    private Bank register;
+    private Bank bills;
+    private int[] out;
+    
+    @Setup
+    public void setUp() {
+        feed = new RegisterFeed();
+        for(int n = 0; n < numSubscribers; n++) {
+            feed.subscribe("subscriber-" + n, events -> { });
+        }
+        
+        register = new Bank(10, 10, 10, 10, 10);
+        register.setFeed(feed, 0);
+        bills = new Bank(1, 1, 1, 1, 1);
+        out = new int[BillType.values().length];
+    }
+    
+    @TearDown
+    public void tearDown() {
+        feed.close();
+    }
+    
+    @Benchmark
+    public Status putThenChange() {
+        register.tryPut(bills);
+        return register.tryChangeAndTake(38, out);
+    }
+}
@@ -0,0 +1,64 @@
+package com.james;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares {@link SessionServer} running a thread per session against a fixed pool of platform threads at the same
+ * load: many short text sessions, each pipelining a fixed number of commands then quitting, driven over loopback by
+ * {@link RegisterLoadClient}.  The thread per session is virtual where the runtime has virtual threads (Java 21+), a
+ * platform thread otherwise.  Each operation is one whole load, commands/s is numSessions x numCommands over it.
+ * 
+ * @author james
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SessionServerBenchmark {
+    
+    @Param({ "perSession", "fixedPool" })
+    private String sessions;
+    
+    @Param({ "2000" })
+    private int numSessions;
+    
+    @Param({ "200" })
+    private int numCommands;
+    
+    @Param({ "64" })
+    private int numPoolThreads;
+    
+    private SessionServer server;
+    private InetSocketAddress address;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new SessionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new Bank(), 
+                "perSession".equals(sessions) ? SessionServer.virtualThreadSessions()
+                        : SessionServer.fixedThreadSessions(numPoolThreads));
+        server.start();
+        address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.close();
+    }
+    
+    @Benchmark
+    public long load() throws Exception {
+        return RegisterLoadClient.run(address, numSessions, numCommands, false, true);
+    }
+}
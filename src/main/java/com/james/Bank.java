@@ -1,31 +1,124 @@
 package com.james;
 
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
- * Holds a {@link BillsBundle} of each {@link BillType}.  This holding can be used as a bank or an individual 
- * transaction.
+ * Holds a number of bills of each denomination of a {@link CurrencyProfile}, by default the five {@link BillType}
+ * bills.  This holding can be used as a bank or an individual transaction.  Banks of different profiles cannot be put
+ * into or taken from each other.
+ * 
+ * Counts are kept in a flat array indexed by denomination, largest first, rather than a map of {@link BillsBundle},
+ * since many banks are held at once as transaction objects.  For the default profile the index is the
+ * {@link BillType#ordinal()}.  {@link BillsBundle} remains the unit handed in and out through
+ * {@link #getBills(BillType)} and {@link #setBills(BillsBundle)}.
+ * 
+ * The total value is kept as a long alongside the counts and updated by every put, take and set, so
+ * {@link #getTotalValue()} and {@link #show()} cost the same however many denominations or bills are held.  Updates
+ * are overflow checked: a put that would overflow a count or the total is rejected as an invalid amount.  Like the
+ * counts, the total is only consistent to a thread that owns the bank or holds its lock, see {@link RegisterPool}.
+ * 
+ * Put and take check every denomination before changing any, so a rejected one leaves the bank as it was.  Several
+ * puts, takes and changes that must succeed or fail together are staged in a {@link Transaction} from
+ * {@link #begin()} and applied at once.
+ * 
+ * {@link #show()} renders a new String.  Callers rendering on every command append the same text into a reused
+ * {@link StringBuilder}, {@link CharBuffer} or {@link ByteBuffer} instead, which allocates nothing.
+ * 
+ * Which change amounts the bank can pay is kept up to date by an attached {@link PayableAmounts}, see
+ * {@link #setPayableAmounts(PayableAmounts)}.  Every put, take and change, applied or rejected, is streamed to
+ * subscribers of an attached {@link RegisterFeed}.
  * 
  * @author james
  */
 public class Bank {
     
-    private Map<BillType, BillsBundle> billsMap;
+    private final CurrencyProfile profile;
+    
+    /**
+     * Number of bills per denomination of the profile, largest first
+     */
+    private final int[] counts;
+    
+    /**
+     * Sum of counts times denominations, maintained by every update
+     */
+    private long totalValue;
+    
+    /**
+     * Solver scratch per thread, keeps change making allocation free without adding to every bank's footprint.
+     */
+    private static final ThreadLocal<ChangeSolver> SOLVERS = ThreadLocal.withInitial(ChangeSolver::new);
+    
+    /**
+     * Shared by every bank with nothing attached, never changed
+     */
+    private static final Attachments NONE = new Attachments();
+    
+    /**
+     * Everything attached to a register beyond its counts.  Kept in a holder allocated on the first attach, so the
+     * many banks that never have any, the bills of each put or take and each transaction's bank, carry one reference
+     * rather than a field per attachment.
+     */
+    private static final class Attachments {
+        
+        private ChangePolicy changePolicy = ChangePolicy.FEWEST_BILLS;
+        
+        private ChangeCache changeCache;
+        
+        private PayableAmounts payableAmounts;
+        
+        private RegisterJournal journal;
+        private int journalRegisterId;
+        
+        private RegisterFeed feed;
+        private int feedRegisterId;
+        
+        private RegisterMetrics metrics;
+    }
+    
+    private Attachments attachments = NONE;
     
     /**
      * Constructs an empty bank of bills with a value of $0
      */
     public Bank() {
-        billsMap = new HashMap<>();
-        Arrays.stream(BillType.values())
-            .forEach(billType -> billsMap.put(billType, new BillsBundle(billType)));
+        this(CurrencyProfile.DEFAULT);
     }
     
     /**
-     * Constructs a bank with the provided number of {@link BillsBundle} per type/denomination.
+     * Constructs an empty bank of the profile's denominations.
+     * 
+     * @param profile
+     */
+    public Bank(final CurrencyProfile profile) {
+        this.profile = profile;
+        this.counts = new int[profile.size()];
+    }
+    
+    /**
+     * Constructs a bank of the profile's denominations with the provided number of bills of each.
+     * 
+     * @param profile
+     * @param numOfBills per denomination, largest first
+     * @throws IllegalArgumentException if there is not one count per denomination
+     */
+    public Bank(final CurrencyProfile profile, final int... numOfBills) {
+        this(profile);
+        
+        if(numOfBills.length != counts.length) {
+            throw new IllegalArgumentException("profile " + profile.getName() + " has " + counts.length 
+                    + " denominations, " + numOfBills.length + " counts given");
+        }
+        System.arraycopy(numOfBills, 0, counts, 0, counts.length);
+        totalValue = valueOf(counts);
+    }
+    
+    /**
+     * Constructs a bank of the default profile with the provided number of bills per type/denomination.
      * 
      * @param numTwenties
      * @param numTens
@@ -35,74 +128,313 @@ public class Bank {
      */
     public Bank(final int numTwenties, final int numTens, final int numFives, final int numTwos, final int numOnes) {
         this();
-        
-        setBills( new BillsBundle(BillType.TWENTY, numTwenties) );
-        setBills( new BillsBundle(BillType.TEN, numTens) );
-        setBills( new BillsBundle(BillType.FIVE, numFives) );
-        setBills( new BillsBundle(BillType.TWO, numTwos) );
-        setBills( new BillsBundle(BillType.ONE, numOnes) );
+        counts[BillType.TWENTY.ordinal()] = numTwenties;
+        counts[BillType.TEN.ordinal()] = numTens;
+        counts[BillType.FIVE.ordinal()] = numFives;
+        counts[BillType.TWO.ordinal()] = numTwos;
+        counts[BillType.ONE.ordinal()] = numOnes;
+        totalValue = valueOf(counts);
+    }
+    
+    public CurrencyProfile getProfile() {
+        return profile;
     }
     
+    /**
+     * @param billType
+     * @return a new {@link BillsBundle} holding this bank's count of the bill type.  Changes to the returned bundle
+     * are not reflected in this bank, use {@link #setBills(BillsBundle)}.
+     * @throws IllegalArgumentException if this bank's profile does not hold the bill type's denomination
+     */
     public BillsBundle getBills(final BillType billType) {
-        return billsMap.get(billType);
+        return new BillsBundle(billType, counts[indexOf(billType)]);
     }
     
+    /**
+     * @param billType
+     * @return this bank's number of bills of the bill type
+     * @throws IllegalArgumentException if this bank's profile does not hold the bill type's denomination
+     */
+    public int getNumOfBills(final BillType billType) {
+        return counts[indexOf(billType)];
+    }
+    
+    /**
+     * Sets this bank's count of the bundle's bill type to the bundle's number of bills.
+     * 
+     * @param bills
+     * @throws IllegalArgumentException if this bank's profile does not hold the bill type's denomination
+     * @throws ArithmeticException if the total value would overflow
+     */
     public void setBills(final BillsBundle bills) {
-        billsMap.put(bills.getBillType(), bills);
+        setNumOfBills(indexOf(bills.getBillType()), bills.getNumOfBills());
+    }
+    
+    /**
+     * @param index of the denomination in this bank's profile, 0 for the largest
+     * @return this bank's number of bills of the denomination
+     */
+    public int getNumOfBills(final int index) {
+        return counts[index];
+    }
+    
+    /**
+     * @param index of the denomination in this bank's profile, 0 for the largest
+     * @param numOfBills
+     * @throws ArithmeticException if the total value would overflow
+     */
+    public void setNumOfBills(final int index, final int numOfBills) {
+        long difference = (long) numOfBills - counts[index];
+        totalValue = Math.addExact(totalValue, difference * profile.denominations()[index]);
+        counts[index] = numOfBills;
+        countsChanged();
+    }
+    
+    public ChangePolicy getChangePolicy() {
+        return attachments.changePolicy;
+    }
+    
+    /**
+     * Chooses how change is made from this bank, {@link ChangePolicy#FEWEST_BILLS} by default.  Clears the attached
+     * {@link ChangeCache}, whose quotes were made under the old policy.
+     * 
+     * @param changePolicy
+     * @throws IllegalArgumentException if the policy cannot serve this bank's profile
+     */
+    public void setChangePolicy(final ChangePolicy changePolicy) {
+        changePolicy.check(profile);
+        attach().changePolicy = changePolicy;
+        
+        if(attachments.changeCache != null) {
+            attachments.changeCache.clear();
+        }
+    }
+    
+    public ChangeCache getChangeCache() {
+        return attachments.changeCache;
+    }
+    
+    /**
+     * Attaches a cache of {@link #change(int)} quotes to this bank.  Caching is off by default.
+     * 
+     * @param changeCache cache to use, null to turn caching off
+     */
+    public void setChangeCache(final ChangeCache changeCache) {
+        attach().changeCache = changeCache;
+    }
+    
+    public PayableAmounts getPayableAmounts() {
+        return attachments.payableAmounts;
+    }
+    
+    /**
+     * Attaches a set of {@link PayableAmounts} to this bank, brought up to date with this bank's counts now and on
+     * every change after.  Off by default.
+     * 
+     * @param payableAmounts amounts to keep up to date, null to stop
+     * @throws IllegalArgumentException if they are of another profile
+     */
+    public void setPayableAmounts(final PayableAmounts payableAmounts) {
+        if(payableAmounts != null) {
+            if(!profile.equals(payableAmounts.getProfile())) {
+                throw new IllegalArgumentException("payable amounts of " + payableAmounts.getProfile().getName()
+                        + " for a bank of " + profile.getName());
+            }
+            payableAmounts.update(counts);
+        }
+        attach().payableAmounts = payableAmounts;
+    }
+    
+    public RegisterJournal getJournal() {
+        return attachments.journal;
+    }
+    
+    /**
+     * Attaches a journal to this bank.  Every put, take and change made from then on is appended to it once applied.
+     * Journaling is off by default.
+     * 
+     * @param journal journal to use, null to turn journaling off
+     * @param registerId identifies this bank in the journal
+     */
+    public void setJournal(final RegisterJournal journal, final int registerId) {
+        Attachments attached = attach();
+        attached.journal = journal;
+        attached.journalRegisterId = registerId;
+    }
+    
+    public RegisterFeed getFeed() {
+        return attachments.feed;
+    }
+    
+    /**
+     * Attaches a feed to this bank.  Every put, take and change made from then on, applied or rejected, is recorded
+     * to it.
+     * 
+     * @param feed feed to use, null to stop
+     * @param registerId identifies this bank in the feed's events
+     * @throws IllegalArgumentException if the feed is of another profile
+     */
+    public void setFeed(final RegisterFeed feed, final int registerId) {
+        if(feed != null && !profile.equals(feed.getProfile())) {
+            throw new IllegalArgumentException("feed of " + feed.getProfile().getName() + " for a bank of "
+                    + profile.getName());
+        }
+        Attachments attached = attach();
+        attached.feed = feed;
+        attached.feedRegisterId = registerId;
+    }
+    
+    public RegisterMetrics getMetrics() {
+        return attachments.metrics;
+    }
+    
+    /**
+     * Attaches metrics to this bank.  Every put, take and change made from then on is counted and sampled for its
+     * latency, and the work of every change solved is recorded.  Metrics are off by default and cost nothing while off.
+     * 
+     * @param metrics metrics to record to, null to turn metrics off
+     */
+    public void setMetrics(final RegisterMetrics metrics) {
+        attach().metrics = metrics;
     }
     
     @Override
     public String toString() {
-        return "Bank [billsMap=" + billsMap + "]";
+        return "Bank [counts=" + Arrays.toString(counts) + "]";
     }
     
     
     
     /**
-     * Validate in bound {@link Bank} used for put and take.  If bad, SimpleException is thrown.  
+     * Validate in bound {@link Bank} used for put and take.  
      * Validation framework might be helpful instead.
      * 
      * @param bank
-     * @throws SimpleException
+     * @return {@link Status#OK} or the reason the bank is invalid
      */
-    private void validOrThrow(final Bank bank) throws SimpleException {
+    private Status valid(final Bank bank) {
         
         if(bank == null) {
-            throw SimpleException.Error.InvalidAmount.getException();
+            return Status.InvalidAmount;
+        }
+        
+        if(bank.profile != profile && !bank.profile.equals(profile)) {
+            return Status.MismatchDenomination;
         }
         
         // success, made it
+        return Status.OK;
     }
     
     /**
-     * @return string representation of this bank in the format: $XX #$20s #$10s #$5s #$2s #$1s
+     * @return string representation of this bank in the format: $XX #$20s #$10s #$5s #$2s #$1s, or for other 
+     * profiles the total in the smallest unit and the count of each denomination, largest first
      */
     public String show() {
+        return appendShow(new StringBuilder(showLength())).toString();
+    }
+    
+    /**
+     * Appends the {@link #show()} text without allocating, unless the builder has to grow.
+     * 
+     * @param out
+     * @return out
+     */
+    public StringBuilder appendShow(final StringBuilder out) {
+        out.append('$').append(totalValue);
+        
+        for(int count : counts) {
+            out.append(' ').append(count);
+        }
+        
+        return out;
+    }
+    
+    /**
+     * Puts the {@link #show()} text at the buffer's position without allocating.
+     * 
+     * @param out
+     * @return out, its position moved past the text
+     * @throws BufferOverflowException if fewer than {@link #showLength()} chars remain, nothing is put
+     */
+    public CharBuffer appendShow(final CharBuffer out) {
+        if(out.remaining() < showLength()) {
+            throw new BufferOverflowException();
+        }
+        
+        out.put('$');
+        putDigits(out, totalValue);
+        
+        for(int count : counts) {
+            out.put(' ');
+            putDigits(out, count);
+        }
+        
+        return out;
+    }
+    
+    /**
+     * Puts the {@link #show()} text, as US-ASCII, at the buffer's position without allocating.
+     * 
+     * @param out
+     * @return out, its position moved past the text
+     * @throws BufferOverflowException if fewer than {@link #showLength()} bytes remain, nothing is put
+     */
+    public ByteBuffer appendShow(final ByteBuffer out) {
+        if(out.remaining() < showLength()) {
+            throw new BufferOverflowException();
+        }
+        
+        out.put((byte) '$');
+        putDigits(out, totalValue);
         
-        String delimiter = " ";
-        String prefix = "$" + getTotalValue() + " ";
-        String suffix = "";
+        for(int count : counts) {
+            out.put((byte) ' ');
+            putDigits(out, count);
+        }
         
-        return Arrays.stream(BillType.values())
-                .map(billType -> String.valueOf( billsMap.get(billType).getNumOfBills() ))
-                .collect(Collectors.joining(delimiter, prefix, suffix));
+        return out;
     }
     
     /**
-     * Adds the passed bank to this bank. 
+     * @return length of the {@link #show()} text, in chars or US-ASCII bytes
+     */
+    public int showLength() {
+        int length = 1 + numDigits(totalValue);
+        for(int count : counts) {
+            length += 1 + numDigits(count);
+        }
+        return length;
+    }
+    
+    /**
+     * Adds the passed bank to this bank.
      * 
      * @param bankToPut
      * @throws SimpleException
      */
     public void put(final Bank bankToPut) throws SimpleException {
+        tryPut(bankToPut).throwIfError();
+    }
+    
+    /**
+     * Same as {@link #put(Bank)} but reports a rejection as a status instead of throwing.
+     * 
+     * @param bankToPut
+     * @return {@link Status#OK} or the reason the put was rejected
+     */
+    public Status tryPut(final Bank bankToPut) {
         
-        validOrThrow(bankToPut);
-        
-        for(BillType billType : BillType.values()) {
-            BillsBundle iterBundle = bankToPut.getBills(billType);
-            billsMap.get(billType).put(iterBundle);
+        if(attachments.metrics == null) {
+            return record(RegisterOp.put, bankToPut, doPut(bankToPut));
         }
         
+        long start = attachments.metrics.startOperation(RegisterOp.put);
+        Status status = doPut(bankToPut);
+        attachments.metrics.endOperation(RegisterOp.put, start);
+        countError(status);
+        
+        return record(RegisterOp.put, bankToPut, status);
     }
     
     /**
@@ -112,83 +444,892 @@ public class Bank {
      * @throws SimpleException
      */
     public void take(final Bank bankToTake) throws SimpleException {
+        tryTake(bankToTake).throwIfError();
+    }
+    
+    /**
+     * Same as {@link #take(Bank)} but reports a rejection as a status instead of throwing.
+     * 
+     * @param bankToTake
+     * @return {@link Status#OK} or the reason the take was rejected
+     */
+    public Status tryTake(final Bank bankToTake) {
         
-        validOrThrow(bankToTake);
-        
-        for(BillType billType : BillType.values()) {
-            BillsBundle iterBundle = bankToTake.getBills(billType);
-            billsMap.get(billType).take(iterBundle);
+        if(attachments.metrics == null) {
+            return record(RegisterOp.take, bankToTake, doTake(bankToTake));
         }
+        
+        long start = attachments.metrics.startOperation(RegisterOp.take);
+        Status status = doTake(bankToTake);
+        attachments.metrics.endOperation(RegisterOp.take, start);
+        countError(status);
+        
+        return record(RegisterOp.take, bankToTake, status);
     }
     
     /**
-     * Returns a new {@link Bank} of the change amount requested.  Nothing is taken from this bank.  Use 
+     * Returns a new {@link Bank} of the change amount requested.  Nothing is taken from this bank.  Use
      * {@link #take(Bank)} to subtract from this bank.
      * 
-     * Change making attempt start at largest bill type/denomination and works down with remaining needed amount.
-     * This is not optimally functional.
-     *
+     * Change is made from the bills available as this bank's {@link ChangePolicy} chooses, by default with the fewest
+     * bills possible, see {@link ChangeSolver}.  Ties favor larger bill types/denominations.  The change is a bank of
+     * this bank's profile.  Quotes are looked up in and stored to the {@link ChangeCache} when one is attached.
+     * 
+     * An amount is declined only when no combination of the bills pays it, and the change is the fewest bills, except
+     * for drawers whose solve exceeds every budget of {@link ChangeSolver}: many large and close denominations paying
+     * a large amount.  Those get the fewest bills found within the budgets, or a decline if none was found.
+     * 
      * @param amount
      * @return
-     * @throws SimpleException
+     * @throws SimpleException InsufficientFunds if the bills cannot pay the amount
      */
     public Bank change(final int amount) throws SimpleException {
         
-        /* draft psuedocode for improvement:
-         *
-         * bool isEligibleForReduced5Attempt = original amount mod 5 != 0
-         * 
-         * attemptedChangeBank = ... ~existing method code ...
-         *
-         * if(unsuccessful change made
-         *    && isEligibleForReduced5Attempt
-         *    && 5's are used in previous change made) {
-         *        attemptedChangeBankLess5 -> remove 1 $5 bill from attemptedChangeBank
-         *        remainingChangeNeeded$ = attemptedChangeBankLess5
-         *        tempStillAvailBank = thisBank.take(attemptedChangeBankLess5)
-         *        
-         *        // NOTE: **change cannot attempt to use any $5's during the following change cycle**
-         *        remainingChangeNeededBank = tempStillAvailBank.change(remainingChangeNeeded$)
-         *
-         *        hopefullyCompleteChangeBank = attemptedChangeBankLess5.put(remainingChangeNeededBank)
-         *
-         *        if(hopefullyCompleteChangeBank != originalChangeAmount) {
-         *            throw insufficient funds
-         *        }
-         */
+        Bank bankToTake = new Bank(profile);
+        change(amount, bankToTake.counts);
+        bankToTake.totalValue = amount;
+        
+        return bankToTake;
+    }
+    
+    /**
+     * Same as {@link #change(int)} but writes the change into a caller owned buffer instead of a new {@link Bank},
+     * so a reused buffer makes change without allocating.  Nothing is taken from this bank.
+     * 
+     * @param amount
+     * @param out receives the number of bills per denomination, largest first, untouched if change cannot 
+     * be made
+     * @return number of bills in the change
+     * @throws SimpleException
+     */
+    public int change(final int amount, final int[] out) throws SimpleException {
+        
+        tryChange(amount, out).throwIfError();
+        
+        return countBills(out);
+    }
+    
+    /**
+     * Same as {@link #change(int, int[])} but reports a decline as a status instead of throwing.
+     * 
+     * @param amount
+     * @param out receives the number of bills per denomination, largest first, untouched if change cannot 
+     * be made
+     * @return {@link Status#OK} or the reason change could not be made
+     */
+    public Status tryChange(final int amount, final int[] out) {
+        
+        if(attachments.metrics == null) {
+            return doChange(amount, out);
+        }
+        
+        long start = attachments.metrics.startOperation(RegisterOp.change);
+        Status status = doChange(amount, out);
+        attachments.metrics.endOperation(RegisterOp.change, start);
+        countError(status);
+        
+        return status;
+    }
+    
+    /**
+     * Makes change for the amount and takes it from this bank in one pass, writing the bills taken into a caller
+     * owned buffer.  Equivalent to {@link #change(int, int[])} followed by a take of the result, without building or
+     * validating an intermediate {@link Bank}.
+     * 
+     * @param amount
+     * @param out receives the number of bills taken per denomination, largest first, untouched if change cannot 
+     * be made
+     * @return number of bills taken
+     * @throws SimpleException
+     */
+    public int changeAndTake(final int amount, final int[] out) throws SimpleException {
+        
+        tryChangeAndTake(amount, out).throwIfError();
+        
+        return countBills(out);
+    }
+    
+    /**
+     * Same as {@link #changeAndTake(int, int[])} but reports a decline as a status instead of throwing.  Timed as a
+     * single {@link RegisterOp#change} operation when metrics are attached.
+     * 
+     * @param amount
+     * @param out receives the number of bills taken per denomination, largest first, untouched if change cannot 
+     * be made
+     * @return {@link Status#OK} or the reason change could not be made
+     */
+    public Status tryChangeAndTake(final int amount, final int[] out) {
+        
+        if(attachments.metrics == null) {
+            return recordChange(amount, out, doChangeAndTake(amount, out));
+        }
+        
+        long start = attachments.metrics.startOperation(RegisterOp.change);
+        Status status = doChangeAndTake(amount, out);
+        attachments.metrics.endOperation(RegisterOp.change, start);
+        countError(status);
+        
+        return recordChange(amount, out, status);
+    }
+    
+    /**
+     * Quotes change for each amount in order, each against this bank as it would be with the change for the amounts
+     * before it taken, so a batch of refunds is checked the way it would be paid.  Nothing is taken from this bank.
+     * 
+     * @param amounts
+     * @param out receives one row of {@link CurrencyProfile#size()} entries per amount, row i starting at i times the
+     * size: the number of bills per denomination, largest first, or -1 in every entry if the amount is declined
+     * @return number of amounts that can be paid
+     * @throws SimpleException if an amount is negative, before any is quoted
+     * @throws IllegalArgumentException if out has fewer than a row per amount
+     */
+    public int changeEach(final int[] amounts, final int[] out) throws SimpleException {
+        
+        checkBatch(amounts, out);
+        
+        int numServed = doChangeEach(amounts, out, false);
+        putBack(amounts, out, 0, amounts.length);
+        
+        return numServed;
+    }
+    
+    /**
+     * Same as {@link #changeEach(int[], int[])} but takes the change for every amount served, as
+     * {@link #changeAndTake(int, int[])} would one amount at a time.  Declined amounts are skipped and leave this bank
+     * as it was.  One solver serves the whole batch, results are not looked up in or stored to the
+     * {@link ChangeCache}, and each amount is timed and journaled as a {@link RegisterOp#change}.
+     * 
+     * @param amounts
+     * @param out receives one row per amount as for {@link #changeEach(int[], int[])}
+     * @return number of amounts served
+     * @throws SimpleException if an amount is negative, before any is served
+     * @throws IllegalArgumentException if out has fewer than a row per amount
+     */
+    public int changeAndTakeEach(final int[] amounts, final int[] out) throws SimpleException {
+        
+        checkBatch(amounts, out);
+        
+        int numServed = doChangeEach(amounts, out, false);
+        journalChangeEach(amounts, out);
+        countsChanged();
+        recordChangeEach(amounts, out);
+        
+        return numServed;
+    }
+    
+    /**
+     * Same as {@link #changeAndTakeEach(int[], int[])} but all or nothing: the change for every amount is taken, or
+     * if any amount is declined nothing is taken.
+     * 
+     * @param amounts
+     * @param out receives one row per amount as for {@link #changeEach(int[], int[])}.  On a decline the rows before
+     * the declined amount hold the change quoted for them, and the declined row and every row after it hold -1.
+     * @return number of bills taken across the batch
+     * @throws SimpleException if an amount is negative, before any is served, or is declined
+     * @throws IllegalArgumentException if out has fewer than a row per amount
+     * @throws UncheckedIOException if the attached journal fails part way through the batch, in which case the rows
+     * journaled before the failure stay taken and the rest are returned
+     */
+    public long changeAndTakeAll(final int[] amounts, final int[] out) throws SimpleException {
+        
+        checkBatch(amounts, out);
+        
+        int numServed = doChangeEach(amounts, out, true);
+        if(numServed < amounts.length) {
+            putBack(amounts, out, 0, numServed);
+            if(attachments.feed != null) {
+                attachments.feed.record(attachments.feedRegisterId, RegisterOp.change, amounts[numServed], null, totalValue,
+                        SimpleException.Error.InsufficientFunds);
+            }
+            throw SimpleException.Error.InsufficientFunds.getException();
+        }
+        journalChangeEach(amounts, out);
+        countsChanged();
+        recordChangeEach(amounts, out);
+        
+        long numOfBills = 0;
+        for(int i = 0; i < amounts.length * counts.length; i++) {
+            numOfBills += out[i];
+        }
+        return numOfBills;
+    }
+    
+    /**
+     * Starts a transaction against this bank.  Nothing it stages changes this bank until it is committed.
+     * 
+     * @return a new transaction, reusable after each commit or rollback
+     */
+    public Transaction begin() {
+        return new Transaction(this);
+    }
+    
+    /**
+     * @return total value of bills contained in this bank, kept up to date rather than summed on each call
+     */
+    public long getTotalValue() {
+        return totalValue;
+    }
+    
+    
+    
+    private Status doPut(final Bank bankToPut) {
+        
+        Status status = valid(bankToPut);
+        if(!status.isOk()) {
+            return status;
+        }
+        
+        // every denomination is checked before any is changed, so a rejected put leaves this bank as it was
+        int[] denominations = profile.denominations();
+        long total = totalValue;
+        for(int i = 0; i < counts.length; i++) {
+            int numOfBills = bankToPut.counts[i];
+            
+            if(numOfBills < 0 || counts[i] > Integer.MAX_VALUE - numOfBills) {
+                return Status.InvalidAmount;
+            }
+            
+            // int count times int denomination always fits a long, only the sum can overflow
+            try {
+                total = Math.addExact(total, (long) numOfBills * denominations[i]);
+            } catch(ArithmeticException e) {
+                return Status.InvalidAmount;
+            }
+        }
+        
+        // journaled first, a journal that cannot take it leaves this bank as it was
+        if(attachments.journal != null) {
+            attachments.journal.append(attachments.journalRegisterId, RegisterOp.put, bankToPut.counts);
+        }
+        
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] += bankToPut.counts[i];
+        }
+        totalValue = total;
+        countsChanged();
+        
+        return Status.OK;
+    }
+    
+    private Status doTake(final Bank bankToTake) {
+        
+        Status status = valid(bankToTake);
+        if(!status.isOk()) {
+            return status;
+        }
+        
+        // every denomination is checked before any is changed, so a rejected take leaves this bank as it was
+        int[] denominations = profile.denominations();
+        long value = 0;
+        for(int i = 0; i < counts.length; i++) {
+            int numOfBills = bankToTake.counts[i];
+            
+            if(numOfBills < 0) {
+                return Status.InvalidAmount;
+            }
+            
+            if(counts[i] < numOfBills) {
+                return Status.InsufficientFunds;
+            }
+            
+            value += (long) numOfBills * denominations[i];
+        }
+        
+        if(attachments.journal != null) {
+            attachments.journal.append(attachments.journalRegisterId, RegisterOp.take, bankToTake.counts);
+        }
+        
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] -= bankToTake.counts[i];
+        }
+        totalValue -= value;
+        countsChanged();
+        
+        return Status.OK;
+    }
+    
+    private Status doChange(final int amount, final int[] out) {
         
         if(amount < 0) {
-            throw SimpleException.Error.InvalidAmount.getException();
+            return Status.InvalidAmount;
+        }
+        
+        if(attachments.changeCache != null) {
+            ChangeCache.Quote quote = attachments.changeCache.get(amount, counts);
+            
+            if(quote != null) {
+                if(quote.isDeclined()) {
+                    return Status.InsufficientFunds;
+                }
+                
+                System.arraycopy(quote.getNumOfBills(), 0, out, 0, counts.length);
+                return Status.OK;
+            }
+        }
+        
+        int numOfBillsForChange = solve(SOLVERS.get(), amount, out);
+        
+        if(attachments.changeCache != null) {
+            attachments.changeCache.put(amount, counts, numOfBillsForChange < 0 ? null : out);
         }
         
-        Bank bankToTake = new Bank();
-        int amountStillNeeded = amount;
+        return numOfBillsForChange < 0 ? Status.InsufficientFunds : Status.OK;
+    }
+    
+    private Status doChangeAndTake(final int amount, final int[] out) {
+        
+        Status status = doChange(amount, out);
+        if(!status.isOk()) {
+            return status;
+        }
         
-        // no lambda since throws exception
-        for(BillType billType : BillType.values()) {
-            BillsBundle iterBills = billsMap.get(billType);
-            int billTypeDenomToTake = iterBills.getMaxAvailableChange(amountStillNeeded);
+        if(attachments.journal != null) {
+            attachments.journal.append(attachments.journalRegisterId, RegisterOp.change, out);
+        }
+        
+        // solver never hands out more than is available
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] -= out[i];
+        }
+        totalValue -= amount;
+        countsChanged();
+        
+        return Status.OK;
+    }
+    
+    /**
+     * @return number of bills in the change, or -1 if the amount cannot be made
+     */
+    private int solve(final ChangeSolver solver, final int amount, final int[] out) {
+        
+        if(amount > totalValue) {
+            // no need to search, the whole bank is not enough
+            return -1;
+        }
+        
+        int numOfBillsForChange = attachments.changePolicy.solve(solver, amount, profile, counts, out);
+        
+        if(attachments.metrics != null) {
+            attachments.metrics.recordSolverNodes(solver.getNumNodesVisited());
+        }
+        
+        return numOfBillsForChange;
+    }
+    
+    private void checkBatch(final int[] amounts, final int[] out) throws SimpleException {
+        
+        if((long) amounts.length * counts.length > out.length) {
+            throw new IllegalArgumentException("out holds " + out.length + " entries, " + amounts.length 
+                    + " rows of " + counts.length + " needed");
+        }
+        
+        for(int amount : amounts) {
+            if(amount < 0) {
+                throw SimpleException.Error.InvalidAmount.getException();
+            }
+        }
+    }
+    
+    /**
+     * Makes change for each amount in order and takes it, one row of out per amount, declined rows set to -1.  Only
+     * the counts are updated, the caller journals.
+     * 
+     * @param isAllOrNothing stop at the first decline, setting its row and every row after it to -1
+     * @return number of amounts served
+     */
+    private int doChangeEach(final int[] amounts, final int[] out, final boolean isAllOrNothing) {
+        
+        ChangeSolver solver = SOLVERS.get();
+        int numDenominations = counts.length;
+        int[] change = new int[numDenominations];
+        
+        int numServed = 0;
+        for(int n = 0; n < amounts.length; n++) {
+            int row = n * numDenominations;
+            
+            long start = attachments.metrics == null ? 0 : attachments.metrics.startOperation(RegisterOp.change);
+            boolean isServed = solve(solver, amounts[n], change) >= 0;
+            if(attachments.metrics != null) {
+                attachments.metrics.endOperation(RegisterOp.change, start);
+            }
             
-            BillsBundle billsForChange = new BillsBundle(billType, billTypeDenomToTake);
-            bankToTake.setBills(billsForChange);
+            if(!isServed) {
+                if(isAllOrNothing) {
+                    Arrays.fill(out, row, amounts.length * numDenominations, -1);
+                    return numServed;
+                }
+                
+                Arrays.fill(out, row, row + numDenominations, -1);
+                continue;
+            }
             
-            amountStillNeeded -= billsForChange.getTotalValue();
+            // solver never hands out more than is available
+            for(int i = 0; i < numDenominations; i++) {
+                counts[i] -= change[i];
+                out[row + i] = change[i];
+            }
+            totalValue -= amounts[n];
+            numServed++;
         }
         
-        if(amountStillNeeded > 0) {
-            throw SimpleException.Error.InsufficientFunds.getException();
+        return numServed;
+    }
+    
+    /**
+     * Returns the change of rows from to before to of out to this bank, skipping declined rows.
+     */
+    private void putBack(final int[] amounts, final int[] out, final int from, final int to) {
+        int numDenominations = counts.length;
+        for(int n = from; n < to; n++) {
+            int row = n * numDenominations;
+            if(out[row] < 0) {
+                continue;
+            }
+            
+            for(int i = 0; i < numDenominations; i++) {
+                counts[i] += out[row + i];
+            }
+            totalValue += amounts[n];
+        }
+    }
+    
+    /**
+     * Journals each row served.  If the journal cannot take a row, that row and every row after it are returned to
+     * this bank before rethrowing, so the bank holds exactly the rows journaled.
+     */
+    private void journalChangeEach(final int[] amounts, final int[] out) {
+        if(attachments.journal == null) {
+            return;
         }
         
-        return bankToTake;
+        int numDenominations = counts.length;
+        int[] change = new int[numDenominations];
+        for(int n = 0; n < amounts.length; n++) {
+            int row = n * numDenominations;
+            if(out[row] < 0) {
+                continue;
+            }
+            
+            System.arraycopy(out, row, change, 0, numDenominations);
+            try {
+                attachments.journal.append(attachments.journalRegisterId, RegisterOp.change, change);
+            } catch(RuntimeException e) {
+                putBack(amounts, out, n, amounts.length);
+                countsChanged();
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Applies a journaled operation without validating or journaling it again.
+     * 
+     * @param op {@link RegisterOp#put} and {@link RegisterOp#transaction} add, {@link RegisterOp#take} and
+     * {@link RegisterOp#change} subtract
+     * @param numOfBills per denomination, largest first
+     */
+    void apply(final RegisterOp op, final int[] numOfBills) {
+        int sign = op.getSign();
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] += sign * numOfBills[i];
+        }
+        totalValue = valueOf(counts);
+        countsChanged();
+    }
+    
+    /**
+     * Counts a rejected operation's error to the metrics, which must be attached.
+     */
+    private void countError(final Status status) {
+        if(!status.isOk()) {
+            attachments.metrics.recordError(status.getError());
+        }
     }
     
     /**
-     * @return total value of bills contained in this bank.
+     * Records a put or take to the feed, if attached.
+     * 
+     * @return the status
      */
-    public int getTotalValue() {
-        return billsMap.values().stream()
-                .map(bills -> bills.getTotalValue())
-                .reduce(0, (total, nextBills) -> total + nextBills);
+    private Status record(final RegisterOp op, final Bank bills, final Status status) {
+        if(attachments.feed != null) {
+            if(status.isOk()) {
+                attachments.feed.record(attachments.feedRegisterId, op, bills.totalValue, bills.counts, totalValue, null);
+            } else {
+                attachments.feed.record(attachments.feedRegisterId, op, bills == null ? 0 : bills.totalValue, null, totalValue,
+                        status.getError());
+            }
+        }
+        return status;
     }
     
+    /**
+     * Records a change taken to the feed, if attached.
+     * 
+     * @return the status
+     */
+    private Status recordChange(final int amount, final int[] out, final Status status) {
+        if(attachments.feed != null) {
+            attachments.feed.record(attachments.feedRegisterId, RegisterOp.change, amount, status.isOk() ? out : null, totalValue,
+                    status.getError());
+        }
+        return status;
+    }
+    
+    /**
+     * Records each row of a batch to the feed, if attached, with the total as it was after that row.
+     */
+    private void recordChangeEach(final int[] amounts, final int[] out) {
+        if(attachments.feed == null) {
+            return;
+        }
+        
+        int numDenominations = counts.length;
+        long total = totalValue;
+        for(int n = 0; n < amounts.length; n++) {
+            if(out[n * numDenominations] >= 0) {
+                total += amounts[n];
+            }
+        }
+        
+        int[] change = new int[numDenominations];
+        for(int n = 0; n < amounts.length; n++) {
+            int row = n * numDenominations;
+            if(out[row] < 0) {
+                attachments.feed.record(attachments.feedRegisterId, RegisterOp.change, amounts[n], null, total,
+                        SimpleException.Error.InsufficientFunds);
+                continue;
+            }
+            
+            total -= amounts[n];
+            System.arraycopy(out, row, change, 0, numDenominations);
+            attachments.feed.record(attachments.feedRegisterId, RegisterOp.change, amounts[n], change, total, null);
+        }
+    }
+    
+    /**
+     * @return this bank's own attachments, allocated on first use
+     */
+    private Attachments attach() {
+        if(attachments == NONE) {
+            attachments = new Attachments();
+        }
+        return attachments;
+    }
+    
+    private void countsChanged() {
+        if(attachments.payableAmounts != null) {
+            attachments.payableAmounts.update(counts);
+        }
+    }
+    
+    private int indexOf(final BillType billType) {
+        int index = profile.indexOf(billType);
+        if(index < 0) {
+            throw new IllegalArgumentException("profile " + profile.getName() + " has no " + billType);
+        }
+        return index;
+    }
+    
+    /**
+     * @return value of the counts in this bank's profile
+     * @throws ArithmeticException if it overflows a long
+     */
+    private long valueOf(final int[] numOfBills) {
+        long total = 0;
+        for(int i = 0; i < numOfBills.length; i++) {
+            total = Math.addExact(total, (long) numOfBills[i] * profile.denominations()[i]);
+        }
+        return total;
+    }
+    
+    /**
+     * @return chars needed to write the value in decimal, with its sign
+     */
+    private static int numDigits(final long value) {
+        int numDigits = value < 0 ? 2 : 1;
+        for(long rest = value / 10; rest != 0; rest /= 10) {
+            numDigits++;
+        }
+        return numDigits;
+    }
+    
+    /**
+     * Writes the value in decimal, last digit first, at its absolute offsets, then moves the position past it.
+     */
+    private static void putDigits(final CharBuffer out, final long value) {
+        int end = out.position() + numDigits(value);
+        
+        long rest = value;
+        for(int at = end - 1; at >= out.position(); at--) {
+            out.put(at, (char) ('0' + Math.abs(rest % 10)));
+            rest /= 10;
+        }
+        if(value < 0) {
+            out.put(out.position(), '-');
+        }
+        
+        out.position(end);
+    }
+    
+    private static void putDigits(final ByteBuffer out, final long value) {
+        int end = out.position() + numDigits(value);
+        
+        long rest = value;
+        for(int at = end - 1; at >= out.position(); at--) {
+            out.put(at, (byte) ('0' + Math.abs(rest % 10)));
+            rest /= 10;
+        }
+        if(value < 0) {
+            out.put(out.position(), (byte) '-');
+        }
+        
+        out.position(end);
+    }
+    
+    private int countBills(final int[] numOfBills) {
+        int total = 0;
+        for(int i = 0; i < counts.length; i++) {
+            total += numOfBills[i];
+        }
+        return total;
+    }
+    
+    /**
+     * Puts, takes and changes against one {@link Bank} applied as a unit, all of them or none.  Each operation is
+     * checked against the counts the bank would hold after the operations staged before it, and a rejected operation
+     * is not staged.  The bank is left alone until {@link #commit()} applies the net change of every staged operation
+     * at once, so rolling back only forgets the staged change and never has to undo the bank.
+     * 
+     * The staged change is kept as one signed count per denomination, so a transaction costs the same however many
+     * operations it stages.  A committed transaction is journaled as one {@link RegisterOp#transaction} of its
+     * net change, whose counts may be negative.  Like its bank, a transaction is for one thread at a time.
+     */
+    public static final class Transaction {
+        
+        private final Bank bank;
+        
+        /**
+         * Net number of bills staged per denomination, added on put, subtracted on take and change
+         */
+        private final long[] staged;
+        private long stagedValue;
+        
+        /**
+         * Scratch for change: the counts as staged, then the change made from them
+         */
+        private final int[] available;
+        private final int[] change;
+        
+        private Transaction(final Bank bank) {
+            this.bank = bank;
+            this.staged = new long[bank.counts.length];
+            this.available = new int[bank.counts.length];
+            this.change = new int[bank.counts.length];
+        }
+        
+        public Bank getBank() {
+            return bank;
+        }
+        
+        /**
+         * @return net value staged, negative when more is taken than put
+         */
+        public long getStagedValue() {
+            return stagedValue;
+        }
+        
+        /**
+         * @param index of the denomination, 0 for the largest
+         * @return net number of bills of the denomination staged
+         */
+        public long getStagedNumOfBills(final int index) {
+            return staged[index];
+        }
+        
+        /**
+         * Stages putting the passed bank into the bank.
+         * 
+         * @param bankToPut
+         * @return this transaction
+         * @throws SimpleException if it would overflow a count or the total, leaving the transaction as it was
+         */
+        public Transaction put(final Bank bankToPut) throws SimpleException {
+            stage(bankToPut, 1).throwIfError();
+            return this;
+        }
+        
+        /**
+         * Stages taking the passed bank from the bank.
+         * 
+         * @param bankToTake
+         * @return this transaction
+         * @throws SimpleException if the bank as staged does not hold it, leaving the transaction as it was
+         */
+        public Transaction take(final Bank bankToTake) throws SimpleException {
+            stage(bankToTake, -1).throwIfError();
+            return this;
+        }
+        
+        /**
+         * Makes change from the bank as staged, by the bank's {@link ChangePolicy}, and stages taking it.  The
+         * {@link ChangeCache} is not consulted, since it is keyed by the bank's counts rather than the staged ones.
+         * 
+         * @param amount
+         * @param out receives the number of bills per denomination, largest first
+         * @return number of bills in the change
+         * @throws SimpleException if the amount is negative or cannot be made, or the bank no longer holds what the
+         * transaction takes, leaving the transaction as it was
+         */
+        public int change(final int amount, final int[] out) throws SimpleException {
+            
+            if(amount < 0) {
+                throw SimpleException.Error.InvalidAmount.getException();
+            }
+            
+            if(amount > bank.totalValue + stagedValue) {
+                throw SimpleException.Error.InsufficientFunds.getException();
+            }
+            
+            // the bank may have changed since staging, so the staged counts are checked against it again
+            for(int i = 0; i < available.length; i++) {
+                long count = bank.counts[i] + staged[i];
+                if(count < 0) {
+                    throw SimpleException.Error.InsufficientFunds.getException();
+                }
+                available[i] = (int) Math.min(count, Integer.MAX_VALUE);
+            }
+            
+            ChangeSolver solver = SOLVERS.get();
+            int numOfBillsForChange = bank.attachments.changePolicy.solve(solver, amount, bank.profile, available, change);
+            if(bank.attachments.metrics != null) {
+                bank.attachments.metrics.recordSolverNodes(solver.getNumNodesVisited());
+            }
+            
+            if(numOfBillsForChange < 0) {
+                throw SimpleException.Error.InsufficientFunds.getException();
+            }
+            
+            for(int i = 0; i < change.length; i++) {
+                staged[i] -= change[i];
+            }
+            stagedValue -= amount;
+            System.arraycopy(change, 0, out, 0, change.length);
+            
+            return numOfBillsForChange;
+        }
+        
+        /**
+         * Applies every staged operation to the bank and journals the net change, then starts over empty.  The
+         * staged change is checked again first, so a bank changed since staging is never left half updated.
+         * 
+         * @throws SimpleException if the bank no longer holds what the transaction takes, or what it puts would
+         * overflow, leaving the bank and the transaction as they were
+         */
+        public void commit() throws SimpleException {
+            
+            long total;
+            try {
+                total = Math.addExact(bank.totalValue, stagedValue);
+            } catch(ArithmeticException e) {
+                throw SimpleException.Error.InvalidAmount.getException();
+            }
+            
+            boolean isEmpty = true;
+            for(int i = 0; i < staged.length; i++) {
+                long count = bank.counts[i] + staged[i];
+                
+                if(staged[i] < 0 && count < 0) {
+                    throw SimpleException.Error.InsufficientFunds.getException();
+                }
+                if(count > Integer.MAX_VALUE) {
+                    throw SimpleException.Error.InvalidAmount.getException();
+                }
+                
+                isEmpty &= staged[i] == 0;
+            }
+            
+            if(isEmpty) {
+                return;
+            }
+            
+            for(int i = 0; i < staged.length; i++) {
+                change[i] = (int) staged[i];
+            }
+            
+            if(bank.attachments.journal != null) {
+                bank.attachments.journal.append(bank.attachments.journalRegisterId, RegisterOp.transaction, change);
+            }
+            
+            for(int i = 0; i < staged.length; i++) {
+                bank.counts[i] += change[i];
+            }
+            bank.totalValue = total;
+            bank.countsChanged();
+            if(bank.attachments.feed != null) {
+                bank.attachments.feed.record(bank.attachments.feedRegisterId, RegisterOp.transaction, stagedValue,
+                        change, total, null);
+            }
+            
+            rollback();
+        }
+        
+        /**
+         * Forgets every staged operation.  The bank is untouched.
+         */
+        public void rollback() {
+            Arrays.fill(staged, 0);
+            stagedValue = 0;
+        }
+        
+        @Override
+        public String toString() {
+            return "Transaction [staged=" + Arrays.toString(staged) + ", value=" + stagedValue + "]";
+        }
+        
+        /**
+         * Stages adding sign times the other bank's counts, if every count and the total stay in range.
+         */
+        private Status stage(final Bank other, final int sign) {
+            
+            Status status = bank.valid(other);
+            if(!status.isOk()) {
+                return status;
+            }
+            
+            int[] denominations = bank.profile.denominations();
+            long value = stagedValue;
+            for(int i = 0; i < staged.length; i++) {
+                int numOfBills = other.counts[i];
+                
+                if(numOfBills < 0) {
+                    return Status.InvalidAmount;
+                }
+                
+                long count = bank.counts[i] + staged[i] + sign * (long) numOfBills;
+                if(sign < 0 && count < 0) {
+                    return Status.InsufficientFunds;
+                }
+                if(count > Integer.MAX_VALUE) {
+                    return Status.InvalidAmount;
+                }
+                
+                value += sign * (long) numOfBills * denominations[i];
+            }
+            
+            // counts are ints, so value stays far inside a long, only the bank's total can overflow
+            try {
+                Math.addExact(bank.totalValue, value);
+            } catch(ArithmeticException e) {
+                return Status.InvalidAmount;
+            }
+            
+            for(int i = 0; i < staged.length; i++) {
+                staged[i] += sign * (long) other.counts[i];
+            }
+            stagedValue = value;
+            
+            return Status.OK;
+        }
+    }
 }
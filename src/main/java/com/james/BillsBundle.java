@@ -47,23 +47,24 @@ public class BillsBundle {
     
     
     /**
-     * Validate in bound {@link BillsBundle} used for put and take.  If bad, SimpleException is thrown.  
+     * Validate in bound {@link BillsBundle} used for put and take.  
      * Validation framework might be helpful instead.
      * 
      * @param bills
-     * @throws SimpleException
+     * @return {@link Status#OK} or the reason the bundle is invalid
      */
-    private void validOrThrow(final BillsBundle bills) throws SimpleException {
+    private Status valid(final BillsBundle bills) {
         
         if(bills == null || 0 > bills.getNumOfBills()) {
-            throw SimpleException.Error.InvalidAmount.getException();
+            return Status.InvalidAmount;
         }
         
         if(billType != bills.getBillType()) {
-            throw SimpleException.Error.MismatchDenomination.getException();
+            return Status.MismatchDenomination;
         }
         
         // success, made it
+        return Status.OK;
     }
     
     /**
@@ -75,9 +76,26 @@ public class BillsBundle {
      */
     public int put(final BillsBundle bills) throws SimpleException {
         
-        validOrThrow(bills);
+        tryPut(bills).throwIfError();
+        
+        return this.numOfBills;
+    }
+    
+    /**
+     * Same as {@link #put(BillsBundle)} but reports a rejection as a status instead of throwing.
+     * 
+     * @param bills
+     * @return {@link Status#OK} or the reason nothing was put
+     */
+    public Status tryPut(final BillsBundle bills) {
+        
+        Status status = valid(bills);
+        
+        if(status.isOk()) {
+            this.numOfBills += bills.getNumOfBills();
+        }
         
-        return this.numOfBills += bills.getNumOfBills();
+        return status;
     }
     
     /**
@@ -89,13 +107,31 @@ public class BillsBundle {
      */
     public int take(final BillsBundle bills) throws SimpleException {
         
-        validOrThrow(bills);
+        tryTake(bills).throwIfError();
+        
+        return this.numOfBills;
+    }
+    
+    /**
+     * Same as {@link #take(BillsBundle)} but reports a rejection as a status instead of throwing.
+     * 
+     * @param bills
+     * @return {@link Status#OK} or the reason nothing was taken
+     */
+    public Status tryTake(final BillsBundle bills) {
+        
+        Status status = valid(bills);
+        
+        if(!status.isOk()) {
+            return status;
+        }
         
         if(this.numOfBills < bills.getNumOfBills()) {
-            throw SimpleException.Error.InsufficientFunds.getException();
+            return Status.InsufficientFunds;
         }
         
-        return this.numOfBills -= bills.getNumOfBills();
+        this.numOfBills -= bills.getNumOfBills();
+        return Status.OK;
     }
     
     /**
@@ -132,9 +168,9 @@ public class BillsBundle {
     }
     
     /**
-     * @return total value of bills contained in this bundle.
+     * @return total value of bills contained in this bundle, as a long since a large bundle overflows an int
      */
-    public int getTotalValue() {
-        return numOfBills * billType.getDenomination();
+    public long getTotalValue() {
+        return (long) numOfBills * billType.getDenomination();
     }
 }
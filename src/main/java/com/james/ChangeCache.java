@@ -0,0 +1,191 @@
+package com.james;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of change quotes for a {@link Bank}.  Quotes are keyed by the amount and a
+ * fingerprint of the bill counts the quote was made against, so any {@link Bank#put(Bank)}, {@link Bank#take(Bank)}
+ * or {@link Bank#setBills(BillsBundle)} re-keys lookups to the new state without having to clear the cache.  Quotes
+ * for earlier states stay until evicted and are hit again if the bank returns to that state.
+ * 
+ * Declined amounts are cached as well so a repeated decline is also a lookup.
+ * 
+ * Not thread safe, same as {@link Bank}.
+ * 
+ * @author james
+ */
+public class ChangeCache {
+    
+    /**
+     * A cached quote.  numOfBills is null for a declined amount.
+     */
+    static class Quote {
+        
+        private final int[] registerCounts;
+        private final int[] numOfBills;
+        
+        private Quote(final int[] registerCounts, final int[] numOfBills) {
+            this.registerCounts = registerCounts;
+            this.numOfBills = numOfBills;
+        }
+        
+        /**
+         * @return number of bills per denomination making the change, null when the amount was declined
+         */
+        int[] getNumOfBills() {
+            return numOfBills;
+        }
+        
+        boolean isDeclined() {
+            return numOfBills == null;
+        }
+    }
+    
+    private static final class QuoteKey {
+        
+        // only the lookup probe is ever changed, stored keys are not
+        private int amount;
+        private long fingerprint;
+        
+        private QuoteKey(final int amount, final long fingerprint) {
+            this.amount = amount;
+            this.fingerprint = fingerprint;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * amount + Long.hashCode(fingerprint);
+        }
+        
+        @Override
+        public boolean equals(final Object obj) {
+            if(!(obj instanceof QuoteKey)) {
+                return false;
+            }
+            QuoteKey other = (QuoteKey) obj;
+            return amount == other.amount && fingerprint == other.fingerprint;
+        }
+    }
+    
+    private final int maxEntries;
+    private final LinkedHashMap<QuoteKey, Quote> quotes;
+    
+    // reused for lookups so a hit allocates nothing
+    private final QuoteKey probe = new QuoteKey(0, 0);
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Constructs an empty cache holding at most maxEntries quotes.
+     * 
+     * @param maxEntries
+     */
+    public ChangeCache(final int maxEntries) {
+        if(maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        
+        this.maxEntries = maxEntries;
+        
+        // access order gives LRU iteration, eldest is least recently used
+        this.quotes = new LinkedHashMap<QuoteKey, Quote>(16, 0.75f, true) {
+            
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<QuoteKey, Quote> eldest) {
+                if(size() > ChangeCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Looks up a quote for the amount against the provided bill counts.
+     * 
+     * @param amount
+     * @param registerCounts current bill counts per denomination
+     * @return cached quote, or null on a miss
+     */
+    Quote get(final int amount, final int[] registerCounts) {
+        probe.amount = amount;
+        probe.fingerprint = fingerprint(registerCounts);
+        Quote quote = quotes.get(probe);
+        
+        // fingerprints can collide, the counts confirm the hit
+        if(quote == null || !Arrays.equals(quote.registerCounts, registerCounts)) {
+            misses++;
+            return null;
+        }
+        
+        hits++;
+        return quote;
+    }
+    
+    /**
+     * Stores a quote for the amount against the provided bill counts.  Both arrays are copied.
+     * 
+     * @param amount
+     * @param registerCounts bill counts per denomination the quote was made against
+     * @param numOfBills bills per denomination making the change, null when the amount was declined
+     */
+    void put(final int amount, final int[] registerCounts, final int[] numOfBills) {
+        quotes.put(
+                new QuoteKey(amount, fingerprint(registerCounts)),
+                new Quote(registerCounts.clone(), numOfBills == null ? null : numOfBills.clone()));
+    }
+    
+    /**
+     * Removes all quotes.  Counters are kept.
+     */
+    public void clear() {
+        quotes.clear();
+    }
+    
+    public int size() {
+        return quotes.size();
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    public long getHits() {
+        return hits;
+    }
+    
+    public long getMisses() {
+        return misses;
+    }
+    
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    @Override
+    public String toString() {
+        return "ChangeCache [size=" + quotes.size() + ", maxEntries=" + maxEntries + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+    
+    /**
+     * @param registerCounts
+     * @return 64 bit fingerprint of the bill counts
+     */
+    static long fingerprint(final int[] registerCounts) {
+        long hash = 0xcbf29ce484222325L;
+        for(int count : registerCounts) {
+            hash ^= count;
+            hash *= 0x100000001b3L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,193 @@
+package com.james;
+
+import java.util.Arrays;
+
+/**
+ * How a {@link Bank} chooses among the ways to make change.  Handing out the fewest bills drains small denominations
+ * fastest, since amounts under the smallest larger bill can only be made from them, and a register out of ones and
+ * twos starts declining change it could otherwise make.  Policies trade a few more bills now for fewer declines later:
+ * <ul>
+ * <li>{@link #FEWEST_BILLS}, the default, fewest bills, ties to larger bills
+ * <li>{@link #PRESERVE_SMALL}, each smaller denomination costs twice the next larger per bill, so small bills are only
+ * handed out when larger ones cannot make the amount
+ * <li>{@link #balanced(int...)}, a bill costs in proportion to its denomination's target count over the count held,
+ * so denominations above target are handed out first and the drawer drifts toward its target mix
+ * </ul>
+ * Every policy makes change whenever fewest bills can, so none declines more on any one request; they differ in what
+ * they leave in the drawer.  Policies other than fewest bills price each bill and run
+ * {@link ChangeSolver#solveCheapest(int, int[], int[], int[], int[])}, see there for its cost.
+ * 
+ * Policies hold no state between requests and may be shared by any number of registers and threads.
+ * 
+ * @author james
+ */
+public abstract class ChangePolicy {
+    
+    /**
+     * Fewest bills, greedy alone for canonical profiles when the drawer can pay it
+     */
+    public static final ChangePolicy FEWEST_BILLS = new ChangePolicy("fewest") {
+        
+        @Override
+        int solve(final ChangeSolver solver, final int amount, final CurrencyProfile profile, final int[] available,
+                final int[] out) {
+            return solver.solveFewest(amount, profile.denominations(), profile.isCanonical(), available, out);
+        }
+        
+        @Override
+        void costs(final int[] available, final int[] costs) {
+            Arrays.fill(costs, 0, available.length, 1);
+        }
+    };
+    
+    /**
+     * Largest denomination costs 1 per bill and each smaller one twice the next larger
+     */
+    public static final ChangePolicy PRESERVE_SMALL = new ChangePolicy("preserve-small") {
+        
+        @Override
+        void costs(final int[] available, final int[] costs) {
+            for(int i = 0; i < available.length; i++) {
+                costs[i] = 1 << Math.min(i, MAX_COST_SHIFT);
+            }
+        }
+    };
+    
+    /**
+     * Keeps costs and their sums well inside a long whatever the counts
+     */
+    private static final int MAX_COST_SHIFT = 20;
+    
+    /**
+     * Cost per bill of a denomination held at its target count, halving at twice the target and so on down to 1
+     */
+    static final int BALANCED_AT_TARGET_COST = 4;
+    
+    private final String name;
+    
+    private ChangePolicy(final String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Policy keeping the drawer near a target mix, typically its opening float.
+     * 
+     * @param targetNumOfBills per denomination of the register's profile, largest first
+     * @return the policy
+     * @throws IllegalArgumentException if a target is negative
+     */
+    public static ChangePolicy balanced(final int... targetNumOfBills) {
+        return new Balanced(targetNumOfBills);
+    }
+    
+    /**
+     * Parses a policy name as given on the command line: fewest, preserve-small, or balanced: followed by the target
+     * counts separated by commas, for example balanced:0,5,10,20,20.
+     * 
+     * @param name
+     * @return the policy
+     * @throws IllegalArgumentException if there is no such policy
+     */
+    public static ChangePolicy forName(final String name) {
+        if(FEWEST_BILLS.name.equals(name)) {
+            return FEWEST_BILLS;
+        }
+        if(PRESERVE_SMALL.name.equals(name)) {
+            return PRESERVE_SMALL;
+        }
+        
+        String balancedPrefix = Balanced.NAME + ":";
+        if(name != null && name.startsWith(balancedPrefix)) {
+            String[] values = name.substring(balancedPrefix.length()).split(",");
+            int[] targetNumOfBills = new int[values.length];
+            for(int i = 0; i < values.length; i++) {
+                targetNumOfBills[i] = Integer.parseInt(values[i].trim());
+            }
+            return balanced(targetNumOfBills);
+        }
+        
+        throw new IllegalArgumentException("no change policy named " + name);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+    
+    
+    /**
+     * Writes the cost of handing out one bill of each denomination, given what the drawer holds.
+     * 
+     * @param available number of bills per denomination, largest first
+     * @param costs receives a positive cost per denomination, same order
+     */
+    abstract void costs(int[] available, int[] costs);
+    
+    /**
+     * Makes change for the amount from the available bills under this policy.
+     * 
+     * @return number of bills used, or -1 if the amount cannot be made
+     */
+    int solve(final ChangeSolver solver, final int amount, final CurrencyProfile profile, final int[] available,
+            final int[] out) {
+        int[] costs = solver.costs(available.length);
+        costs(available, costs);
+        return solver.solveCheapest(amount, profile.denominations(), profile.isCanonical(), costs, available, out);
+    }
+    
+    /**
+     * @param profile
+     * @throws IllegalArgumentException if this policy cannot serve a register of the profile
+     */
+    void check(final CurrencyProfile profile) {
+    }
+    
+    private static final class Balanced extends ChangePolicy {
+        
+        private static final String NAME = "balanced";
+        
+        private final int[] targetNumOfBills;
+        
+        private Balanced(final int[] targetNumOfBills) {
+            super(NAME + ":" + join(targetNumOfBills));
+            
+            for(int target : targetNumOfBills) {
+                if(target < 0) {
+                    throw new IllegalArgumentException("target must not be negative: " + target);
+                }
+            }
+            this.targetNumOfBills = targetNumOfBills.clone();
+        }
+        
+        @Override
+        void costs(final int[] available, final int[] costs) {
+            for(int i = 0; i < available.length; i++) {
+                // + 1 on both sides so an empty target still costs and an empty drawer does not divide by 0
+                long held = Math.max(0, available[i]) + 1L;
+                long cost = (BALANCED_AT_TARGET_COST * (targetNumOfBills[i] + 1L) + held - 1) / held;
+                costs[i] = (int) Math.max(1, Math.min(1 << MAX_COST_SHIFT, cost));
+            }
+        }
+        
+        @Override
+        void check(final CurrencyProfile profile) {
+            if(targetNumOfBills.length != profile.size()) {
+                throw new IllegalArgumentException("profile " + profile.getName() + " has " + profile.size()
+                        + " denominations, " + targetNumOfBills.length + " targets given");
+            }
+        }
+        
+        private static String join(final int[] values) {
+            StringBuilder joined = new StringBuilder();
+            for(int i = 0; i < values.length; i++) {
+                joined.append(i == 0 ? "" : ",").append(values[i]);
+            }
+            return joined.toString();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.james;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Replays one stream of sales against a register under each {@link ChangePolicy} and reports how many sales each
+ * served.  A customer tenders bills for a price; the register takes them and hands back the difference, or, when it
+ * cannot make that change, declines the sale and hands the tender back.  Every policy starts from the same opening
+ * float, which is also the balanced policy's target, and sees the same sales in the same order.
+ * 
+ * Sales are seeded: most customers pay with enough of one larger bill, the rest pay the exact price, so larger bills
+ * pile up while change drains the small ones.  As a till would, the register drops a denomination back to its float
+ * into the safe whenever it passes {@value #DROP_NUM_OF_BILLS} bills.
+ * 
+ * Usage: ChangeSimulation [numSales] [seed] [profile]
+ * 
+ * @author james
+ */
+public class ChangeSimulation {
+    
+    private static final int DEFAULT_NUM_SALES = 1000;
+    
+    /**
+     * Opening float holds none of the largest denomination and at most this many of any other
+     */
+    private static final int MAX_FLOAT_NUM_OF_BILLS = 20;
+    
+    /**
+     * One in this many customers pays the exact price
+     */
+    private static final int EXACT_PAYER_INTERVAL = 2;
+    
+    /**
+     * A denomination holding more than this many bills is dropped back to its float
+     */
+    private static final int DROP_NUM_OF_BILLS = 50;
+    
+    /**
+     * One sale: what it costs and the bills the customer hands over
+     */
+    public static final class Sale {
+        
+        private final int price;
+        private final int[] tender;
+        
+        public Sale(final int price, final int... tender) {
+            this.price = price;
+            this.tender = tender.clone();
+        }
+        
+        public int getPrice() {
+            return price;
+        }
+        
+        /**
+         * @param index of the denomination, 0 for the largest
+         * @return number of bills of the denomination tendered
+         */
+        public int getNumOfBills(final int index) {
+            return tender[index];
+        }
+    }
+    
+    /**
+     * Outcome of one policy over the stream
+     */
+    public static final class Result {
+        
+        private final ChangePolicy policy;
+        private final int numServed;
+        private final int numDeclined;
+        private final long numOfBillsHandedOut;
+        private final long elapsedNanos;
+        private final String closingDrawer;
+        
+        private Result(final ChangePolicy policy, final int numServed, final int numDeclined,
+                final long numOfBillsHandedOut, final long elapsedNanos, final String closingDrawer) {
+            this.policy = policy;
+            this.numServed = numServed;
+            this.numDeclined = numDeclined;
+            this.numOfBillsHandedOut = numOfBillsHandedOut;
+            this.elapsedNanos = elapsedNanos;
+            this.closingDrawer = closingDrawer;
+        }
+        
+        public ChangePolicy getPolicy() {
+            return policy;
+        }
+        
+        public int getNumServed() {
+            return numServed;
+        }
+        
+        public int getNumDeclined() {
+            return numDeclined;
+        }
+        
+        /**
+         * @return declined sales as a fraction of all sales
+         */
+        public double getDeclineRate() {
+            int numSales = numServed + numDeclined;
+            return numSales == 0 ? 0 : (double) numDeclined / numSales;
+        }
+        
+        /**
+         * @return mean bills handed out as change per sale served
+         */
+        public double getMeanBillsPerChange() {
+            return numServed == 0 ? 0 : (double) numOfBillsHandedOut / numServed;
+        }
+        
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        
+        /**
+         * @return the register's {@link Bank#show()} after the last sale
+         */
+        public String getClosingDrawer() {
+            return closingDrawer;
+        }
+        
+        @Override
+        public String toString() {
+            return "Result [policy=" + policy + ", served=" + numServed + ", declined=" + numDeclined + "]";
+        }
+    }
+    
+    public static void main(final String args[]) throws IOException, SimpleException {
+        int numSales = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_SALES;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        CurrencyProfile profile = CurrencyProfile.load(args.length > 2 ? args[2] : CurrencyProfile.DEFAULT.getName());
+        
+        Sale[] sales = generateSales(profile, numSales, seed);
+        int[] openingFloat = openingFloat(profile);
+        
+        ChangePolicy[] policies = { ChangePolicy.FEWEST_BILLS, ChangePolicy.PRESERVE_SMALL,
+                ChangePolicy.balanced(openingFloat) };
+        
+        System.out.printf("%,d sales, profile %s, opening float %s%n", numSales, profile.getName(),
+                new Bank(profile, openingFloat).show());
+        System.out.printf("%-16s %8s %8s %9s %13s %9s  %s%n", "policy", "served", "declined", "declined%",
+                "bills/change", "ns/sale", "closing drawer");
+        
+        for(ChangePolicy policy : policies) {
+            // once to warm up, then measured
+            simulate(profile, policy, openingFloat, sales);
+            Result result = simulate(profile, policy, openingFloat, sales);
+            
+            System.out.printf("%-16s %8d %8d %8.1f%% %13.2f %9.0f  %s%n", policy.getName().replaceAll(":.*", ""),
+                    result.getNumServed(), result.getNumDeclined(), 100 * result.getDeclineRate(),
+                    result.getMeanBillsPerChange(), (double) result.getElapsedNanos() / numSales,
+                    result.getClosingDrawer());
+        }
+    }
+    
+    /**
+     * Runs the sales in order against a register opened with the float.
+     * 
+     * @param profile
+     * @param policy
+     * @param openingFloat number of bills per denomination the register opens with, largest first
+     * @param sales
+     * @return served and declined counts
+     * @throws SimpleException
+     */
+    public static Result simulate(final CurrencyProfile profile, final ChangePolicy policy,
+            final int[] openingFloat, final Sale[] sales) throws SimpleException {
+        
+        Bank register = new Bank(profile, openingFloat);
+        register.setChangePolicy(policy);
+        
+        Bank tender = new Bank(profile);
+        int[] change = new int[profile.size()];
+        
+        int numServed = 0;
+        long numOfBillsHandedOut = 0;
+        
+        long start = System.nanoTime();
+        for(Sale sale : sales) {
+            for(int i = 0; i < profile.size(); i++) {
+                tender.setNumOfBills(i, sale.getNumOfBills(i));
+            }
+            
+            register.put(tender);
+            
+            long changeDue = tender.getTotalValue() - sale.getPrice();
+            if(changeDue >= 0 && changeDue <= Integer.MAX_VALUE
+                    && register.tryChangeAndTake((int) changeDue, change).isOk()) {
+                numServed++;
+                for(int numOfBills : change) {
+                    numOfBillsHandedOut += numOfBills;
+                }
+            } else {
+                register.take(tender);
+            }
+            
+            for(int i = 0; i < profile.size(); i++) {
+                if(register.getNumOfBills(i) > DROP_NUM_OF_BILLS) {
+                    register.setNumOfBills(i, openingFloat[i]);
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        
+        return new Result(policy, numServed, sales.length - numServed, numOfBillsHandedOut, elapsedNanos,
+                register.show());
+    }
+    
+    /**
+     * Seeded sales priced up to three of the largest denomination.  Most customers pay with as few bills of one
+     * denomination from the larger half as cover the price, the rest pay exactly.
+     * 
+     * @param profile
+     * @param numSales
+     * @param seed
+     * @return the sales
+     */
+    public static Sale[] generateSales(final CurrencyProfile profile, final int numSales, final long seed) {
+        Random random = new Random(seed);
+        int numDenominations = profile.size();
+        int maxPrice = 3 * profile.getDenomination(0);
+        
+        Sale[] sales = new Sale[numSales];
+        int[] tender = new int[numDenominations];
+        
+        for(int n = 0; n < numSales; n++) {
+            int price = 1 + random.nextInt(maxPrice);
+            
+            Arrays.fill(tender, 0);
+            if(random.nextInt(EXACT_PAYER_INTERVAL) == 0) {
+                int stillOwed = price;
+                for(int i = 0; i < numDenominations; i++) {
+                    tender[i] = stillOwed / profile.getDenomination(i);
+                    stillOwed -= tender[i] * profile.getDenomination(i);
+                }
+                if(stillOwed > 0) {
+                    // no exact payment in these denominations, round up with the smallest
+                    tender[numDenominations - 1]++;
+                }
+            } else {
+                int index = random.nextInt((numDenominations + 1) / 2);
+                tender[index] = (price - 1) / profile.getDenomination(index) + 1;
+            }
+            
+            sales[n] = new Sale(price, tender);
+        }
+        
+        return sales;
+    }
+    
+    /**
+     * @param profile
+     * @return none of the largest denomination, and doubling from 5 of the next up to
+     * {@value #MAX_FLOAT_NUM_OF_BILLS} of the smaller ones
+     */
+    public static int[] openingFloat(final CurrencyProfile profile) {
+        int[] openingFloat = new int[profile.size()];
+        for(int i = 1; i < openingFloat.length; i++) {
+            openingFloat[i] = Math.min(MAX_FLOAT_NUM_OF_BILLS, 5 << Math.min(i - 1, 4));
+        }
+        return openingFloat;
+    }
+}
@@ -0,0 +1,1076 @@
+package com.james;
+
+import java.util.Arrays;
+
+/**
+ * Bounded change-making solver.  Finds the combination of available bills that makes an exact amount with the fewest
+ * bills, or reports that no combination exists.
+ * 
+ * The search walks the denominations largest first, trying for each the most bills it could use and then a bounded
+ * number of fewer.  An exchange argument bounds how far below that maximum an optimal answer can sit: if the bills
+ * chosen from smaller denominations number at least d (the current denomination), some non-empty subset of them sums
+ * to a multiple k*d using more than k bills, so trading that subset for k bills of d would be strictly better unless
+ * fewer than k more of d are available.  Either way an optimal count lies within d of the maximum, so the work is
+ * bounded by the product of the denominations and never by the amount being changed.
+ * 
+ * Since a fewest bills answer always exists when any answer does, the search never falsely declines, within the
+ * budgets below.
+ * 
+ * The window still leaves many combinations of larger bills when there are many denominations, and they reach the
+ * same remaining amounts over and over, so the search keeps a lower bound on the bills each (denomination, amount)
+ * state needs and never searches a state again unless it could beat the best found.  A search running past
+ * {@value #UNPRUNED_NODES} nodes regardless is restarted against a table, built in words of 64 amounts, of which
+ * amounts each run of denominations from one down to the smallest can pay: a decline is then a single lookup, and the
+ * search only enters states that can be finished, so the first answer comes within a node per count tried.  The table
+ * covers amounts up to {@value #MAX_REACHABLE_UNITS} multiples of the gcd of the denominations held; a larger amount
+ * is searched without it.
+ * 
+ * A search still running {@value #MAX_FEWEST_NODES} nodes later has an answer not known to be the fewest, or no answer
+ * to an amount that may be payable, so it is settled by an exact dynamic program over the amounts the window can
+ * leave each denomination: an optimal answer leaves fewer bills below a denomination than its value, or uses all but
+ * fewer than its value of its bills, so the program covers the squares of the denominations around two paths rather
+ * than every amount.  Only when the program would spend more than {@value #MAX_EXACT_WORK} cells and steps, which
+ * takes drawers of many large and close denominations paying a large amount, does the solve keep the fewest bills the
+ * search found, possibly not the fewest, or decline an amount that may be payable.
+ * 
+ * Most currencies are canonical: greedy, taking as many of each denomination as fit largest first, always gives the
+ * fewest bills when supply is unlimited, see {@link #isCanonical(int[])}.  For those, whenever the drawer holds every
+ * bill greedy asks for, greedy is the answer and the search is skipped, so change costs one pass over the
+ * denominations however many there are.  Greedy's answer is also the one the search would return, since it is the
+ * answer using the most of the larger bills.
+ * 
+ * {@link #solveCheapest(int, int[], int[], int[], int[])} generalizes the search to a cost per bill of each
+ * denomination, which is how a {@link ChangePolicy} steers change away from bills it wants to keep.  It first solves
+ * for the fewest bills, which decides whether change can be made at all, then branches and bounds over every count
+ * looking for a cheaper answer, the bound being the amount left paid from the bills held cheapest per value first.
+ * The exchange argument above does not hold under costs, so there is no count window, and a node budget of
+ * {@value #MAX_CHEAPEST_NODES} keeps any one solve short instead: the answer is the cheapest found within it, and never
+ * costs more than the fewest bills.
+ * 
+ * @author james
+ */
+public class ChangeSolver {
+    
+    // scratch reused across solves so a solve allocates nothing once sized
+    private int[] current = new int[0];
+    private int[] best = new int[0];
+    private long[] valueAvailableFrom = new long[1];
+    
+    private int[] denominations;
+    private int[] available;
+    
+    // weighted solves only
+    private int[] costs = new int[0];
+    private int[] fewest = new int[0];
+    private int[] byRate = new int[0];
+    private int[] solveCosts;
+    
+    /**
+     * Lower bounds on the bills needed to finish a state (index, amount), stamped with the solve they were proved in.
+     * A search of a state that returns without beating the best found proves the state needs at least as many bills
+     * as that best less the bills above it, and one that beats it finds the exact fewest.  Different combinations of
+     * larger bills reach the same states over and over, so without the bounds the work grows with the product of the
+     * denominations' count windows; with them each state is searched again only when reached with fewer bills above it
+     * than any time before.  A cache: a state pushed out by a collision is only searched again.
+     */
+    private long[] boundStates = new long[MIN_BOUNDS_SIZE];
+    private int[] bounds = new int[MIN_BOUNDS_SIZE];
+    private int[] boundStamps = new int[MIN_BOUNDS_SIZE];
+    private int stamp;
+    
+    private int numNodesVisited;
+    
+    /**
+     * Solve stops searching past this many nodes
+     */
+    private int nodeBudget;
+    
+    /**
+     * Bit amount / gcd of row i set when denominations i down to the smallest can pay the amount, while a solve uses
+     * it, otherwise null.  Kept in reachableRows between solves.
+     */
+    private long[][] reachable;
+    private long[][] reachableRows = new long[0][];
+    private int reachableGcd;
+    
+    /**
+     * Constructs a solver.  A solver keeps scratch space between calls and so must not be shared between threads.
+     */
+    public ChangeSolver() {
+    }
+    
+    /**
+     * Largest canonical check run, denominations summing past this are treated as not canonical
+     */
+    private static final int MAX_CANONICAL_CHECK = 1 << 22;
+    
+    /**
+     * Nodes, each count bounded being one, a weighted solve spends looking for an answer cheaper than the fewest bills
+     * before settling for the cheapest found so far.  Sales simulated with larger budgets declined no fewer.
+     */
+    public static final int MAX_CHEAPEST_NODES = 1 << 8;
+    
+    /**
+     * Bound table size a solver starts with, enough for the searches of a few denominations
+     */
+    private static final int MIN_BOUNDS_SIZE = 1 << 10;
+    
+    /**
+     * Nodes a fewest bills search visits before it is restarted against the table of payable amounts.  Typical
+     * drawers of every built in profile settle well within it.
+     */
+    static final int UNPRUNED_NODES = 1 << 12;
+    
+    /**
+     * Nodes a fewest bills search visits against the table of payable amounts before the exact program settles it
+     */
+    static final int MAX_FEWEST_NODES = 1 << 16;
+    
+    /**
+     * Largest amount, in multiples of the gcd of the denominations held, the table of payable amounts covers: 128 KB a
+     * denomination, allocated only once a search has needed it
+     */
+    static final int MAX_REACHABLE_UNITS = 1 << 20;
+    
+    /**
+     * Work, in table cells and window steps, the exact dynamic program run when both searches ran out of nodes may
+     * spend.  Its table, at most 16 MB, is allocated for the solve and dropped after, since few solves need it.
+     */
+    static final int MAX_EXACT_WORK = 1 << 22;
+    
+    /**
+     * Returned by {@link #solveExact(int, int)} when the program would spend more than {@value #MAX_EXACT_WORK}
+     */
+    private static final int NOT_SOLVED = -2;
+    
+    /**
+     * Largest bound table, 4 MB.  A search visiting more nodes than a few times the table doubles it, so only
+     * solvers that have had to search large drawers of many denominations hold a large one.
+     */
+    private static final int MAX_BOUNDS_SIZE = 1 << 18;
+    
+    /**
+     * Slots probed to find or record a bound before replacing the first of them
+     */
+    private static final int MAX_BOUND_PROBES = 4;
+    
+    /**
+     * @return search nodes visited by the last solve, a measure of its work, 0 if greedy answered it
+     */
+    public int getNumNodesVisited() {
+        return numNodesVisited;
+    }
+    
+    /**
+     * Solves for the fewest bills making the exact amount using a throwaway solver.  Prefer reusing a 
+     * {@link ChangeSolver} instance with {@link #solveFewest(int, int[], int[], int[])} on hot paths.
+     * 
+     * @param amount to make, 0 or greater
+     * @param denominations bill values ordered largest first
+     * @param available number of bills available per denomination, same order as denominations
+     * @param out receives the number of bills used per denomination, same order as denominations.  Untouched when no
+     * combination exists.
+     * @return number of bills used, or -1 if the amount cannot be made from the available bills
+     */
+    public static int solve(final int amount, final int[] denominations, final int[] available, final int[] out) {
+        return new ChangeSolver().solveFewest(amount, denominations, available, out);
+    }
+    
+    /**
+     * Solves for the fewest bills making the exact amount.
+     * 
+     * @param amount to make, 0 or greater
+     * @param denominations bill values ordered largest first
+     * @param available number of bills available per denomination, same order as denominations
+     * @param out receives the number of bills used per denomination, same order as denominations.  Untouched when no
+     * combination exists.  May be the same array as available.
+     * @return number of bills used, or -1 if the amount cannot be made from the available bills
+     */
+    public int solveFewest(final int amount, final int[] denominations, final int[] available, final int[] out) {
+        return solveFewest(amount, denominations, false, available, out);
+    }
+    
+    /**
+     * Same as {@link #solveFewest(int, int[], int[], int[])}, answering by greedy alone when the denominations are
+     * canonical and the bills greedy asks for are available.
+     * 
+     * @param amount to make, 0 or greater
+     * @param denominations bill values ordered largest first
+     * @param isCanonical true only if {@link #isCanonical(int[])} holds for the denominations
+     * @param available number of bills available per denomination, same order as denominations
+     * @param out receives the number of bills used per denomination, same order as denominations.  Untouched when no
+     * combination exists.  May be the same array as available.
+     * @return number of bills used, or -1 if the amount cannot be made from the available bills
+     */
+    public int solveFewest(final int amount, final int[] denominations, final boolean isCanonical, 
+            final int[] available, final int[] out) {
+        
+        numNodesVisited = 0;
+        nextStamp();
+        
+        int numDenominations = denominations.length;
+        if(current.length < numDenominations) {
+            current = new int[numDenominations];
+            best = new int[numDenominations];
+            valueAvailableFrom = new long[numDenominations + 1];
+        }
+        
+        if(isCanonical) {
+            int numOfBills = solveGreedy(amount, denominations, available);
+            if(numOfBills >= 0) {
+                System.arraycopy(best, 0, out, 0, numDenominations);
+                return numOfBills;
+            }
+        }
+        
+        // value still available from each denomination down, lets the search drop amounts that are out of reach
+        valueAvailableFrom[numDenominations] = 0;
+        for(int i = numDenominations - 1; i >= 0; i--) {
+            valueAvailableFrom[i] = valueAvailableFrom[i + 1] + (long) available[i] * denominations[i];
+        }
+        
+        int gcd = gcdAvailable(denominations, available);
+        if(amount > valueAvailableFrom[0] || gcd > 1 && amount % gcd != 0) {
+            return -1;
+        }
+        
+        this.denominations = denominations;
+        this.available = available;
+        
+        int bestNumOfBills;
+        try {
+            nodeBudget = UNPRUNED_NODES;
+            bestNumOfBills = search(0, amount, 0, Integer.MAX_VALUE);
+            
+            if(numNodesVisited > nodeBudget) {
+                // the first search's bounds still hold, none were recorded once its budget ran out
+                nodeBudget = numNodesVisited + MAX_FEWEST_NODES;
+                
+                if(gcd > 0 && amount / gcd <= MAX_REACHABLE_UNITS) {
+                    buildReachable(amount, gcd);
+                    if(!isReachable(0, amount)) {
+                        return -1;
+                    }
+                }
+                
+                // keeps the answer already found unless it finds fewer bills
+                bestNumOfBills = search(0, amount, 0, bestNumOfBills);
+                
+                if(numNodesVisited > nodeBudget) {
+                    // cut short, so what it found is not known to be the fewest, nor a decline to be one
+                    int exactNumOfBills = solveExact(amount, gcd);
+                    if(exactNumOfBills != NOT_SOLVED) {
+                        bestNumOfBills = exactNumOfBills < 0 ? Integer.MAX_VALUE : exactNumOfBills;
+                    }
+                }
+            }
+        } finally {
+            this.denominations = null;
+            this.available = null;
+            this.reachable = null;
+        }
+        
+        if(bestNumOfBills == Integer.MAX_VALUE) {
+            return -1;
+        }
+        
+        System.arraycopy(best, 0, out, 0, numDenominations);
+        return bestNumOfBills;
+    }
+    
+    /**
+     * Solves for the bills making the exact amount at the least total cost, each bill of denominations[i] costing
+     * costs[i].  Ties keep the fewest bills answer.
+     * 
+     * @param amount to make, 0 or greater
+     * @param denominations bill values ordered largest first
+     * @param costs positive cost per bill, same order as denominations
+     * @param available number of bills available per denomination, same order as denominations
+     * @param out receives the number of bills used per denomination, same order as denominations.  Untouched when no
+     * combination exists.  May be the same array as available.
+     * @return number of bills used, or -1 if the amount cannot be made from the available bills
+     */
+    public int solveCheapest(final int amount, final int[] denominations, final int[] costs, final int[] available, 
+            final int[] out) {
+        return solveCheapest(amount, denominations, false, costs, available, out);
+    }
+    
+    /**
+     * Same as {@link #solveCheapest(int, int[], int[], int[], int[])}, starting from greedy's answer when the
+     * denominations are canonical and the bills greedy asks for are available.
+     * 
+     * @param amount to make, 0 or greater
+     * @param denominations bill values ordered largest first
+     * @param isCanonical true only if {@link #isCanonical(int[])} holds for the denominations
+     * @param costs positive cost per bill, same order as denominations
+     * @param available number of bills available per denomination, same order as denominations
+     * @param out receives the number of bills used per denomination, same order as denominations.  Untouched when no
+     * combination exists.  May be the same array as available.
+     * @return number of bills used, or -1 if the amount cannot be made from the available bills
+     */
+    public int solveCheapest(final int amount, final int[] denominations, final boolean isCanonical, 
+            final int[] costs, final int[] available, final int[] out) {
+        
+        int numDenominations = denominations.length;
+        if(fewest.length < numDenominations) {
+            fewest = new int[numDenominations];
+            byRate = new int[numDenominations];
+        }
+        
+        // the fewest bills answer settles whether there is one at all and is the bound to beat
+        int fewestNumOfBills = solveFewest(amount, denominations, isCanonical, available, fewest);
+        if(fewestNumOfBills < 0) {
+            return -1;
+        }
+        int numNodesForFewest = numNodesVisited;
+        
+        long fewestCost = 0;
+        for(int i = 0; i < numDenominations; i++) {
+            fewestCost += (long) fewest[i] * costs[i];
+        }
+        
+        // greedy answers skip the value table, the search below needs it
+        valueAvailableFrom[numDenominations] = 0;
+        for(int i = numDenominations - 1; i >= 0; i--) {
+            valueAvailableFrom[i] = valueAvailableFrom[i + 1] + (long) available[i] * denominations[i];
+        }
+        
+        // denominations by cost per unit of value, cheapest first and ties to larger, for the lower bound
+        for(int i = 0; i < numDenominations; i++) {
+            int at = i;
+            while(at > 0 && (long) costs[i] * denominations[byRate[at - 1]] 
+                    < (long) costs[byRate[at - 1]] * denominations[i]) {
+                byRate[at] = byRate[at - 1];
+                at--;
+            }
+            byRate[at] = i;
+        }
+        
+        this.denominations = denominations;
+        this.available = available;
+        this.solveCosts = costs;
+        
+        numNodesVisited = 0;
+        long bestCost;
+        try {
+            bestCost = searchCheapest(0, amount, 0, fewestCost);
+        } finally {
+            this.denominations = null;
+            this.available = null;
+            this.solveCosts = null;
+            numNodesVisited += numNodesForFewest;
+        }
+        
+        int[] answer = bestCost < fewestCost ? best : fewest;
+        int numOfBills = 0;
+        for(int i = 0; i < numDenominations; i++) {
+            numOfBills += answer[i];
+        }
+        
+        System.arraycopy(answer, 0, out, 0, numDenominations);
+        return numOfBills;
+    }
+    
+    /**
+     * @param numDenominations
+     * @return scratch for a {@link ChangePolicy} to write costs per bill into, reused across solves
+     */
+    int[] costs(final int numDenominations) {
+        if(costs.length < numDenominations) {
+            costs = new int[numDenominations];
+        }
+        return costs;
+    }
+    
+    /**
+     * Checks whether greedy change making, largest denomination first, gives the fewest bills for every amount when
+     * supply is unlimited.  Kozen and Zaks showed the smallest amount where greedy loses, if any, is below the sum of
+     * the two largest denominations, so those amounts are checked against a dynamic program.  Costs time and memory
+     * proportional to that sum times the number of denominations, run it once per denomination set.
+     * 
+     * @param denominations bill values ordered largest first
+     * @return true if canonical; false if not, if there is no 1 to make every amount, or if the check would be too large
+     */
+    public static boolean isCanonical(final int[] denominations) {
+        int numDenominations = denominations.length;
+        if(numDenominations == 0 || denominations[numDenominations - 1] != 1) {
+            return false;
+        }
+        if(numDenominations <= 2) {
+            return true;
+        }
+        
+        long limit = (long) denominations[0] + denominations[1];
+        if(limit > MAX_CANONICAL_CHECK) {
+            return false;
+        }
+        
+        int[] fewest = new int[(int) limit];
+        int[] greedy = new int[(int) limit];
+        int largestThatFits = numDenominations - 1;
+        
+        for(int amount = 1; amount < limit; amount++) {
+            while(largestThatFits > 0 && denominations[largestThatFits - 1] <= amount) {
+                largestThatFits--;
+            }
+            
+            greedy[amount] = greedy[amount - denominations[largestThatFits]] + 1;
+            
+            int fewestForAmount = Integer.MAX_VALUE;
+            for(int i = largestThatFits; i < numDenominations; i++) {
+                fewestForAmount = Math.min(fewestForAmount, fewest[amount - denominations[i]] + 1);
+            }
+            fewest[amount] = fewestForAmount;
+            
+            if(greedy[amount] != fewestForAmount) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    
+    
+    /**
+     * Every amount the drawer can pay is a multiple of the gcd of the denominations it holds, and amounts that are not
+     * would otherwise cost a whole search to decline.
+     * 
+     * @return gcd of the denominations with bills available, 0 if none, so a drawer of bills has 1 or more
+     */
+    private static int gcdAvailable(final int[] denominations, final int[] available) {
+        int gcd = 0;
+        for(int i = 0; i < denominations.length && gcd != 1; i++) {
+            if(available[i] > 0) {
+                int a = denominations[i];
+                int b = gcd;
+                while(b != 0) {
+                    int r = a % b;
+                    a = b;
+                    b = r;
+                }
+                gcd = a;
+            }
+        }
+        return gcd;
+    }
+    
+    /**
+     * Greedy into best, as many of each denomination as fit, largest first.
+     * 
+     * @return number of bills, or -1 if greedy asks for more of a denomination than is available
+     */
+    private int solveGreedy(final int amount, final int[] denominations, final int[] available) {
+        int amountStillNeeded = amount;
+        int numOfBills = 0;
+        
+        for(int i = 0; i < denominations.length; i++) {
+            int numOfDenomination = amountStillNeeded / denominations[i];
+            if(numOfDenomination > available[i]) {
+                return -1;
+            }
+            
+            best[i] = numOfDenomination;
+            numOfBills += numOfDenomination;
+            amountStillNeeded -= numOfDenomination * denominations[i];
+        }
+        
+        return amountStillNeeded == 0 ? numOfBills : -1;
+    }
+    
+    /**
+     * Depth first search over denomination counts, largest denomination and largest count first.  Ties keep the first
+     * found answer which favors larger bills.
+     * 
+     * @return fewest bills found so far, Integer.MAX_VALUE if none
+     */
+    private int search(final int fromIndex, final int amountStillNeeded, final int numOfBillsSoFar, 
+            final int bestNumOfBills) {
+        
+        numNodesVisited++;
+        
+        int numDenominations = denominations.length;
+        
+        // denominations above the amount cannot be used, and skipping them tightens the bound below
+        int index = fromIndex;
+        while(index < numDenominations && denominations[index] > amountStillNeeded) {
+            current[index++] = 0;
+        }
+        
+        if(amountStillNeeded == 0) {
+            if(numOfBillsSoFar < bestNumOfBills) {
+                System.arraycopy(current, 0, best, 0, index);
+                for(int i = index; i < numDenominations; i++) {
+                    best[i] = 0;
+                }
+                return numOfBillsSoFar;
+            }
+            return bestNumOfBills;
+        }
+        
+        if(index == numDenominations || amountStillNeeded > valueAvailableFrom[index]) {
+            return bestNumOfBills;
+        }
+        
+        if(numNodesVisited > nodeBudget || reachable != null && !isReachable(index, amountStillNeeded)) {
+            return bestNumOfBills;
+        }
+        
+        long state = (long) index << 32 | amountStillNeeded;
+        if((long) numOfBillsSoFar + lowerBound(state) >= bestNumOfBills) {
+            return bestNumOfBills;
+        }
+        
+        int denomination = denominations[index];
+        
+        // even using only this denomination, cannot beat the best found
+        int minBillsStillNeeded = (amountStillNeeded - 1) / denomination + 1;
+        if(numOfBillsSoFar + minBillsStillNeeded >= bestNumOfBills) {
+            return bestNumOfBills;
+        }
+        
+        int maxNumOfBills = Math.min(available[index], amountStillNeeded / denomination);
+        int minNumOfBills = Math.max(0, maxNumOfBills - denomination);
+        
+        // smaller denominations can cover at most what they hold
+        long valueAvailableBelow = valueAvailableFrom[index + 1];
+        if(amountStillNeeded - (long) minNumOfBills * denomination > valueAvailableBelow) {
+            minNumOfBills = (int) ((amountStillNeeded - valueAvailableBelow + denomination - 1) / denomination);
+        }
+        
+        if(index == numDenominations - 1) {
+            // last denomination must finish the amount exactly
+            minNumOfBills = maxNumOfBills;
+        }
+        
+        // fewer of this denomination never needs fewer bills below, so once the next denomination alone cannot beat
+        // the best found no smaller count can either
+        int nextDenomination = index + 1 < numDenominations ? denominations[index + 1] : 1;
+        
+        int bestSoFar = bestNumOfBills;
+        for(int numOfBills = maxNumOfBills; numOfBills >= minNumOfBills; numOfBills--) {
+            int amountBelow = amountStillNeeded - numOfBills * denomination;
+            if(amountBelow > 0 
+                    && numOfBillsSoFar + numOfBills + (amountBelow - 1) / nextDenomination + 1 >= bestSoFar) {
+                break;
+            }
+            
+            if(numNodesVisited > nodeBudget) {
+                break;
+            }
+            
+            current[index] = numOfBills;
+            bestSoFar = search(index + 1, amountBelow, numOfBillsSoFar + numOfBills, bestSoFar);
+        }
+        
+        // exact when beaten, otherwise at least what beating it would take, infinite when nothing finishes the state;
+        // nothing is proved once the budget cut the search short
+        if(numNodesVisited <= nodeBudget) {
+            recordBound(state, (int) Math.min(Integer.MAX_VALUE, (long) bestSoFar - numOfBillsSoFar));
+        }
+        
+        return bestSoFar;
+    }
+    
+    /**
+     * Same walk as {@link #search(int, int, int, int)} minimizing cost instead of bills, bounded below by the
+     * cheapest value per cost still reachable.  Stops once the node budget is spent.
+     * 
+     * @return least cost found so far, bestCost if none beats it
+     */
+    private long searchCheapest(final int fromIndex, final int amountStillNeeded, final long costSoFar, 
+            final long bestCost) {
+        
+        numNodesVisited++;
+        
+        int numDenominations = denominations.length;
+        
+        int index = fromIndex;
+        while(index < numDenominations && denominations[index] > amountStillNeeded) {
+            current[index++] = 0;
+        }
+        
+        if(amountStillNeeded == 0) {
+            if(costSoFar < bestCost) {
+                System.arraycopy(current, 0, best, 0, index);
+                for(int i = index; i < numDenominations; i++) {
+                    best[i] = 0;
+                }
+                return costSoFar;
+            }
+            return bestCost;
+        }
+        
+        if(index == numDenominations || amountStillNeeded > valueAvailableFrom[index]) {
+            return bestCost;
+        }
+        
+        if(numNodesVisited > MAX_CHEAPEST_NODES) {
+            return bestCost;
+        }
+        
+        if(costSoFar + minCost(amountStillNeeded, index) >= bestCost) {
+            return bestCost;
+        }
+        
+        int denomination = denominations[index];
+        int cost = solveCosts[index];
+        
+        // no count window here: trading a bill for smaller ones can be cheaper under costs, so every count the 
+        // bills below can make up is a candidate and the bound does the pruning
+        int maxNumOfBills = Math.min(available[index], amountStillNeeded / denomination);
+        int minNumOfBills = 0;
+        
+        long valueAvailableBelow = valueAvailableFrom[index + 1];
+        if(amountStillNeeded > valueAvailableBelow) {
+            minNumOfBills = (int) ((amountStillNeeded - valueAvailableBelow + denomination - 1) / denomination);
+        }
+        
+        if(index == numDenominations - 1) {
+            minNumOfBills = maxNumOfBills;
+        }
+        
+        long bestSoFar = bestCost;
+        for(int numOfBills = maxNumOfBills; numOfBills >= minNumOfBills; numOfBills--) {
+            int amountBelow = amountStillNeeded - numOfBills * denomination;
+            long costWithThese = costSoFar + (long) numOfBills * cost;
+            
+            // every count bounded is work, so it counts against the budget as a node
+            if(++numNodesVisited > MAX_CHEAPEST_NODES) {
+                break;
+            }
+            
+            // not monotone in the count, fewer of these can open cheaper denominations below
+            if(costWithThese + minCost(amountBelow, index + 1) >= bestSoFar) {
+                continue;
+            }
+            
+            current[index] = numOfBills;
+            bestSoFar = searchCheapest(index + 1, amountBelow, costWithThese, bestSoFar);
+        }
+        
+        return bestSoFar;
+    }
+    
+    /**
+     * Exact fewest bills by dynamic program, into best.  Row j of the table holds the fewest bills denominations j and
+     * below need for each amount left when they are reached, over only the amounts an optimal answer can leave them,
+     * see {@link #rangesLeft(long[], long, long, long, long)}, so the table is bounded by the denominations rather
+     * than the amount.  Each row is filled from the one below by a sliding minimum over the count window, one amount
+     * left modulo the denomination at a time.  Ties keep the answer using the most of the larger bills, the one the
+     * search would return.
+     * 
+     * @param gcd of the denominations held
+     * @return number of bills, -1 if the amount cannot be made, {@link #NOT_SOLVED} if the program would spend more
+     * than {@value #MAX_EXACT_WORK}
+     */
+    private int solveExact(final int amount, final int gcd) {
+        int numDenominations = denominations.length;
+        
+        // denominations with bills that fit, largest first, and values in multiples of the gcd
+        int numRows = 0;
+        int[] indexes = new int[numDenominations];
+        long[] units = new long[numDenominations];
+        for(int i = 0; i < numDenominations; i++) {
+            if(available[i] > 0 && denominations[i] <= amount) {
+                indexes[numRows] = i;
+                units[numRows++] = denominations[i] / gcd;
+            }
+        }
+        
+        long[] valueBelow = new long[numRows + 1];
+        for(int j = numRows - 1; j >= 0; j--) {
+            valueBelow[j] = valueBelow[j + 1] + available[indexes[j]] * units[j];
+        }
+        
+        // amounts each row can be reached with, as sorted disjoint ranges lo, hi
+        long[][] ranges = new long[numRows + 1][];
+        ranges[0] = new long[] { amount / gcd, amount / gcd };
+        long work = 0;
+        for(int j = 0; j < numRows; j++) {
+            ranges[j + 1] = rangesLeft(ranges[j], units[j], available[indexes[j]], j + 1 < numRows ? units[j + 1] : 0,
+                    valueBelow[j + 1]);
+            work += rowWork(ranges[j], units[j], available[indexes[j]]);
+            if(work > MAX_EXACT_WORK) {
+                return NOT_SOLVED;
+            }
+        }
+        numNodesVisited += (int) work;
+        
+        // only nothing is paid from no denominations
+        int[][] fewestLeft = new int[numRows + 1][];
+        fewestLeft[numRows] = new int[numCells(ranges[numRows])];
+        Arrays.fill(fewestLeft[numRows], Integer.MAX_VALUE);
+        if(ranges[numRows].length > 0 && ranges[numRows][0] == 0) {
+            fewestLeft[numRows][0] = 0;
+        }
+        
+        for(int j = numRows - 1; j >= 0; j--) {
+            fewestLeft[j] = fillRow(ranges[j], units[j], available[indexes[j]], ranges[j + 1], fewestLeft[j + 1]);
+        }
+        
+        int numOfBills = fewestLeft[0][0];
+        if(numOfBills == Integer.MAX_VALUE) {
+            return -1;
+        }
+        
+        // the largest count of each denomination that still leaves the fewest bills below
+        Arrays.fill(best, 0, numDenominations, 0);
+        long left = amount / gcd;
+        for(int j = 0; j < numRows; j++) {
+            long unit = units[j];
+            int fewestHere = valueAt(ranges[j], fewestLeft[j], left);
+            long maxCount = Math.min(available[indexes[j]], left / unit);
+            for(long count = maxCount; count >= Math.max(0, maxCount - unit); count--) {
+                int fewestBelow = valueAt(ranges[j + 1], fewestLeft[j + 1], left - count * unit);
+                if(fewestBelow != Integer.MAX_VALUE && count + fewestBelow == fewestHere) {
+                    best[indexes[j]] = (int) count;
+                    left -= count * unit;
+                    break;
+                }
+            }
+        }
+        
+        return numOfBills;
+    }
+    
+    /**
+     * Amounts the row below can be reached with from an optimal answer.  By the exchange argument of
+     * {@link ChangeSolver}, an optimal answer leaves fewer bills below than the unit, so at most the unit less one of
+     * the next unit, or leaves fewer than the unit less one of this denomination's bills unused.
+     * 
+     * @param ranges amounts the row can be reached with
+     * @param unit the row's denomination
+     * @param numAvailable bills held of it
+     * @param nextUnit the next row's denomination, 0 if none
+     * @param maxLeft value held below it
+     * @return sorted disjoint ranges
+     */
+    private static long[] rangesLeft(final long[] ranges, final long unit, final long numAvailable,
+            final long nextUnit, final long maxLeft) {
+        
+        long[] left = new long[2 * ranges.length];
+        int numLeft = 0;
+        
+        long nearlyAll = Math.max(0, numAvailable - unit + 2);
+        for(int at = 0; at < ranges.length; at += 2) {
+            long lo = Math.max(0, ranges[at] - numAvailable * unit);
+            long hi = ranges[at + 1];
+            
+            left[numLeft++] = lo;
+            left[numLeft++] = Math.min(hi, (unit - 1) * nextUnit);
+            
+            if(hi >= nearlyAll * unit) {
+                left[numLeft++] = lo;
+                left[numLeft++] = hi - nearlyAll * unit;
+            }
+        }
+        
+        // drop what the bills below cannot pay, then sort and merge
+        int numMerged = 0;
+        for(int at = 0; at < numLeft; at += 2) {
+            long lo = left[at];
+            long hi = Math.min(left[at + 1], maxLeft);
+            if(lo > hi) {
+                continue;
+            }
+            
+            int to = numMerged;
+            while(to > 0 && left[to - 2] > lo) {
+                left[to] = left[to - 2];
+                left[to + 1] = left[to - 1];
+                to -= 2;
+            }
+            left[to] = lo;
+            left[to + 1] = hi;
+            numMerged += 2;
+        }
+        
+        int numRanges = 0;
+        for(int at = 0; at < numMerged; at += 2) {
+            if(numRanges > 0 && left[at] <= left[numRanges - 1] + 1) {
+                left[numRanges - 1] = Math.max(left[numRanges - 1], left[at + 1]);
+            } else {
+                left[numRanges++] = left[at];
+                left[numRanges++] = left[at + 1];
+            }
+        }
+        
+        return Arrays.copyOf(left, numRanges);
+    }
+    
+    /**
+     * Fills a row of the exact program from the row below.  For an amount left of q units plus a remainder, with m
+     * the most bills that fit, each count q - t in the window needs t units of the remainder's class below, and t runs
+     * from q - m to min(q, q - m + unit), both rising with q, so a monotone queue of t by fewest bills below less t
+     * gives each cell in constant time.
+     * 
+     * @return fewest bills per amount in the ranges, Integer.MAX_VALUE where none pays it
+     */
+    private static int[] fillRow(final long[] ranges, final long unit, final long numAvailable, 
+            final long[] rangesBelow, final int[] fewestBelow) {
+        
+        int[] row = new int[numCells(ranges)];
+        if(row.length == 0) {
+            return row;
+        }
+        
+        // a window holds at most unit + 1 counts, and no more than the amounts
+        int queueSize = Integer.highestOneBit((int) Math.min(unit + 1, ranges[ranges.length - 1] / unit + 1)) << 1;
+        int queueMask = queueSize - 1;
+        long[] queueT = new long[queueSize];
+        long[] queueValue = new long[queueSize];
+        
+        int cell = 0;
+        for(int at = 0; at < ranges.length; at += 2) {
+            long lo = ranges[at];
+            long hi = ranges[at + 1];
+            
+            for(long start = lo; start <= hi && start < lo + unit; start++) {
+                long remainder = start % unit;
+                int head = 0;
+                int tail = 0;
+                long nextT = -1;
+                
+                // the range of the row below that t lies in, and its first cell, only ever moving up
+                int belowAt = 0;
+                int belowCell = 0;
+                
+                int index = (int) (cell + start - lo);
+                for(long q = start / unit; q * unit + remainder <= hi; q++, index += unit) {
+                    long m = Math.min(numAvailable, q);
+                    long fromT = q - m;
+                    long toT = Math.min(q, fromT + unit);
+                    
+                    while(tail > head && queueT[head & queueMask] < fromT) {
+                        head++;
+                    }
+                    if(nextT < fromT) {
+                        nextT = fromT;
+                    }
+                    for(; nextT <= toT; nextT++) {
+                        long amountBelow = nextT * unit + remainder;
+                        while(belowAt < rangesBelow.length && amountBelow > rangesBelow[belowAt + 1]) {
+                            belowCell += (int) (rangesBelow[belowAt + 1] - rangesBelow[belowAt] + 1);
+                            belowAt += 2;
+                        }
+                        if(belowAt == rangesBelow.length || amountBelow < rangesBelow[belowAt]) {
+                            continue;
+                        }
+                        int below = fewestBelow[(int) (belowCell + amountBelow - rangesBelow[belowAt])];
+                        if(below == Integer.MAX_VALUE) {
+                            continue;
+                        }
+                        
+                        long value = below - nextT;
+                        while(tail > head && queueValue[(tail - 1) & queueMask] >= value) {
+                            tail--;
+                        }
+                        queueT[tail & queueMask] = nextT;
+                        queueValue[tail & queueMask] = value;
+                        tail++;
+                    }
+                    
+                    row[index] = tail > head ? (int) (q + queueValue[head & queueMask]) : Integer.MAX_VALUE;
+                }
+            }
+            cell += (int) (hi - lo + 1);
+        }
+        
+        return row;
+    }
+    
+    /**
+     * @return cells plus queue steps {@link #fillRow(long[], long, long, long[], int[])} spends on the ranges: each
+     * residue of the unit steps t from its first window to its last
+     */
+    private static long rowWork(final long[] ranges, final long unit, final long numAvailable) {
+        long work = 0;
+        for(int at = 0; at < ranges.length; at += 2) {
+            long length = ranges[at + 1] - ranges[at] + 1;
+            long firstT = Math.max(0, ranges[at] / unit - numAvailable);
+            long lastQ = ranges[at + 1] / unit;
+            long lastT = Math.min(lastQ, Math.max(0, lastQ - numAvailable) + unit);
+            work += length + Math.min(length, unit) * (lastT - firstT + 1);
+        }
+        return work;
+    }
+    
+    private static int numCells(final long[] ranges) {
+        long numCells = 0;
+        for(int at = 0; at < ranges.length; at += 2) {
+            numCells += ranges[at + 1] - ranges[at] + 1;
+        }
+        return (int) numCells;
+    }
+    
+    /**
+     * @return the row's value for the amount, Integer.MAX_VALUE if the amount is not in its ranges
+     */
+    private static int valueAt(final long[] ranges, final int[] row, final long amount) {
+        int cell = 0;
+        for(int at = 0; at < ranges.length; at += 2) {
+            if(amount < ranges[at]) {
+                return Integer.MAX_VALUE;
+            }
+            if(amount <= ranges[at + 1]) {
+                return row[(int) (cell + amount - ranges[at])];
+            }
+            cell += (int) (ranges[at + 1] - ranges[at] + 1);
+        }
+        return Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Builds the table of payable amounts up to the amount for the solve's denominations and bills, smallest
+     * denomination first, each row the one below with up to the bills held added in bundles of 1, 2, 4 and so on.
+     */
+    private void buildReachable(final int amount, final int gcd) {
+        int numDenominations = denominations.length;
+        int units = amount / gcd;
+        int numWords = (units >>> 6) + 1;
+        
+        if(reachableRows.length < numDenominations + 1 || reachableRows[0].length < numWords) {
+            reachableRows = new long[numDenominations + 1][Math.max(numWords,
+                    reachableRows.length == 0 ? 0 : reachableRows[0].length)];
+        }
+        
+        // only 0 is payable from no denominations
+        long[] below = reachableRows[numDenominations];
+        Arrays.fill(below, 0, numWords, 0L);
+        below[0] = 1L;
+        
+        for(int i = numDenominations - 1; i >= 0; i--) {
+            long[] row = reachableRows[i];
+            System.arraycopy(below, 0, row, 0, numWords);
+            
+            int step = denominations[i] / gcd;
+            int numLeft = available[i] > 0 ? Math.min(available[i], units / step) : 0;
+            for(int bundle = 1; numLeft > 0; bundle <<= 1) {
+                int numInBundle = Math.min(bundle, numLeft);
+                shiftOr(row, numInBundle * step, numWords);
+                numLeft -= numInBundle;
+            }
+            below = row;
+        }
+        
+        reachable = reachableRows;
+        reachableGcd = gcd;
+    }
+    
+    /**
+     * @return true if denominations from the index down can pay the amount, a multiple of the gcd up to the amount
+     * the table was built for
+     */
+    private boolean isReachable(final int index, final int amount) {
+        int unit = amount / reachableGcd;
+        return (reachable[index][unit >>> 6] & 1L << unit) != 0;
+    }
+    
+    /**
+     * bits |= bits << shift over the first numWords words, from the top word down so each is read before written
+     */
+    private static void shiftOr(final long[] bits, final int shift, final int numWords) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        
+        for(int word = numWords - 1; word >= wordShift; word--) {
+            int from = word - wordShift;
+            long shifted = bits[from] << bitShift;
+            if(bitShift != 0 && from > 0) {
+                shifted |= bits[from - 1] >>> (64 - bitShift);
+            }
+            bits[word] |= shifted;
+        }
+    }
+    
+    /**
+     * Starts a new solve's bounds, forgetting the last solve's without clearing them.
+     */
+    private void nextStamp() {
+        if(++stamp == 0) {
+            Arrays.fill(boundStamps, 0);
+            stamp = 1;
+        }
+    }
+    
+    /**
+     * @return fewest bills the state was proved to need, 0 if unknown
+     */
+    private int lowerBound(final long state) {
+        int slot = slotOf(state, boundStates.length);
+        for(int probe = 0; probe < MAX_BOUND_PROBES; probe++) {
+            int at = (slot + probe) & (boundStates.length - 1);
+            if(boundStamps[at] != stamp) {
+                return 0;
+            }
+            if(boundStates[at] == state) {
+                return bounds[at];
+            }
+        }
+        return 0;
+    }
+    
+    private void recordBound(final long state, final int bound) {
+        if(numNodesVisited > 4 * boundStates.length && boundStates.length < MAX_BOUNDS_SIZE) {
+            // a large search, grow the table, dropping what it held since bounds are only a cache
+            int size = boundStates.length << 1;
+            boundStates = new long[size];
+            bounds = new int[size];
+            boundStamps = new int[size];
+        }
+        
+        int slot = slotOf(state, boundStates.length);
+        int at = slot;
+        for(int probe = 0; probe < MAX_BOUND_PROBES; probe++) {
+            int next = (slot + probe) & (boundStates.length - 1);
+            if(boundStamps[next] != stamp) {
+                at = next;
+                break;
+            }
+            if(boundStates[next] == state) {
+                bounds[next] = Math.max(bounds[next], bound);
+                return;
+            }
+        }
+        
+        boundStamps[at] = stamp;
+        boundStates[at] = state;
+        bounds[at] = bound;
+    }
+    
+    private static int slotOf(final long state, final int size) {
+        long mixed = state * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> (64 - Integer.numberOfTrailingZeros(size)));
+    }
+    
+    /**
+     * Lower bound on the cost of making the amount from the denominations at index and below: the bills held, cheapest
+     * per value first, with a fraction of the last bill needed.
+     * 
+     * @return the bound, or Long.MAX_VALUE / 2 if the bills held cannot cover the amount
+     */
+    private long minCost(final int amount, final int index) {
+        if(amount == 0) {
+            return 0;
+        }
+        
+        long amountStillNeeded = amount;
+        long cost = 0;
+        for(int i : byRate) {
+            // denominations above the amount cannot be used
+            if(i < index || denominations[i] > amount) {
+                continue;
+            }
+            
+            long value = (long) available[i] * denominations[i];
+            if(value >= amountStillNeeded) {
+                return cost + (amountStillNeeded * solveCosts[i] + denominations[i] - 1) / denominations[i];
+            }
+            cost += (long) available[i] * solveCosts[i];
+            amountStillNeeded -= value;
+        }
+        
+        return Long.MAX_VALUE / 2;
+    }
+}
@@ -0,0 +1,228 @@
+package com.james;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered, byte level tokenizer for the {@link Main.VALID_CMDS} command language.  Tokens are separated by ASCII
+ * whitespace.  Commands and numbers are parsed straight from the bytes, with no String, Scanner or regex in between,
+ * so replaying a recorded stream of till operations is bound by the register rather than by parsing.
+ * 
+ * A reader either pulls from an input stream, or is pointed at one region of bytes at a time with
+ * {@link #reset(byte[], int, int)}, where the end of the region is the end of input.
+ * 
+ * Not thread safe; one reader per input stream.
+ * 
+ * @author james
+ */
+public class CommandReader {
+    
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    
+    private static final Main.VALID_CMDS[] COMMANDS = Main.VALID_CMDS.values();
+    private static final byte[][] COMMAND_BYTES = new byte[COMMANDS.length][];
+    static {
+        for(Main.VALID_CMDS command : COMMANDS) {
+            String name = command.name();
+            byte[] bytes = new byte[name.length()];
+            for(int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) name.charAt(i);
+            }
+            COMMAND_BYTES[command.ordinal()] = bytes;
+        }
+    }
+    
+    private final InputStream in;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    
+    /**
+     * Constructs a reader over the stream with the default buffer size.
+     * 
+     * @param in
+     */
+    public CommandReader(final InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Constructs a reader over the stream.
+     * 
+     * @param in
+     * @param bufferSize
+     */
+    public CommandReader(final InputStream in, final int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+    
+    /**
+     * Constructs a reader with no stream, to be pointed at regions of bytes with {@link #reset(byte[], int, int)}.
+     */
+    public CommandReader() {
+        this.in = null;
+        this.buffer = new byte[0];
+    }
+    
+    /**
+     * Points a reader constructed with no stream at a region of bytes.  The bytes are read in place, not copied.
+     * 
+     * @param bytes
+     * @param offset
+     * @param length
+     */
+    public void reset(final byte[] bytes, final int offset, final int length) {
+        if(in != null) {
+            throw new IllegalStateException("reader has a stream");
+        }
+        
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+    
+    /**
+     * Reads the next command.  An unknown command is consumed along with the rest of its line.
+     * 
+     * @return next command, null at end of input
+     * @throws IOException
+     * @throws SimpleException InvalidCommand if the next token is not a command
+     */
+    public Main.VALID_CMDS nextCommand() throws IOException, SimpleException {
+        
+        if(!skipWhitespace()) {
+            return null;
+        }
+        
+        // candidates are ruled out byte by byte as the token streams past
+        int candidates = (1 << COMMANDS.length) - 1;
+        int length = 0;
+        
+        int b;
+        while((b = peek()) >= 0 && !isWhitespace(b)) {
+            position++;
+            for(int i = 0; i < COMMANDS.length; i++) {
+                byte[] name = COMMAND_BYTES[i];
+                if(length >= name.length || name[length] != b) {
+                    candidates &= ~(1 << i);
+                }
+            }
+            length++;
+        }
+        
+        for(int i = 0; i < COMMANDS.length; i++) {
+            if((candidates & (1 << i)) != 0 && COMMAND_BYTES[i].length == length) {
+                return COMMANDS[i];
+            }
+        }
+        
+        skipLine();
+        throw SimpleException.Error.InvalidCommand.getException();
+    }
+    
+    /**
+     * Reads the next token as a decimal int.  A bad number is consumed along with the rest of its line.
+     * 
+     * @return the number
+     * @throws IOException
+     * @throws SimpleException InvalidAmount if the next token is missing, not a number or out of int range
+     */
+    public int nextInt() throws IOException, SimpleException {
+        
+        if(!skipWhitespace()) {
+            throw SimpleException.Error.InvalidAmount.getException();
+        }
+        
+        boolean isNegative = false;
+        if(peek() == '-' || peek() == '+') {
+            isNegative = peek() == '-';
+            position++;
+        }
+        
+        // accumulate negatively so Integer.MIN_VALUE fits
+        long value = 0;
+        int numDigits = 0;
+        boolean isValid = true;
+        
+        int b;
+        while((b = peek()) >= 0 && !isWhitespace(b)) {
+            position++;
+            
+            if(b < '0' || b > '9' || value < -(1L << 32)) {
+                isValid = false;
+                continue;
+            }
+            
+            value = value * 10 - (b - '0');
+            numDigits++;
+        }
+        
+        if(!isNegative) {
+            value = -value;
+        }
+        
+        if(!isValid || numDigits == 0 || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            skipLine();
+            throw SimpleException.Error.InvalidAmount.getException();
+        }
+        
+        return (int) value;
+    }
+    
+    /**
+     * Discards input up to and including the next line break.
+     * 
+     * @throws IOException
+     */
+    public void skipLine() throws IOException {
+        int b;
+        while((b = peek()) >= 0) {
+            position++;
+            if(b == '\n') {
+                return;
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * @return false at end of input
+     */
+    private boolean skipWhitespace() throws IOException {
+        int b;
+        while((b = peek()) >= 0) {
+            if(!isWhitespace(b)) {
+                return true;
+            }
+            position++;
+        }
+        return false;
+    }
+    
+    /**
+     * @return next byte without consuming it, -1 at end of input
+     */
+    private int peek() throws IOException {
+        if(position == limit) {
+            if(in == null) {
+                return -1;
+            }
+            
+            int numRead = in.read(buffer, 0, buffer.length);
+            if(numRead <= 0) {
+                return -1;
+            }
+            
+            position = 0;
+            limit = numRead;
+        }
+        
+        return buffer[position] & 0xff;
+    }
+    
+    private static boolean isWhitespace(final int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+}
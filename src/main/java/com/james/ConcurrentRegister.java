@@ -0,0 +1,318 @@
+package com.james;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe register shared by several tellers.  All five {@link BillType} counts are packed into one 64 bit word
+ * that is only ever replaced by compare-and-set, so {@link #put(Bank)}, {@link #take(Bank)} and
+ * {@link #changeAndTake(int, int[])} are each atomic and linearizable without locks, and {@link #show()} renders one
+ * consistent snapshot without blocking writers.
+ * 
+ * Each count gets {@value #BITS_PER_COUNT} bits, so a register holds at most {@value #MAX_NUM_OF_BILLS} bills of any
+ * one type, plenty for a physical drawer.  A put that would go past that is rejected as an invalid amount.  Use a
+ * {@link Bank} for larger holdings.
+ * 
+ * Only the default {@link CurrencyProfile} packs into one word, so this register holds it alone; other profiles are
+ * shared through a {@link RegisterPool}.
+ * 
+ * @author james
+ */
+public class ConcurrentRegister {
+    
+    public static final int BITS_PER_COUNT = 12;
+    
+    public static final int MAX_NUM_OF_BILLS = (1 << BITS_PER_COUNT) - 1;
+    
+    private static final BillType[] BILL_TYPES = BillType.values();
+    
+    private static final int[] DENOMINATIONS = CurrencyProfile.DEFAULT.getDenominations();
+    
+    private static final boolean IS_CANONICAL = CurrencyProfile.DEFAULT.isCanonical();
+    
+    /**
+     * Unpacked counts and solver per thread, used inside the retry loops.
+     */
+    private static final ThreadLocal<int[]> AVAILABLE = ThreadLocal.withInitial(() -> new int[BILL_TYPES.length]);
+    private static final ThreadLocal<ChangeSolver> SOLVERS = ThreadLocal.withInitial(ChangeSolver::new);
+    
+    /**
+     * Count of {@link BillType} with ordinal i in bits [i * BITS_PER_COUNT, (i + 1) * BITS_PER_COUNT)
+     */
+    private final AtomicLong packedCounts = new AtomicLong();
+    
+    /**
+     * Constructs an empty register with a value of $0
+     */
+    public ConcurrentRegister() {
+    }
+    
+    /**
+     * Constructs a register with the provided number of bills per type/denomination.
+     * 
+     * @param numTwenties
+     * @param numTens
+     * @param numFives
+     * @param numTwos
+     * @param numOnes
+     * @throws IllegalArgumentException if a count is negative or more than {@link #MAX_NUM_OF_BILLS}
+     */
+    public ConcurrentRegister(final int numTwenties, final int numTens, final int numFives, final int numTwos,
+            final int numOnes) {
+        
+        int[] counts = new int[BILL_TYPES.length];
+        counts[BillType.TWENTY.ordinal()] = numTwenties;
+        counts[BillType.TEN.ordinal()] = numTens;
+        counts[BillType.FIVE.ordinal()] = numFives;
+        counts[BillType.TWO.ordinal()] = numTwos;
+        counts[BillType.ONE.ordinal()] = numOnes;
+        
+        for(int count : counts) {
+            if(count < 0 || count > MAX_NUM_OF_BILLS) {
+                throw new IllegalArgumentException("count out of range 0 to " + MAX_NUM_OF_BILLS + ": " + count);
+            }
+        }
+        
+        packedCounts.set(pack(counts));
+    }
+    
+    /**
+     * @param billType
+     * @return this register's number of bills of the bill type
+     */
+    public int getNumOfBills(final BillType billType) {
+        return unpack(packedCounts.get(), billType.ordinal());
+    }
+    
+    /**
+     * @return a new {@link Bank} holding one consistent snapshot of this register's counts
+     */
+    public Bank snapshot() {
+        long packed = packedCounts.get();
+        
+        Bank bank = new Bank();
+        for(BillType billType : BILL_TYPES) {
+            bank.setBills(new BillsBundle(billType, unpack(packed, billType.ordinal())));
+        }
+        return bank;
+    }
+    
+    @Override
+    public String toString() {
+        return "ConcurrentRegister [" + show() + "]";
+    }
+    
+    
+    
+    /**
+     * @return string representation of one consistent snapshot of this register in the format:
+     * $XX #$20s #$10s #$5s #$2s #$1s
+     */
+    public String show() {
+        return appendShow(new StringBuilder(32)).toString();
+    }
+    
+    /**
+     * Appends the {@link #show()} text of one consistent snapshot without allocating, unless the builder has to grow.
+     * 
+     * @param out
+     * @return out
+     */
+    public StringBuilder appendShow(final StringBuilder out) {
+        long packed = packedCounts.get();
+        
+        out.append('$').append(getTotalValue(packed));
+        
+        for(int i = 0; i < BILL_TYPES.length; i++) {
+            out.append(' ').append(unpack(packed, i));
+        }
+        
+        return out;
+    }
+    
+    /**
+     * Atomically adds the passed bank to this register.
+     * 
+     * @param bankToPut
+     * @throws SimpleException
+     */
+    public void put(final Bank bankToPut) throws SimpleException {
+        
+        long delta = packDelta(bankToPut, SimpleException.Error.InvalidAmount);
+        
+        long current;
+        long updated;
+        do {
+            current = packedCounts.get();
+            
+            for(int i = 0; i < BILL_TYPES.length; i++) {
+                if(unpack(current, i) + unpack(delta, i) > MAX_NUM_OF_BILLS) {
+                    throw SimpleException.Error.InvalidAmount.getException();
+                }
+            }
+            
+            // no field overflows so no carry between fields
+            updated = current + delta;
+        } while(!packedCounts.compareAndSet(current, updated));
+    }
+    
+    /**
+     * Atomically subtracts the passed bank from this register.  Nothing is taken unless all of it can be.
+     * 
+     * @param bankToTake
+     * @throws SimpleException
+     */
+    public void take(final Bank bankToTake) throws SimpleException {
+        
+        long delta = packDelta(bankToTake, SimpleException.Error.InsufficientFunds);
+        
+        long current;
+        long updated;
+        do {
+            current = packedCounts.get();
+            
+            for(int i = 0; i < BILL_TYPES.length; i++) {
+                if(unpack(current, i) < unpack(delta, i)) {
+                    throw SimpleException.Error.InsufficientFunds.getException();
+                }
+            }
+            
+            // no field underflows so no borrow between fields
+            updated = current - delta;
+        } while(!packedCounts.compareAndSet(current, updated));
+    }
+    
+    /**
+     * Quotes change for the amount against the current counts into a caller owned buffer.  Nothing is taken, and by
+     * the time the caller acts on the quote other tellers may have changed the register, use
+     * {@link #changeAndTake(int, int[])} to quote and take atomically.
+     * 
+     * @param amount
+     * @param out receives the number of bills per {@link BillType#ordinal()}, untouched if change cannot be made
+     * @return number of bills in the change
+     * @throws SimpleException
+     */
+    public int change(final int amount, final int[] out) throws SimpleException {
+        
+        if(amount < 0) {
+            throw SimpleException.Error.InvalidAmount.getException();
+        }
+        
+        int[] available = AVAILABLE.get();
+        unpackAll(packedCounts.get(), available);
+        
+        int numOfBillsForChange = SOLVERS.get().solveFewest(amount, DENOMINATIONS, IS_CANONICAL, available, out);
+        if(numOfBillsForChange < 0) {
+            throw SimpleException.Error.InsufficientFunds.getException();
+        }
+        
+        return numOfBillsForChange;
+    }
+    
+    /**
+     * Atomically makes change for the amount and takes it from this register.  If another teller changes the
+     * register between the quote and the take, the quote is made again against the new counts.
+     * 
+     * @param amount
+     * @param out receives the number of bills taken per {@link BillType#ordinal()}, untouched if change cannot be made
+     * @return number of bills taken
+     * @throws SimpleException
+     */
+    public int changeAndTake(final int amount, final int[] out) throws SimpleException {
+        
+        if(amount < 0) {
+            throw SimpleException.Error.InvalidAmount.getException();
+        }
+        
+        int[] available = AVAILABLE.get();
+        ChangeSolver solver = SOLVERS.get();
+        
+        while(true) {
+            long current = packedCounts.get();
+            unpackAll(current, available);
+            
+            // solve into available so out is only written once the take succeeds
+            int numOfBillsForChange = solver.solveFewest(amount, DENOMINATIONS, IS_CANONICAL, available, available);
+            if(numOfBillsForChange < 0) {
+                throw SimpleException.Error.InsufficientFunds.getException();
+            }
+            
+            long updated = current - pack(available);
+            if(packedCounts.compareAndSet(current, updated)) {
+                System.arraycopy(available, 0, out, 0, available.length);
+                return numOfBillsForChange;
+            }
+        }
+    }
+    
+    /**
+     * @return total value of one consistent snapshot of this register
+     */
+    public long getTotalValue() {
+        return getTotalValue(packedCounts.get());
+    }
+    
+    
+    
+    private static long getTotalValue(final long packed) {
+        long total = 0;
+        for(int i = 0; i < BILL_TYPES.length; i++) {
+            total += unpack(packed, i) * DENOMINATIONS[i];
+        }
+        return total;
+    }
+    
+    /**
+     * Validates and packs a bank used for put and take.  Counts too large to pack can never be put or taken.
+     * 
+     * @param bank
+     * @param tooLargeError error for a count too large to pack
+     * @return packed counts of the bank
+     * @throws SimpleException
+     */
+    private static long packDelta(final Bank bank, final SimpleException.Error tooLargeError)
+            throws SimpleException {
+        
+        if(bank == null) {
+            throw SimpleException.Error.InvalidAmount.getException();
+        }
+        
+        if(!CurrencyProfile.DEFAULT.equals(bank.getProfile())) {
+            throw SimpleException.Error.MismatchDenomination.getException();
+        }
+        
+        long packed = 0;
+        for(BillType billType : BILL_TYPES) {
+            int numOfBills = bank.getNumOfBills(billType);
+            
+            if(numOfBills < 0) {
+                throw SimpleException.Error.InvalidAmount.getException();
+            }
+            
+            if(numOfBills > MAX_NUM_OF_BILLS) {
+                throw tooLargeError.getException();
+            }
+            
+            packed |= (long) numOfBills << (billType.ordinal() * BITS_PER_COUNT);
+        }
+        
+        return packed;
+    }
+    
+    private static long pack(final int[] counts) {
+        long packed = 0;
+        for(int i = 0; i < counts.length; i++) {
+            packed |= (long) counts[i] << (i * BITS_PER_COUNT);
+        }
+        return packed;
+    }
+    
+    private static int unpack(final long packed, final int ordinal) {
+        return (int) (packed >>> (ordinal * BITS_PER_COUNT)) & MAX_NUM_OF_BILLS;
+    }
+    
+    private static void unpackAll(final long packed, final int[] out) {
+        for(int i = 0; i < out.length; i++) {
+            out[i] = unpack(packed, i);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.james;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Set of denominations a register holds, for example the five US bills of {@link BillType} or the fifteen euro coins
+ * and notes.  Denominations are whole numbers in the currency's smallest unit (cents for the euro), so amounts are
+ * too.  A {@link Bank} keeps one count per denomination of its profile, largest first.
+ * 
+ * Profiles are loaded at startup from a properties file giving a name and the denominations:
+ * <pre>
+ * name=EUR
+ * denominations=50000 20000 10000 5000 2000 1000 500 200 100 50 20 10 5 2 1
+ * </pre>
+ * The profiles usd, eur, gbp and lsd (pre-decimal sterling, in pence, not canonical) are built in.
+ * 
+ * Whether greedy change making is always optimal for the denominations is worked out once here, see
+ * {@link ChangeSolver#isCanonical(int[])}, so change for canonical profiles stays a single pass however many
+ * denominations they have.
+ * 
+ * @author james
+ */
+public final class CurrencyProfile {
+    
+    private static final BillType[] BILL_TYPES = BillType.values();
+    
+    /**
+     * The five {@link BillType} bills, what a register holds unless told otherwise
+     */
+    public static final CurrencyProfile DEFAULT = new CurrencyProfile("default",
+            Arrays.stream(BillType.values()).mapToInt(BillType::getDenomination).toArray());
+    
+    private static final String RESOURCE_DIRECTORY = "profiles/";
+    private static final String RESOURCE_SUFFIX = ".properties";
+    
+    private final String name;
+    
+    /**
+     * Largest first
+     */
+    private final int[] denominations;
+    
+    private final boolean isCanonical;
+    
+    /**
+     * Index of each {@link BillType}'s denomination by ordinal, -1 if not held
+     */
+    private final int[] billTypeIndexes = new int[BILL_TYPES.length];
+    
+    /**
+     * Constructs a profile.
+     * 
+     * @param name
+     * @param denominations in any order, each positive and different
+     * @throws IllegalArgumentException if there are no denominations, or one is not positive or repeated
+     */
+    public CurrencyProfile(final String name, final int... denominations) {
+        if(denominations.length == 0) {
+            throw new IllegalArgumentException("profile " + name + " has no denominations");
+        }
+        
+        int[] sorted = denominations.clone();
+        Arrays.sort(sorted);
+        for(int i = 0; i < sorted.length; i++) {
+            if(sorted[i] <= 0) {
+                throw new IllegalArgumentException("denomination must be positive: " + sorted[i]);
+            }
+            if(i > 0 && sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("denomination repeated: " + sorted[i]);
+            }
+        }
+        
+        this.name = name;
+        this.denominations = new int[sorted.length];
+        for(int i = 0; i < sorted.length; i++) {
+            this.denominations[i] = sorted[sorted.length - 1 - i];
+        }
+        this.isCanonical = ChangeSolver.isCanonical(this.denominations);
+        
+        for(BillType billType : BILL_TYPES) {
+            billTypeIndexes[billType.ordinal()] = indexOf(billType.getDenomination());
+        }
+    }
+    
+    /**
+     * Loads a built-in profile by name, or else a profile file.
+     * 
+     * @param nameOrFile built-in profile name, or path of a properties file
+     * @return the profile
+     * @throws IOException if there is no such profile or it cannot be read
+     * @throws IllegalArgumentException if the profile's denominations are invalid
+     */
+    public static CurrencyProfile load(final String nameOrFile) throws IOException {
+        if(DEFAULT.name.equals(nameOrFile)) {
+            return DEFAULT;
+        }
+        
+        Properties properties = new Properties();
+        
+        try (InputStream builtIn = CurrencyProfile.class.getResourceAsStream(
+                RESOURCE_DIRECTORY + nameOrFile + RESOURCE_SUFFIX)) {
+            if(builtIn != null) {
+                properties.load(builtIn);
+                return fromProperties(properties, nameOrFile);
+            }
+        }
+        
+        Path file = Paths.get(nameOrFile);
+        if(!Files.isRegularFile(file)) {
+            throw new IOException("no currency profile named " + nameOrFile);
+        }
+        
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return fromProperties(properties, file.getFileName().toString());
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return number of denominations
+     */
+    public int size() {
+        return denominations.length;
+    }
+    
+    /**
+     * @param index 0 for the largest
+     * @return the denomination's value
+     */
+    public int getDenomination(final int index) {
+        return denominations[index];
+    }
+    
+    /**
+     * @return a copy of the denominations, largest first
+     */
+    public int[] getDenominations() {
+        return denominations.clone();
+    }
+    
+    /**
+     * @param denomination
+     * @return index of the denomination, -1 if this profile does not hold it
+     */
+    public int indexOf(final int denomination) {
+        for(int i = 0; i < denominations.length; i++) {
+            if(denominations[i] == denomination) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @return true if greedy change making always gives the fewest bills for these denominations
+     */
+    public boolean isCanonical() {
+        return isCanonical;
+    }
+    
+    /**
+     * Profiles are equal when they hold the same denominations, whatever their names.
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if(this == obj) {
+            return true;
+        }
+        if(!(obj instanceof CurrencyProfile)) {
+            return false;
+        }
+        return Arrays.equals(denominations, ((CurrencyProfile) obj).denominations);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(denominations);
+    }
+    
+    @Override
+    public String toString() {
+        return "CurrencyProfile [name=" + name + ", denominations=" + Arrays.toString(denominations) + ", canonical="
+                + isCanonical + "]";
+    }
+    
+    
+    
+    /**
+     * @return denominations largest first, shared, never to be modified
+     */
+    int[] denominations() {
+        return denominations;
+    }
+    
+    /**
+     * @param billType
+     * @return index of the bill type's denomination, -1 if this profile does not hold it
+     */
+    int indexOf(final BillType billType) {
+        return billTypeIndexes[billType.ordinal()];
+    }
+    
+    private static CurrencyProfile fromProperties(final Properties properties, final String defaultName) {
+        String listed = properties.getProperty("denominations");
+        if(listed == null || listed.trim().isEmpty()) {
+            throw new IllegalArgumentException("profile " + defaultName + " lists no denominations");
+        }
+        
+        String[] values = listed.trim().split("[\\s,]+");
+        int[] denominations = new int[values.length];
+        for(int i = 0; i < values.length; i++) {
+            denominations[i] = Integer.parseInt(values[i]);
+        }
+        
+        return new CurrencyProfile(properties.getProperty("name", defaultName), denominations);
+    }
+}
@@ -0,0 +1,129 @@
+package com.james;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size, log-linear histogram of non-negative values such as latencies in nanoseconds, after the layout of
+ * HdrHistogram.  Values below {@value #SUB_BUCKET_COUNT} are counted exactly; above that each power of two is split
+ * into {@value #HALF_SUB_BUCKET_COUNT} equal buckets, so a value is reported to within about 6%.  The whole range of
+ * a long fits in {@value #NUM_BUCKETS} buckets.
+ * 
+ * Recording is lock-free and allocation free: a few shifts and two uncontended atomic adds, cheap enough to leave on in
+ * the hot path.  Reads sum the buckets instead, so they cost more and may run alongside recording and then see a
+ * slightly inconsistent view.
+ * 
+ * @author james
+ */
+public class LatencyHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 5;
+    
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKET_COUNT;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+    
+    /**
+     * Records one value.  Negative values are recorded as 0.
+     * 
+     * @param value
+     */
+    public void record(final long value) {
+        long recorded = Math.max(0, value);
+        
+        counts.incrementAndGet(bucketOf(recorded));
+        totalValue.addAndGet(recorded);
+        
+        long max;
+        while(recorded > (max = maxValue.get()) && !maxValue.compareAndSet(max, recorded)) {
+            // another thread raised the max, try again against it
+        }
+    }
+    
+    public long getCount() {
+        long count = 0;
+        for(int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            count += counts.get(bucket);
+        }
+        return count;
+    }
+    
+    public long getMax() {
+        return maxValue.get();
+    }
+    
+    /**
+     * @return mean of the recorded values, 0 if none
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+    
+    /**
+     * @param percentile 0 to 100
+     * @return the highest value in the bucket holding the percentile, never more than the max recorded, 0 if none
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long count = getCount();
+        if(count == 0) {
+            return 0;
+        }
+        
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+        
+        long seen = 0;
+        for(int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if(seen >= rank) {
+                return Math.min(highestValueIn(bucket), getMax());
+            }
+        }
+        
+        return getMax();
+    }
+    
+    /**
+     * Clears every count.  Values recorded during the reset may be partly kept.
+     */
+    public void reset() {
+        for(int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+    
+    @Override
+    public String toString() {
+        return "LatencyHistogram [count=" + getCount() + ", p50=" + getValueAtPercentile(50) + ", p99="
+                + getValueAtPercentile(99) + ", max=" + getMax() + "]";
+    }
+    
+    
+    
+    /**
+     * Values below SUB_BUCKET_COUNT map to themselves.  Above, the value is shifted down until it falls in
+     * [HALF_SUB_BUCKET_COUNT, SUB_BUCKET_COUNT) and each shift moves up one block of HALF_SUB_BUCKET_COUNT buckets.
+     */
+    static int bucketOf(final long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+    
+    static long highestValueIn(final int bucket) {
+        if(bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        
+        int shift = bucket / HALF_SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (bucket - shift * HALF_SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -1,7 +1,17 @@
 package com.james;
 
-import java.io.Console;
-import java.util.Scanner;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import javax.management.JMException;
 
 /**
  * Command line execution harness for HelloChange
@@ -18,101 +28,359 @@ public class Main {
         put,
         take,
         change,
-        quit
+        quit,
+        stats
     };
     
-    public static void main(final String args[]) {
-        Bank register = new Bank();
+    /**
+     * Change amounts asked of a register repeat often between mutations, keep the recent quotes.
+     */
+    private static final int CHANGE_CACHE_SIZE = 1024;
+    
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    
+    /**
+     * Responses are copied to a writer through a reused char array of this size, see
+     * {@link #write(Writer, StringBuilder, char[])}
+     */
+    static final int RESPONSE_CHUNK_SIZE = 256;
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    /**
+     * System property naming the register's {@link CurrencyProfile}, built in or a file, default the {@link BillType}
+     * bills
+     */
+    private static final String PROFILE_PROPERTY = "hellochange.profile";
+    
+    /**
+     * System property naming the register's {@link ChangePolicy}, see {@link ChangePolicy#forName(String)}, default
+     * fewest
+     */
+    private static final String POLICY_PROPERTY = "hellochange.policy";
+    
+    /**
+     * System property naming a journal file, the register is recovered from it and journals to it
+     */
+    private static final String JOURNAL_PROPERTY = "hellochange.journal";
+    
+    /**
+     * System property naming the journal's {@link RegisterJournal.Durability}, default BATCHED
+     */
+    private static final String DURABILITY_PROPERTY = "hellochange.durability";
+    
+    /**
+     * Snapshot of a journaled register, next to its journal, so restarts only replay the journal since
+     */
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    
+    private static final long CHECKPOINT_PERIOD_MILLIS = 60 * 1000;
+    
+    /**
+     * Runs a register session.  With a console the session is interactive and each response is flushed as soon as 
+     * its command completes.  Without a console (input piped in) or given a file of commands as the first argument, 
+     * commands run in batch mode, which writes the same output but only flushes when its buffer fills or input ends.
+     * 
+     * With the {@value #JOURNAL_PROPERTY} system property set the register is first rebuilt from its latest snapshot 
+     * and that journal, then journals every change made to it and is snapshotted every minute and on exit.
+     * 
+     * The register's {@link RegisterMetrics} are read with the stats command or over JMX.
+     * 
+     * The register holds the {@link CurrencyProfile} named by the {@value #PROFILE_PROPERTY} system property, put and
+     * take then read one count per denomination of it, largest first.  Change is made under the {@link ChangePolicy}
+     * named by the {@value #POLICY_PROPERTY} system property.
+     * 
+     * @param args optional path of a file of commands to replay
+     */
+    public static void main(final String args[]) throws IOException {
+        boolean isInteractive = args.length == 0 && System.console() != null;
         
-        System.out.println("ready");
+        Bank register = new Bank(loadProfile());
+        register.setChangePolicy(loadPolicy());
+        attachMetrics(register, "console");
+        if(isInteractive) {
+            // a replayed stream mutates between nearly every change, so quotes would only miss there
+            register.setChangeCache(new ChangeCache(CHANGE_CACHE_SIZE));
+        }
         
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 
+                OUTPUT_BUFFER_SIZE);
         
-        Console console = System.console();
-        if (console == null) {
-            System.out.println("No console: non-interactive mode");
-            System.exit(0);
+        try (RegisterJournal journal = openJournal(register)) {
+            RegisterCheckpointer checkpointer = openCheckpointer(journal);
+            try (InputStream in = args.length > 0 ? new FileInputStream(args[0]) : System.in) {
+                run(new CommandReader(in), register, out, isInteractive);
+            } finally {
+                // the final checkpoint, before the journal closes
+                if(checkpointer != null) {
+                    checkpointer.close();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace(System.out);
         }
         
-        boolean isExit = false;
+        System.exit(0);
+    }
+    
+    /**
+     * Reads and runs commands against the register until quit or end of input, writing each response to out.
+     * 
+     * @param reader commands to run
+     * @param register
+     * @param out receives responses, flushed before returning
+     * @param isFlushEachCommand true to flush after every command, as an interactive session needs
+     * @throws IOException
+     */
+    public static void run(final CommandReader reader, final Bank register, final Writer out, 
+            final boolean isFlushEachCommand) throws IOException {
         
-        Scanner scanner = new Scanner(console.reader());
+        StringBuilder response = new StringBuilder(64);
+        char[] responseChunk = new char[RESPONSE_CHUNK_SIZE];
+        int[] changeBuffer = new int[register.getProfile().size()];
+        
+        out.write("ready");
+        out.write(LINE_SEPARATOR);
+        out.flush();
+        
+        boolean isExit = false;
         
         while(!isExit) {
             
+            response.setLength(0);
+            
             try {
                 
-                switch (VALID_CMDS.valueOf(scanner.next())) {
-                    case show:
-                        doShow(scanner, register);
-                        break;
-                        
-                    case put:
-                        doPut(scanner, register);
-                        doShow(scanner, register);
-                        break;
-                        
-                    case take:
-                        doTake(scanner, register);
-                        doShow(scanner, register);
-                        break;
-                        
-                    case change:
-                        doChange(scanner, register);
-                        doShow(scanner, register);
-                        break;
-                        
-                    case quit:
-                        isExit = true;
-                        break;
-    
-                    default:
-                        throw SimpleException.Error.InvalidCommand.getException();
+                VALID_CMDS command = reader.nextCommand();
+                if(command == null) {
+                    // end of input
+                    break;
                 }
-                                
+                
+                isExit = dispatch(command, reader, register, changeBuffer, response);
+                
             } catch(SimpleException e) {
-                System.out.println(e.getMessage());
-            } catch (Exception t) {
-                t.printStackTrace(System.out);
+                respondError(e, response);
+            } catch(RuntimeException e) {
+                // reported in place of the response, the session goes on
+                response.setLength(0);
+                StringWriter trace = new StringWriter();
+                e.printStackTrace(new PrintWriter(trace));
+                response.append(trace);
+            }
+            
+            write(out, response, responseChunk);
+            if(isFlushEachCommand) {
+                out.flush();
             }
         }
         
-        System.exit(0);
+        out.flush();
     }
     
-    private static Bank generateBankFromScanner (final Scanner scanner) throws SimpleException {
-        int numTwenties = scanner.nextInt();
-        int numTens = scanner.nextInt();
-        int numFives = scanner.nextInt();
-        int numTwos = scanner.nextInt();
-        int numOnes = scanner.nextInt();
+    /**
+     * Runs one command, reading its arguments from the reader.  Counted and sampled for its latency when the register 
+     * has metrics attached.
+     * 
+     * @param command
+     * @param reader
+     * @param register
+     * @param changeBuffer reused to hold change made
+     * @param response receives the command's output
+     * @return true if the session should end
+     * @throws IOException
+     * @throws SimpleException
+     */
+    static boolean dispatch(final VALID_CMDS command, final CommandReader reader, final Bank register, 
+            final int[] changeBuffer, final StringBuilder response) throws IOException, SimpleException {
         
-        return new Bank(
-                numTwenties,
-                numTens,
-                numFives,
-                numTwos,
-                numOnes
-                );
+        RegisterMetrics metrics = register.getMetrics();
+        if(metrics == null) {
+            return dispatchUntimed(command, reader, register, changeBuffer, response);
+        }
+        
+        long start = metrics.startCommand(command);
+        try {
+            return dispatchUntimed(command, reader, register, changeBuffer, response);
+        } finally {
+            metrics.endCommand(command, start);
+        }
     }
     
-    private static void doShow(final Scanner scanner, final Bank register) {
-        System.out.println(register.show());
+    /**
+     * Writes the response to out through the chunk array.  Writer.append would first copy the whole response into a
+     * new String.
+     * 
+     * @param out
+     * @param response
+     * @param chunk reused scratch, any length
+     * @throws IOException
+     */
+    static void write(final Writer out, final StringBuilder response, final char[] chunk) throws IOException {
+        for(int start = 0; start < response.length(); start += chunk.length) {
+            int end = Math.min(response.length(), start + chunk.length);
+            response.getChars(start, end, chunk, 0);
+            out.write(chunk, 0, end - start);
+        }
+    }
+    
+    /**
+     * Writes a rejected command's message as its response.  Errors of the register's operations are counted by the
+     * register itself, see {@link Bank#tryPut(Bank)}.
+     * 
+     * @param e
+     * @param response
+     */
+    static void respondError(final SimpleException e, final StringBuilder response) {
+        response.append(e.getMessage()).append(LINE_SEPARATOR);
+    }
+    
+    /**
+     * @return profile named by the {@value #PROFILE_PROPERTY} system property, the default profile if it is not set
+     * @throws IOException
+     */
+    static CurrencyProfile loadProfile() throws IOException {
+        return CurrencyProfile.load(System.getProperty(PROFILE_PROPERTY, CurrencyProfile.DEFAULT.getName()));
     }
     
-    private static void doPut(final Scanner scanner, final Bank register) throws SimpleException {;
-        Bank billsToPut = generateBankFromScanner(scanner);
+    /**
+     * @return policy named by the {@value #POLICY_PROPERTY} system property, fewest bills if it is not set
+     */
+    static ChangePolicy loadPolicy() {
+        return ChangePolicy.forName(System.getProperty(POLICY_PROPERTY, ChangePolicy.FEWEST_BILLS.getName()));
+    }
+    
+    /**
+     * Attaches new metrics to the register and publishes them over JMX under the name.  The register still runs, 
+     * reporting through stats only, if JMX refuses them.
+     * 
+     * @param register
+     * @param name
+     */
+    static void attachMetrics(final Bank register, final String name) {
+        RegisterMetrics metrics = new RegisterMetrics();
+        register.setMetrics(metrics);
+        
+        try {
+            metrics.registerMBean(name);
+        } catch(JMException e) {
+            e.printStackTrace(System.out);
+        }
+    }
+    
+    private static boolean dispatchUntimed(final VALID_CMDS command, final CommandReader reader, 
+            final Bank register, final int[] changeBuffer, final StringBuilder response) 
+            throws IOException, SimpleException {
+        
+        switch (command) {
+            case show:
+                doShow(reader, register, response);
+                break;
+                
+            case put:
+                doPut(reader, register);
+                doShow(reader, register, response);
+                break;
+                
+            case take:
+                doTake(reader, register);
+                doShow(reader, register, response);
+                break;
+                
+            case change:
+                doChange(reader, register, changeBuffer);
+                doShow(reader, register, response);
+                break;
+                
+            case quit:
+                return true;
+                
+            case stats:
+                doStats(register, response);
+                break;
+                
+            default:
+                throw SimpleException.Error.InvalidCommand.getException();
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @return journal named by the {@value #JOURNAL_PROPERTY} system property, recovered into and attached to the 
+     * register, null if the property is not set
+     */
+    private static RegisterJournal openJournal(final Bank register) throws IOException {
+        String file = System.getProperty(JOURNAL_PROPERTY);
+        if(file == null) {
+            return null;
+        }
+        
+        RegisterJournal journal = new RegisterJournal(Paths.get(file), register.getProfile(), 
+                RegisterJournal.Durability.valueOf(System.getProperty(DURABILITY_PROPERTY, "BATCHED")));
+        RegisterCheckpointer.recover(journal, Paths.get(file + SNAPSHOT_SUFFIX), register);
+        register.setJournal(journal, 0);
+        
+        return journal;
+    }
+    
+    /**
+     * @return started checkpointer for the journal, null if there is no journal
+     */
+    private static RegisterCheckpointer openCheckpointer(final RegisterJournal journal) throws IOException {
+        if(journal == null) {
+            return null;
+        }
+        
+        RegisterCheckpointer checkpointer = new RegisterCheckpointer(journal, 
+                Paths.get(System.getProperty(JOURNAL_PROPERTY) + SNAPSHOT_SUFFIX), 1);
+        checkpointer.start(CHECKPOINT_PERIOD_MILLIS);
+        
+        return checkpointer;
+    }
+    
+    /**
+     * Reads one count per denomination of the register's profile, largest first.
+     */
+    private static Bank generateBankFromReader(final CommandReader reader, final Bank register) 
+            throws IOException, SimpleException {
+        
+        Bank bank = new Bank(register.getProfile());
+        for(int i = 0; i < register.getProfile().size(); i++) {
+            bank.setNumOfBills(i, reader.nextInt());
+        }
+        
+        return bank;
+    }
+    
+    static void doShow(final CommandReader reader, final Bank register, final StringBuilder response) {
+        register.appendShow(response).append(LINE_SEPARATOR);
+    }
+    
+    static void doStats(final Bank register, final StringBuilder response) {
+        RegisterMetrics metrics = register.getMetrics();
+        if(metrics == null) {
+            response.append("stats off").append(LINE_SEPARATOR);
+            return;
+        }
+        
+        metrics.appendReport(response);
+    }
+    
+    static void doPut(final CommandReader reader, final Bank register) throws IOException, SimpleException {
+        Bank billsToPut = generateBankFromReader(reader, register);
         register.put(billsToPut);
     }
-
-    private static void doTake(final Scanner scanner, final Bank register) throws SimpleException {
-        Bank billsToTake = generateBankFromScanner(scanner);
+    
+    static void doTake(final CommandReader reader, final Bank register) throws IOException, SimpleException {
+        Bank billsToTake = generateBankFromReader(reader, register);
         register.take(billsToTake);
     }
-
-    private static void doChange(final Scanner scanner, final Bank register) throws SimpleException {
-        int amountToChange = scanner.nextInt();
-        Bank billsToChangeAndTake = register.change(amountToChange);
-        register.take(billsToChangeAndTake);
+    
+    static void doChange(final CommandReader reader, final Bank register, final int[] changeBuffer) 
+            throws IOException, SimpleException {
+        int amountToChange = reader.nextInt();
+        register.changeAndTake(amountToChange, changeBuffer);
     }
     
 }
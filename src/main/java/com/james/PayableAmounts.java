@@ -0,0 +1,314 @@
+package com.james;
+
+import java.util.Arrays;
+
+/**
+ * Which amounts from 0 up to a ceiling a {@link Bank} can pay out as change, kept up to date as its counts change so
+ * a front end can ask before tender without making change for every candidate amount.  An amount is payable when
+ * some choice of at most the held number of bills of each denomination sums to it, whatever the bank's
+ * {@link ChangePolicy} would then choose.
+ * 
+ * Each amount is one bit.  Denominations are added largest first in layers: layer i holds the amounts payable from
+ * denominations 0 to i, and the last layer is the answer.  Only ceiling / denomination bills of a denomination can
+ * take part in an amount up to the ceiling, so a change in count above that costs a comparison and nothing more.
+ * Otherwise, for denomination i:
+ * <ul>
+ * <li>more bills shift each layer from i on by multiples of the denomination and or it into itself, splitting the
+ * added bills into powers of two, so about log(added bills) passes per layer.</li>
+ * <li>fewer bills cannot be undone on bits, so layers from i on are rebuilt from layer i - 1, about log(bills)
+ * passes per layer.  Small denominations, which change hands most, sit in the last layers.</li>
+ * </ul>
+ * A pass is ceiling / 64 words.  A summary bit per non-empty word of the answer lets {@link #nextPayable(int)} skip
+ * 4,096 amounts per summary word.
+ * 
+ * Attach to one bank at a time with {@link Bank#setPayableAmounts(PayableAmounts)}.  Not thread safe, same as
+ * {@link Bank}.
+ * 
+ * @author james
+ */
+public class PayableAmounts {
+    
+    /**
+     * Largest ceiling accepted, 2 MB of bits per denomination
+     */
+    static final int MAX_CEILING = 1 << 24;
+    
+    private final CurrencyProfile profile;
+    private final int ceiling;
+    private final int[] denominations;
+    
+    /**
+     * Bits 0 to ceiling per layer, layer i payable from denominations 0 to i
+     */
+    private final long[][] layers;
+    private final long lastWordMask;
+    
+    /**
+     * Per layer the value of its usable bills, the largest amount it can pay.  Words above it, up to the ceiling, are
+     * zero and are skipped by every pass.
+     */
+    private final long[] maxAmounts;
+    
+    /**
+     * One bit per word of the last layer, set when the word is not zero
+     */
+    private final long[] summary;
+    
+    /**
+     * Bills per denomination taking part, the count held but at most ceiling / denomination
+     */
+    private final int[] numUsable;
+    private final int[] maxUsable;
+    
+    // scratch for update
+    private final int[] nextUsable;
+    
+    /**
+     * @param profile of the bank to track
+     * @param ceiling largest amount tracked
+     * @throws IllegalArgumentException if the ceiling is negative or above {@value #MAX_CEILING}
+     */
+    public PayableAmounts(final CurrencyProfile profile, final int ceiling) {
+        
+        if(ceiling < 0 || ceiling > MAX_CEILING) {
+            throw new IllegalArgumentException("ceiling " + ceiling + " is not between 0 and " + MAX_CEILING);
+        }
+        
+        this.profile = profile;
+        this.ceiling = ceiling;
+        this.denominations = profile.denominations();
+        
+        int numWords = (ceiling >>> 6) + 1;
+        this.layers = new long[denominations.length][numWords];
+        this.maxAmounts = new long[denominations.length];
+        this.lastWordMask = -1L >>> (63 - (ceiling & 63));
+        this.summary = new long[(numWords >>> 6) + 1];
+        
+        this.numUsable = new int[denominations.length];
+        this.maxUsable = new int[denominations.length];
+        this.nextUsable = new int[denominations.length];
+        for(int i = 0; i < denominations.length; i++) {
+            maxUsable[i] = ceiling / denominations[i];
+            
+            // an empty bank pays 0 only
+            layers[i][0] = 1L;
+        }
+        summary[0] = 1L;
+    }
+    
+    public CurrencyProfile getProfile() {
+        return profile;
+    }
+    
+    /**
+     * @return largest amount tracked
+     */
+    public int getCeiling() {
+        return ceiling;
+    }
+    
+    /**
+     * @param amount
+     * @return true if the bank holds bills summing to exactly the amount
+     * @throws IllegalArgumentException if the amount is negative or above the ceiling
+     */
+    public boolean canPay(final int amount) {
+        
+        if(amount < 0 || amount > ceiling) {
+            throw new IllegalArgumentException("amount " + amount + " is not between 0 and " + ceiling);
+        }
+        
+        return (payable()[amount >>> 6] & 1L << amount) != 0;
+    }
+    
+    /**
+     * @param from
+     * @return smallest payable amount at least from, or -1 if none up to the ceiling
+     * @throws IllegalArgumentException if from is negative
+     */
+    public int nextPayable(final int from) {
+        
+        if(from < 0) {
+            throw new IllegalArgumentException("amount " + from + " is negative");
+        }
+        
+        if(from > ceiling) {
+            return -1;
+        }
+        
+        long[] payable = payable();
+        int word = from >>> 6;
+        long bits = payable[word] & -1L << from;
+        if(bits != 0) {
+            return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        
+        // the next non-empty word, by way of the summary
+        word++;
+        if(word == payable.length) {
+            return -1;
+        }
+        
+        int summaryWord = word >>> 6;
+        bits = summary[summaryWord] & -1L << word;
+        while(bits == 0) {
+            if(++summaryWord == summary.length) {
+                return -1;
+            }
+            bits = summary[summaryWord];
+        }
+        
+        word = (summaryWord << 6) + Long.numberOfTrailingZeros(bits);
+        return (word << 6) + Long.numberOfTrailingZeros(payable[word]);
+    }
+    
+    /**
+     * @return number of payable amounts from 0 to the ceiling
+     */
+    public int countPayable() {
+        int count = 0;
+        for(long bits : payable()) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+    
+    @Override
+    public String toString() {
+        return "PayableAmounts [profile=" + profile.getName() + ", ceiling=" + ceiling + ", payable="
+                + countPayable() + "]";
+    }
+    
+    
+    
+    /**
+     * Brings the payable amounts up to date with the bank's counts.  Negative counts pay nothing.
+     * 
+     * @param counts number of bills per denomination, largest first
+     */
+    void update(final int[] counts) {
+        
+        int numLayers = layers.length;
+        int firstFewer = numLayers;
+        boolean isChanged = false;
+        for(int i = 0; i < numLayers; i++) {
+            nextUsable[i] = Math.min(Math.max(counts[i], 0), maxUsable[i]);
+            
+            if(nextUsable[i] != numUsable[i]) {
+                isChanged = true;
+                if(nextUsable[i] < numUsable[i] && firstFewer == numLayers) {
+                    firstFewer = i;
+                }
+            }
+        }
+        
+        if(!isChanged) {
+            return;
+        }
+        
+        int lastTopWord = topWord(maxAmounts[numLayers - 1]);
+        
+        // layers before the first denomination with fewer bills only grow, by each added denomination's bills
+        for(int i = 0; i < firstFewer; i++) {
+            int numAdded = nextUsable[i] - numUsable[i];
+            if(numAdded > 0) {
+                for(int layer = i; layer < firstFewer; layer++) {
+                    maxAmounts[layer] = addBills(layers[layer], denominations[i], numAdded, maxAmounts[layer]);
+                }
+            }
+        }
+        
+        // the rest are rebuilt, each from the one before
+        for(int layer = firstFewer; layer < numLayers; layer++) {
+            long[] bits = layers[layer];
+            int topWord = topWord(maxAmounts[layer]);
+            
+            long maxAmount = 0;
+            int numCopied = 1;
+            if(layer == 0) {
+                bits[0] = 1L;
+            } else {
+                maxAmount = maxAmounts[layer - 1];
+                numCopied = topWord(maxAmount) + 1;
+                System.arraycopy(layers[layer - 1], 0, bits, 0, numCopied);
+            }
+            if(topWord >= numCopied) {
+                Arrays.fill(bits, numCopied, topWord + 1, 0L);
+            }
+            
+            maxAmounts[layer] = addBills(bits, denominations[layer], nextUsable[layer], maxAmount);
+        }
+        
+        System.arraycopy(nextUsable, 0, numUsable, 0, numLayers);
+        summarize(Math.max(lastTopWord, topWord(maxAmounts[numLayers - 1])));
+    }
+    
+    private long[] payable() {
+        return layers[layers.length - 1];
+    }
+    
+    /**
+     * @return index of the word holding the amount, or the ceiling if above it
+     */
+    private int topWord(final long amount) {
+        return (int) (Math.min(amount, ceiling) >>> 6);
+    }
+    
+    /**
+     * Adds every sum of a payable amount and up to numOfBills bills of the denomination, in powers of two: bundles of
+     * 1, 2, 4 and so on bills, each taken or not, make every number of bills up to numOfBills.
+     * 
+     * @param maxAmount largest amount payable before
+     * @return largest amount payable after
+     */
+    private long addBills(final long[] bits, final int denomination, final int numOfBills, final long maxAmount) {
+        long max = maxAmount;
+        int numLeft = numOfBills;
+        for(int bundle = 1; numLeft > 0; bundle <<= 1) {
+            int numInBundle = Math.min(bundle, numLeft);
+            
+            // at most ceiling / denomination bills are usable, so the shift stays within the ceiling
+            int shift = numInBundle * denomination;
+            max += shift;
+            shiftOr(bits, shift, topWord(max));
+            numLeft -= numInBundle;
+        }
+        return max;
+    }
+    
+    /**
+     * bits |= bits << shift, up to the top word and dropping bits above the ceiling.  Runs from the top word down so
+     * each word is read before it is written.
+     */
+    private void shiftOr(final long[] bits, final int shift, final int topWord) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        
+        for(int word = topWord; word >= wordShift; word--) {
+            int from = word - wordShift;
+            long shifted = bits[from] << bitShift;
+            if(bitShift != 0 && from > 0) {
+                shifted |= bits[from - 1] >>> (64 - bitShift);
+            }
+            bits[word] |= shifted;
+        }
+        
+        if(topWord == bits.length - 1) {
+            bits[topWord] &= lastWordMask;
+        }
+    }
+    
+    /**
+     * Brings the summary up to date for words 0 to the top word of the answer.
+     */
+    private void summarize(final int topWord) {
+        long[] payable = payable();
+        for(int word = 0; word <= topWord; word++) {
+            if(payable[word] != 0) {
+                summary[word >>> 6] |= 1L << word;
+            } else {
+                summary[word >>> 6] &= ~(1L << word);
+            }
+        }
+    }
+}
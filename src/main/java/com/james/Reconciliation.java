@@ -0,0 +1,377 @@
+package com.james;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * End of day reconciliation of many registers against the counts each is expected to hold.  Each register's counts
+ * are diffed against its expected counts, checked for negative counts and for a running total that disagrees with
+ * them, and summed into per denomination totals of the whole set, actual and expected.
+ * 
+ * Registers are split into chunks of at most {@value #CHUNK_SIZE} reconciled as fork/join tasks.  Each task sums into
+ * its own long arrays and lists its own discrepancies, and tasks are merged pairwise as they join, so no counter is
+ * shared between threads and discrepancies come out in register order however the work was split.
+ * 
+ * Registers are read without locking: reconcile after close, when no teller is changing them, or reconcile snapshots
+ * such as {@link RegisterPool#snapshot()}.
+ * 
+ * @author james
+ */
+public final class Reconciliation {
+    
+    /**
+     * Registers reconciled by one task without splitting further
+     */
+    static final int CHUNK_SIZE = 1024;
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    public static enum Kind {
+        /** the count of a denomination is not the expected count */
+        COUNT,
+        /** the count of a denomination is negative */
+        NEGATIVE_COUNT,
+        /** the register's running total is not the value of its counts */
+        RUNNING_TOTAL
+    }
+    
+    /**
+     * One way one register disagrees with what it should hold
+     */
+    public static final class Discrepancy {
+        
+        private final int registerIndex;
+        private final Kind kind;
+        private final int denominationIndex;
+        private final long expected;
+        private final long actual;
+        
+        private Discrepancy(final int registerIndex, final Kind kind, final int denominationIndex, final long expected,
+                final long actual) {
+            this.registerIndex = registerIndex;
+            this.kind = kind;
+            this.denominationIndex = denominationIndex;
+            this.expected = expected;
+            this.actual = actual;
+        }
+        
+        /**
+         * @return index of the register in the reconciled array
+         */
+        public int getRegisterIndex() {
+            return registerIndex;
+        }
+        
+        public Kind getKind() {
+            return kind;
+        }
+        
+        /**
+         * @return index of the denomination in the profile, 0 for the largest, -1 for {@link Kind#RUNNING_TOTAL}
+         */
+        public int getDenominationIndex() {
+            return denominationIndex;
+        }
+        
+        /**
+         * @return expected count, 0 for a negative count, or the value of the counts for a running total
+         */
+        public long getExpected() {
+            return expected;
+        }
+        
+        /**
+         * @return count held, or the running total
+         */
+        public long getActual() {
+            return actual;
+        }
+        
+        @Override
+        public String toString() {
+            return "register " + registerIndex + " " + kind + (denominationIndex < 0 ? "" : " #" + denominationIndex)
+                    + " expected=" + expected + " actual=" + actual;
+        }
+    }
+    
+    private final CurrencyProfile profile;
+    private final int numRegisters;
+    private final long[] totals;
+    private final long[] expectedTotals;
+    private final int numRegistersWithDiscrepancies;
+    private final List<Discrepancy> discrepancies;
+    
+    private Reconciliation(final CurrencyProfile profile, final int numRegisters, final Sums sums) {
+        this.profile = profile;
+        this.numRegisters = numRegisters;
+        this.totals = sums.totals;
+        this.expectedTotals = sums.expectedTotals;
+        this.numRegistersWithDiscrepancies = sums.numRegistersWithDiscrepancies;
+        this.discrepancies = Collections.unmodifiableList(sums.discrepancies);
+    }
+    
+    /**
+     * Reconciles the registers on the common fork/join pool.
+     * 
+     * @param registers all of one profile
+     * @param expectedCounts per register, the number of bills it should hold per denomination, largest first
+     * @return the reconciliation
+     * @throws IllegalArgumentException if the registers and expected counts do not match up
+     * @see #reconcile(Bank[], int[][], ForkJoinPool)
+     */
+    public static Reconciliation reconcile(final Bank[] registers, final int[][] expectedCounts) {
+        return reconcile(registers, expectedCounts, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Reconciles the registers on the pool.
+     * 
+     * @param registers all of one profile
+     * @param expectedCounts per register, the number of bills it should hold per denomination, largest first
+     * @param pool
+     * @return the reconciliation
+     * @throws IllegalArgumentException if there is not one row of expected counts per register, a row is not one
+     * count per denomination, or the registers are not all of one profile
+     */
+    public static Reconciliation reconcile(final Bank[] registers, final int[][] expectedCounts,
+            final ForkJoinPool pool) {
+        
+        if(registers.length != expectedCounts.length) {
+            throw new IllegalArgumentException(registers.length + " registers, " + expectedCounts.length
+                    + " rows of expected counts");
+        }
+        
+        CurrencyProfile profile = registers.length == 0 ? CurrencyProfile.DEFAULT : registers[0].getProfile();
+        Sums sums = pool.invoke(new Task(profile, registers, expectedCounts, 0, registers.length));
+        
+        return new Reconciliation(profile, registers.length, sums);
+    }
+    
+    public CurrencyProfile getProfile() {
+        return profile;
+    }
+    
+    public int getNumRegisters() {
+        return numRegisters;
+    }
+    
+    /**
+     * @param index of the denomination, 0 for the largest
+     * @return number of bills of the denomination held across all registers
+     */
+    public long getTotal(final int index) {
+        return totals[index];
+    }
+    
+    /**
+     * @param index of the denomination, 0 for the largest
+     * @return number of bills of the denomination expected across all registers
+     */
+    public long getExpectedTotal(final int index) {
+        return expectedTotals[index];
+    }
+    
+    /**
+     * @return value of the bills held across all registers
+     */
+    public long getTotalValue() {
+        return valueOf(totals);
+    }
+    
+    /**
+     * @return value of the bills expected across all registers
+     */
+    public long getExpectedTotalValue() {
+        return valueOf(expectedTotals);
+    }
+    
+    public int getNumRegistersWithDiscrepancies() {
+        return numRegistersWithDiscrepancies;
+    }
+    
+    /**
+     * @return every discrepancy found, in register order
+     */
+    public List<Discrepancy> getDiscrepancies() {
+        return discrepancies;
+    }
+    
+    /**
+     * @return true if every register holds exactly what it should
+     */
+    public boolean isBalanced() {
+        return discrepancies.isEmpty();
+    }
+    
+    /**
+     * Appends a summary line, one line per denomination with its actual, expected and difference, a total line, and
+     * one line per discrepancy.
+     * 
+     * @param report
+     */
+    public void appendReport(final StringBuilder report) {
+        report.append("registers=").append(numRegisters)
+                .append(" with discrepancies=").append(numRegistersWithDiscrepancies)
+                .append(" discrepancies=").append(discrepancies.size())
+                .append(LINE_SEPARATOR);
+        
+        for(int i = 0; i < totals.length; i++) {
+            appendTotal(report, "$" + profile.getDenomination(i), totals[i], expectedTotals[i]);
+        }
+        appendTotal(report, "value", getTotalValue(), getExpectedTotalValue());
+        
+        for(Discrepancy discrepancy : discrepancies) {
+            report.append("register ").append(discrepancy.registerIndex).append(' ').append(discrepancy.kind);
+            if(discrepancy.denominationIndex >= 0) {
+                report.append(" $").append(profile.getDenomination(discrepancy.denominationIndex));
+            }
+            report.append(" expected=").append(discrepancy.expected)
+                    .append(" actual=").append(discrepancy.actual)
+                    .append(LINE_SEPARATOR);
+        }
+    }
+    
+    public String getReport() {
+        StringBuilder report = new StringBuilder(256 + 64 * discrepancies.size());
+        appendReport(report);
+        return report.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return "Reconciliation [registers=" + numRegisters + ", discrepancies=" + discrepancies.size() + "]";
+    }
+    
+    
+    
+    private static void appendTotal(final StringBuilder report, final String label, final long actual,
+            final long expected) {
+        report.append(label)
+                .append(" actual=").append(actual)
+                .append(" expected=").append(expected)
+                .append(" diff=").append(actual - expected)
+                .append(LINE_SEPARATOR);
+    }
+    
+    private long valueOf(final long[] numOfBills) {
+        long total = 0;
+        for(int i = 0; i < numOfBills.length; i++) {
+            total += numOfBills[i] * profile.getDenomination(i);
+        }
+        return total;
+    }
+    
+    /**
+     * What one task found in its registers
+     */
+    private static final class Sums {
+        
+        private final long[] totals;
+        private final long[] expectedTotals;
+        private int numRegistersWithDiscrepancies;
+        private final ArrayList<Discrepancy> discrepancies = new ArrayList<>();
+        
+        private Sums(final int numDenominations) {
+            totals = new long[numDenominations];
+            expectedTotals = new long[numDenominations];
+        }
+        
+        /**
+         * Adds the other's sums, whose registers follow this one's.
+         */
+        private Sums merge(final Sums other) {
+            for(int i = 0; i < totals.length; i++) {
+                totals[i] += other.totals[i];
+                expectedTotals[i] += other.expectedTotals[i];
+            }
+            numRegistersWithDiscrepancies += other.numRegistersWithDiscrepancies;
+            discrepancies.addAll(other.discrepancies);
+            return this;
+        }
+    }
+    
+    private static final class Task extends RecursiveTask<Sums> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CurrencyProfile profile;
+        private final Bank[] registers;
+        private final int[][] expectedCounts;
+        private final int from;
+        private final int to;
+        
+        private Task(final CurrencyProfile profile, final Bank[] registers, final int[][] expectedCounts,
+                final int from, final int to) {
+            this.profile = profile;
+            this.registers = registers;
+            this.expectedCounts = expectedCounts;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected Sums compute() {
+            if(to - from <= CHUNK_SIZE) {
+                return reconcileChunk();
+            }
+            
+            int middle = (from + to) >>> 1;
+            Task left = new Task(profile, registers, expectedCounts, from, middle);
+            Task right = new Task(profile, registers, expectedCounts, middle, to);
+            
+            left.fork();
+            Sums rightSums = right.compute();
+            return left.join().merge(rightSums);
+        }
+        
+        private Sums reconcileChunk() {
+            int numDenominations = profile.size();
+            int[] denominations = profile.denominations();
+            Sums sums = new Sums(numDenominations);
+            
+            for(int n = from; n < to; n++) {
+                Bank register = registers[n];
+                int[] expected = expectedCounts[n];
+                
+                if(!profile.equals(register.getProfile())) {
+                    throw new IllegalArgumentException("register " + n + " is " + register.getProfile().getName()
+                            + ", not " + profile.getName());
+                }
+                if(expected.length != numDenominations) {
+                    throw new IllegalArgumentException("register " + n + " has " + expected.length
+                            + " expected counts, " + numDenominations + " denominations");
+                }
+                
+                int numDiscrepanciesBefore = sums.discrepancies.size();
+                long value = 0;
+                for(int i = 0; i < numDenominations; i++) {
+                    int numOfBills = register.getNumOfBills(i);
+                    
+                    sums.totals[i] += numOfBills;
+                    sums.expectedTotals[i] += expected[i];
+                    value += (long) numOfBills * denominations[i];
+                    
+                    if(numOfBills < 0) {
+                        sums.discrepancies.add(new Discrepancy(n, Kind.NEGATIVE_COUNT, i, 0, numOfBills));
+                    } else if(numOfBills != expected[i]) {
+                        sums.discrepancies.add(new Discrepancy(n, Kind.COUNT, i, expected[i], numOfBills));
+                    }
+                }
+                
+                if(register.getTotalValue() != value) {
+                    sums.discrepancies.add(new Discrepancy(n, Kind.RUNNING_TOTAL, -1, value,
+                            register.getTotalValue()));
+                }
+                
+                if(sums.discrepancies.size() > numDiscrepanciesBefore) {
+                    sums.numRegistersWithDiscrepancies++;
+                }
+            }
+            
+            return sums;
+        }
+    }
+}
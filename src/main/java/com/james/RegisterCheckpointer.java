@@ -0,0 +1,254 @@
+package com.james;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes compact snapshots of the registers journaled to a {@link RegisterJournal}, so recovery loads the latest
+ * snapshot and replays only the journal after it instead of the whole day.
+ * 
+ * A snapshot is never read from the live registers.  The checkpointer keeps its own shadow copy of every register
+ * and brings it up to date by replaying the journal records appended since its last checkpoint, which needs no lock
+ * shared with writers.  Each snapshot is therefore exactly the registers' state as of one journal sequence, taken
+ * without stopping, pausing or slowing the writers, and each checkpoint costs only the records since the last.
+ * 
+ * Snapshots are written to a temporary file, forced, and atomically renamed over the previous one, so a crash while
+ * checkpointing leaves the previous snapshot in place.  The journal is forced through the snapshot's sequence first,
+ * so a snapshot on disk is never newer than the journal, whatever its {@link RegisterJournal.Durability}.  Once a snapshot is written the journal is rolled through its
+ * sequence, so the journal only ever holds the records since the last checkpoint.  A crash between the two leaves
+ * records the snapshot already holds, which recovery skips and the next checkpoint rolls away.
+ * 
+ * @author james
+ */
+public class RegisterCheckpointer implements Closeable {
+    
+    private static final int MAGIC = 0x48435331; // "HCS1"
+    
+    private final RegisterJournal journal;
+    private final Path snapshotFile;
+    private final Bank[] shadows;
+    
+    /**
+     * Journal sequence the shadows are up to, and that of the last snapshot written, behind if a write failed
+     */
+    private long shadowSequence;
+    private long checkpointSequence;
+    
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * Constructs a checkpointer starting from the snapshot file if there is one.
+     * 
+     * @param journal
+     * @param snapshotFile
+     * @param numRegisters number of register ids journaled, from 0
+     * @throws IOException
+     */
+    public RegisterCheckpointer(final RegisterJournal journal, final Path snapshotFile, final int numRegisters)
+            throws IOException {
+        
+        if(numRegisters <= 0) {
+            throw new IllegalArgumentException("numRegisters must be positive: " + numRegisters);
+        }
+        
+        this.journal = journal;
+        this.snapshotFile = snapshotFile;
+        this.shadows = new Bank[numRegisters];
+        for(int i = 0; i < numRegisters; i++) {
+            shadows[i] = new Bank(journal.getProfile());
+        }
+        
+        shadowSequence = load(snapshotFile, shadows);
+        checkpointSequence = shadowSequence;
+    }
+    
+    /**
+     * Rebuilds registers from the latest snapshot and the journal after it.  Call before attaching the journal to
+     * the registers.
+     * 
+     * @param journal
+     * @param snapshotFile snapshot to start from, the whole journal is replayed if it does not exist
+     * @param registers empty registers, register id indexing the array
+     * @return number of journal records replayed after the snapshot
+     * @throws IOException
+     * @throws IllegalStateException if the snapshot is newer than the journal, or older than the records it holds
+     */
+    public static long recover(final RegisterJournal journal, final Path snapshotFile, final Bank... registers)
+            throws IOException {
+        
+        long snapshotSequence = load(snapshotFile, registers);
+        if(snapshotSequence > journal.getLastSequence()) {
+            throw new IllegalStateException("snapshot at " + snapshotSequence + " is newer than the journal, ending at "
+                    + journal.getLastSequence());
+        }
+        
+        return journal.replay(snapshotSequence, registers);
+    }
+    
+    /**
+     * @return journal sequence of the last snapshot written or loaded, 0 if none
+     */
+    public synchronized long getCheckpointSequence() {
+        return checkpointSequence;
+    }
+    
+    /**
+     * Brings the shadow registers up to the journal's last record, writes them as the new snapshot and rolls the
+     * journal through it.
+     * 
+     * @return journal sequence the snapshot holds the registers' state at
+     * @throws IOException
+     */
+    public synchronized long checkpoint() throws IOException {
+        // replay stops at the last record published when it began, whatever was appended since
+        shadowSequence += journal.replay(shadowSequence, shadows);
+        
+        if(shadowSequence != checkpointSequence) {
+            // a snapshot on disk ahead of the journal would be refused by recovery after a crash of the machine
+            journal.sync();
+            write(shadowSequence);
+            checkpointSequence = shadowSequence;
+        }
+        
+        // also rolls a journal left behind a snapshot written before a crash
+        journal.roll(checkpointSequence);
+        
+        return checkpointSequence;
+    }
+    
+    /**
+     * Starts checkpointing in the background.
+     * 
+     * @param periodMillis time between checkpoints
+     */
+    public synchronized void start(final long periodMillis) {
+        if(scheduler != null) {
+            throw new IllegalStateException("already started");
+        }
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "register-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch(IOException e) {
+                // previous snapshot still stands, try again next period
+                e.printStackTrace(System.out);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops background checkpointing and writes a final checkpoint.
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService stopping;
+        synchronized(this) {
+            stopping = scheduler;
+            scheduler = null;
+        }
+        
+        if(stopping != null) {
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(1, TimeUnit.MINUTES);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        checkpoint();
+    }
+    
+    
+    
+    private void write(final long sequence) throws IOException {
+        int numDenominations = journal.getProfile().size();
+        
+        ByteBuffer snapshot = ByteBuffer.allocate(4 + 4 + 8 + shadows.length * numDenominations * 4 + 4);
+        snapshot.putInt(MAGIC).putInt(shadows.length).putLong(sequence);
+        for(Bank shadow : shadows) {
+            for(int i = 0; i < numDenominations; i++) {
+                snapshot.putInt(shadow.getNumOfBills(i));
+            }
+        }
+        snapshot.putInt(checksum(snapshot, snapshot.position()));
+        snapshot.flip();
+        
+        Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(true);
+        }
+        
+        Files.move(temporary, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Loads a snapshot into the registers.
+     * 
+     * @return journal sequence of the snapshot, 0 if there is no snapshot file
+     */
+    private static long load(final Path snapshotFile, final Bank[] registers) throws IOException {
+        if(!Files.exists(snapshotFile)) {
+            return 0;
+        }
+        
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if(snapshot.remaining() < 20 || snapshot.getInt(0) != MAGIC
+                || snapshot.getInt(snapshot.limit() - 4) != checksum(snapshot, snapshot.limit() - 4)) {
+            throw new IOException("corrupt register snapshot: " + snapshotFile);
+        }
+        
+        snapshot.getInt();
+        int numRegisters = snapshot.getInt();
+        long sequence = snapshot.getLong();
+        
+        if(numRegisters > registers.length) {
+            throw new IllegalArgumentException("snapshot holds " + numRegisters + " registers, " + registers.length
+                    + " passed");
+        }
+        
+        int numCounts = 0;
+        for(int i = 0; i < numRegisters; i++) {
+            numCounts += registers[i].getProfile().size();
+        }
+        if(snapshot.limit() != 4 + 4 + 8 + numCounts * 4 + 4) {
+            throw new IOException("register snapshot of another currency profile: " + snapshotFile);
+        }
+        
+        for(int i = 0; i < numRegisters; i++) {
+            for(int j = 0; j < registers[i].getProfile().size(); j++) {
+                registers[i].setNumOfBills(j, snapshot.getInt());
+            }
+        }
+        
+        return sequence;
+    }
+    
+    private static int checksum(final ByteBuffer buffer, final int end) {
+        int hash = 0x811c9dc5;
+        for(int i = 0; i < end; i += 4) {
+            hash ^= buffer.getInt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
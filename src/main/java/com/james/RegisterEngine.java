@@ -0,0 +1,418 @@
+package com.james;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Serves one {@link Bank} to any number of threads without locking it: callers publish requests into a ring of
+ * preallocated slots and one writer thread applies them to the bank in publication order.  Each request returns a
+ * {@link CompletableFuture} completed, once applied, with the bank's {@link Bank#show()} after the request, or
+ * exceptionally with the {@link SimpleException} of its {@link SimpleException.Error}.
+ * 
+ * The writer takes every published request it finds as one batch, applies them all, then completes their futures
+ * and frees their slots, so under a burst the cost of waking and handing over is shared across the burst.  When the
+ * ring is full callers wait for the writer to free a slot.  When the ring is empty the writer spins briefly and
+ * then parks until the next publish.
+ * 
+ * Publishers claim slots by incrementing a shared sequence and the writer publishes its progress in another.  Each
+ * sequence is padded onto a cache line of its own so claims and progress do not invalidate each other.
+ * 
+ * Futures are completed on the writer thread, so dependent stages added without an executor run there and hold up
+ * every request behind them; use the async variants for any real work.  Once handed to an engine, the bank must only
+ * be used through it until {@link #close()}.
+ * 
+ * @author james
+ */
+public class RegisterEngine implements Closeable {
+    
+    public static final int DEFAULT_CAPACITY = 1024;
+    
+    /**
+     * Empty polls of the ring before the writer parks
+     */
+    private static final int NUM_SPINS = 100;
+    
+    /**
+     * Set in the claim sequence once closed, so no claim can race a close
+     */
+    private static final long CLOSED = Long.MIN_VALUE;
+    
+    /**
+     * One request.  Written by its publisher before publishing, read and cleared by the writer before freeing.
+     */
+    private static final class Slot {
+        
+        /**
+         * Sequence of the request in the slot, written last by the publisher
+         */
+        private volatile long published = -1;
+        
+        /**
+         * Operation requested, null for show
+         */
+        private RegisterOp op;
+        private Bank bills;
+        private int amount;
+        private int[] out;
+        private CompletableFuture<String> future;
+        
+        // the outcome, between applying the batch and completing it
+        private String response;
+        private Throwable error;
+    }
+    
+    private final Bank register;
+    private final Slot[] slots;
+    private final int mask;
+    
+    /**
+     * Next sequence to claim, with {@link #CLOSED} set once closed
+     */
+    private final Sequence claimed = new Sequence(0);
+    
+    /**
+     * Number of requests applied and freed, the next sequence the writer will apply
+     */
+    private final Sequence consumed = new Sequence(0);
+    
+    private final Thread writer;
+    private volatile boolean isWriterParked;
+    
+    // scratch for change, writer only
+    private final int[] change;
+    
+    private volatile long numBatches;
+    private volatile long numApplied;
+    
+    /**
+     * Starts an engine for the register with a ring of {@value #DEFAULT_CAPACITY} requests.
+     * 
+     * @param register
+     */
+    public RegisterEngine(final Bank register) {
+        this(register, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Starts an engine for the register.
+     * 
+     * @param register
+     * @param capacity number of requests the ring holds, a power of two
+     * @throws IllegalArgumentException if the capacity is not a positive power of two
+     */
+    public RegisterEngine(final Bank register, final int capacity) {
+        
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a positive power of two: " + capacity);
+        }
+        
+        this.register = register;
+        this.slots = new Slot[capacity];
+        for(int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.change = new int[register.getProfile().size()];
+        
+        writer = new Thread(this::run, "register-engine-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * @return the register, only to be used directly once closed
+     */
+    public Bank getRegister() {
+        return register;
+    }
+    
+    public int getCapacity() {
+        return slots.length;
+    }
+    
+    /**
+     * @return number of batches the writer has applied
+     */
+    public long getNumBatches() {
+        return numBatches;
+    }
+    
+    /**
+     * @return number of requests the writer has applied, numApplied / numBatches being the mean batch size
+     */
+    public long getNumApplied() {
+        return numApplied;
+    }
+    
+    /**
+     * Puts the passed bank into the register, as {@link Bank#put(Bank)}.  The bank must not be changed until the
+     * future completes.
+     * 
+     * @param bankToPut
+     * @return completed with the register shown after the put
+     * @throws IllegalStateException if closed
+     */
+    public CompletableFuture<String> put(final Bank bankToPut) {
+        return publish(RegisterOp.put, bankToPut, 0, null);
+    }
+    
+    /**
+     * Takes the passed bank from the register, as {@link Bank#take(Bank)}.  The bank must not be changed until the
+     * future completes.
+     * 
+     * @param bankToTake
+     * @return completed with the register shown after the take
+     * @throws IllegalStateException if closed
+     */
+    public CompletableFuture<String> take(final Bank bankToTake) {
+        return publish(RegisterOp.take, bankToTake, 0, null);
+    }
+    
+    /**
+     * Makes change for the amount and takes it from the register, as {@link Bank#changeAndTake(int, int[])}.
+     * 
+     * @param amount
+     * @param out receives the number of bills per denomination before the future completes, null if not wanted
+     * @return completed with the register shown after the change
+     * @throws IllegalStateException if closed
+     */
+    public CompletableFuture<String> changeAndTake(final int amount, final int[] out) {
+        return publish(RegisterOp.change, null, amount, out);
+    }
+    
+    /**
+     * @return completed with the register shown after every request published before
+     * @throws IllegalStateException if closed
+     */
+    public CompletableFuture<String> show() {
+        return publish(null, null, 0, null);
+    }
+    
+    @Override
+    public String toString() {
+        return "RegisterEngine [capacity=" + slots.length + ", applied=" + numApplied + ", batches=" + numBatches
+                + "]";
+    }
+    
+    /**
+     * Stops taking requests, waits for the writer to apply every request already published, and stops it.
+     * 
+     * @throws IllegalStateException if called on the writer thread, from a stage of one of its futures
+     */
+    @Override
+    public void close() {
+        
+        if(Thread.currentThread() == writer) {
+            throw new IllegalStateException("engine closed from its own writer");
+        }
+        
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if(sequence < 0) {
+                return;
+            }
+        } while(!claimed.compareAndSet(sequence, sequence | CLOSED));
+        
+        LockSupport.unpark(writer);
+        
+        boolean isInterrupted = false;
+        while(writer.isAlive()) {
+            try {
+                writer.join();
+            } catch(InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if(isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    
+    private CompletableFuture<String> publish(final RegisterOp op, final Bank bills, final int amount,
+            final int[] out) {
+        
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if(sequence < 0) {
+                throw new IllegalStateException("engine closed");
+            }
+        } while(!claimed.compareAndSet(sequence, sequence + 1));
+        
+        // ring full, wait for the writer to free the slot
+        while(sequence - consumed.get() >= slots.length) {
+            Thread.yield();
+        }
+        
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Slot slot = slots[(int) sequence & mask];
+        slot.op = op;
+        slot.bills = bills;
+        slot.amount = amount;
+        slot.out = out;
+        slot.future = future;
+        slot.published = sequence;
+        
+        if(isWriterParked) {
+            LockSupport.unpark(writer);
+        }
+        
+        return future;
+    }
+    
+    private void run() {
+        long next = 0;
+        int numSpins = 0;
+        
+        while(true) {
+            long end = next;
+            while(end - next < slots.length && slots[(int) end & mask].published == end) {
+                end++;
+            }
+            
+            if(end == next) {
+                long sequence = claimed.get();
+                if(sequence < 0 && (sequence & ~CLOSED) == next) {
+                    // closed, and every claimed request applied
+                    return;
+                }
+                
+                if(++numSpins < NUM_SPINS) {
+                    Thread.yield();
+                } else {
+                    park(next);
+                }
+                continue;
+            }
+            numSpins = 0;
+            
+            for(long sequence = next; sequence < end; sequence++) {
+                apply(slots[(int) sequence & mask]);
+            }
+            
+            numApplied += end - next;
+            numBatches++;
+            
+            for(long sequence = next; sequence < end; sequence++) {
+                complete(slots[(int) sequence & mask]);
+            }
+            
+            consumed.set(end);
+            next = end;
+        }
+    }
+    
+    /**
+     * Parks until a publisher unparks the writer, unless the next request is published or the engine closed
+     * meanwhile.  Publishers read the flag after publishing, the writer checks for a publish after setting it, so
+     * one of the two always sees the other.
+     */
+    private void park(final long next) {
+        isWriterParked = true;
+        if(slots[(int) next & mask].published != next && claimed.get() >= 0) {
+            LockSupport.park(this);
+        }
+        isWriterParked = false;
+    }
+    
+    private void apply(final Slot slot) {
+        try {
+            Status status;
+            if(slot.op == null) {
+                // show
+                status = Status.OK;
+            } else {
+                switch (slot.op) {
+                    case put:
+                        status = register.tryPut(slot.bills);
+                        break;
+                    
+                    case take:
+                        status = register.tryTake(slot.bills);
+                        break;
+                    
+                    default:
+                        status = register.tryChangeAndTake(slot.amount, change);
+                        if(status.isOk() && slot.out != null) {
+                            System.arraycopy(change, 0, slot.out, 0, change.length);
+                        }
+                        break;
+                }
+            }
+            
+            if(status.isOk()) {
+                slot.response = register.show();
+            } else {
+                slot.error = status.getError().getException();
+            }
+        } catch(RuntimeException e) {
+            slot.error = e;
+        }
+    }
+    
+    private static void complete(final Slot slot) {
+        CompletableFuture<String> future = slot.future;
+        String response = slot.response;
+        Throwable error = slot.error;
+        
+        // drop the references before the slot is freed for reuse
+        slot.bills = null;
+        slot.out = null;
+        slot.future = null;
+        slot.response = null;
+        slot.error = null;
+        
+        if(error == null) {
+            future.complete(response);
+        } else {
+            future.completeExceptionally(error);
+        }
+    }
+    
+    /**
+     * Cache line of padding before {@link SequenceValue#value}
+     */
+    static class LeftPadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+    
+    static class SequenceValue extends LeftPadding {
+        volatile long value;
+    }
+    
+    /**
+     * A volatile long alone on its cache line: superclass fields are laid out first, so the value sits between the
+     * padding of {@link LeftPadding} and this class's.
+     */
+    static final class Sequence extends SequenceValue {
+        
+        private static final AtomicLongFieldUpdater<SequenceValue> VALUE =
+                AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+        
+        long p9, p10, p11, p12, p13, p14, p15;
+        
+        Sequence(final long initialValue) {
+            value = initialValue;
+        }
+        
+        long get() {
+            return value;
+        }
+        
+        /**
+         * Ordered store, enough for a single writer
+         */
+        void set(final long newValue) {
+            VALUE.lazySet(this, newValue);
+        }
+        
+        boolean compareAndSet(final long expected, final long newValue) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package com.james;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Change data capture for registers: every put, take and change made on a register attached with
+ * {@link Bank#setFeed(RegisterFeed, int)}, applied or rejected, becomes an {@link Event} delivered to each
+ * {@link Subscriber}, so downstream systems follow the registers instead of polling {@link Bank#show()}.
+ * 
+ * Recording an event copies it once and offers it to each subscription's bounded buffer, whose lock is only ever held
+ * for one offer or to drain one batch.  Each subscription has a thread of its own that drains its buffer in batches
+ * and hands them to its subscriber, so a slow subscriber only falls behind itself.  What happens when its buffer is full is
+ * the subscription's {@link Overflow} policy: drop the new event, drop the oldest buffered, or make the register wait
+ * for room, the one policy that lets a subscriber slow the register.
+ * 
+ * Events carry a sequence across the feed, so a subscriber can see where events were dropped, and each subscription
+ * reports its lag behind the feed in events and in time.  Nothing is recorded while there are no subscriptions.
+ * 
+ * Registers attached to one feed may be used from different threads, see {@link RegisterPool}.
+ * 
+ * @author james
+ */
+public class RegisterFeed implements Closeable {
+    
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    
+    /**
+     * How long an idle delivery thread parks, and a blocked register waits for room, before checking whether the
+     * subscription was cancelled
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    /**
+     * What a subscription does with an event when its buffer is full
+     */
+    public static enum Overflow {
+        /** drop the event, the buffer keeps the older ones */
+        DROP_NEWEST,
+        /** drop the oldest buffered event to make room */
+        DROP_OLDEST,
+        /** the register waits until the subscriber makes room, and drops the event once cancelled */
+        BLOCK
+    }
+    
+    /**
+     * Receives events in batches on its subscription's delivery thread, each register's events in the order they
+     * happened.  Registers used from different threads may interleave slightly out of sequence.
+     */
+    @FunctionalInterface
+    public static interface Subscriber {
+        
+        /**
+         * @param events one or more events, the list only valid during the call
+         */
+        void onEvents(List<Event> events);
+    }
+    
+    /**
+     * One put, take or change on one register
+     */
+    public static final class Event {
+        
+        private final long sequence;
+        private final long recordedNanos;
+        private final int registerId;
+        private final RegisterOp op;
+        private final long amount;
+        private final int[] numOfBills;
+        private final long totalValue;
+        private final SimpleException.Error error;
+        
+        private Event(final long sequence, final int registerId, final RegisterOp op, final long amount,
+                final int[] numOfBills, final long totalValue, final SimpleException.Error error) {
+            this.sequence = sequence;
+            this.recordedNanos = System.nanoTime();
+            this.registerId = registerId;
+            this.op = op;
+            this.amount = amount;
+            this.numOfBills = numOfBills;
+            this.totalValue = totalValue;
+            this.error = error;
+        }
+        
+        /**
+         * @return position of the event in the feed, from 1, gapless across the registers attached
+         */
+        public long getSequence() {
+            return sequence;
+        }
+        
+        /**
+         * @return {@link System#nanoTime()} when the event was recorded
+         */
+        public long getRecordedNanos() {
+            return recordedNanos;
+        }
+        
+        public int getRegisterId() {
+            return registerId;
+        }
+        
+        /**
+         * @return {@link RegisterOp#put}, {@link RegisterOp#take}, {@link RegisterOp#change} or
+         * {@link RegisterOp#transaction}
+         */
+        public RegisterOp getOp() {
+            return op;
+        }
+        
+        /**
+         * @return value put or taken, the change asked for, also when rejected, or the net value a transaction put,
+         * negative when it took more than it put
+         */
+        public long getAmount() {
+            return amount;
+        }
+        
+        /**
+         * @param index of the denomination, 0 for the largest
+         * @return number of bills the register gained, negative for bills taken, 0 when rejected
+         */
+        public int getDelta(final int index) {
+            return op.getSign() * numOfBills[index];
+        }
+        
+        public int getNumDenominations() {
+            return numOfBills.length;
+        }
+        
+        /**
+         * @return total value of the register after the event
+         */
+        public long getTotalValue() {
+            return totalValue;
+        }
+        
+        /**
+         * @return why the operation was rejected, null if it was applied
+         */
+        public SimpleException.Error getError() {
+            return error;
+        }
+        
+        public boolean isApplied() {
+            return error == null;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(64);
+            text.append('#').append(sequence).append(" register ").append(registerId).append(' ').append(op)
+                    .append(" $").append(amount);
+            for(int i = 0; i < numOfBills.length; i++) {
+                text.append(' ').append(getDelta(i));
+            }
+            text.append(" total $").append(totalValue);
+            if(error != null) {
+                text.append(' ').append(error);
+            }
+            return text.toString();
+        }
+    }
+    
+    /**
+     * One subscriber's buffer, delivery thread and counters
+     */
+    public final class Subscription {
+        
+        private final String name;
+        private final Subscriber subscriber;
+        private final Overflow overflow;
+        private final int batchSize;
+        private final ArrayBlockingQueue<Event> buffer;
+        private final Thread deliverer;
+        
+        private final AtomicLong numDropped = new AtomicLong();
+        private volatile long numDelivered;
+        private volatile long numBatches;
+        private volatile long numFailedBatches;
+        private volatile long lastDeliveredSequence;
+        
+        /**
+         * recorded time of the first event of the batch being delivered, 0 between batches
+         */
+        private volatile long deliveringNanos;
+        
+        private volatile boolean isCancelled;
+        private final AtomicBoolean isDelivererParked = new AtomicBoolean();
+        
+        private Subscription(final String name, final Subscriber subscriber, final Overflow overflow,
+                final int bufferSize, final int batchSize) {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.overflow = overflow;
+            this.batchSize = batchSize;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.lastDeliveredSequence = sequence.get();
+            
+            deliverer = new Thread(this::deliver, "register-feed-" + name);
+            deliverer.setDaemon(true);
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public Overflow getOverflow() {
+            return overflow;
+        }
+        
+        public long getNumDelivered() {
+            return numDelivered;
+        }
+        
+        /**
+         * @return number of events dropped by the overflow policy, or lost to an interrupted register waiting for
+         * room or to the subscription being cancelled meanwhile
+         */
+        public long getNumDropped() {
+            return numDropped.get();
+        }
+        
+        /**
+         * @return number of batches delivered, numDelivered / numBatches being the mean batch size
+         */
+        public long getNumBatches() {
+            return numBatches;
+        }
+        
+        /**
+         * @return number of batches whose delivery threw, counted as delivered
+         */
+        public long getNumFailedBatches() {
+            return numFailedBatches;
+        }
+        
+        /**
+         * @return number of events recorded on the feed since the last one delivered to this subscriber, dropped
+         * events included
+         */
+        public long getLag() {
+            return sequence.get() - lastDeliveredSequence;
+        }
+        
+        /**
+         * @return how long the oldest event not yet delivered has waited, 0 if there is none
+         */
+        public long getLagNanos() {
+            long recordedNanos = deliveringNanos;
+            if(recordedNanos == 0) {
+                Event oldest = buffer.peek();
+                if(oldest == null) {
+                    return 0;
+                }
+                recordedNanos = oldest.recordedNanos;
+            }
+            return Math.max(0, System.nanoTime() - recordedNanos);
+        }
+        
+        /**
+         * Stops delivering once the events already buffered are delivered, and waits for that.
+         */
+        public void cancel() {
+            if(subscriptions.remove(this)) {
+                isCancelled = true;
+                
+                boolean isInterrupted = false;
+                while(deliverer.isAlive() && deliverer != Thread.currentThread()) {
+                    try {
+                        deliverer.join();
+                    } catch(InterruptedException e) {
+                        isInterrupted = true;
+                    }
+                }
+                if(isInterrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        
+        /**
+         * Appends one line: name, policy, delivered, dropped, batches, failed batches and lag.
+         * 
+         * @param report
+         */
+        public void appendReport(final StringBuilder report) {
+            report.append(name).append(' ').append(overflow)
+                    .append(" delivered=").append(numDelivered)
+                    .append(" dropped=").append(numDropped.get())
+                    .append(" batches=").append(numBatches)
+                    .append(" failed=").append(numFailedBatches)
+                    .append(" lag=").append(getLag())
+                    .append(" lagMicros=").append(getLagNanos() / 1000)
+                    .append(LINE_SEPARATOR);
+        }
+        
+        @Override
+        public String toString() {
+            return "Subscription [name=" + name + ", overflow=" + overflow + ", lag=" + getLag() + "]";
+        }
+        
+        private void offer(final Event event) {
+            switch (overflow) {
+                case DROP_NEWEST:
+                    if(!buffer.offer(event)) {
+                        numDropped.incrementAndGet();
+                    }
+                    break;
+                
+                case DROP_OLDEST:
+                    while(!buffer.offer(event)) {
+                        if(buffer.poll() != null) {
+                            numDropped.incrementAndGet();
+                        }
+                    }
+                    break;
+                
+                case BLOCK:
+                    // waits for room only while the deliverer is there to make it
+                    boolean isOffered = buffer.offer(event);
+                    try {
+                        while(!isOffered && !isCancelled && deliverer.isAlive()) {
+                            isOffered = buffer.offer(event, PARK_NANOS, TimeUnit.NANOSECONDS);
+                        }
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if(!isOffered) {
+                        numDropped.incrementAndGet();
+                    }
+                    break;
+            }
+            
+            // the buffer's own wait would wake the deliverer on every event, instead the first offer after it parks
+            // wakes it once
+            if(isDelivererParked.get() && isDelivererParked.compareAndSet(true, false)) {
+                LockSupport.unpark(deliverer);
+            }
+        }
+        
+        private void deliver() {
+            List<Event> batch = new ArrayList<>(batchSize);
+            
+            while(true) {
+                Event first = buffer.poll();
+                if(first == null) {
+                    if(isCancelled) {
+                        return;
+                    }
+                    
+                    // offers check the flag after adding, the deliverer checks the buffer after setting it
+                    isDelivererParked.set(true);
+                    if(buffer.isEmpty()) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    isDelivererParked.set(false);
+                    continue;
+                }
+                
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                
+                deliveringNanos = first.recordedNanos;
+                try {
+                    subscriber.onEvents(batch);
+                } catch(Throwable e) {
+                    // the subscriber's problem, the feed carries on with the next batch and a register waiting for
+                    // room never waits on a dead deliverer
+                    numFailedBatches++;
+                }
+                
+                numDelivered += batch.size();
+                numBatches++;
+                lastDeliveredSequence = batch.get(batch.size() - 1).sequence;
+                deliveringNanos = 0;
+                batch.clear();
+            }
+        }
+    }
+    
+    private final CurrencyProfile profile;
+    private final AtomicLong sequence = new AtomicLong();
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Constructs a feed of default profile registers.
+     */
+    public RegisterFeed() {
+        this(CurrencyProfile.DEFAULT);
+    }
+    
+    /**
+     * @param profile of every register attached
+     */
+    public RegisterFeed(final CurrencyProfile profile) {
+        this.profile = profile;
+    }
+    
+    public CurrencyProfile getProfile() {
+        return profile;
+    }
+    
+    /**
+     * @return sequence of the last event recorded, 0 if none
+     */
+    public long getLastSequence() {
+        return sequence.get();
+    }
+    
+    /**
+     * Subscribes with a buffer of {@value #DEFAULT_BUFFER_SIZE} events delivered in batches of up to
+     * {@value #DEFAULT_BATCH_SIZE}, dropping the newest events when full.
+     * 
+     * @param name names the subscription and its delivery thread
+     * @param subscriber
+     * @return the subscription, delivering from the next event recorded
+     */
+    public Subscription subscribe(final String name, final Subscriber subscriber) {
+        return subscribe(name, subscriber, Overflow.DROP_NEWEST, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * @param name names the subscription and its delivery thread
+     * @param subscriber
+     * @param overflow what to do with an event when the buffer is full
+     * @param bufferSize number of events buffered for the subscriber
+     * @param batchSize most events handed to the subscriber at once
+     * @return the subscription, delivering from the next event recorded
+     * @throws IllegalArgumentException if the buffer or batch size is not positive
+     */
+    public Subscription subscribe(final String name, final Subscriber subscriber, final Overflow overflow,
+            final int bufferSize, final int batchSize) {
+        
+        if(bufferSize <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("buffer size " + bufferSize + " and batch size " + batchSize
+                    + " must be positive");
+        }
+        
+        Subscription subscription = new Subscription(name, subscriber, overflow, bufferSize, batchSize);
+        subscription.deliverer.start();
+        subscriptions.add(subscription);
+        return subscription;
+    }
+    
+    /**
+     * @return the current subscriptions
+     */
+    public List<Subscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+    
+    /**
+     * Appends one line per subscription.
+     * 
+     * @param report
+     */
+    public void appendReport(final StringBuilder report) {
+        report.append("feed sequence=").append(sequence.get()).append(LINE_SEPARATOR);
+        for(Subscription subscription : subscriptions) {
+            subscription.appendReport(report);
+        }
+    }
+    
+    public String getReport() {
+        StringBuilder report = new StringBuilder(128);
+        appendReport(report);
+        return report.toString();
+    }
+    
+    /**
+     * Cancels every subscription, delivering what is buffered first.
+     */
+    @Override
+    public void close() {
+        for(Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+    }
+    
+    
+    
+    /**
+     * Records an operation made on a register.  Called by the register once the operation is applied or rejected.
+     * 
+     * @param registerId
+     * @param op {@link RegisterOp#put}, {@link RegisterOp#take} or {@link RegisterOp#change}
+     * @param amount value put or taken, or the change asked for
+     * @param numOfBills bills per denomination put, taken or paid out, as journaled; null when rejected
+     * @param totalValue of the register after the operation
+     * @param error why it was rejected, null if it was applied
+     */
+    void record(final int registerId, final RegisterOp op, final long amount, final int[] numOfBills,
+            final long totalValue, final SimpleException.Error error) {
+        
+        if(subscriptions.isEmpty()) {
+            return;
+        }
+        
+        int[] copy = numOfBills == null ? new int[profile.size()] : numOfBills.clone();
+        Event event = new Event(sequence.incrementAndGet(), registerId, op, amount, copy, totalValue, error);
+        
+        for(Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+}
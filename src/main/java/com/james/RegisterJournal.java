@@ -0,0 +1,566 @@
+package com.james;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only write-ahead journal of the operations applied to one or more registers, written through a memory
+ * mapped file.  Each record holds the register id, the operation (a {@link RegisterOp} code) and the number
+ * of bills per denomination it put, took or paid out as change.  A committed {@link Bank.Transaction} is one
+ * {@link RegisterOp#transaction} of its net change, whose counts may be negative.  Replaying the records in order
+ * onto empty registers rebuilds their counts.  Every register journaled to one journal holds the journal's
+ * {@link CurrencyProfile}, which is recorded in the file's header and checked on reopening.  Registers append an
+ * operation before applying it, so an append that fails leaves both the journal and the register without it.
+ * 
+ * Records land in the mapping, which belongs to the operating system, so once appended they survive a crash of the
+ * process.  Surviving a crash of the machine needs the mapping forced to disk, which is what {@link Durability}
+ * trades against throughput:
+ * <ul>
+ * <li>{@link Durability#PER_OP} forces after every record.</li>
+ * <li>{@link Durability#BATCHED} group commits, forcing once per batch of records, so at most one batch is lost.</li>
+ * <li>{@link Durability#ASYNC} leaves forcing to a background thread every flush interval, which forces outside the
+ * lock appends take.</li>
+ * </ul>
+ * Every mode forces on {@link #sync()} and {@link #close()}.
+ * 
+ * A torn or missing record ends the journal; on reopening, appends continue after the last whole record.  Pages of
+ * the mapping not yet forced reach the disk in any order, so whole records can sit after a missing one: reopening
+ * scans from the first record to the first that is not whole and zeroes every record after it, which could never be
+ * replayed and would otherwise be taken for records appended later.  Appends are thread safe, and replay runs
+ * alongside appends without blocking them.
+ * 
+ * The journal only ever needs the records after the latest snapshot, so {@link #roll(long)} rewrites it to hold just
+ * those, as {@link RegisterCheckpointer} does after every snapshot.  That keeps the file, the mapping and the scan on
+ * reopening to the records of one checkpoint period rather than growing for as long as the register runs.
+ * 
+ * @author james
+ */
+public class RegisterJournal implements Closeable {
+    
+    public static enum Durability {
+        PER_OP,
+        BATCHED,
+        ASYNC
+    };
+    
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+    
+    private static final int MAGIC = 0x48434a32; // "HCJ2"
+    
+    /**
+     * magic (int), number of denominations (int), hash of the denominations (int), unused (int), sequence of the
+     * record before the first held (long)
+     */
+    static final int HEADER_SIZE = 24;
+    
+    private static final int INITIAL_NUM_RECORDS = 64 * 1024;
+    
+    private final Path file;
+    private FileChannel channel;
+    private final CurrencyProfile profile;
+    private final int recordSize;
+    private final Durability durability;
+    private final int batchSize;
+    
+    // volatile so replay can read records without holding the lock, see replay(long, Bank...)
+    private volatile MappedByteBuffer mapped;
+    private volatile long lastSequence;
+    
+    /**
+     * Sequence of the record before the first the file holds, the last rolled away
+     */
+    private volatile long startSequence;
+    
+    private int numUnsynced;
+    
+    private volatile long lastSyncedSequence;
+    private volatile boolean isClosed;
+    private final Thread flusher;
+    
+    /**
+     * Opens or creates a journal of default profile registers, group committing every {@value #DEFAULT_BATCH_SIZE}
+     * records when batched.
+     * 
+     * @param file
+     * @param durability
+     * @throws IOException
+     */
+    public RegisterJournal(final Path file, final Durability durability) throws IOException {
+        this(file, CurrencyProfile.DEFAULT, durability);
+    }
+    
+    /**
+     * Opens or creates a journal of the profile's registers, group committing every {@value #DEFAULT_BATCH_SIZE}
+     * records when batched.
+     * 
+     * @param file
+     * @param profile
+     * @param durability
+     * @throws IOException
+     */
+    public RegisterJournal(final Path file, final CurrencyProfile profile, final Durability durability) 
+            throws IOException {
+        this(file, profile, durability, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+    
+    /**
+     * Opens or creates a journal of default profile registers.
+     * 
+     * @param file
+     * @param durability
+     * @param batchSize records per forced write when {@link Durability#BATCHED}
+     * @param flushIntervalMillis time between forced writes when {@link Durability#ASYNC}
+     * @throws IOException
+     */
+    public RegisterJournal(final Path file, final Durability durability, final int batchSize,
+            final long flushIntervalMillis) throws IOException {
+        this(file, CurrencyProfile.DEFAULT, durability, batchSize, flushIntervalMillis);
+    }
+    
+    /**
+     * Opens or creates a journal.  An existing journal is scanned and appends continue after its last whole record.
+     * 
+     * @param file
+     * @param profile of every register journaled
+     * @param durability
+     * @param batchSize records per forced write when {@link Durability#BATCHED}
+     * @param flushIntervalMillis time between forced writes when {@link Durability#ASYNC}
+     * @throws IOException if the file is not a journal, or is a journal of another profile
+     */
+    public RegisterJournal(final Path file, final CurrencyProfile profile, final Durability durability, 
+            final int batchSize, final long flushIntervalMillis) throws IOException {
+        
+        if(batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        if(flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must be positive: " + flushIntervalMillis);
+        }
+        
+        this.profile = profile;
+        this.recordSize = recordSize(profile.size());
+        this.durability = durability;
+        this.batchSize = batchSize;
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        
+        long size = channel.size();
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, 
+                Math.max(size, HEADER_SIZE + (long) recordSize * INITIAL_NUM_RECORDS));
+        
+        if(size == 0 || mapped.getInt(0) == 0) {
+            writeHeader(mapped, 0);
+            mapped.force();
+        } else if(mapped.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("not a register journal: " + file);
+        } else if(!isOfProfile(mapped, profile)) {
+            channel.close();
+            throw new IOException("register journal of another currency profile than " + profile.getName() + ": "
+                    + file);
+        }
+        
+        startSequence = mapped.getLong(16);
+        
+        lastSequence = findEnd(mapped, size);
+        mapped.position(offsetOf(lastSequence + 1));
+        lastSyncedSequence = lastSequence;
+        
+        if(durability == Durability.ASYNC) {
+            flusher = new Thread(() -> flushEvery(flushIntervalMillis), "register-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+    
+    public CurrencyProfile getProfile() {
+        return profile;
+    }
+    
+    public Durability getDurability() {
+        return durability;
+    }
+    
+    /**
+     * @return sequence of the last record appended, 0 if none
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+    
+    /**
+     * @return sequence of the last record rolled away, so replay starts after it, 0 if none
+     */
+    public long getStartSequence() {
+        return startSequence;
+    }
+    
+    /**
+     * @return sequence of the last record known forced to disk
+     */
+    public long getLastSyncedSequence() {
+        return lastSyncedSequence;
+    }
+    
+    /**
+     * Appends a record of an operation about to be applied to a register, forcing it to disk as the durability
+     * requires.  A register applies the operation only once this returns, so if it throws the record is not in the
+     * journal either: nothing is written when the journal is closed or full, and a record that cannot be forced is
+     * cleared again.
+     * 
+     * @param registerId
+     * @param op
+     * @param numOfBills bills per denomination of the journal's profile put, taken or paid out
+     * @return sequence of the record
+     * @throws UncheckedIOException if the journal cannot grow or be forced, or is full
+     * @throws IllegalStateException if the journal is closed
+     */
+    public synchronized long append(final int registerId, final RegisterOp op, final int[] numOfBills) {
+        if(isClosed) {
+            throw new IllegalStateException("journal closed");
+        }
+        
+        if(mapped.remaining() < recordSize) {
+            grow();
+        }
+        
+        long sequence = lastSequence + 1;
+        int at = mapped.position();
+        
+        mapped.putLong(at, sequence);
+        mapped.putInt(at + 8, registerId);
+        mapped.putInt(at + 12, op.getCode());
+        for(int i = 0; i < numOfBills.length; i++) {
+            mapped.putInt(at + 16 + 4 * i, numOfBills[i]);
+        }
+        mapped.putInt(at + recordSize - 4, checksum(mapped, at));
+        
+        numUnsynced++;
+        if(durability == Durability.PER_OP || (durability == Durability.BATCHED && numUnsynced >= batchSize)) {
+            try {
+                mapped.force();
+            } catch(UncheckedIOException e) {
+                for(int i = at; i < at + recordSize; i += 4) {
+                    mapped.putInt(i, 0);
+                }
+                numUnsynced--;
+                throw e;
+            }
+            numUnsynced = 0;
+            lastSyncedSequence = sequence;
+        }
+        
+        mapped.position(at + recordSize);
+        
+        // publishes the record to replay
+        lastSequence = sequence;
+        
+        return sequence;
+    }
+    
+    /**
+     * Forces every appended record to disk.
+     */
+    public synchronized void sync() {
+        if(numUnsynced > 0) {
+            force();
+        }
+    }
+    
+    /**
+     * Applies every record to the registers in order, register id indexing the array.  Replay onto the registers
+     * before attaching this journal to them, or the replayed operations are journaled again.
+     * 
+     * @param registers
+     * @return number of records replayed
+     * @throws IllegalArgumentException if a record names a register not passed, or a register of another profile
+     * @throws IllegalStateException if a record is corrupt
+     */
+    public long replay(final Bank... registers) {
+        return replay(0, registers);
+    }
+    
+    /**
+     * Applies the records after a sequence to the registers in order, register id indexing the array.  Records
+     * appended while replay runs are not included.  Appends are not blocked.
+     * 
+     * @param afterSequence last sequence already applied to the registers, 0 for none
+     * @param registers
+     * @return number of records replayed
+     * @throws IllegalArgumentException if a record names a register not passed, or a register of another profile
+     * @throws IllegalStateException if a record is corrupt, or the records after the sequence were rolled away
+     */
+    public long replay(final long afterSequence, final Bank... registers) {
+        if(afterSequence < startSequence) {
+            throw new IllegalStateException("journal rolled through " + startSequence + ", cannot replay after "
+                    + afterSequence);
+        }
+        
+        for(Bank register : registers) {
+            if(!register.getProfile().equals(profile)) {
+                throw new IllegalArgumentException("register of profile " + register.getProfile().getName() 
+                        + " replayed from a journal of " + profile.getName());
+            }
+        }
+        
+        // sequence first, the mapping read after it is at least as new as the records it publishes
+        long last = lastSequence;
+        MappedByteBuffer view = mapped;
+        
+        int[] numOfBills = new int[profile.size()];
+        
+        for(long sequence = afterSequence + 1; sequence <= last; sequence++) {
+            int at = offsetOf(sequence);
+            
+            if(!isValidRecord(view, at, sequence)) {
+                throw new IllegalStateException("corrupt journal record " + sequence);
+            }
+            
+            int registerId = view.getInt(at + 8);
+            if(registerId < 0 || registerId >= registers.length) {
+                throw new IllegalArgumentException("no register for id " + registerId);
+            }
+            
+            for(int i = 0; i < numOfBills.length; i++) {
+                numOfBills[i] = view.getInt(at + 16 + 4 * i);
+            }
+            
+            registers[registerId].apply(RegisterOp.ofCode(view.getInt(at + 12)), numOfBills);
+        }
+        
+        return Math.max(0, last - afterSequence);
+    }
+    
+    /**
+     * Drops every record up to a sequence, once a snapshot holds the registers' state there.  The records after it are
+     * copied to a new file, forced, and renamed over the journal, so a crash leaves either the whole old journal or
+     * the new one.  Appends wait for the copy, which is only the records since the sequence.  Must not run alongside
+     * {@link #replay(long, Bank...)}, which {@link RegisterCheckpointer} ensures by doing both under one lock.
+     * 
+     * @param throughSequence last sequence no longer needed, nothing is dropped if at or before the start
+     * @throws IOException if the new file cannot be written, the journal is left as it was
+     * @throws IllegalArgumentException if the sequence is after the last record
+     */
+    public synchronized void roll(final long throughSequence) throws IOException {
+        if(isClosed) {
+            throw new IllegalStateException("journal closed");
+        }
+        if(throughSequence > lastSequence) {
+            throw new IllegalArgumentException("cannot roll through " + throughSequence + ", the journal ends at "
+                    + lastSequence);
+        }
+        if(throughSequence <= startSequence) {
+            return;
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        writeHeader(header, throughSequence);
+        
+        ByteBuffer tail = mapped.duplicate();
+        tail.limit(offsetOf(lastSequence + 1));
+        tail.position(offsetOf(throughSequence + 1));
+        
+        Path rolled = file.resolveSibling(file.getFileName() + ".roll");
+        try (FileChannel writing = FileChannel.open(rolled, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(header.hasRemaining()) {
+                writing.write(header);
+            }
+            while(tail.hasRemaining()) {
+                writing.write(tail);
+            }
+            writing.force(true);
+        }
+        
+        Files.move(rolled, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        // the old mapping stays readable until collected, the new one takes over from here
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        startSequence = throughSequence;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, 
+                Math.max(channel.size(), HEADER_SIZE + (long) recordSize * INITIAL_NUM_RECORDS));
+        mapped.position(offsetOf(lastSequence + 1));
+        
+        numUnsynced = 0;
+        lastSyncedSequence = lastSequence;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized(this) {
+            if(isClosed) {
+                return;
+            }
+            sync();
+            isClosed = true;
+        }
+        
+        if(flusher != null) {
+            flusher.interrupt();
+        }
+        channel.close();
+    }
+    
+    /**
+     * @param numDenominations
+     * @return bytes per record: sequence (long), register id (int), op (int), counts (int per denomination), checksum 
+     * (int)
+     */
+    static int recordSize(final int numDenominations) {
+        return 8 + 4 + 4 + 4 * numDenominations + 4;
+    }
+    
+    @Override
+    public String toString() {
+        return "RegisterJournal [profile=" + profile.getName() + ", durability=" + durability + ", startSequence="
+                + startSequence + ", lastSequence=" + getLastSequence() + ", lastSyncedSequence=" + lastSyncedSequence
+                + "]";
+    }
+    
+    
+    
+    private void writeHeader(final ByteBuffer buffer, final long start) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, profile.size());
+        buffer.putInt(8, profile.hashCode());
+        buffer.putInt(12, 0);
+        buffer.putLong(16, start);
+    }
+    
+    private static boolean isOfProfile(final MappedByteBuffer buffer, final CurrencyProfile profile) {
+        return buffer.getInt(4) == profile.size() && buffer.getInt(8) == profile.hashCode();
+    }
+    
+    private void force() {
+        mapped.force();
+        numUnsynced = 0;
+        lastSyncedSequence = lastSequence;
+    }
+    
+    /**
+     * Remaps the file at twice the size, up to the most whole records a mapping can address.  The old mapping is left
+     * to the garbage collector.
+     */
+    private void grow() {
+        long maxCapacity = HEADER_SIZE + (Integer.MAX_VALUE - HEADER_SIZE) / recordSize * (long) recordSize;
+        long capacity = Math.min(2L * mapped.capacity(), maxCapacity);
+        if(capacity - mapped.position() < recordSize) {
+            throw new UncheckedIOException(new IOException("journal full after " + lastSequence 
+                    + ", roll it after a snapshot"));
+        }
+        
+        try {
+            int position = mapped.position();
+            mapped.force();
+            
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            mapped.position(position);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void flushEvery(final long flushIntervalMillis) {
+        while(!isClosed) {
+            try {
+                Thread.sleep(flushIntervalMillis);
+            } catch(InterruptedException e) {
+                return;
+            }
+            
+            // forces outside the lock, so appends meanwhile never wait on the disk
+            MappedByteBuffer forcing;
+            long forcedSequence;
+            synchronized(this) {
+                if(isClosed || numUnsynced == 0) {
+                    continue;
+                }
+                forcing = mapped;
+                forcedSequence = lastSequence;
+            }
+            
+            forcing.force();
+            
+            synchronized(this) {
+                // growing forces the records it remaps, and rolling marks every record synced
+                if(forcedSequence > lastSyncedSequence) {
+                    numUnsynced = (int) (lastSequence - forcedSequence);
+                    lastSyncedSequence = forcedSequence;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds the last whole record, the one before the first that is not whole, and zeroes every record after it up to
+     * the end of the file.
+     * 
+     * @param fileSize bytes of the file before it was mapped
+     * @return sequence of the last whole record, the start sequence if none
+     */
+    private long findEnd(final MappedByteBuffer buffer, final long fileSize) {
+        long last = startSequence;
+        long at = HEADER_SIZE;
+        while(at + recordSize <= buffer.capacity() && isValidRecord(buffer, (int) at, last + 1)) {
+            last++;
+            at += recordSize;
+        }
+        
+        boolean isStale = false;
+        for(long end = Math.min(fileSize, buffer.capacity()); at + recordSize <= end; at += recordSize) {
+            if(!isZero(buffer, (int) at)) {
+                for(int i = (int) at; i < at + recordSize; i += 4) {
+                    buffer.putInt(i, 0);
+                }
+                isStale = true;
+            }
+        }
+        if(isStale) {
+            buffer.force();
+        }
+        
+        return last;
+    }
+    
+    private int offsetOf(final long sequence) {
+        return (int) (HEADER_SIZE + (sequence - startSequence - 1) * recordSize);
+    }
+    
+    private boolean isZero(final MappedByteBuffer buffer, final int at) {
+        for(int i = at; i < at + recordSize; i += 4) {
+            if(buffer.getInt(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean isValidRecord(final MappedByteBuffer buffer, final int at, final long expectedSequence) {
+        return buffer.getLong(at) == expectedSequence
+                && RegisterOp.ofCode(buffer.getInt(at + 12)) != null
+                && buffer.getInt(at + recordSize - 4) == checksum(buffer, at);
+    }
+    
+    private int checksum(final MappedByteBuffer buffer, final int at) {
+        int hash = 0x811c9dc5;
+        for(int i = at; i < at + recordSize - 4; i += 4) {
+            hash ^= buffer.getInt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,214 @@
+package com.james;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for a {@link RegisterServer}.  Opens a number of connections, each pipelining a fixed number of
+ * commands (alternating a put of one bill of every type and change for the same $38) without waiting for responses,
+ * and reports throughput once every response has come back.
+ * 
+ * Usage: RegisterLoadClient host port [connections] [commandsPerConnection] [text|binary]
+ * 
+ * @author james
+ */
+public class RegisterLoadClient {
+    
+    private static final int DEFAULT_CONNECTIONS = 16;
+    private static final int DEFAULT_COMMANDS_PER_CONNECTION = 100_000;
+    
+    private static final byte[] TEXT_PUT = "put 1 1 1 1 1\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXT_CHANGE = "change 38\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXT_QUIT = "quit\n".getBytes(StandardCharsets.US_ASCII);
+    
+    private static final int BATCH_SIZE = 256;
+    
+    public static void main(final String args[]) throws Exception {
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        int numConnections = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CONNECTIONS;
+        int numCommands = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_COMMANDS_PER_CONNECTION;
+        boolean isBinary = args.length > 4 && "binary".equals(args[4]);
+        
+        long elapsedNanos = run(address, numConnections, numCommands, isBinary);
+        
+        long total = (long) numConnections * numCommands;
+        System.out.printf("%d connections x %d %s commands in %.1f ms: %.0f commands/s%n",
+                numConnections, numCommands, isBinary ? "binary" : "text", elapsedNanos / 1e6,
+                total * 1e9 / elapsedNanos);
+    }
+    
+    /**
+     * Drives the server until every connection has had all its responses.  Connections stay open until then.
+     * 
+     * @param address
+     * @param numConnections
+     * @param numCommands per connection
+     * @param isBinary true for the binary framing
+     * @return elapsed nanoseconds from the first command sent to the last response read
+     * @throws Exception
+     */
+    public static long run(final InetSocketAddress address, final int numConnections, final int numCommands,
+            final boolean isBinary) throws Exception {
+        return run(address, numConnections, numCommands, isBinary, false);
+    }
+    
+    /**
+     * Drives the server until every connection has had all its responses.
+     * 
+     * @param address
+     * @param numConnections
+     * @param numCommands per connection
+     * @param isBinary true for the binary framing
+     * @param isQuitAtEnd true to end each connection's commands with a quit, so a server with a bounded number of
+     * session threads can move on to queued connections
+     * @return elapsed nanoseconds from the first command sent to the last response read
+     * @throws Exception
+     */
+    public static long run(final InetSocketAddress address, final int numConnections, final int numCommands,
+            final boolean isBinary, final boolean isQuitAtEnd) throws Exception {
+        
+        Socket[] sockets = new Socket[numConnections];
+        for(int i = 0; i < numConnections; i++) {
+            sockets[i] = new Socket();
+            sockets[i].setTcpNoDelay(true);
+            sockets[i].connect(address);
+        }
+        
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2 * numConnections);
+        AtomicLong failures = new AtomicLong();
+        
+        for(Socket socket : sockets) {
+            startDaemon(() -> send(socket, numCommands, isBinary, isQuitAtEnd), start, done, failures);
+            startDaemon(() -> receive(socket, numCommands, isBinary), start, done, failures);
+        }
+        
+        long startNanos = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        
+        for(Socket socket : sockets) {
+            socket.close();
+        }
+        
+        if(failures.get() > 0) {
+            throw new IOException(failures.get() + " connections failed");
+        }
+        
+        return elapsedNanos;
+    }
+    
+    
+    
+    private interface IOTask {
+        void run() throws IOException;
+    }
+    
+    private static void startDaemon(final IOTask task, final CountDownLatch start, final CountDownLatch done,
+            final AtomicLong failures) {
+        
+        Thread thread = new Thread(() -> {
+            try {
+                start.await();
+                task.run();
+            } catch(IOException | InterruptedException e) {
+                failures.incrementAndGet();
+            } finally {
+                done.countDown();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private static void send(final Socket socket, final int numCommands, final boolean isBinary,
+            final boolean isQuitAtEnd) throws IOException {
+        
+        OutputStream out = socket.getOutputStream();
+        
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE * 32);
+        if(isBinary) {
+            batch.put((byte) RegisterServer.BINARY_MAGIC);
+        }
+        
+        for(int i = 0; i < numCommands; i++) {
+            boolean isPut = (i & 1) == 0;
+            
+            if(isBinary) {
+                if(isPut) {
+                    batch.put((byte) Main.VALID_CMDS.put.ordinal());
+                    for(int j = 0; j < BillType.values().length; j++) {
+                        batch.putInt(1);
+                    }
+                } else {
+                    batch.put((byte) Main.VALID_CMDS.change.ordinal()).putInt(38);
+                }
+            } else {
+                batch.put(isPut ? TEXT_PUT : TEXT_CHANGE);
+            }
+            
+            if(batch.remaining() < 32) {
+                out.write(batch.array(), 0, batch.position());
+                batch.clear();
+            }
+        }
+        
+        if(isQuitAtEnd) {
+            if(isBinary) {
+                batch.put((byte) Main.VALID_CMDS.quit.ordinal());
+            } else {
+                batch.put(TEXT_QUIT);
+            }
+        }
+        
+        out.write(batch.array(), 0, batch.position());
+        
+        out.flush();
+    }
+    
+    private static void receive(final Socket socket, final int numCommands, final boolean isBinary)
+            throws IOException {
+        
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[64 * 1024];
+        
+        // not before every connection is open, a server with bounded sessions may only greet once others end
+        readGreeting(in);
+        
+        long remaining = isBinary ? (long) numCommands * RegisterServer.BINARY_RESPONSE_SIZE : numCommands;
+        
+        while(remaining > 0) {
+            int numRead = in.read(buffer);
+            if(numRead < 0) {
+                throw new IOException("connection closed with " + remaining + " responses outstanding");
+            }
+            
+            if(isBinary) {
+                remaining -= numRead;
+            } else {
+                for(int i = 0; i < numRead; i++) {
+                    if(buffer[i] == '\n') {
+                        remaining--;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void readGreeting(final InputStream in) throws IOException {
+        int b;
+        while((b = in.read()) != '\n') {
+            if(b < 0) {
+                throw new IOException("connection closed before greeting");
+            }
+        }
+    }
+}
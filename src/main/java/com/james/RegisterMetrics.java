@@ -0,0 +1,331 @@
+package com.james;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToDoubleFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Production instrumentation of a register: latency per console command as dispatched by {@link Main}, latency per
+ * {@link Bank} operation, a {@link RegisterOp}, a count per {@link SimpleException.Error} of the operations the
+ * register rejected, and the change solver's work per request.  Recording is lock-free and allocation free, see {@link LatencyHistogram}, so metrics can stay
+ * attached in the hot path.
+ * 
+ * Every command and operation is counted, but only one in every sample interval is timed.  Reading the clock costs
+ * more than most operations it would time, and a steady sample of them gives the same percentiles.
+ * 
+ * Read through the stats console command, or through JMX once {@link #registerMBean(String)} is called.
+ * 
+ * @author james
+ */
+public class RegisterMetrics implements RegisterMetricsMXBean {
+    
+    private static final Main.VALID_CMDS[] COMMANDS = Main.VALID_CMDS.values();
+    private static final RegisterOp[] OPERATIONS = RegisterOp.values();
+    private static final SimpleException.Error[] ERRORS = SimpleException.Error.values();
+    
+    public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    /**
+     * Start time handed out for calls not sampled
+     */
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    
+    private final long sampleMask;
+    
+    private final AtomicLongArray commandCounts = new AtomicLongArray(COMMANDS.length);
+    private final AtomicLongArray operationCounts = new AtomicLongArray(OPERATIONS.length);
+    private final LatencyHistogram[] commandLatency = new LatencyHistogram[COMMANDS.length];
+    private final LatencyHistogram[] operationLatency = new LatencyHistogram[OPERATIONS.length];
+    private final AtomicLongArray errorCounts = new AtomicLongArray(ERRORS.length);
+    private final LatencyHistogram solverNodes = new LatencyHistogram();
+    
+    /**
+     * Constructs metrics timing one in every {@value #DEFAULT_SAMPLE_INTERVAL} calls.
+     */
+    public RegisterMetrics() {
+        this(DEFAULT_SAMPLE_INTERVAL);
+    }
+    
+    /**
+     * @param sampleInterval time one in this many calls of each command and operation, a power of two, 1 to time all
+     */
+    public RegisterMetrics(final int sampleInterval) {
+        if(sampleInterval <= 0 || Integer.bitCount(sampleInterval) != 1) {
+            throw new IllegalArgumentException("sampleInterval must be a power of two: " + sampleInterval);
+        }
+        
+        this.sampleMask = sampleInterval - 1;
+        for(int i = 0; i < COMMANDS.length; i++) {
+            commandLatency[i] = new LatencyHistogram();
+        }
+        for(int i = 0; i < OPERATIONS.length; i++) {
+            operationLatency[i] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * Registers this with the platform MBean server as com.james:type=RegisterMetrics,name=name.
+     * 
+     * @param name
+     * @return the name registered under
+     * @throws JMException
+     */
+    public ObjectName registerMBean(final String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.james:type=RegisterMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+    
+    /**
+     * Counts a command about to run.
+     * 
+     * @param command
+     * @return start time to pass to {@link #endCommand(Main.VALID_CMDS, long)}
+     */
+    public long startCommand(final Main.VALID_CMDS command) {
+        return start(commandCounts, command.ordinal());
+    }
+    
+    /**
+     * Records the command's latency, from reading its arguments to its response being ready, if it was sampled.
+     * 
+     * @param command
+     * @param start from {@link #startCommand(Main.VALID_CMDS)}
+     */
+    public void endCommand(final Main.VALID_CMDS command, final long start) {
+        end(commandLatency[command.ordinal()], start);
+    }
+    
+    /**
+     * Counts a {@link Bank} operation about to run.
+     * 
+     * @param operation
+     * @return start time to pass to {@link #endOperation(RegisterOp, long)}
+     */
+    public long startOperation(final RegisterOp operation) {
+        return start(operationCounts, operation.ordinal());
+    }
+    
+    /**
+     * Records the operation's latency if it was sampled.
+     * 
+     * @param operation
+     * @param start from {@link #startOperation(RegisterOp)}
+     */
+    public void endOperation(final RegisterOp operation, final long start) {
+        end(operationLatency[operation.ordinal()], start);
+    }
+    
+    /**
+     * Counts an error.  A register with metrics attached counts the errors of its own operations, once each.
+     * 
+     * @param error
+     */
+    public void recordError(final SimpleException.Error error) {
+        errorCounts.incrementAndGet(error.ordinal());
+    }
+    
+    /**
+     * @param numNodesVisited by one change solve, see {@link ChangeSolver#getNumNodesVisited()}
+     */
+    public void recordSolverNodes(final int numNodesVisited) {
+        solverNodes.record(numNodesVisited);
+    }
+    
+    public long getCommandCount(final Main.VALID_CMDS command) {
+        return commandCounts.get(command.ordinal());
+    }
+    
+    public long getOperationCount(final RegisterOp operation) {
+        return operationCounts.get(operation.ordinal());
+    }
+    
+    /**
+     * @param command
+     * @return latencies of the sampled calls of the command
+     */
+    public LatencyHistogram getCommandLatency(final Main.VALID_CMDS command) {
+        return commandLatency[command.ordinal()];
+    }
+    
+    public LatencyHistogram getOperationLatency(final RegisterOp operation) {
+        return operationLatency[operation.ordinal()];
+    }
+    
+    public long getErrorCount(final SimpleException.Error error) {
+        return errorCounts.get(error.ordinal());
+    }
+    
+    public LatencyHistogram getSolverNodes() {
+        return solverNodes;
+    }
+    
+    /**
+     * Appends one line per command and operation seen, one of error counts and one of solver work.
+     * 
+     * @param report
+     */
+    public void appendReport(final StringBuilder report) {
+        for(Main.VALID_CMDS command : COMMANDS) {
+            appendLatency(report, "command ", command, commandCounts, commandLatency);
+        }
+        for(RegisterOp operation : OPERATIONS) {
+            appendLatency(report, "operation ", operation, operationCounts, operationLatency);
+        }
+        
+        report.append("errors");
+        for(SimpleException.Error error : ERRORS) {
+            report.append(' ').append(error.name()).append('=').append(errorCounts.get(error.ordinal()));
+        }
+        report.append(LINE_SEPARATOR);
+        
+        report.append("solver runs=").append(solverNodes.getCount())
+                .append(" nodes p50=").append(solverNodes.getValueAtPercentile(50))
+                .append(" p99=").append(solverNodes.getValueAtPercentile(99))
+                .append(" max=").append(solverNodes.getMax())
+                .append(LINE_SEPARATOR);
+    }
+    
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder(512);
+        appendReport(report);
+        return report.toString();
+    }
+    
+    @Override
+    public void reset() {
+        for(int i = 0; i < COMMANDS.length; i++) {
+            commandCounts.set(i, 0);
+            commandLatency[i].reset();
+        }
+        for(int i = 0; i < OPERATIONS.length; i++) {
+            operationCounts.set(i, 0);
+            operationLatency[i].reset();
+        }
+        for(int i = 0; i < ERRORS.length; i++) {
+            errorCounts.set(i, 0);
+        }
+        solverNodes.reset();
+    }
+    
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        return byName(COMMANDS, commandCounts);
+    }
+    
+    @Override
+    public Map<String, Double> getCommandLatencyP50Micros() {
+        return byNameMicros(COMMANDS, commandLatency, histogram -> histogram.getValueAtPercentile(50));
+    }
+    
+    @Override
+    public Map<String, Double> getCommandLatencyP99Micros() {
+        return byNameMicros(COMMANDS, commandLatency, histogram -> histogram.getValueAtPercentile(99));
+    }
+    
+    @Override
+    public Map<String, Double> getCommandLatencyMaxMicros() {
+        return byNameMicros(COMMANDS, commandLatency, LatencyHistogram::getMax);
+    }
+    
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        return byName(OPERATIONS, operationCounts);
+    }
+    
+    @Override
+    public Map<String, Double> getOperationLatencyP99Micros() {
+        return byNameMicros(OPERATIONS, operationLatency, histogram -> histogram.getValueAtPercentile(99));
+    }
+    
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(SimpleException.Error error : ERRORS) {
+            counts.put(error.name(), errorCounts.get(error.ordinal()));
+        }
+        return counts;
+    }
+    
+    @Override
+    public long getSolverRuns() {
+        return solverNodes.getCount();
+    }
+    
+    @Override
+    public long getSolverNodesP50() {
+        return solverNodes.getValueAtPercentile(50);
+    }
+    
+    @Override
+    public long getSolverNodesP99() {
+        return solverNodes.getValueAtPercentile(99);
+    }
+    
+    @Override
+    public long getSolverNodesMax() {
+        return solverNodes.getMax();
+    }
+    
+    @Override
+    public String toString() {
+        return "RegisterMetrics [" + getReport() + "]";
+    }
+    
+    
+    
+    private long start(final AtomicLongArray counts, final int index) {
+        return (counts.incrementAndGet(index) & sampleMask) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+    
+    private static void end(final LatencyHistogram histogram, final long start) {
+        if(start != NOT_TIMED) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+    
+    private static void appendLatency(final StringBuilder report, final String kind, final Enum<?> key,
+            final AtomicLongArray counts, final LatencyHistogram[] histograms) {
+        
+        long count = counts.get(key.ordinal());
+        if(count == 0) {
+            return;
+        }
+        
+        LatencyHistogram histogram = histograms[key.ordinal()];
+        report.append(kind).append(key.name())
+                .append(" count=").append(count)
+                .append(" sampled=").append(histogram.getCount())
+                .append(" p50=").append(histogram.getValueAtPercentile(50)).append("ns")
+                .append(" p99=").append(histogram.getValueAtPercentile(99)).append("ns")
+                .append(" p999=").append(histogram.getValueAtPercentile(99.9)).append("ns")
+                .append(" max=").append(histogram.getMax()).append("ns")
+                .append(LINE_SEPARATOR);
+    }
+    
+    private static Map<String, Long> byName(final Enum<?>[] keys, final AtomicLongArray counts) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for(Enum<?> key : keys) {
+            values.put(key.name(), counts.get(key.ordinal()));
+        }
+        return values;
+    }
+    
+    private static Map<String, Double> byNameMicros(final Enum<?>[] keys, final LatencyHistogram[] histograms,
+            final ToDoubleFunction<LatencyHistogram> nanos) {
+        
+        Map<String, Double> values = new LinkedHashMap<>();
+        for(Enum<?> key : keys) {
+            values.put(key.name(), nanos.applyAsDouble(histograms[key.ordinal()]) / 1000);
+        }
+        return values;
+    }
+}
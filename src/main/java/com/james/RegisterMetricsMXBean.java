@@ -0,0 +1,41 @@
+package com.james;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link RegisterMetrics}.  Latencies are in microseconds, maps are keyed by command, operation or error
+ * name.
+ * 
+ * @author james
+ */
+public interface RegisterMetricsMXBean {
+    
+    Map<String, Long> getCommandCounts();
+    
+    Map<String, Double> getCommandLatencyP50Micros();
+    
+    Map<String, Double> getCommandLatencyP99Micros();
+    
+    Map<String, Double> getCommandLatencyMaxMicros();
+    
+    Map<String, Long> getOperationCounts();
+    
+    Map<String, Double> getOperationLatencyP99Micros();
+    
+    Map<String, Long> getErrorCounts();
+    
+    long getSolverRuns();
+    
+    long getSolverNodesP50();
+    
+    long getSolverNodesP99();
+    
+    long getSolverNodesMax();
+    
+    /**
+     * @return the same report as the stats console command
+     */
+    String getReport();
+    
+    void reset();
+}
@@ -0,0 +1,66 @@
+package com.james;
+
+/**
+ * An operation that changes a register's counts, as journaled by {@link RegisterJournal}, streamed by
+ * {@link RegisterFeed} and timed by {@link RegisterMetrics}.  Console commands are mapped onto these by {@link Main}.
+ * 
+ * Each operation has a code fixed for good, which the journal writes in place of its name or ordinal, so operations
+ * can be added or reordered without making existing journals unreadable.
+ * 
+ * @author james
+ */
+public enum RegisterOp {
+    
+    /**
+     * Adds the bills to the register
+     */
+    put(1),
+    
+    /**
+     * Subtracts the bills from the register
+     */
+    take(2),
+    
+    /**
+     * Subtracts the bills paid out as change
+     */
+    change(3),
+    
+    /**
+     * Adds the net change of a committed {@link Bank.Transaction}, whose counts are signed
+     */
+    transaction(4);
+    
+    private final int code;
+    
+    private RegisterOp(final int code) {
+        this.code = code;
+    }
+    
+    /**
+     * @return code written to the journal, never reused by another operation
+     */
+    public int getCode() {
+        return code;
+    }
+    
+    /**
+     * @return 1 if the operation adds its bills to the register, -1 if it subtracts them
+     */
+    public int getSign() {
+        return this == put || this == transaction ? 1 : -1;
+    }
+    
+    /**
+     * @param code
+     * @return the operation written as the code, null if there is none
+     */
+    public static RegisterOp ofCode(final int code) {
+        for(RegisterOp op : values()) {
+            if(op.code == code) {
+                return op;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,408 @@
+package com.james;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of independent {@link Bank} shards, one per core or lane, so concurrent lanes mostly touch only their own
+ * drawer.  Each shard is guarded by its own lock.
+ * 
+ * Deposits go to the lane's shard.  Change is made from the lane's shard when it can, otherwise it is stolen from the
+ * first other shard that can make it alone, and failing that it is made from the bills of the whole pool, so a request
+ * is only declined when the pool as a whole cannot pay it.  The same holds for takes.
+ * 
+ * Lanes are shard indexes; the no-lane methods pick a shard from the calling thread.
+ * 
+ * @author james
+ */
+public class RegisterPool {
+    
+    private final CurrencyProfile profile;
+    private final Bank[] shards;
+    private final ReentrantLock[] locks;
+    
+    private volatile ChangePolicy changePolicy = ChangePolicy.FEWEST_BILLS;
+    
+    /**
+     * Constructs a pool of empty shards, one per available processor.
+     */
+    public RegisterPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Constructs a pool of empty shards.
+     * 
+     * @param numShards
+     */
+    public RegisterPool(final int numShards) {
+        this(CurrencyProfile.DEFAULT, numShards);
+    }
+    
+    /**
+     * Constructs a pool of empty shards of the profile.
+     * 
+     * @param profile
+     * @param numShards
+     */
+    public RegisterPool(final CurrencyProfile profile, final int numShards) {
+        if(numShards <= 0) {
+            throw new IllegalArgumentException("numShards must be positive: " + numShards);
+        }
+        
+        this.profile = profile;
+        shards = new Bank[numShards];
+        locks = new ReentrantLock[numShards];
+        for(int i = 0; i < numShards; i++) {
+            shards[i] = new Bank(profile);
+            locks[i] = new ReentrantLock();
+        }
+    }
+    
+    public CurrencyProfile getProfile() {
+        return profile;
+    }
+    
+    public ChangePolicy getChangePolicy() {
+        return changePolicy;
+    }
+    
+    /**
+     * Chooses how change is made by every shard and from the pool as a whole, see
+     * {@link Bank#setChangePolicy(ChangePolicy)}.
+     * 
+     * @param changePolicy
+     * @throws IllegalArgumentException if the policy cannot serve this pool's profile
+     */
+    public void setChangePolicy(final ChangePolicy changePolicy) {
+        changePolicy.check(profile);
+        
+        lockAll();
+        try {
+            this.changePolicy = changePolicy;
+            for(Bank shard : shards) {
+                shard.setChangePolicy(changePolicy);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    public int getNumShards() {
+        return shards.length;
+    }
+    
+    /**
+     * @return shard used by the calling thread when no lane is given
+     */
+    public int localShard() {
+        return (int) (Thread.currentThread().getId() % shards.length);
+    }
+    
+    /**
+     * @param shard
+     * @return string representation of the one shard in the format: $XX #$20s #$10s #$5s #$2s #$1s
+     */
+    public String showShard(final int shard) {
+        locks[shard].lock();
+        try {
+            return shards[shard].show();
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "RegisterPool [numShards=" + shards.length + ", " + show() + "]";
+    }
+    
+    
+    
+    /**
+     * @return string representation of the pool as a whole, taken consistently across all shards, in the format:
+     * $XX #$20s #$10s #$5s #$2s #$1s, also when the shards together hold more bills than a bank counts
+     */
+    public String show() {
+        long totalValue = 0;
+        long[] numOfBills = new long[profile.size()];
+        
+        lockAll();
+        try {
+            for(Bank shard : shards) {
+                totalValue += shard.getTotalValue();
+                for(int i = 0; i < numOfBills.length; i++) {
+                    numOfBills[i] += shard.getNumOfBills(i);
+                }
+            }
+        } finally {
+            unlockAll();
+        }
+        
+        StringBuilder show = new StringBuilder(64);
+        show.append('$').append(totalValue);
+        for(long count : numOfBills) {
+            show.append(' ').append(count);
+        }
+        return show.toString();
+    }
+    
+    /**
+     * @return total value of bills across all shards, taken consistently across all shards from each shard's running
+     * total without copying any counts
+     */
+    public long getTotalValue() {
+        long total = 0;
+        
+        lockAll();
+        try {
+            for(Bank shard : shards) {
+                total += shard.getTotalValue();
+            }
+        } finally {
+            unlockAll();
+        }
+        
+        return total;
+    }
+    
+    /**
+     * @return a new {@link Bank} holding the combined counts of all shards, taken consistently across all shards
+     * @throws SimpleException InvalidAmount if the shards together hold more bills of a denomination than a bank
+     * counts
+     */
+    public Bank snapshot() throws SimpleException {
+        Bank combined = new Bank(profile);
+        
+        lockAll();
+        try {
+            combineInto(combined);
+        } finally {
+            unlockAll();
+        }
+        
+        return combined;
+    }
+    
+    /**
+     * Adds the passed bank to the calling thread's shard.
+     * 
+     * @param bankToPut
+     * @throws SimpleException
+     */
+    public void put(final Bank bankToPut) throws SimpleException {
+        put(localShard(), bankToPut);
+    }
+    
+    /**
+     * Adds the passed bank to the lane's shard.
+     * 
+     * @param shard
+     * @param bankToPut
+     * @throws SimpleException
+     */
+    public void put(final int shard, final Bank bankToPut) throws SimpleException {
+        locks[shard].lock();
+        try {
+            shards[shard].put(bankToPut);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+    
+    /**
+     * Subtracts the passed bank from the calling thread's shard, or from the pool.
+     * 
+     * @param bankToTake
+     * @throws SimpleException
+     * @see #take(int, Bank)
+     */
+    public void take(final Bank bankToTake) throws SimpleException {
+        take(localShard(), bankToTake);
+    }
+    
+    /**
+     * Subtracts the passed bank from the lane's shard when it holds all of it, otherwise from the bills of the whole
+     * pool, lane's shard first.
+     * 
+     * @param shard
+     * @param bankToTake
+     * @throws SimpleException
+     */
+    public void take(final int shard, final Bank bankToTake) throws SimpleException {
+        
+        if(bankToTake == null) {
+            throw SimpleException.Error.InvalidAmount.getException();
+        }
+        
+        if(!profile.equals(bankToTake.getProfile())) {
+            throw SimpleException.Error.MismatchDenomination.getException();
+        }
+        
+        int[] numOfBills = new int[profile.size()];
+        for(int i = 0; i < numOfBills.length; i++) {
+            numOfBills[i] = bankToTake.getNumOfBills(i);
+            if(numOfBills[i] < 0) {
+                throw SimpleException.Error.InvalidAmount.getException();
+            }
+        }
+        
+        locks[shard].lock();
+        try {
+            // take is all or nothing, a shard that does not hold all of it is left as it was
+            if(shards[shard].tryTake(bankToTake).isOk()) {
+                return;
+            }
+        } finally {
+            locks[shard].unlock();
+        }
+        
+        lockAll();
+        try {
+            Bank combined = new Bank(profile);
+            combineInto(combined);
+            
+            if(!holds(combined, numOfBills)) {
+                throw SimpleException.Error.InsufficientFunds.getException();
+            }
+            
+            takeAcrossShards(shard, numOfBills);
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    /**
+     * Makes change for the amount and takes it from the calling thread's shard, another shard or the pool.
+     * 
+     * @param amount
+     * @param out receives the number of bills taken per denomination
+     * @return number of bills taken
+     * @throws SimpleException
+     * @see #changeAndTake(int, int, int[])
+     */
+    public int changeAndTake(final int amount, final int[] out) throws SimpleException {
+        return changeAndTake(localShard(), amount, out);
+    }
+    
+    /**
+     * Makes change for the amount and takes it.  The lane's shard is tried first.  When it cannot make the change the
+     * request is stolen by the first other shard that can, and failing that the change is made from the bills of the
+     * whole pool, lane's shard first.
+     * 
+     * @param shard
+     * @param amount
+     * @param out receives the number of bills taken per denomination
+     * @return number of bills taken
+     * @throws SimpleException
+     */
+    public int changeAndTake(final int shard, final int amount, final int[] out) throws SimpleException {
+        
+        if(amount < 0) {
+            throw SimpleException.Error.InvalidAmount.getException();
+        }
+        
+        for(int i = 0; i < shards.length; i++) {
+            int candidate = (shard + i) % shards.length;
+            
+            locks[candidate].lock();
+            try {
+                // a shard that cannot make it declines with a status, and the next is tried
+                if(shards[candidate].getTotalValue() >= amount
+                        && shards[candidate].tryChangeAndTake(amount, out).isOk()) {
+                    return countBills(out);
+                }
+            } finally {
+                locks[candidate].unlock();
+            }
+        }
+        
+        lockAll();
+        try {
+            Bank combined = new Bank(profile);
+            combined.setChangePolicy(changePolicy);
+            combineInto(combined);
+            
+            int numOfBillsForChange = combined.change(amount, out);
+            takeAcrossShards(shard, out);
+            
+            return numOfBillsForChange;
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    
+    
+    /**
+     * Takes bills per denomination from the shards starting at the lane's.  All locks must be held and
+     * the pool must hold the bills.
+     */
+    private void takeAcrossShards(final int shard, final int[] numOfBills) throws SimpleException {
+        int[] stillNeeded = numOfBills.clone();
+        
+        for(int i = 0; i < shards.length; i++) {
+            Bank iterShard = shards[(shard + i) % shards.length];
+            
+            Bank fromShard = new Bank(profile);
+            for(int j = 0; j < stillNeeded.length; j++) {
+                int numFromShard = Math.min(stillNeeded[j], iterShard.getNumOfBills(j));
+                
+                fromShard.setNumOfBills(j, numFromShard);
+                stillNeeded[j] -= numFromShard;
+            }
+            
+            iterShard.take(fromShard);
+        }
+    }
+    
+    /**
+     * Sums every shard's counts into the bank.  All locks must be held.
+     * 
+     * @throws SimpleException InvalidAmount if the shards together hold more bills of a denomination than a bank
+     * counts
+     */
+    private void combineInto(final Bank combined) throws SimpleException {
+        for(int i = 0; i < profile.size(); i++) {
+            long numOfBills = 0;
+            for(Bank shard : shards) {
+                numOfBills += shard.getNumOfBills(i);
+            }
+            if(numOfBills > Integer.MAX_VALUE) {
+                throw SimpleException.Error.InvalidAmount.getException();
+            }
+            combined.setNumOfBills(i, (int) numOfBills);
+        }
+    }
+    
+    private static int countBills(final int[] numOfBills) {
+        int total = 0;
+        for(int i = 0; i < numOfBills.length; i++) {
+            total += numOfBills[i];
+        }
+        return total;
+    }
+    
+    private static boolean holds(final Bank bank, final int[] numOfBills) {
+        for(int i = 0; i < numOfBills.length; i++) {
+            if(bank.getNumOfBills(i) < numOfBills[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Locks every shard in index order, the one order used anywhere more than one lock is held.
+     */
+    private void lockAll() {
+        for(ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+    
+    private void unlockAll() {
+        for(int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package com.james;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Non-blocking TCP server driving one register from many point-of-sale clients.  One thread runs a {@link Selector}
+ * over every connection, so mutations of the register are serialized by construction, while each connection may
+ * pipeline as many requests as it likes.  Responses on a connection come back in request order.
+ * 
+ * Every connection is greeted with a "ready" line.  After that it speaks one of two framings, chosen by its first
+ * byte:
+ * <ul>
+ * <li>Text, the same {@link Main.VALID_CMDS} commands as the console, one command per line, answered with the same
+ * lines a console session prints.</li>
+ * <li>Binary, selected by a first byte of {@link #BINARY_MAGIC}.  Each request is an op byte (the
+ * {@link Main.VALID_CMDS} ordinal) followed by its big-endian int arguments: one count per denomination of the
+ * register's {@link CurrencyProfile} for put and take, one amount for change, none for show and quit; stats is text
+ * only.  Every request but quit is answered with a fixed size frame, {@value #BINARY_RESPONSE_SIZE} bytes for the
+ * default profile: the {@link Status} ordinal, the register's total as a long, and its counts as ints.</li>
+ * </ul>
+ * 
+ * @author james
+ */
+public class RegisterServer implements Closeable {
+    
+    public static final int BINARY_MAGIC = 0xB1;
+    
+    /**
+     * Size of a binary response from a register of the default profile, see {@link #binaryResponseSize(CurrencyProfile)}
+     */
+    public static final int BINARY_RESPONSE_SIZE = 1 + 8 + 5 * 4;
+    
+    private static final int DEFAULT_PORT = 7070;
+    
+    private static final int INPUT_BUFFER_SIZE = 8 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Stop taking requests off a connection once this much output is waiting to be written.
+     */
+    private static final int OUTPUT_HIGH_WATER = OUTPUT_BUFFER_SIZE - 4 * 1024;
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    private static final byte[] GREETING = ("ready" + LINE_SEPARATOR).getBytes(StandardCharsets.US_ASCII);
+    
+    private static final Main.VALID_CMDS[] COMMANDS = Main.VALID_CMDS.values();
+    
+    /**
+     * Per connection state.  Only ever touched by the selector thread.
+     */
+    private static final class Connection {
+        
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+        
+        private boolean isFramingKnown;
+        private boolean isBinary;
+        private boolean isQuit;
+        
+        private Connection(final SocketChannel channel) {
+            this.channel = channel;
+            out.put(GREETING);
+        }
+    }
+    
+    private final Bank register;
+    private final int numDenominations;
+    private final int binaryResponseSize;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    
+    // scratch reused by the selector thread for every request
+    private final CommandReader reader = new CommandReader();
+    private final byte[] line = new byte[INPUT_BUFFER_SIZE];
+    private final StringBuilder response = new StringBuilder(64);
+    private final int[] changeBuffer;
+    
+    private volatile boolean isRunning = true;
+    private Thread selectorThread;
+    
+    /**
+     * Binds a server for the register.  Call {@link #start()} to begin serving.
+     * 
+     * @param address to listen on, port 0 for any free port
+     * @param register
+     * @throws IOException
+     */
+    public RegisterServer(final InetSocketAddress address, final Bank register) throws IOException {
+        this.register = register;
+        this.numDenominations = register.getProfile().size();
+        this.binaryResponseSize = binaryResponseSize(register.getProfile());
+        this.changeBuffer = new int[numDenominations];
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    
+    /**
+     * Serves a new empty register, of the profile named as for {@link Main}, with metrics published over JMX, until 
+     * killed.
+     * 
+     * @param args optional port, default {@value #DEFAULT_PORT}
+     * @throws IOException
+     */
+    public static void main(final String args[]) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        
+        Bank register = new Bank(Main.loadProfile());
+        register.setChangePolicy(Main.loadPolicy());
+        Main.attachMetrics(register, "register-server-" + port);
+        
+        RegisterServer server = new RegisterServer(new InetSocketAddress(port), register);
+        System.out.println("serving on port " + server.getPort());
+        server.run();
+    }
+    
+    /**
+     * @param profile
+     * @return size of a binary response from a register of the profile
+     */
+    public static int binaryResponseSize(final CurrencyProfile profile) {
+        return 1 + 8 + 4 * profile.size();
+    }
+    
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    /**
+     * Starts the selector thread.
+     */
+    public void start() {
+        selectorThread = new Thread(this::run, "register-server-" + getPort());
+        selectorThread.start();
+    }
+    
+    /**
+     * Stops serving and closes every connection.
+     */
+    @Override
+    public void close() throws IOException {
+        isRunning = false;
+        selector.wakeup();
+        
+        if(selectorThread != null && selectorThread != Thread.currentThread()) {
+            try {
+                selectorThread.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * Selector loop, runs on the calling thread until closed.
+     */
+    private void run() {
+        try {
+            while(isRunning) {
+                selector.select();
+                
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    
+                    try {
+                        if(!key.isValid()) {
+                            continue;
+                        }
+                        
+                        if(key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if(key.isReadable()) {
+                                read(key);
+                            }
+                            if(key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch(IOException | RuntimeException e) {
+                        // one bad connection never stops the others, binary requests have no status to answer with
+                        closeQuietly(key);
+                    }
+                }
+            }
+        } catch(IOException e) {
+            e.printStackTrace(System.out);
+        } finally {
+            for(SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch(IOException e) {
+                // closing anyway
+            }
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if(channel == null) {
+            return;
+        }
+        
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+        write(key);
+    }
+    
+    private void read(final SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        
+        if(connection.channel.read(connection.in) < 0) {
+            closeQuietly(key);
+            return;
+        }
+        
+        process(connection);
+        write(key);
+    }
+    
+    /**
+     * Runs every complete request waiting on the connection, stopping early if too much output is waiting.
+     */
+    private void process(final Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        
+        if(!connection.isFramingKnown && in.hasRemaining()) {
+            connection.isFramingKnown = true;
+            connection.isBinary = (in.get(in.position()) & 0xff) == BINARY_MAGIC;
+            if(connection.isBinary) {
+                in.get();
+            }
+        }
+        
+        while(!connection.isQuit && connection.out.position() < OUTPUT_HIGH_WATER) {
+            boolean isRequestRun = connection.isBinary ? processBinary(connection) : processLine(connection);
+            if(!isRequestRun) {
+                break;
+            }
+        }
+        
+        if(connection.isQuit) {
+            in.clear();
+            return;
+        }
+        
+        if(!in.hasRemaining() || in.position() > 0 || in.limit() < in.capacity()) {
+            in.compact();
+            return;
+        }
+        
+        // full buffer with no complete request, can never complete
+        in.clear();
+        if(!connection.isBinary) {
+            response.setLength(0);
+            response.append(SimpleException.Error.InvalidCommand.getMessage()).append(LINE_SEPARATOR);
+            respond(connection, response);
+        } else {
+            connection.isQuit = true;
+        }
+    }
+    
+    /**
+     * Runs one text line of commands.
+     * 
+     * @return false if no complete line is waiting
+     */
+    private boolean processLine(final Connection connection) {
+        ByteBuffer in = connection.in;
+        
+        int end = -1;
+        for(int i = in.position(); i < in.limit(); i++) {
+            if(in.get(i) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        
+        if(end < 0) {
+            return false;
+        }
+        
+        int length = end - in.position() + 1;
+        in.get(line, 0, length);
+        reader.reset(line, 0, length);
+        
+        while(!connection.isQuit) {
+            response.setLength(0);
+            
+            try {
+                Main.VALID_CMDS command = reader.nextCommand();
+                if(command == null) {
+                    break;
+                }
+                
+                connection.isQuit = Main.dispatch(command, reader, register, changeBuffer, response);
+            } catch(SimpleException e) {
+                Main.respondError(e, response);
+            } catch(IOException e) {
+                // reading from a byte region never fails
+                throw new IllegalStateException(e);
+            } catch(RuntimeException e) {
+                // answered in place of the response, such as a failed journal, the connection goes on
+                response.setLength(0);
+                response.append(e).append(LINE_SEPARATOR);
+            }
+            
+            respond(connection, response);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Runs one binary request.
+     * 
+     * @return false if no complete request is waiting
+     */
+    private boolean processBinary(final Connection connection) {
+        ByteBuffer in = connection.in;
+        
+        if(!in.hasRemaining()) {
+            return false;
+        }
+        
+        int op = in.get(in.position()) & 0xff;
+        if(op >= COMMANDS.length) {
+            in.position(in.limit());
+            respond(connection, Status.InvalidCommand);
+            return true;
+        }
+        
+        Main.VALID_CMDS command = COMMANDS[op];
+        int numArgs = command == Main.VALID_CMDS.put || command == Main.VALID_CMDS.take ? numDenominations
+                : command == Main.VALID_CMDS.change ? 1 : 0;
+        
+        if(in.remaining() < 1 + 4 * numArgs) {
+            return false;
+        }
+        in.get();
+        
+        RegisterMetrics metrics = register.getMetrics();
+        long start = metrics == null ? 0 : metrics.startCommand(command);
+        
+        Status status;
+        switch(command) {
+            case put:
+                status = register.tryPut(readBank(in));
+                break;
+            
+            case take:
+                status = register.tryTake(readBank(in));
+                break;
+            
+            case change:
+                status = register.tryChangeAndTake(in.getInt(), changeBuffer);
+                break;
+            
+            case quit:
+                connection.isQuit = true;
+                return true;
+            
+            case show:
+                status = Status.OK;
+                break;
+            
+            default:
+                // stats is text only
+                status = Status.InvalidCommand;
+        }
+        
+        if(metrics != null) {
+            metrics.endCommand(command, start);
+        }
+        
+        respond(connection, status);
+        return true;
+    }
+    
+    private void respond(final Connection connection, final CharSequence text) {
+        ByteBuffer out = reserve(connection, text.length());
+        for(int i = 0; i < text.length(); i++) {
+            out.put((byte) text.charAt(i));
+        }
+    }
+    
+    private void respond(final Connection connection, final Status status) {
+        ByteBuffer out = reserve(connection, binaryResponseSize);
+        out.put((byte) status.ordinal());
+        out.putLong(register.getTotalValue());
+        for(int i = 0; i < numDenominations; i++) {
+            out.putInt(register.getNumOfBills(i));
+        }
+    }
+    
+    private Bank readBank(final ByteBuffer in) {
+        Bank bank = new Bank(register.getProfile());
+        for(int i = 0; i < numDenominations; i++) {
+            bank.setNumOfBills(i, in.getInt());
+        }
+        return bank;
+    }
+    
+    /**
+     * @return the connection's output buffer, grown if needed to fit length more bytes
+     */
+    private static ByteBuffer reserve(final Connection connection, final int length) {
+        if(connection.out.remaining() < length) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(
+                    Math.max(connection.out.capacity() * 2, connection.out.position() + length));
+            connection.out.flip();
+            grown.put(connection.out);
+            connection.out = grown;
+        }
+        return connection.out;
+    }
+    
+    /**
+     * Writes as much waiting output as the socket takes, then picks the interest set: write while output waits,
+     * otherwise read, and close once a quit has been fully answered.
+     */
+    private void write(final SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer out = connection.out;
+        
+        out.flip();
+        connection.channel.write(out);
+        out.compact();
+        
+        if(out.position() > 0) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        
+        if(connection.isQuit) {
+            closeQuietly(key);
+            return;
+        }
+        
+        key.interestOps(SelectionKey.OP_READ);
+        
+        // requests held back while output drained
+        if(connection.in.position() > 0) {
+            process(connection);
+            if(connection.out.position() > 0) {
+                write(key);
+            }
+        }
+    }
+    
+    private static void closeQuietly(final SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch(IOException e) {
+            // closing anyway
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.james;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking TCP server running each client session on its own thread, the plain blocking alternative to
+ * {@link RegisterServer}.  A session is the console command loop over a socket: every command goes through
+ * {@link Main#dispatch(Main.VALID_CMDS, CommandReader, Bank, int[], StringBuilder)} against the shared register, and
+ * the replies are the same lines a console session prints.
+ * 
+ * Sessions only hold the register's lock while a command runs, never while reading or writing the socket.  The lock
+ * is a {@link ReentrantLock} rather than a monitor so a virtual thread waiting on it unmounts instead of pinning its
+ * carrier.
+ * 
+ * {@link #virtualThreadSessions()} runs sessions on virtual threads where the runtime has them (Java 21 and later)
+ * and on cached platform threads otherwise, so tens of thousands of mostly idle sessions cost little.
+ * {@link #fixedThreadSessions(int)} bounds the threads, queueing sessions beyond the bound until others end.
+ * 
+ * @author james
+ */
+public class SessionServer implements Closeable {
+    
+    private static final int DEFAULT_PORT = 7071;
+    
+    private static final int BUFFER_SIZE = 8 * 1024;
+    
+    private static final int MAX_LINE_LENGTH = 1024;
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    private final Bank register;
+    private final ReentrantLock registerLock = new ReentrantLock();
+    
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    
+    private Thread acceptThread;
+    
+    /**
+     * Binds a server for the register.  Call {@link #start()} to begin serving.
+     * 
+     * @param address to listen on, port 0 for any free port
+     * @param register
+     * @param sessions runs each session, shut down when the server is closed
+     * @throws IOException
+     */
+    public SessionServer(final InetSocketAddress address, final Bank register, final ExecutorService sessions)
+            throws IOException {
+        
+        this.register = register;
+        this.sessions = sessions;
+        this.serverSocket = new ServerSocket();
+        
+        serverSocket.bind(address, 1024);
+    }
+    
+    /**
+     * Serves a new empty register, of the profile named as for {@link Main}, with metrics published over JMX, until 
+     * killed.
+     * 
+     * @param args optional port, default {@value #DEFAULT_PORT}, and optional number of platform threads to use
+     * instead of a thread per session
+     * @throws IOException
+     */
+    public static void main(final String args[]) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ExecutorService sessions = args.length > 1 ? fixedThreadSessions(Integer.parseInt(args[1]))
+                : virtualThreadSessions();
+        
+        Bank register = new Bank(Main.loadProfile());
+        register.setChangePolicy(Main.loadPolicy());
+        Main.attachMetrics(register, "session-server-" + port);
+        
+        SessionServer server = new SessionServer(new InetSocketAddress(port), register, sessions);
+        System.out.println("serving on port " + server.getPort());
+        server.acceptLoop();
+    }
+    
+    /**
+     * @return executor starting a virtual thread per session, or a cached platform thread per session when the
+     * runtime has no virtual threads
+     */
+    public static ExecutorService virtualThreadSessions() {
+        try {
+            // looked up reflectively, the build targets Java 8
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+    
+    /**
+     * @param numThreads
+     * @return executor running sessions on a fixed number of platform threads
+     */
+    public static ExecutorService fixedThreadSessions(final int numThreads) {
+        return Executors.newFixedThreadPool(numThreads);
+    }
+    
+    /**
+     * @return true if this runtime runs {@link #virtualThreadSessions()} on virtual threads
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Starts accepting sessions.
+     */
+    public void start() {
+        acceptThread = new Thread(this::acceptLoop, "session-server-" + getPort());
+        acceptThread.start();
+    }
+    
+    /**
+     * Stops accepting sessions and interrupts running ones.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+        
+        try {
+            if(acceptThread != null) {
+                acceptThread.join();
+            }
+            sessions.awaitTermination(1, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    
+    private void acceptLoop() {
+        while(!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sessions.execute(() -> runSession(socket));
+            } catch(IOException e) {
+                // closed, or one failed accept
+            }
+        }
+    }
+    
+    /**
+     * Runs one client's commands until quit or the client disconnects.  Each line is read in full before the lock is
+     * taken, so a slow client never holds the register.  Replies are flushed whenever no more input is waiting, so
+     * pipelined commands share writes and a waiting client always gets its replies.
+     */
+    private void runSession(final Socket socket) {
+        try (Socket session = socket) {
+            InputStream in = new BufferedInputStream(session.getInputStream(), BUFFER_SIZE);
+            Writer out = new BufferedWriter(
+                    new OutputStreamWriter(session.getOutputStream(), StandardCharsets.US_ASCII), BUFFER_SIZE);
+            
+            CommandReader reader = new CommandReader();
+            byte[] line = new byte[MAX_LINE_LENGTH];
+            StringBuilder response = new StringBuilder(64);
+            char[] responseChunk = new char[Main.RESPONSE_CHUNK_SIZE];
+            int[] changeBuffer = new int[register.getProfile().size()];
+            
+            out.write("ready");
+            out.write(LINE_SEPARATOR);
+            out.flush();
+            
+            boolean isExit = false;
+            int length;
+            
+            while(!isExit && (length = readLine(in, line)) >= 0) {
+                
+                if(length > line.length) {
+                    response.setLength(0);
+                    Main.respondError(SimpleException.Error.InvalidCommand.getException(), response);
+                    Main.write(out, response, responseChunk);
+                    length = 0;
+                }
+                
+                reader.reset(line, 0, length);
+                
+                while(!isExit) {
+                    
+                    response.setLength(0);
+                    
+                    try {
+                        Main.VALID_CMDS command = reader.nextCommand();
+                        if(command == null) {
+                            break;
+                        }
+                        
+                        registerLock.lock();
+                        try {
+                            isExit = Main.dispatch(command, reader, register, changeBuffer, response);
+                        } finally {
+                            registerLock.unlock();
+                        }
+                    } catch(SimpleException e) {
+                        Main.respondError(e, response);
+                    }
+                    
+                    Main.write(out, response, responseChunk);
+                }
+                
+                if(isExit || in.available() == 0) {
+                    out.flush();
+                }
+            }
+            
+            out.flush();
+        } catch(SocketException e) {
+            // client went away
+        } catch(IOException e) {
+            e.printStackTrace(System.out);
+        }
+    }
+    
+    /**
+     * Reads up to and including the next line break, or to the end of input.
+     *  
+     * @return length read into line, more than line's length if the line did not fit and was discarded, -1 at the
+     * end of input
+     */
+    private static int readLine(final InputStream in, final byte[] line) throws IOException {
+        int length = 0;
+        int b;
+        while((b = in.read()) >= 0) {
+            if(length < line.length) {
+                line[length] = (byte) b;
+            }
+            length++;
+            
+            if(b == '\n') {
+                return length;
+            }
+        }
+        return length > 0 ? length : -1;
+    }
+}
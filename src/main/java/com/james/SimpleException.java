@@ -3,6 +3,9 @@ package com.james;
 /**
  * Simple, no frills exception used throughout application.
  * 
+ * One stackless instance per {@link Error} is preallocated and handed out by {@link Error#getException()}, so a 
+ * rejected operation costs no allocation and no stack walk.  The message is all callers ever use.
+ * 
  * @author james
  */
 public class SimpleException extends Exception {
@@ -20,21 +23,49 @@ public class SimpleException extends Exception {
         
         private String message;
         
+        private SimpleException exception;
+        
         private Error(final String message) {
             this.message = message;
+            this.exception = new SimpleException(this, false);
         }
         
         public String getMessage() {
             return this.message;
         }
         
+        /**
+         * @return the shared, stackless exception for this error
+         */
         public SimpleException getException() {
-            return new SimpleException(this);
+            return exception;
+        }
+        
+        /**
+         * @return the matching {@link Status}
+         */
+        public Status getStatus() {
+            return Status.valueOf(name());
         }
     }
     
+    private final Error error;
+    
     public SimpleException(Error error) {
-        super(error.getMessage());
+        this(error, true);
+    }
+    
+    /**
+     * @param error
+     * @param writableStackTrace false for the shared instances, which have neither stack trace nor suppression
+     */
+    private SimpleException(final Error error, final boolean writableStackTrace) {
+        super(error.getMessage(), null, writableStackTrace, writableStackTrace);
+        this.error = error;
+    }
+    
+    public Error getError() {
+        return error;
     }
 
 }
@@ -0,0 +1,44 @@
+package com.james;
+
+/**
+ * Outcome of a non-throwing operation.  Every status other than {@link #OK} maps to a {@link SimpleException.Error}, 
+ * so callers on hot paths can check a status instead of catching an exception.
+ * 
+ * @author james
+ */
+public enum Status {
+    OK(null),
+    InsufficientFunds(SimpleException.Error.InsufficientFunds),
+    InvalidAmount(SimpleException.Error.InvalidAmount),
+    MismatchDenomination(SimpleException.Error.MismatchDenomination),
+    InvalidCommand(SimpleException.Error.InvalidCommand);
+    
+    private final SimpleException.Error error;
+    
+    private Status(final SimpleException.Error error) {
+        this.error = error;
+    }
+    
+    /**
+     * @return the matching error, null for {@link #OK}
+     */
+    public SimpleException.Error getError() {
+        return error;
+    }
+    
+    public boolean isOk() {
+        return this == OK;
+    }
+    
+    /**
+     * Throws the matching preallocated exception unless this is {@link #OK}.  Bridges the status API to the throwing 
+     * API.
+     * 
+     * @throws SimpleException
+     */
+    public void throwIfError() throws SimpleException {
+        if(error != null) {
+            throw error.getException();
+        }
+    }
+}
@@ -0,0 +1,697 @@
+package com.james;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic till traffic for capacity planning.  Generates a stream of put, take and change operations from
+ * configurable distributions, then replays it against a register, either in process through {@link Bank} or through
+ * the console's command interface ({@link Main#dispatch}), optionally paced at a target rate, and reports throughput,
+ * latency percentiles and how many of each operation were declined.
+ * 
+ * The stream depends only on the settings and the seed, so two runs, two builds or two register configurations can
+ * be compared on exactly the same traffic:
+ * <ul>
+ * <li>put deposits 1 to {@link #setMaxBillsPerDeposit(int)} bills, each drawn from the deposit mix, one weight per
+ * denomination largest first (for the default profile the {@link BillType} bills).</li>
+ * <li>take withdraws one or two bills drawn the same way, and is declined when the drawer lacks them.</li>
+ * <li>change asks for an amount up to a largest amount, {@link #setChangeAmounts(int, double)}.  A fraction of them
+ * are greedy-hostile: amounts where largest first without the smallest denomination strands a remainder though
+ * other bills could pay it, such as $6 or $68 from the default bills, so a drawer short of ones must search.</li>
+ * </ul>
+ * Operations arrive as a Poisson process at the target rate, and during a rush hour, the first part of each burst
+ * period, at the rate times the burst multiplier.  When paced, each operation's latency runs from when it was due
+ * rather than when it started, so a stall is charged to every operation queued behind it.  Unpaced, operations run
+ * back to back and latency is the operation alone.
+ * 
+ * Usage: WorkloadGenerator [numOps] [seed] [opsPerSecond, 0 for unpaced] [bank|commands|print] [profile]
+ * 
+ * The print mode writes the stream as commands, one per line, for {@link Main} or a server to replay.
+ * 
+ * @author james
+ */
+public class WorkloadGenerator {
+    
+    private static final int DEFAULT_NUM_OPS = 100_000;
+    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    /**
+     * Operations generated, in the order results are kept and reported
+     */
+    private static final RegisterOp[] OPERATIONS = { RegisterOp.put, RegisterOp.take,
+            RegisterOp.change };
+    
+    /**
+     * Waits shorter than this are spun, longer ones parked for all but this long
+     */
+    private static final long SPIN_NANOS = 200_000;
+    
+    /**
+     * One operation of the stream
+     */
+    public static final class Op {
+        
+        private final RegisterOp command;
+        private final int[] counts;
+        private final int amount;
+        private final long dueNanos;
+        
+        private Op(final RegisterOp command, final int[] counts, final int amount, final long dueNanos) {
+            this.command = command;
+            this.counts = counts;
+            this.amount = amount;
+            this.dueNanos = dueNanos;
+        }
+        
+        /**
+         * @return put, take or change
+         */
+        public RegisterOp getCommand() {
+            return command;
+        }
+        
+        /**
+         * @param index of the denomination, 0 for the largest
+         * @return number of bills of the denomination put or taken, 0 for change
+         */
+        public int getNumOfBills(final int index) {
+            return counts == null ? 0 : counts[index];
+        }
+        
+        /**
+         * @return amount to change, 0 for put and take
+         */
+        public int getAmount() {
+            return amount;
+        }
+        
+        /**
+         * @return nanoseconds from the start of the run that the operation is due, 0 throughout when unpaced
+         */
+        public long getDueNanos() {
+            return dueNanos;
+        }
+        
+        /**
+         * Appends the operation as a console command, without a line separator.
+         * 
+         * @param line
+         * @return the passed builder
+         */
+        public StringBuilder appendCommand(final StringBuilder line) {
+            line.append(command.name());
+            if(counts == null) {
+                line.append(' ').append(amount);
+            } else {
+                for(int count : counts) {
+                    line.append(' ').append(count);
+                }
+            }
+            return line;
+        }
+        
+        @Override
+        public String toString() {
+            return appendCommand(new StringBuilder(32)).toString();
+        }
+    }
+    
+    /**
+     * Outcome of replaying a stream
+     */
+    public static final class Result {
+        
+        private final long[] numOps = new long[OPERATIONS.length];
+        private final long[] numDeclined = new long[OPERATIONS.length];
+        private final LatencyHistogram[] latency = new LatencyHistogram[OPERATIONS.length];
+        private final LatencyHistogram allLatency = new LatencyHistogram();
+        private long elapsedNanos;
+        private String closingDrawer;
+        
+        private Result() {
+            for(int i = 0; i < latency.length; i++) {
+                latency[i] = new LatencyHistogram();
+            }
+        }
+        
+        /**
+         * @return operations replayed, all three kinds
+         */
+        public long getNumOps() {
+            return allLatency.getCount();
+        }
+        
+        /**
+         * @param command put, take or change
+         * @return number of the operation replayed
+         */
+        public long getNumOps(final RegisterOp command) {
+            return numOps[indexOf(command)];
+        }
+        
+        /**
+         * @param command put, take or change
+         * @return number of the operation the register rejected
+         */
+        public long getNumDeclined(final RegisterOp command) {
+            return numDeclined[indexOf(command)];
+        }
+        
+        /**
+         * @param command put, take or change
+         * @return rejected operations as a fraction of the operation
+         */
+        public double getDeclineRate(final RegisterOp command) {
+            int index = indexOf(command);
+            return numOps[index] == 0 ? 0 : (double) numDeclined[index] / numOps[index];
+        }
+        
+        /**
+         * @return latency in nanoseconds of every operation
+         */
+        public LatencyHistogram getLatency() {
+            return allLatency;
+        }
+        
+        /**
+         * @param command put, take or change
+         * @return latency in nanoseconds of the operation
+         */
+        public LatencyHistogram getLatency(final RegisterOp command) {
+            return latency[indexOf(command)];
+        }
+        
+        /**
+         * @return nanoseconds from the start of the run until the last operation completed
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        
+        /**
+         * @return operations completed per second
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : getNumOps() * 1e9 / elapsedNanos;
+        }
+        
+        /**
+         * @return the register's {@link Bank#show()} after the last operation
+         */
+        public String getClosingDrawer() {
+            return closingDrawer;
+        }
+        
+        /**
+         * Appends throughput, then one line per operation of its count, decline rate and latency percentiles in
+         * microseconds.
+         * 
+         * @param report
+         */
+        public void appendReport(final StringBuilder report) {
+            report.append(String.format("ops=%d elapsed=%.1fms throughput=%.0f/s", getNumOps(), elapsedNanos / 1e6,
+                    getThroughput())).append(LINE_SEPARATOR);
+            appendLatency(report, "all", getNumOps(), -1, allLatency);
+            for(int i = 0; i < OPERATIONS.length; i++) {
+                appendLatency(report, OPERATIONS[i].name(), numOps[i], numDeclined[i], latency[i]);
+            }
+            report.append("closing drawer ").append(closingDrawer).append(LINE_SEPARATOR);
+        }
+        
+        public String getReport() {
+            StringBuilder report = new StringBuilder(512);
+            appendReport(report);
+            return report.toString();
+        }
+        
+        @Override
+        public String toString() {
+            return "Result [ops=" + getNumOps() + ", elapsedNanos=" + elapsedNanos + "]";
+        }
+        
+        
+        
+        private void record(final int index, final boolean isDeclined, final long nanos) {
+            numOps[index]++;
+            if(isDeclined) {
+                numDeclined[index]++;
+            }
+            latency[index].record(nanos);
+            allLatency.record(nanos);
+        }
+        
+        private static void appendLatency(final StringBuilder report, final String name, final long count,
+                final long declined, final LatencyHistogram histogram) {
+            report.append(String.format("%-6s n=%d", name, count));
+            if(declined >= 0) {
+                report.append(String.format(" declined=%d (%.1f%%)", declined,
+                        count == 0 ? 0 : 100.0 * declined / count));
+            }
+            report.append(String.format(" p50=%.2fus p99=%.2fus p999=%.2fus max=%.2fus",
+                    histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3)).append(LINE_SEPARATOR);
+        }
+    }
+    
+    private final CurrencyProfile profile;
+    
+    // relative weights of put, take and change
+    private double putWeight = 5;
+    private double takeWeight = 1;
+    private double changeWeight = 4;
+    
+    private final double[] depositMix;
+    private int maxBillsPerDeposit = 5;
+    
+    private int maxChangeAmount;
+    private double hostileFraction = 0.2;
+    
+    private double opsPerSecond;
+    private long burstPeriodNanos;
+    private long burstNanos;
+    private double burstMultiplier = 1;
+    
+    /**
+     * A generator for registers of the profile: five puts and a take for every four changes, deposits weighted
+     * equally across denominations, change up to two of the largest denomination one time in five greedy-hostile,
+     * unpaced.  Deposits then slightly outweigh what is paid out, so the drawer grows slowly rather than drains.
+     * 
+     * @param profile
+     */
+    public WorkloadGenerator(final CurrencyProfile profile) {
+        this.profile = profile;
+        this.depositMix = new double[profile.size()];
+        Arrays.fill(depositMix, 1);
+        this.maxChangeAmount = 2 * profile.getDenomination(0);
+    }
+    
+    public static void main(final String args[]) throws IOException, SimpleException {
+        int numOps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_OPS;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        double opsPerSecond = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        String mode = args.length > 3 ? args[3] : "bank";
+        CurrencyProfile profile = CurrencyProfile.load(args.length > 4 ? args[4] : CurrencyProfile.DEFAULT.getName());
+        
+        WorkloadGenerator generator = new WorkloadGenerator(profile).setRate(opsPerSecond);
+        if(opsPerSecond > 0) {
+            // a rush of three times the rate for the first 100 ms of every second
+            generator.setBursts(1000, 100, 3);
+        }
+        Op[] ops = generator.generate(numOps, seed);
+        
+        if("print".equals(mode)) {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.US_ASCII);
+            write(ops, out);
+            out.flush();
+            return;
+        }
+        
+        boolean isCommands = "commands".equals(mode);
+        int[] openingFloat = ChangeSimulation.openingFloat(profile);
+        
+        // once unpaced to warm up, then measured
+        replay(new Bank(profile, openingFloat), generator.generate(numOps, seed + 1), isCommands);
+        Result result = replay(new Bank(profile, openingFloat), ops, isCommands);
+        
+        System.out.printf("%,d ops, seed %d, %s, profile %s, %s%n", numOps, seed,
+                opsPerSecond > 0 ? String.format("%,.0f ops/s", opsPerSecond) : "unpaced", profile.getName(),
+                isCommands ? "command interface" : "in process");
+        System.out.print(result.getReport());
+    }
+    
+    public CurrencyProfile getProfile() {
+        return profile;
+    }
+    
+    /**
+     * @param putWeight
+     * @param takeWeight
+     * @param changeWeight
+     * @return this
+     * @throws IllegalArgumentException if a weight is negative or all are 0
+     */
+    public WorkloadGenerator setOperationMix(final double putWeight, final double takeWeight,
+            final double changeWeight) {
+        
+        if(!(putWeight >= 0 && takeWeight >= 0 && changeWeight >= 0 && putWeight + takeWeight + changeWeight > 0)) {
+            throw new IllegalArgumentException("operation weights must not be negative and not all 0");
+        }
+        
+        this.putWeight = putWeight;
+        this.takeWeight = takeWeight;
+        this.changeWeight = changeWeight;
+        return this;
+    }
+    
+    /**
+     * @param weights relative frequency of each denomination among bills put and taken, largest first
+     * @return this
+     * @throws IllegalArgumentException if there is not one weight per denomination, one is negative, or all are 0
+     */
+    public WorkloadGenerator setDepositMix(final double... weights) {
+        
+        if(weights.length != depositMix.length) {
+            throw new IllegalArgumentException("expected " + depositMix.length + " weights, got " + weights.length);
+        }
+        
+        double total = 0;
+        for(double weight : weights) {
+            if(!(weight >= 0)) {
+                throw new IllegalArgumentException("weight is negative: " + weight);
+            }
+            total += weight;
+        }
+        if(total == 0) {
+            throw new IllegalArgumentException("weights are all 0");
+        }
+        
+        System.arraycopy(weights, 0, depositMix, 0, weights.length);
+        return this;
+    }
+    
+    /**
+     * @param maxBillsPerDeposit most bills one put deposits
+     * @return this
+     * @throws IllegalArgumentException if not positive
+     */
+    public WorkloadGenerator setMaxBillsPerDeposit(final int maxBillsPerDeposit) {
+        
+        if(maxBillsPerDeposit <= 0) {
+            throw new IllegalArgumentException("bills per deposit must be positive: " + maxBillsPerDeposit);
+        }
+        
+        this.maxBillsPerDeposit = maxBillsPerDeposit;
+        return this;
+    }
+    
+    /**
+     * @param maxChangeAmount largest amount changed
+     * @param hostileFraction fraction of changes for greedy-hostile amounts, 0 to 1
+     * @return this
+     * @throws IllegalArgumentException if the amount is not positive or the fraction not between 0 and 1
+     */
+    public WorkloadGenerator setChangeAmounts(final int maxChangeAmount, final double hostileFraction) {
+        
+        if(maxChangeAmount <= 0) {
+            throw new IllegalArgumentException("largest change amount must be positive: " + maxChangeAmount);
+        }
+        if(!(hostileFraction >= 0 && hostileFraction <= 1)) {
+            throw new IllegalArgumentException("hostile fraction is not between 0 and 1: " + hostileFraction);
+        }
+        
+        this.maxChangeAmount = maxChangeAmount;
+        this.hostileFraction = hostileFraction;
+        return this;
+    }
+    
+    /**
+     * @param opsPerSecond mean operations per second outside a rush, 0 to run unpaced
+     * @return this
+     * @throws IllegalArgumentException if negative
+     */
+    public WorkloadGenerator setRate(final double opsPerSecond) {
+        
+        if(!(opsPerSecond >= 0)) {
+            throw new IllegalArgumentException("rate is negative: " + opsPerSecond);
+        }
+        
+        this.opsPerSecond = opsPerSecond;
+        return this;
+    }
+    
+    /**
+     * Runs the first burstMillis of every periodMillis as a rush hour at multiplier times the rate.  Only applies when
+     * paced.
+     * 
+     * @param periodMillis
+     * @param burstMillis 0 for no rush
+     * @param multiplier
+     * @return this
+     * @throws IllegalArgumentException if the burst is negative or longer than the period, or the multiplier is not
+     * positive
+     */
+    public WorkloadGenerator setBursts(final long periodMillis, final long burstMillis, final double multiplier) {
+        
+        if(periodMillis <= 0 || burstMillis < 0 || burstMillis > periodMillis) {
+            throw new IllegalArgumentException("burst of " + burstMillis + " ms does not fit a period of "
+                    + periodMillis + " ms");
+        }
+        if(!(multiplier > 0)) {
+            throw new IllegalArgumentException("multiplier must be positive: " + multiplier);
+        }
+        
+        this.burstPeriodNanos = periodMillis * 1_000_000;
+        this.burstNanos = burstMillis * 1_000_000;
+        this.burstMultiplier = multiplier;
+        return this;
+    }
+    
+    /**
+     * @return amounts up to the largest change amount where largest first, with any number of each denomination
+     * but the smallest, strands a remainder though those denominations could pay the amount, smallest first
+     */
+    public int[] greedyHostileAmounts() {
+        int[] denominations = profile.denominations();
+        int numUsed = denominations.length - 1;
+        
+        // payable[amount] from any number of each denomination but the smallest
+        boolean[] payable = new boolean[maxChangeAmount + 1];
+        payable[0] = true;
+        for(int i = 0; i < numUsed; i++) {
+            for(int amount = denominations[i]; amount <= maxChangeAmount; amount++) {
+                payable[amount] |= payable[amount - denominations[i]];
+            }
+        }
+        
+        int[] hostile = new int[maxChangeAmount];
+        int numHostile = 0;
+        for(int amount = 1; amount <= maxChangeAmount; amount++) {
+            int remainder = amount;
+            for(int i = 0; i < numUsed; i++) {
+                remainder %= denominations[i];
+            }
+            if(remainder != 0 && payable[amount]) {
+                hostile[numHostile++] = amount;
+            }
+        }
+        
+        return Arrays.copyOf(hostile, numHostile);
+    }
+    
+    /**
+     * Generates a stream from the current settings.  The same settings and seed always give the same stream.
+     * 
+     * @param numOps
+     * @param seed
+     * @return the operations, due in order
+     */
+    public Op[] generate(final int numOps, final long seed) {
+        Random random = new Random(seed);
+        int[] hostile = greedyHostileAmounts();
+        double totalMix = 0;
+        for(double weight : depositMix) {
+            totalMix += weight;
+        }
+        double totalWeight = putWeight + takeWeight + changeWeight;
+        
+        Op[] ops = new Op[numOps];
+        long dueNanos = 0;
+        for(int n = 0; n < numOps; n++) {
+            if(opsPerSecond > 0) {
+                dueNanos += interarrivalNanos(random, dueNanos);
+            }
+            
+            double pick = random.nextDouble() * totalWeight;
+            if(pick < putWeight) {
+                ops[n] = new Op(RegisterOp.put, drawBills(random, 1 + random.nextInt(maxBillsPerDeposit),
+                        totalMix), 0, dueNanos);
+            } else if(pick < putWeight + takeWeight) {
+                ops[n] = new Op(RegisterOp.take, drawBills(random, 1 + random.nextInt(2), totalMix), 0,
+                        dueNanos);
+            } else {
+                int amount = hostile.length > 0 && random.nextDouble() < hostileFraction
+                        ? hostile[random.nextInt(hostile.length)] : 1 + random.nextInt(maxChangeAmount);
+                ops[n] = new Op(RegisterOp.change, null, amount, dueNanos);
+            }
+        }
+        
+        return ops;
+    }
+    
+    /**
+     * Runs the operations in order against the register, each when due if the stream is paced.
+     * 
+     * @param register
+     * @param ops
+     * @param isCommands true to run each as a console command through {@link Main#dispatch}, parsing and responses
+     * included, false to call the register directly
+     * @return counts, latencies and the closing drawer
+     */
+    public static Result replay(final Bank register, final Op[] ops, final boolean isCommands) {
+        CurrencyProfile profile = register.getProfile();
+        Result result = new Result();
+        
+        // scratch reused across operations, so the replay allocates only what the register does
+        Bank bills = new Bank(profile);
+        int[] change = new int[profile.size()];
+        CommandReader reader = new CommandReader();
+        StringBuilder line = new StringBuilder(64);
+        byte[] bytes = new byte[64];
+        StringBuilder response = new StringBuilder(64);
+        
+        boolean isPaced = ops.length > 0 && ops[ops.length - 1].dueNanos > 0;
+        
+        long start = System.nanoTime();
+        for(Op op : ops) {
+            int index = indexOf(op.command);
+            
+            if(isCommands) {
+                line.setLength(0);
+                op.appendCommand(line).append('\n');
+                if(bytes.length < line.length()) {
+                    bytes = new byte[line.length()];
+                }
+                for(int i = 0; i < line.length(); i++) {
+                    bytes[i] = (byte) line.charAt(i);
+                }
+            } else if(op.counts != null) {
+                for(int i = 0; i < op.counts.length; i++) {
+                    bills.setNumOfBills(i, op.counts[i]);
+                }
+            }
+            
+            long due = start + op.dueNanos;
+            long begin = awaitDue(due);
+            
+            boolean isDeclined;
+            if(isCommands) {
+                response.setLength(0);
+                reader.reset(bytes, 0, line.length());
+                isDeclined = dispatch(reader, register, change, response);
+            } else {
+                Status status;
+                switch (op.command) {
+                    case put:
+                        status = register.tryPut(bills);
+                        break;
+                    
+                    case take:
+                        status = register.tryTake(bills);
+                        break;
+                    
+                    default:
+                        status = register.tryChangeAndTake(op.amount, change);
+                        break;
+                }
+                isDeclined = !status.isOk();
+            }
+            
+            long end = System.nanoTime();
+            result.record(index, isDeclined, end - (isPaced ? due : begin));
+        }
+        
+        result.elapsedNanos = System.nanoTime() - start;
+        result.closingDrawer = register.show();
+        return result;
+    }
+    
+    /**
+     * Writes the operations as console commands, one per line.
+     * 
+     * @param ops
+     * @param out
+     * @throws IOException
+     */
+    public static void write(final Op[] ops, final Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        char[] chunk = new char[Main.RESPONSE_CHUNK_SIZE];
+        for(Op op : ops) {
+            line.setLength(0);
+            op.appendCommand(line).append(LINE_SEPARATOR);
+            Main.write(out, line, chunk);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "WorkloadGenerator [profile=" + profile.getName() + ", opsPerSecond=" + opsPerSecond + "]";
+    }
+    
+    
+    
+    private static int indexOf(final RegisterOp command) {
+        for(int i = 0; i < OPERATIONS.length; i++) {
+            if(OPERATIONS[i] == command) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("not a generated operation: " + command);
+    }
+    
+    /**
+     * @return true if the command was rejected
+     */
+    private static boolean dispatch(final CommandReader reader, final Bank register, final int[] change,
+            final StringBuilder response) {
+        try {
+            Main.dispatch(reader.nextCommand(), reader, register, change, response);
+            return false;
+        } catch(SimpleException e) {
+            Main.respondError(e, response);
+            return true;
+        } catch(IOException e) {
+            // reads from an array
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Waits until the time is due, spinning for the last {@value #SPIN_NANOS} ns.
+     * 
+     * @return time the wait ended
+     */
+    private static long awaitDue(final long due) {
+        long now = System.nanoTime();
+        while(now < due) {
+            if(due - now > SPIN_NANOS) {
+                LockSupport.parkNanos(due - now - SPIN_NANOS);
+            }
+            now = System.nanoTime();
+        }
+        return now;
+    }
+    
+    /**
+     * @return an exponential gap at the rate, multiplied during a rush, for a Poisson process of arrivals
+     */
+    private long interarrivalNanos(final Random random, final long nowNanos) {
+        double rate = opsPerSecond;
+        if(burstNanos > 0 && nowNanos % burstPeriodNanos < burstNanos) {
+            rate *= burstMultiplier;
+        }
+        
+        return Math.max(1, (long) (-Math.log(1 - random.nextDouble()) * 1e9 / rate));
+    }
+    
+    /**
+     * @return counts per denomination of numOfBills bills drawn from the deposit mix
+     */
+    private int[] drawBills(final Random random, final int numOfBills, final double totalMix) {
+        int[] counts = new int[depositMix.length];
+        for(int n = 0; n < numOfBills; n++) {
+            double pick = random.nextDouble() * totalMix;
+            int i = 0;
+            while(i < depositMix.length - 1 && (pick -= depositMix[i]) >= 0) {
+                i++;
+            }
+            counts[i]++;
+        }
+        return counts;
+    }
+}
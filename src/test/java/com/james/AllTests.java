@@ -7,6 +7,26 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
     BillsBundleTest.class, 
-    BankTest.class})
+    BankTest.class,
+    TransactionTest.class,
+    CurrencyProfileTest.class,
+    ChangeSolverTest.class,
+    ChangePolicyTest.class,
+    ChangeCacheTest.class,
+    PayableAmountsTest.class,
+    LatencyHistogramTest.class,
+    RegisterMetricsTest.class,
+    ConcurrentRegisterTest.class,
+    RegisterPoolTest.class,
+    RegisterEngineTest.class,
+    RegisterFeedTest.class,
+    ReconciliationTest.class,
+    CommandReaderTest.class,
+    MainTest.class,
+    RegisterJournalTest.class,
+    RegisterCheckpointerTest.class,
+    RegisterServerTest.class,
+    SessionServerTest.class,
+    WorkloadGeneratorTest.class})
 public class AllTests {
 }
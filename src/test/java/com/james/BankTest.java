@@ -2,6 +2,13 @@ package com.james;
 
 import static org.junit.Assert.*;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -15,15 +22,15 @@ public class BankTest {
     private Bank nonZeroBank;
     private Bank nonZeroAssignmentBank;
     private Bank zeroBank;
-   
-
+    
+    
     @Before
     public void setUp() throws Exception {
         nonZeroBank = new Bank(2, 2, 2, 2, 2);
         nonZeroAssignmentBank = new Bank(1, 2, 3, 4, 5);
         zeroBank = new Bank();
     }
-
+    
     
     @Rule
     public ExpectedException thrown = ExpectedException.none();
@@ -42,6 +49,44 @@ public class BankTest {
         assertEquals("$68 1 2 3 4 5", nonZeroAssignmentBank.show());
     }
     
+    @Test
+    public void testAppendShow_validMatchesShow() {
+        Bank[] banks = { zeroBank, nonZeroBank, new Bank(Integer.MAX_VALUE, 0, 0, 0, 1), new Bank(0, -3, 0, 0, 0),
+                new Bank(CurrencyProfile.DEFAULT, 0, 1000, 90, 0, 7) };
+        
+        StringBuilder builder = new StringBuilder("> ");
+        CharBuffer chars = CharBuffer.allocate(64);
+        ByteBuffer bytes = ByteBuffer.allocate(64);
+        
+        for(Bank bank : banks) {
+            String shown = bank.show();
+            assertEquals(shown.length(), bank.showLength());
+            
+            builder.setLength(2);
+            assertEquals("> " + shown, bank.appendShow(builder).toString());
+            
+            chars.clear();
+            bank.appendShow(chars).flip();
+            assertEquals(shown, chars.toString());
+            
+            bytes.clear();
+            bank.appendShow(bytes).flip();
+            assertEquals(shown, StandardCharsets.US_ASCII.decode(bytes).toString());
+        }
+    }
+    
+    @Test
+    public void testAppendShow_overflowPutsNothing() {
+        ByteBuffer bytes = ByteBuffer.allocate(nonZeroBank.showLength() - 1);
+        
+        thrown.expect(BufferOverflowException.class);
+        try {
+            nonZeroBank.appendShow(bytes);
+        } finally {
+            assertEquals(0, bytes.position());
+        }
+    }
+    
     
     
     @Test
@@ -160,6 +205,204 @@ public class BankTest {
         
     }
     
+    @Test
+    public void testChange_validGreedyHostileValues() throws SimpleException {
+        
+        Bank bank11 = new Bank(0, 0, 1, 3, 0);
+        assertEquals("$6 0 0 0 3 0", bank11.change(6).show());
+        assertEquals("$11 0 0 1 3 0", bank11.change(11).show());
+        
+        Bank bank66 = new Bank(3, 0, 0, 3, 0);
+        assertEquals("$46 2 0 0 3 0", bank66.change(46).show());
+    }
+    
+    @Test
+    public void testChange_validFewestBills() throws SimpleException {
+        
+        // 5 + 5 + 2 beats 5 + 2 + 2 + 2 + 1
+        Bank bank = new Bank(0, 0, 2, 3, 1);
+        assertEquals("$12 0 0 2 1 0", bank.change(12).show());
+    }
+    
+    @Test
+    public void testChange_validLargeAmount() throws SimpleException {
+        
+        Bank bigBank = new Bank(100000000, 0, 1, 3, 0);
+        assertEquals("$2000000006 100000000 0 0 3 0", bigBank.change(2000000006).show());
+    }
+    
+    @Test
+    public void testChange_InsufficientFundsLargeAmount() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        nonZeroBank.change(Integer.MAX_VALUE);
+    }
+    
+    @Test
+    public void testChangeIntoBuffer_validValues() throws SimpleException {
+        int[] out = new int[5];
+        
+        assertEquals(6, nonZeroBank.change(59, out));
+        assertArrayEquals(new int[] {2, 1, 1, 2, 0}, out);
+        
+        // nothing taken
+        assertEquals("$76 2 2 2 2 2", nonZeroBank.show());
+    }
+    
+    @Test
+    public void testChangeIntoBuffer_InsufficientFundsUntouched() throws SimpleException {
+        int[] out = {7, 7, 7, 7, 7};
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            nonZeroBank.change(999999, out);
+        } finally {
+            assertArrayEquals(new int[] {7, 7, 7, 7, 7}, out);
+        }
+    }
+    
+    @Test
+    public void testChangeAndTake_validValues() throws SimpleException {
+        int[] out = new int[5];
+        
+        assertEquals(2, nonZeroAssignmentBank.changeAndTake(11, out));
+        assertArrayEquals(new int[] {0, 1, 0, 0, 1}, out);
+        assertEquals("$57 1 1 3 4 4", nonZeroAssignmentBank.show());
+        
+        assertEquals(4, nonZeroAssignmentBank.changeAndTake(40, out));
+        assertArrayEquals(new int[] {1, 1, 2, 0, 0}, out);
+        assertEquals("$17 0 0 1 4 4", nonZeroAssignmentBank.show());
+    }
+    
+    @Test
+    public void testChangeAndTake_InsufficientFundsNothingTaken() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            nonZeroBank.changeAndTake(77, new int[5]);
+        } finally {
+            assertEquals("$76 2 2 2 2 2", nonZeroBank.show());
+        }
+    }
+    
+    @Test
+    public void testChangeEach_validQuotesInOrderTakesNothing() throws SimpleException {
+        Bank bank = new Bank(0, 1, 1, 1, 0);
+        int[] out = new int[15];
+        
+        // the second 5 is declined as the first took the only five
+        assertEquals(2, bank.changeEach(new int[] {10, 5, 5}, out));
+        assertArrayEquals(new int[] {0, 1, 0, 0, 0, 0, 0, 1, 0, 0, -1, -1, -1, -1, -1}, out);
+        assertEquals("$17 0 1 1 1 0", bank.show());
+    }
+    
+    @Test
+    public void testChangeAndTakeEach_matchesOneAtATime() throws SimpleException {
+        Random random = new Random(5);
+        int[] amounts = new int[200];
+        for(int n = 0; n < amounts.length; n++) {
+            amounts[n] = random.nextInt(60);
+        }
+        
+        Bank batched = new Bank(3, 10, 20, 30, 40);
+        Bank single = new Bank(3, 10, 20, 30, 40);
+        int[] expected = new int[amounts.length * 5];
+        int[] change = new int[5];
+        
+        int numServed = 0;
+        for(int n = 0; n < amounts.length; n++) {
+            if(single.tryChangeAndTake(amounts[n], change).isOk()) {
+                numServed++;
+            } else {
+                Arrays.fill(change, -1);
+            }
+            System.arraycopy(change, 0, expected, n * 5, 5);
+        }
+        
+        int[] out = new int[amounts.length * 5];
+        assertEquals(numServed, batched.changeAndTakeEach(amounts, out));
+        assertArrayEquals(expected, out);
+        assertEquals(single.show(), batched.show());
+        assertEquals(single.getTotalValue(), batched.getTotalValue());
+    }
+    
+    @Test
+    public void testChangeAndTakeAll_validTakesEveryAmount() throws SimpleException {
+        Bank bank = new Bank(0, 1, 1, 1, 0);
+        int[] out = new int[10];
+        
+        assertEquals(2, bank.changeAndTakeAll(new int[] {10, 5}, out));
+        assertArrayEquals(new int[] {0, 1, 0, 0, 0, 0, 0, 1, 0, 0}, out);
+        assertEquals("$2 0 0 0 1 0", bank.show());
+    }
+    
+    @Test
+    public void testChangeAndTakeAll_InsufficientFundsTakesNothing() throws SimpleException {
+        Bank bank = new Bank(0, 1, 1, 1, 0);
+        int[] out = new int[20];
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            bank.changeAndTakeAll(new int[] {10, 5, 5, 2}, out);
+        } finally {
+            assertEquals("$17 0 1 1 1 0", bank.show());
+            assertEquals(17, bank.getTotalValue());
+            assertArrayEquals(new int[] {0, 1, 0, 0, 0, 0, 0, 1, 0, 0, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1}, out);
+        }
+    }
+    
+    @Test
+    public void testChangeAndTakeEach_InvalidAmountTakesNothing() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        try {
+            nonZeroBank.changeAndTakeEach(new int[] {5, -1}, new int[10]);
+        } finally {
+            assertEquals("$76 2 2 2 2 2", nonZeroBank.show());
+        }
+    }
+    
+    @Test
+    public void testChangeEach_InvalidShortOut() throws SimpleException {
+        thrown.expect(IllegalArgumentException.class);
+        nonZeroBank.changeEach(new int[] {5, 5}, new int[9]);
+    }
+    
+    @Test
+    public void testTryPut_statusValues() {
+        assertEquals(Status.InvalidAmount, nonZeroBank.tryPut(null));
+        assertEquals(Status.OK, nonZeroBank.tryPut(new Bank(1, 1, 1, 1, 1)));
+        assertEquals("$114 3 3 3 3 3", nonZeroBank.show());
+    }
+    
+    @Test
+    public void testTryTake_statusValues() {
+        assertEquals(Status.InvalidAmount, nonZeroBank.tryTake(null));
+        assertEquals(Status.InsufficientFunds, zeroBank.tryTake(new Bank(1, 1, 1, 1, 1)));
+        assertEquals(Status.OK, nonZeroBank.tryTake(new Bank(1, 1, 1, 1, 1)));
+        assertEquals("$38 1 1 1 1 1", nonZeroBank.show());
+    }
+    
+    @Test
+    public void testTryChange_statusValues() {
+        int[] out = new int[5];
+        assertEquals(Status.InvalidAmount, nonZeroBank.tryChange(-1, out));
+        assertEquals(Status.InsufficientFunds, nonZeroBank.tryChange(999999, out));
+        assertEquals(Status.OK, nonZeroBank.tryChange(14, out));
+        assertArrayEquals(new int[] {0, 1, 0, 2, 0}, out);
+        
+        assertEquals(Status.InsufficientFunds, nonZeroBank.tryChangeAndTake(77, out));
+        assertEquals(Status.OK, nonZeroBank.tryChangeAndTake(14, out));
+        assertEquals("$62 2 1 2 0 2", nonZeroBank.show());
+    }
+    
+    @Test
+    public void testException_preallocatedStackless() {
+        SimpleException declined = SimpleException.Error.InsufficientFunds.getException();
+        
+        assertSame(declined, SimpleException.Error.InsufficientFunds.getException());
+        assertEquals(0, declined.getStackTrace().length);
+        assertEquals(SimpleException.Error.InsufficientFunds, declined.getError());
+        assertEquals(Status.InsufficientFunds, declined.getError().getStatus());
+    }
+    
     @Test
     public void testPerChallengePDF() throws SimpleException {
         
@@ -174,13 +417,47 @@ public class BankTest {
         Bank toTakeChange = nonZeroAssignmentBank.change(11);
         assertEquals("$11 0 0 1 3 0", toTakeChange.show());
         nonZeroAssignmentBank.take( toTakeChange );
-        assertEquals("$32 1 0 2 1 0", nonZeroAssignmentBank);
+        assertEquals("$32 1 0 2 1 0", nonZeroAssignmentBank.show());
         
         thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
         nonZeroAssignmentBank.change(14);
         
     }
     
+    @Test
+    public void testProfile_putTakeChange() throws SimpleException {
+        CurrencyProfile eur = new CurrencyProfile("EUR", 50000, 20000, 10000, 5000, 2000, 1000, 500, 200, 100, 50, 20, 
+                10, 5, 2, 1);
+        Bank till = new Bank(eur);
+        till.put(new Bank(eur, 0, 0, 1, 0, 2, 0, 1, 2, 0, 3, 0, 4, 1, 2, 5));
+        assertEquals("$15104 0 0 1 0 2 0 1 2 0 3 0 4 1 2 5", till.show());
+        
+        // greedy wants a third 200, so this is searched
+        Bank change = till.change(1069);
+        assertEquals("$1069 0 0 0 0 0 0 1 2 0 3 0 1 1 2 0", change.show());
+        
+        till.take(change);
+        assertEquals(15104 - 1069, till.getTotalValue());
+    }
+    
+    @Test
+    public void testProfile_MismatchDenomination() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.MismatchDenomination.getMessage());
+        nonZeroBank.put(new Bank(new CurrencyProfile("other", 10, 5, 1), 1, 1, 1));
+    }
+    
+    @Test
+    public void testProfile_billTypeNotHeld() {
+        thrown.expect(IllegalArgumentException.class);
+        new Bank(new CurrencyProfile("other", 10, 5, 1)).getNumOfBills(BillType.TWENTY);
+    }
+    
+    @Test
+    public void testProfile_wrongNumberOfCounts() {
+        thrown.expect(IllegalArgumentException.class);
+        new Bank(CurrencyProfile.DEFAULT, 1, 2, 3);
+    }
+    
     @Test 
     public void testGetTotalValue_validZero() {
         assertEquals(0, zeroBank.getTotalValue());
@@ -193,4 +470,100 @@ public class BankTest {
         assertEquals(76, nonZeroBank.getTotalValue());
     }
     
+    @Test
+    public void testGetTotalValue_validBeyondInt() {
+        Bank vault = new Bank(Integer.MAX_VALUE, 0, 0, 0, 0);
+        assertEquals(20L * Integer.MAX_VALUE, vault.getTotalValue());
+        assertEquals("$42949672940 2147483647 0 0 0 0", vault.show());
+    }
+    
+    @Test
+    public void testGetTotalValue_validKeptThroughOperations() throws SimpleException {
+        Bank register = new Bank();
+        int[] out = new int[5];
+        Random random = new Random(7);
+        
+        for(int i = 0; i < 2000; i++) {
+            switch (random.nextInt(4)) {
+            case 0:
+                register.tryPut(new Bank(random.nextInt(3), random.nextInt(3), random.nextInt(3), random.nextInt(3),
+                        random.nextInt(3)));
+                break;
+            case 1:
+                register.tryTake(new Bank(0, random.nextInt(2), 0, random.nextInt(2), random.nextInt(2)));
+                break;
+            case 2:
+                register.tryChangeAndTake(random.nextInt(60), out);
+                break;
+            default:
+                register.setBills(new BillsBundle(BillType.FIVE, random.nextInt(10)));
+                break;
+            }
+            
+            long expected = 0;
+            for(BillType billType : BillType.values()) {
+                expected += register.getBills(billType).getTotalValue();
+            }
+            assertEquals(expected, register.getTotalValue());
+        }
+    }
+    
+    @Test
+    public void testPut_InvalidAmountByCountOverflow() throws SimpleException {
+        Bank full = new Bank(0, 0, 0, 0, Integer.MAX_VALUE);
+        
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        try {
+            full.put(new Bank(0, 0, 0, 0, 1));
+        } finally {
+            assertEquals(Integer.MAX_VALUE, full.getTotalValue());
+        }
+    }
+    
+    @Test
+    public void testPut_InvalidAmountByTotalOverflow() throws SimpleException {
+        CurrencyProfile huge = new CurrencyProfile("huge", Integer.MAX_VALUE, Integer.MAX_VALUE - 1, 
+                Integer.MAX_VALUE - 2);
+        Bank vault = new Bank(huge, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+        long total = vault.getTotalValue();
+        
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        try {
+            vault.put(new Bank(huge, 0, 0, Integer.MAX_VALUE));
+        } finally {
+            assertEquals(total, vault.getTotalValue());
+        }
+    }
+    
+    @Test
+    public void testPut_InvalidAmountLeavesEarlierCountsAlone() throws SimpleException {
+        Bank register = new Bank(1, 1, 1, 1, Integer.MAX_VALUE - 1);
+        
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        try {
+            register.put(new Bank(1, 1, 1, 1, 2));
+        } finally {
+            assertEquals("$" + (Integer.MAX_VALUE + 36L) + " 1 1 1 1 " + (Integer.MAX_VALUE - 1), register.show());
+        }
+    }
+    
+    @Test
+    public void testTake_InsufficientFundsLeavesEarlierCountsAlone() throws SimpleException {
+        Bank register = new Bank(2, 2, 2, 2, 0);
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            register.take(new Bank(1, 1, 1, 1, 1));
+        } finally {
+            assertEquals("$74 2 2 2 2 0", register.show());
+        }
+    }
+    
+    @Test
+    public void testGetTotalValue_overflowingConstruction() {
+        thrown.expect(ArithmeticException.class);
+        new Bank(new CurrencyProfile("huge", Integer.MAX_VALUE, Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 2),
+                Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+    
 }
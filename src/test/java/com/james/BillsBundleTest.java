@@ -114,6 +114,26 @@ public class BillsBundleTest {
     
     
     
+    @Test
+    public void testTryPut_statusValues() {
+        assertEquals(Status.InvalidAmount, fiveOnes.tryPut(negOnes));
+        assertEquals(Status.MismatchDenomination, fiveOnes.tryPut(fourTens));
+        assertEquals(Status.OK, fiveOnes.tryPut(tenOnes));
+        assertEquals(15, fiveOnes.getNumOfBills());
+    }
+    
+    @Test
+    public void testTryTake_statusValues() {
+        assertEquals(Status.InvalidAmount, fiveOnes.tryTake(null));
+        assertEquals(Status.MismatchDenomination, fiveOnes.tryTake(fourTens));
+        assertEquals(Status.InsufficientFunds, fiveOnes.tryTake(tenOnes));
+        assertEquals(5, fiveOnes.getNumOfBills());
+        assertEquals(Status.OK, tenOnes.tryTake(fiveOnes));
+        assertEquals(5, tenOnes.getNumOfBills());
+    }
+    
+    
+    
     @Test
     public void testGetMaxAvailableChange_validZero() throws SimpleException {
         assertEquals(0, fourTens.getMaxAvailableChange(0));
@@ -160,4 +180,9 @@ public class BillsBundleTest {
         
         assertEquals(40, fourTens.getTotalValue());
     }
+    
+    @Test
+    public void testGetTotalValue_validBeyondInt() {
+        assertEquals(20L * Integer.MAX_VALUE, new BillsBundle(BillType.TWENTY, Integer.MAX_VALUE).getTotalValue());
+    }
 }
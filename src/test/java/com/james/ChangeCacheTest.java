@@ -0,0 +1,115 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.Bank;
+import com.james.ChangeCache;
+import com.james.SimpleException;
+
+public class ChangeCacheTest {
+    
+    private Bank cachedBank;
+    private ChangeCache cache;
+    
+    @Before
+    public void setUp() throws Exception {
+        cachedBank = new Bank(2, 2, 2, 2, 2);
+        cache = new ChangeCache(2);
+        cachedBank.setChangeCache(cache);
+    }
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testConstruct_InvalidMaxEntries() {
+        thrown.expect(IllegalArgumentException.class);
+        new ChangeCache(0);
+    }
+    
+    @Test
+    public void testChange_validRepeatIsHit() throws SimpleException {
+        assertEquals("$59 2 1 1 2 0", cachedBank.change(59).show());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        
+        assertEquals("$59 2 1 1 2 0", cachedBank.change(59).show());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+    
+    @Test
+    public void testChange_validReturnedBankNotShared() throws SimpleException {
+        Bank first = cachedBank.change(14);
+        first.put(new Bank(1, 1, 1, 1, 1));
+        
+        assertEquals("$14 0 1 0 2 0", cachedBank.change(14).show());
+    }
+    
+    @Test
+    public void testChange_validRekeyedByPutAndTake() throws SimpleException {
+        assertEquals("$6 0 0 0 3 0", new Bank(0, 0, 0, 3, 0).change(6).show()); // sanity
+        
+        cachedBank.change(6);
+        cachedBank.take(new Bank(0, 0, 0, 2, 0));
+        assertEquals("$6 0 0 1 0 1", cachedBank.change(6).show());
+        assertEquals(0, cache.getHits());
+        
+        cachedBank.put(new Bank(0, 0, 0, 2, 0));
+        assertEquals("$6 0 0 1 0 1", cachedBank.change(6).show());
+        assertEquals(1, cache.getHits());
+    }
+    
+    @Test
+    public void testChange_validRekeyedBySetBills() throws SimpleException {
+        assertEquals("$40 2 0 0 0 0", cachedBank.change(40).show());
+        cachedBank.setBills(new BillsBundle(BillType.TWENTY, 0));
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            cachedBank.change(40);
+        } finally {
+            assertEquals(0, cache.getHits());
+        }
+    }
+    
+    @Test
+    public void testChange_InsufficientFundsCached() throws SimpleException {
+        try {
+            cachedBank.change(999999);
+            fail("expected decline");
+        } catch(SimpleException e) {
+            assertEquals(SimpleException.Error.InsufficientFunds.getMessage(), e.getMessage());
+        }
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            cachedBank.change(999999);
+        } finally {
+            assertEquals(1, cache.getHits());
+        }
+    }
+    
+    @Test
+    public void testChange_validLeastRecentlyUsedEvicted() throws SimpleException {
+        cachedBank.change(1);
+        cachedBank.change(2);
+        cachedBank.change(1);
+        cachedBank.change(5);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        
+        // 2 was least recently used
+        cachedBank.change(1);
+        assertEquals(2, cache.getHits());
+        cachedBank.change(2);
+        assertEquals(2, cache.getHits());
+    }
+}
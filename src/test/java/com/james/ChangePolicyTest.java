@@ -0,0 +1,140 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.ChangePolicy;
+import com.james.ChangeSimulation.Result;
+import com.james.ChangeSimulation.Sale;
+
+public class ChangePolicyTest {
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testForName_valid() {
+        assertSame(ChangePolicy.FEWEST_BILLS, ChangePolicy.forName("fewest"));
+        assertSame(ChangePolicy.PRESERVE_SMALL, ChangePolicy.forName("preserve-small"));
+        
+        ChangePolicy balanced = ChangePolicy.forName("balanced:0, 5,10,20,20");
+        assertEquals("balanced:0,5,10,20,20", balanced.getName());
+        assertEquals(balanced.getName(), ChangePolicy.forName(balanced.getName()).getName());
+    }
+    
+    @Test
+    public void testForName_InvalidUnknown() {
+        thrown.expect(IllegalArgumentException.class);
+        ChangePolicy.forName("cheapest");
+    }
+    
+    @Test
+    public void testBalanced_InvalidNegativeTarget() {
+        thrown.expect(IllegalArgumentException.class);
+        ChangePolicy.balanced(0, 5, -1, 20, 20);
+    }
+    
+    @Test
+    public void testSetChangePolicy_InvalidTargetsForProfile() {
+        thrown.expect(IllegalArgumentException.class);
+        new Bank().setChangePolicy(ChangePolicy.balanced(0, 5, 10));
+    }
+    
+    @Test
+    public void testChange_validFewestBillsByDefault() throws SimpleException {
+        Bank bank = new Bank(0, 1, 40, 20, 20);
+        assertSame(ChangePolicy.FEWEST_BILLS, bank.getChangePolicy());
+        
+        assertEquals("$10 0 1 0 0 0", bank.change(10).show());
+    }
+    
+    @Test
+    public void testChange_validBalancedHandsOutSurplus() throws SimpleException {
+        Bank bank = new Bank(0, 1, 40, 20, 20);
+        bank.setChangePolicy(ChangePolicy.balanced(0, 5, 10, 20, 20));
+        
+        // the only ten is below target, the fives are four times over it
+        assertEquals("$10 0 0 2 0 0", bank.change(10).show());
+    }
+    
+    @Test
+    public void testChange_validPreserveSmallUsesLargerBills() throws SimpleException {
+        CurrencyProfile profile = new CurrencyProfile("test", 5, 3, 1);
+        Bank bank = new Bank(profile, 5, 5, 5);
+        bank.setChangePolicy(ChangePolicy.PRESERVE_SMALL);
+        
+        // two bills either way, fewest bills ties to the larger 5 + 1 while preserving small keeps the 1
+        assertEquals("$6 1 0 1", new Bank(profile, 5, 5, 5).change(6).show());
+        assertEquals("$6 0 2 0", bank.change(6).show());
+    }
+    
+    @Test
+    public void testChange_neverDeclinesWhatFewestBillsMakes() throws IOException {
+        CurrencyProfile profile = CurrencyProfile.load("lsd");
+        int[] counts = new int[profile.size()];
+        int[] fewestOut = new int[profile.size()];
+        int[] out = new int[profile.size()];
+        
+        ChangePolicy[] policies = { ChangePolicy.PRESERVE_SMALL,
+                ChangePolicy.balanced(ChangeSimulation.openingFloat(profile)) };
+        
+        Random random = new Random(11);
+        for(int n = 0; n < 500; n++) {
+            for(int i = 0; i < counts.length; i++) {
+                counts[i] = random.nextInt(4);
+            }
+            int amount = random.nextInt(3 * profile.getDenomination(0));
+            
+            boolean isFewestOk = new Bank(profile, counts).tryChange(amount, fewestOut).isOk();
+            for(ChangePolicy policy : policies) {
+                Bank bank = new Bank(profile, counts);
+                bank.setChangePolicy(policy);
+                
+                boolean isOk = bank.tryChange(amount, out).isOk();
+                assertEquals(policy + " amount " + amount, isFewestOk, isOk);
+                if(isOk) {
+                    long total = 0;
+                    int numOfBills = 0;
+                    int numOfFewestBills = 0;
+                    for(int i = 0; i < counts.length; i++) {
+                        assertTrue(out[i] <= counts[i]);
+                        total += (long) out[i] * profile.getDenomination(i);
+                        numOfBills += out[i];
+                        numOfFewestBills += fewestOut[i];
+                    }
+                    assertEquals(amount, total);
+                    assertTrue(numOfBills >= numOfFewestBills);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testSimulate_validRepeatable() throws SimpleException {
+        CurrencyProfile profile = CurrencyProfile.DEFAULT;
+        int[] openingFloat = ChangeSimulation.openingFloat(profile);
+        Sale[] sales = ChangeSimulation.generateSales(profile, 500, 3);
+        
+        assertEquals(sales[17].getPrice(), ChangeSimulation.generateSales(profile, 500, 3)[17].getPrice());
+        
+        for(ChangePolicy policy : new ChangePolicy[] { ChangePolicy.FEWEST_BILLS, ChangePolicy.PRESERVE_SMALL,
+                ChangePolicy.balanced(openingFloat) }) {
+            Result result = ChangeSimulation.simulate(profile, policy, openingFloat, sales);
+            Result again = ChangeSimulation.simulate(profile, policy, openingFloat, sales);
+            
+            assertSame(policy, result.getPolicy());
+            assertEquals(sales.length, result.getNumServed() + result.getNumDeclined());
+            assertTrue(result.getNumServed() > 0);
+            assertEquals(result.getNumServed(), again.getNumServed());
+            assertEquals(result.getClosingDrawer(), again.getClosingDrawer());
+        }
+    }
+}
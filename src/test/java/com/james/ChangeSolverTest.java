@@ -0,0 +1,341 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.james.ChangeSolver;
+
+public class ChangeSolverTest {
+    
+    private static final int[] DENOMINATIONS = {20, 10, 5, 2, 1};
+    
+    
+    
+    @Test
+    public void testSolve_validZero() {
+        int[] out = new int[5];
+        assertEquals(0, ChangeSolver.solve(0, DENOMINATIONS, new int[] {0, 0, 0, 0, 0}, out));
+        assertArrayEquals(new int[] {0, 0, 0, 0, 0}, out);
+    }
+    
+    @Test
+    public void testSolve_invalidUnreachable() {
+        int[] out = {9, 9, 9, 9, 9};
+        assertEquals(-1, ChangeSolver.solve(3, DENOMINATIONS, new int[] {5, 5, 5, 0, 0}, out));
+        
+        // untouched on failure
+        assertArrayEquals(new int[] {9, 9, 9, 9, 9}, out);
+    }
+    
+    @Test
+    public void testSolve_validGreedyHostile() {
+        int[] out = new int[5];
+        assertEquals(3, ChangeSolver.solve(6, DENOMINATIONS, new int[] {0, 0, 1, 3, 0}, out));
+        assertArrayEquals(new int[] {0, 0, 0, 3, 0}, out);
+        
+        assertEquals(4, ChangeSolver.solve(8, DENOMINATIONS, new int[] {0, 0, 1, 4, 0}, out));
+        assertArrayEquals(new int[] {0, 0, 0, 4, 0}, out);
+        
+        assertEquals(5, ChangeSolver.solve(28, DENOMINATIONS, new int[] {1, 0, 1, 5, 0}, out));
+        assertArrayEquals(new int[] {1, 0, 0, 4, 0}, out);
+    }
+    
+    @Test
+    public void testSolve_validNonCanonicalDenominations() {
+        int[] out = new int[3];
+        
+        // greedy would take 4 + 1 + 1
+        assertEquals(2, ChangeSolver.solve(6, new int[] {4, 3, 1}, new int[] {5, 5, 5}, out));
+        assertArrayEquals(new int[] {0, 2, 0}, out);
+    }
+    
+    @Test
+    public void testSolve_validMaxAmount() {
+        int[] out = new int[5];
+        int numTwenties = Integer.MAX_VALUE / 20;
+        assertEquals(numTwenties + 2, 
+                ChangeSolver.solve(Integer.MAX_VALUE, DENOMINATIONS, new int[] {numTwenties, 0, 1, 1, 0}, out));
+        assertArrayEquals(new int[] {numTwenties, 0, 1, 1, 0}, out);
+    }
+    
+    @Test
+    public void testSolve_matchesExhaustiveSearch() {
+        int[] available = new int[5];
+        int[] out = new int[5];
+        
+        for(int seed = 0; seed < 2000; seed++) {
+            for(int i = 0; i < 5; i++) {
+                available[i] = (seed * 31 + i * 7) % (i + 4);
+            }
+            int amount = (seed * 13) % 90;
+            
+            int expected = exhaustiveFewestBills(amount, available);
+            int actual = ChangeSolver.solve(amount, DENOMINATIONS, available, out);
+            assertEquals("amount " + amount, expected, actual);
+            
+            if(actual >= 0) {
+                int total = 0;
+                for(int i = 0; i < 5; i++) {
+                    assertTrue(out[i] <= available[i]);
+                    total += out[i] * DENOMINATIONS[i];
+                }
+                assertEquals(amount, total);
+            }
+        }
+    }
+    
+    @Test
+    public void testIsCanonical_values() {
+        assertTrue(ChangeSolver.isCanonical(DENOMINATIONS));
+        assertTrue(ChangeSolver.isCanonical(new int[] {50000, 20000, 10000, 5000, 2000, 1000, 500, 200, 100, 50, 20, 10, 
+            5, 2, 1}));
+        assertTrue(ChangeSolver.isCanonical(new int[] {25, 10, 5, 1}));
+        
+        assertFalse(ChangeSolver.isCanonical(new int[] {4, 3, 1}));
+        assertFalse(ChangeSolver.isCanonical(new int[] {240, 120, 60, 30, 24, 12, 6, 3, 1}));
+        
+        // some amounts cannot be made at all
+        assertFalse(ChangeSolver.isCanonical(new int[] {10, 5, 2}));
+    }
+    
+    @Test
+    public void testSolveCanonical_matchesSearch() {
+        int[] denominations = {10000, 5000, 2000, 1000, 500, 200, 100, 50, 25, 10, 5, 1};
+        int[] available = new int[denominations.length];
+        int[] greedyOut = new int[denominations.length];
+        int[] searchOut = new int[denominations.length];
+        
+        ChangeSolver solver = new ChangeSolver();
+        for(int seed = 0; seed < 2000; seed++) {
+            for(int i = 0; i < available.length; i++) {
+                available[i] = (seed * 31 + i * 7) % (i + 3);
+            }
+            int amount = (seed * 7919) % 30000;
+            
+            int expected = solver.solveFewest(amount, denominations, false, available, searchOut);
+            assertEquals("amount " + amount, expected, 
+                    solver.solveFewest(amount, denominations, true, available, greedyOut));
+            if(expected >= 0) {
+                assertArrayEquals("amount " + amount, searchOut, greedyOut);
+            }
+        }
+    }
+    
+    @Test
+    public void testSolve_manyDenominationsBoundedWork() {
+        int[] denominations = {97, 89, 83, 79, 73, 71, 67, 61, 59, 53, 47, 43, 41, 37, 31};
+        int[] available = new int[denominations.length];
+        Arrays.fill(available, 5);
+        int[] out = new int[denominations.length];
+        
+        ChangeSolver solver = new ChangeSolver();
+        assertEquals(2, solver.solveFewest(180, denominations, available, out)); // 97 + 83
+        for(int amount = 0; amount < 3000; amount++) {
+            solver.solveFewest(amount, denominations, available, out);
+            assertTrue("amount " + amount, solver.getNumNodesVisited() < 100000);
+        }
+    }
+    
+    @Test
+    public void testSolve_validEurDrawerBoundedWork() throws Exception {
+        CurrencyProfile eur = CurrencyProfile.load("eur");
+        int[] available = {1, 0, 132, 163, 397, 391, 335, 388, 384, 0, 0, 0, 0, 0, 341};
+        int[] out = new int[available.length];
+        
+        // visited 44 million nodes, over a second, before states were bounded
+        ChangeSolver solver = new ChangeSolver();
+        assertEquals(94, solver.solveFewest(101087, eur.getDenominations(), eur.isCanonical(), available, out));
+        assertArrayEquals(new int[] {1, 0, 5, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 87}, out);
+        assertTrue(solver.getNumNodesVisited() <= ChangeSolver.UNPRUNED_NODES + ChangeSolver.MAX_FEWEST_NODES + 1);
+    }
+    
+    @Test
+    public void testSolve_validRandomDrawersMatchTableBoundedWork() throws Exception {
+        Random random = new Random(15);
+        ChangeSolver solver = new ChangeSolver();
+        
+        for(String name : new String[] {"usd", "eur"}) {
+            CurrencyProfile profile = CurrencyProfile.load(name);
+            int[] denominations = profile.getDenominations();
+            int[] available = new int[denominations.length];
+            int[] out = new int[denominations.length];
+            
+            for(int n = 0; n < 200; n++) {
+                for(int i = 0; i < available.length; i++) {
+                    available[i] = random.nextInt(3) == 0 ? 0 : random.nextInt(500);
+                }
+                int amount = 1 + random.nextInt(50000);
+                
+                int numOfBills = solver.solveFewest(amount, denominations, profile.isCanonical(), available, out);
+                assertEquals(name + " " + amount + " " + Arrays.toString(available),
+                        tableFewestBills(amount, denominations, available), numOfBills);
+                assertTrue(solver.getNumNodesVisited() <= ChangeSolver.UNPRUNED_NODES + ChangeSolver.MAX_FEWEST_NODES
+                        + 1);
+            }
+        }
+    }
+    
+    @Test
+    public void testSolve_validSearchOutOfNodesSettledExactly() {
+        int[] denominations = {764, 666, 640, 606, 587, 503, 437, 381, 352, 268, 135, 44, 5};
+        int[] available = {95, 18, 51, 2, 47, 168, 7, 60, 24, 31, 134, 122, 81};
+        int[] out = new int[denominations.length];
+        
+        // the search's budget ran out on 559 bills
+        ChangeSolver solver = new ChangeSolver();
+        assertEquals(558, solver.solveFewest(279978, denominations, available, out));
+        assertEquals(558, tableFewestBills(279978, denominations, available));
+        assertPays(279978, denominations, available, out);
+        assertTrue(solver.getNumNodesVisited() > ChangeSolver.UNPRUNED_NODES + ChangeSolver.MAX_FEWEST_NODES);
+    }
+    
+    @Test
+    public void testSolve_validBeyondTableNotDeclined() {
+        int[] denominations = {370, 340, 338, 313, 295, 253, 248, 225, 216, 177, 66, 21};
+        int[] available = {1964, 1157, 1450, 1817, 1490, 269, 1498, 78, 356, 879, 955, 163};
+        int[] out = new int[denominations.length];
+        
+        // over the table's reach, and declined once the search's budget ran out
+        assertTrue(3321496 > ChangeSolver.MAX_REACHABLE_UNITS);
+        assertEquals(11165, new ChangeSolver().solveFewest(3321496, denominations, available, out));
+        assertPays(3321496, denominations, available, out);
+    }
+    
+    @Test
+    public void testSolveCheapest_matchesExhaustiveSearch() {
+        int[] available = new int[5];
+        int[] costs = new int[5];
+        int[] out = new int[5];
+        
+        // one solver throughout, so nothing remembered from one drawer may leak into the next
+        ChangeSolver solver = new ChangeSolver();
+        Random random = new Random(7);
+        for(int n = 0; n < 2000; n++) {
+            for(int i = 0; i < 5; i++) {
+                available[i] = random.nextInt(i + 4);
+                costs[i] = 1 + random.nextInt(9);
+            }
+            int amount = random.nextInt(90);
+            
+            long expected = exhaustiveCheapest(amount, costs, available);
+            int numOfBills = solver.solveCheapest(amount, DENOMINATIONS, costs, available, out);
+            assertEquals("amount " + amount, expected < 0, numOfBills < 0);
+            assertEquals("amount " + amount, exhaustiveFewestBills(amount, available),
+                    solver.solveFewest(amount, DENOMINATIONS, available, new int[5]));
+            
+            if(numOfBills >= 0) {
+                int total = 0;
+                long cost = 0;
+                for(int i = 0; i < 5; i++) {
+                    assertTrue(out[i] <= available[i]);
+                    total += out[i] * DENOMINATIONS[i];
+                    cost += (long) out[i] * costs[i];
+                }
+                assertEquals(amount, total);
+                assertEquals("amount " + amount, expected, cost);
+            }
+        }
+    }
+    
+    @Test
+    public void testSolveCheapest_validPrefersCheaperBills() {
+        int[] out = new int[5];
+        ChangeSolver solver = new ChangeSolver();
+        
+        // tens dear, fives cheap: two fives rather than one ten
+        assertEquals(2, solver.solveCheapest(10, DENOMINATIONS, new int[] {1, 10, 1, 1, 1}, 
+                new int[] {0, 3, 3, 3, 3}, out));
+        assertArrayEquals(new int[] {0, 0, 2, 0, 0}, out);
+        
+        // equal costs make it a fewest bills solve
+        assertEquals(2, solver.solveCheapest(12, DENOMINATIONS, new int[] {1, 1, 1, 1, 1}, 
+                new int[] {0, 3, 3, 3, 3}, out));
+        assertArrayEquals(new int[] {0, 1, 0, 1, 0}, out);
+    }
+    
+    @Test
+    public void testSolveCheapest_invalidUnreachable() {
+        int[] out = {9, 9, 9, 9, 9};
+        ChangeSolver solver = new ChangeSolver();
+        
+        assertEquals(-1, solver.solveCheapest(3, DENOMINATIONS, new int[] {1, 2, 4, 8, 16}, 
+                new int[] {5, 5, 5, 0, 0}, out));
+        assertArrayEquals(new int[] {9, 9, 9, 9, 9}, out);
+    }
+    
+    private static void assertPays(final int amount, final int[] denominations, final int[] available, 
+            final int[] out) {
+        long total = 0;
+        for(int i = 0; i < denominations.length; i++) {
+            assertTrue(out[i] >= 0 && out[i] <= available[i]);
+            total += (long) out[i] * denominations[i];
+        }
+        assertEquals(amount, total);
+    }
+    
+    /**
+     * Fewest bills by dynamic program over every amount up to the amount, each denomination's bills in bundles of 1,
+     * 2, 4 and so on.
+     */
+    private static int tableFewestBills(final int amount, final int[] denominations, final int[] available) {
+        int[] fewest = new int[amount + 1];
+        Arrays.fill(fewest, Integer.MAX_VALUE);
+        fewest[0] = 0;
+        
+        for(int i = 0; i < denominations.length; i++) {
+            int numLeft = available[i];
+            for(int bundle = 1; numLeft > 0; bundle <<= 1) {
+                int numInBundle = Math.min(bundle, numLeft);
+                numLeft -= numInBundle;
+                long value = (long) numInBundle * denominations[i];
+                for(int a = amount; a >= value; a--) {
+                    int from = fewest[a - (int) value];
+                    if(from != Integer.MAX_VALUE && from + numInBundle < fewest[a]) {
+                        fewest[a] = from + numInBundle;
+                    }
+                }
+            }
+        }
+        
+        return fewest[amount] == Integer.MAX_VALUE ? -1 : fewest[amount];
+    }
+    
+    private static int exhaustiveFewestBills(final int amount, final int[] available) {
+        int best = -1;
+        for(int a = 0; a <= available[0]; a++) 
+            for(int b = 0; b <= available[1]; b++) 
+                for(int c = 0; c <= available[2]; c++) 
+                    for(int d = 0; d <= available[3]; d++) 
+                        for(int e = 0; e <= available[4]; e++) {
+                            if(a * 20 + b * 10 + c * 5 + d * 2 + e == amount) {
+                                int count = a + b + c + d + e;
+                                if(best < 0 || count < best) {
+                                    best = count;
+                                }
+                            }
+                        }
+        return best;
+    }
+    
+    private static long exhaustiveCheapest(final int amount, final int[] costs, final int[] available) {
+        long best = -1;
+        for(int a = 0; a <= available[0]; a++) 
+            for(int b = 0; b <= available[1]; b++) 
+                for(int c = 0; c <= available[2]; c++) 
+                    for(int d = 0; d <= available[3]; d++) 
+                        for(int e = 0; e <= available[4]; e++) {
+                            if(a * 20 + b * 10 + c * 5 + d * 2 + e == amount) {
+                                long cost = (long) a * costs[0] + (long) b * costs[1] + (long) c * costs[2] 
+                                        + (long) d * costs[3] + (long) e * costs[4];
+                                if(best < 0 || cost < best) {
+                                    best = cost;
+                                }
+                            }
+                        }
+        return best;
+    }
+}
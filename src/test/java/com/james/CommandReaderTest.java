@@ -0,0 +1,89 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.CommandReader;
+import com.james.Main;
+import com.james.SimpleException;
+
+public class CommandReaderTest {
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    private static CommandReader readerOf(final String input, final int bufferSize) {
+        return new CommandReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), bufferSize);
+    }
+    
+    
+    
+    @Test
+    public void testNextCommand_validCommandsAcrossBufferRefills() throws IOException, SimpleException {
+        CommandReader reader = readerOf("  show\nput\r\n\tchange take   quit\n", 3);
+        
+        assertEquals(Main.VALID_CMDS.show, reader.nextCommand());
+        assertEquals(Main.VALID_CMDS.put, reader.nextCommand());
+        assertEquals(Main.VALID_CMDS.change, reader.nextCommand());
+        assertEquals(Main.VALID_CMDS.take, reader.nextCommand());
+        assertEquals(Main.VALID_CMDS.quit, reader.nextCommand());
+        assertNull(reader.nextCommand());
+    }
+    
+    @Test
+    public void testNextCommand_InvalidCommandSkipsLine() throws IOException, SimpleException {
+        CommandReader reader = readerOf("shows 1 2\nshow\n", 4);
+        
+        try {
+            reader.nextCommand();
+            fail("expected invalid command");
+        } catch(SimpleException e) {
+            assertEquals(SimpleException.Error.InvalidCommand.getMessage(), e.getMessage());
+        }
+        
+        assertEquals(Main.VALID_CMDS.show, reader.nextCommand());
+    }
+    
+    @Test
+    public void testNextCommand_InvalidCommandPrefix() throws IOException, SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidCommand.getMessage());
+        readerOf("sho", 16).nextCommand();
+    }
+    
+    @Test
+    public void testNextInt_validValues() throws IOException, SimpleException {
+        CommandReader reader = readerOf("0 42 -7 +3 2147483647 -2147483648", 5);
+        
+        assertEquals(0, reader.nextInt());
+        assertEquals(42, reader.nextInt());
+        assertEquals(-7, reader.nextInt());
+        assertEquals(3, reader.nextInt());
+        assertEquals(Integer.MAX_VALUE, reader.nextInt());
+        assertEquals(Integer.MIN_VALUE, reader.nextInt());
+    }
+    
+    @Test
+    public void testNextInt_InvalidAmountOverflow() throws IOException, SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        readerOf("2147483648", 16).nextInt();
+    }
+    
+    @Test
+    public void testNextInt_InvalidAmountNotNumber() throws IOException, SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        readerOf("1x", 16).nextInt();
+    }
+    
+    @Test
+    public void testNextInt_InvalidAmountAtEnd() throws IOException, SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        readerOf("  ", 16).nextInt();
+    }
+}
@@ -0,0 +1,210 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.Bank;
+import com.james.ConcurrentRegister;
+import com.james.SimpleException;
+
+public class ConcurrentRegisterTest {
+    
+    private static final int[] STRESS_THREAD_COUNTS = {1, 2, 4, 8};
+    private static final int STRESS_OPS_PER_THREAD = 20000;
+    
+    private ConcurrentRegister nonZeroRegister;
+    private ConcurrentRegister zeroRegister;
+    
+    @Before
+    public void setUp() throws Exception {
+        nonZeroRegister = new ConcurrentRegister(1, 2, 3, 4, 5);
+        zeroRegister = new ConcurrentRegister();
+    }
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testConstruct_InvalidCountTooLarge() {
+        thrown.expect(IllegalArgumentException.class);
+        new ConcurrentRegister(ConcurrentRegister.MAX_NUM_OF_BILLS + 1, 0, 0, 0, 0);
+    }
+    
+    @Test
+    public void testShow_validValues() {
+        assertEquals("$0 0 0 0 0 0", zeroRegister.show());
+        assertEquals("$68 1 2 3 4 5", nonZeroRegister.show());
+        assertEquals("$68 1 2 3 4 5", nonZeroRegister.snapshot().show());
+    }
+    
+    @Test
+    public void testPut_validValues() throws SimpleException {
+        nonZeroRegister.put(new Bank(1, 2, 3, 0, 5));
+        assertEquals("$128 2 4 6 4 10", nonZeroRegister.show());
+    }
+    
+    @Test
+    public void testPut_InvalidAmountByNull() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        nonZeroRegister.put(null);
+    }
+    
+    @Test
+    public void testPut_InvalidAmountByNegative() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        nonZeroRegister.put(new Bank(0, 0, 0, 0, -1));
+    }
+    
+    @Test
+    public void testPut_InvalidAmountPastCapacity() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        try {
+            nonZeroRegister.put(new Bank(0, 0, 0, 0, ConcurrentRegister.MAX_NUM_OF_BILLS));
+        } finally {
+            assertEquals("$68 1 2 3 4 5", nonZeroRegister.show());
+        }
+    }
+    
+    @Test
+    public void testTake_validValues() throws SimpleException {
+        nonZeroRegister.take(new Bank(1, 1, 1, 1, 1));
+        assertEquals("$30 0 1 2 3 4", nonZeroRegister.show());
+    }
+    
+    @Test
+    public void testTake_InsufficientFundsNothingTaken() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            nonZeroRegister.take(new Bank(1, 1, 1, 1, 6));
+        } finally {
+            assertEquals("$68 1 2 3 4 5", nonZeroRegister.show());
+        }
+    }
+    
+    @Test
+    public void testChange_validNothingTaken() throws SimpleException {
+        int[] out = new int[5];
+        assertEquals(2, nonZeroRegister.change(11, out));
+        assertArrayEquals(new int[] {0, 1, 0, 0, 1}, out);
+        assertEquals("$68 1 2 3 4 5", nonZeroRegister.show());
+    }
+    
+    @Test
+    public void testChangeAndTake_validValues() throws SimpleException {
+        int[] out = new int[5];
+        
+        ConcurrentRegister register43 = new ConcurrentRegister(1, 0, 3, 4, 0);
+        assertEquals(4, register43.changeAndTake(11, out));
+        assertArrayEquals(new int[] {0, 0, 1, 3, 0}, out);
+        assertEquals("$32 1 0 2 1 0", register43.show());
+    }
+    
+    @Test
+    public void testChangeAndTake_InsufficientFunds() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        nonZeroRegister.changeAndTake(69, new int[5]);
+    }
+    
+    
+    
+    /**
+     * Tellers put random bills and make change concurrently while a reader checks every shown snapshot adds up.  At 
+     * the end every bill put, less every bill handed out, must be in the register.
+     */
+    @Test
+    public void testStress_conservesBillsAsThreadsScale() throws Exception {
+        for(int numThreads : STRESS_THREAD_COUNTS) {
+            runStress(numThreads);
+        }
+    }
+    
+    private void runStress(final int numThreads) throws Exception {
+        final ConcurrentRegister register = new ConcurrentRegister(10, 10, 10, 10, 10);
+        final AtomicLongArray netBills = new AtomicLongArray(new long[] {10, 10, 10, 10, 10});
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        
+        List<Thread> tellers = new ArrayList<>();
+        for(int t = 0; t < numThreads; t++) {
+            final long seed = 31L * numThreads + t;
+            tellers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                int[] out = new int[5];
+                try {
+                    start.await();
+                    for(int op = 0; op < STRESS_OPS_PER_THREAD; op++) {
+                        if(random.nextBoolean()) {
+                            int[] bills = new int[5];
+                            bills[random.nextInt(5)] = 1 + random.nextInt(2);
+                            try {
+                                register.put(new Bank(bills[0], bills[1], bills[2], bills[3], bills[4]));
+                                for(int i = 0; i < 5; i++) {
+                                    netBills.addAndGet(i, bills[i]);
+                                }
+                            } catch(SimpleException e) {
+                                // drawer full for that type
+                            }
+                        } else {
+                            try {
+                                register.changeAndTake(1 + random.nextInt(60), out);
+                                for(int i = 0; i < 5; i++) {
+                                    netBills.addAndGet(i, -out[i]);
+                                }
+                            } catch(SimpleException e) {
+                                // declined
+                            }
+                        }
+                    }
+                } catch(Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        
+        Thread reader = new Thread(() -> {
+            while(running.get()) {
+                String[] shown = register.show().split(" ");
+                int total = 0;
+                for(int i = 0; i < 5; i++) {
+                    total += Integer.parseInt(shown[i + 1]) * BillType.values()[i].getDenomination();
+                }
+                if(!shown[0].equals("$" + total)) {
+                    failure.compareAndSet(null, new AssertionError("inconsistent snapshot " + shown[0]));
+                }
+            }
+        });
+        
+        reader.start();
+        tellers.forEach(Thread::start);
+        start.countDown();
+        for(Thread teller : tellers) {
+            teller.join();
+        }
+        running.set(false);
+        reader.join();
+        
+        if(failure.get() != null) {
+            throw new AssertionError(numThreads + " threads", failure.get());
+        }
+        
+        for(BillType billType : BillType.values()) {
+            assertEquals(numThreads + " threads " + billType, 
+                    netBills.get(billType.ordinal()), register.getNumOfBills(billType));
+        }
+    }
+}
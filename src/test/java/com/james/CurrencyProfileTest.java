@@ -0,0 +1,102 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.CurrencyProfile;
+
+public class CurrencyProfileTest {
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testDefault_matchesBillTypes() {
+        assertEquals(BillType.values().length, CurrencyProfile.DEFAULT.size());
+        for(BillType billType : BillType.values()) {
+            assertEquals(billType.getDenomination(), CurrencyProfile.DEFAULT.getDenomination(billType.ordinal()));
+        }
+        assertTrue(CurrencyProfile.DEFAULT.isCanonical());
+    }
+    
+    @Test
+    public void testConstruct_sortsLargestFirst() {
+        CurrencyProfile profile = new CurrencyProfile("test", 1, 25, 5, 10);
+        
+        assertArrayEquals(new int[] {25, 10, 5, 1}, profile.getDenominations());
+        assertEquals(2, profile.indexOf(5));
+        assertEquals(-1, profile.indexOf(2));
+    }
+    
+    @Test
+    public void testConstruct_InvalidRepeated() {
+        thrown.expect(IllegalArgumentException.class);
+        new CurrencyProfile("test", 5, 2, 5, 1);
+    }
+    
+    @Test
+    public void testConstruct_InvalidNotPositive() {
+        thrown.expect(IllegalArgumentException.class);
+        new CurrencyProfile("test", 5, 0);
+    }
+    
+    @Test
+    public void testConstruct_InvalidEmpty() {
+        thrown.expect(IllegalArgumentException.class);
+        new CurrencyProfile("test");
+    }
+    
+    @Test
+    public void testLoad_builtIn() throws IOException {
+        CurrencyProfile eur = CurrencyProfile.load("eur");
+        assertEquals("EUR", eur.getName());
+        assertEquals(15, eur.size());
+        assertEquals(50000, eur.getDenomination(0));
+        assertTrue(eur.isCanonical());
+        
+        assertEquals(12, CurrencyProfile.load("usd").size());
+        assertTrue(CurrencyProfile.load("gbp").isCanonical());
+        assertFalse(CurrencyProfile.load("lsd").isCanonical());
+        
+        assertSame(CurrencyProfile.DEFAULT, CurrencyProfile.load("default"));
+    }
+    
+    @Test
+    public void testLoad_file() throws IOException {
+        Path file = Files.createTempFile("till", ".properties");
+        try {
+            Files.write(file, Arrays.asList("name=TILL", "denominations=1, 3, 4"), StandardCharsets.US_ASCII);
+            
+            CurrencyProfile profile = CurrencyProfile.load(file.toString());
+            assertEquals("TILL", profile.getName());
+            assertArrayEquals(new int[] {4, 3, 1}, profile.getDenominations());
+            assertFalse(profile.isCanonical());
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    @Test
+    public void testLoad_missing() throws IOException {
+        thrown.expect(IOException.class);
+        CurrencyProfile.load("no-such-currency");
+    }
+    
+    @Test
+    public void testEquals_byDenominations() {
+        assertEquals(new CurrencyProfile("a", 20, 10, 5, 2, 1), CurrencyProfile.DEFAULT);
+        assertEquals(new CurrencyProfile("a", 20, 10, 5, 2, 1).hashCode(), CurrencyProfile.DEFAULT.hashCode());
+        assertNotEquals(new CurrencyProfile("default", 20, 10, 5, 1), CurrencyProfile.DEFAULT);
+    }
+}
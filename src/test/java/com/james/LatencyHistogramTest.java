@@ -0,0 +1,104 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.james.LatencyHistogram;
+
+public class LatencyHistogramTest {
+    
+    
+    
+    @Test
+    public void testRecord_emptyReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+    
+    @Test
+    public void testRecord_smallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int value = 1; value <= 10; value++) {
+            histogram.record(value);
+        }
+        
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.getValueAtPercentile(50));
+        assertEquals(10, histogram.getValueAtPercentile(100));
+        assertEquals(10, histogram.getMax());
+        assertEquals(5.5, histogram.getMean(), 0);
+    }
+    
+    @Test
+    public void testRecord_largeValuesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(5_000_000);
+        
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue("p50 " + p50, p50 >= 1000 && p50 <= 1000 * 1.07);
+        
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue("p99 " + p99, p99 >= 1000 && p99 <= 1000 * 1.07);
+        
+        assertEquals(5_000_000, histogram.getValueAtPercentile(99.9));
+    }
+    
+    @Test
+    public void testRecord_negativeAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+    
+    @Test
+    public void testBucketOf_coversLongRange() {
+        for(long value : new long[] { 0, 1, 31, 32, 33, 63, 64, 1000, 1L << 40, Long.MAX_VALUE }) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.highestValueIn(bucket));
+            assertTrue(value + " below its bucket", bucket == 0 || value > LatencyHistogram.highestValueIn(bucket - 1));
+        }
+    }
+    
+    @Test
+    public void testReset_clearsCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+        
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+    
+    @Test
+    public void testRecord_concurrentCountsEveryValue() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            long value = 100 * (t + 1);
+            threads[t] = new Thread(() -> {
+                for(int i = 0; i < 10_000; i++) {
+                    histogram.record(value);
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(400, histogram.getMax());
+    }
+}
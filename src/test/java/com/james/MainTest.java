@@ -0,0 +1,104 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.james.Bank;
+import com.james.CommandReader;
+import com.james.Main;
+
+public class MainTest {
+    
+    private static final String NL = System.lineSeparator();
+    
+    private static final String SESSION = 
+            "show\nput 1 2 3 0 5\nchange 11\nchange 14\nbogus 1\ntake 0 0 0 0 x\nquit\nshow\n";
+    
+    private static final String EXPECTED = 
+            "ready" + NL
+            + "$0 0 0 0 0 0" + NL
+            + "$60 1 2 3 0 5" + NL
+            + "$49 1 1 3 0 4" + NL
+            + "$35 1 0 3 0 0" + NL
+            + "Sorry - Invalid Command" + NL
+            + "Sorry - Invalid Amount" + NL;
+    
+    private static String runSession(final String input, final boolean isFlushEachCommand) throws IOException {
+        StringWriter out = new StringWriter();
+        CommandReader reader = new CommandReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+        Main.run(reader, new Bank(), out, isFlushEachCommand);
+        return out.toString();
+    }
+    
+    
+    
+    @Test
+    public void testRun_interactiveSession() throws IOException {
+        assertEquals(EXPECTED, runSession(SESSION, true));
+    }
+    
+    @Test
+    public void testRun_batchMatchesInteractive() throws IOException {
+        assertEquals(runSession(SESSION, true), runSession(SESSION, false));
+    }
+    
+    @Test
+    public void testRun_endOfInputWithoutQuit() throws IOException {
+        assertEquals("ready" + NL + "$0 0 0 0 0 0" + NL, runSession("show", false));
+    }
+    
+    @Test
+    public void testRun_unexpectedErrorReportedAndSessionContinues() throws IOException {
+        Path file = Files.createTempFile("register", ".journal");
+        Files.delete(file);
+        try {
+            Bank register = new Bank();
+            RegisterJournal journal = new RegisterJournal(file, RegisterJournal.Durability.PER_OP);
+            register.setJournal(journal, 0);
+            journal.close();
+            
+            StringWriter out = new StringWriter();
+            CommandReader reader = new CommandReader(new ByteArrayInputStream(
+                    "put 0 0 0 0 1\nshow\n".getBytes(StandardCharsets.US_ASCII)));
+            Main.run(reader, register, out, false);
+            
+            String[] lines = out.toString().split(NL);
+            assertTrue(lines[1].startsWith(IllegalStateException.class.getName() + ": journal closed"));
+            assertEquals(register.show(), lines[lines.length - 1]);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    @Test
+    public void testWrite_validInChunks() throws IOException {
+        StringBuilder response = new StringBuilder("$68 1 2 3 4 5").append(NL).append("$0 0 0 0 0 0");
+        
+        for(int chunkSize : new int[] { 1, 4, 13, Main.RESPONSE_CHUNK_SIZE }) {
+            StringWriter out = new StringWriter();
+            Main.write(out, response, new char[chunkSize]);
+            assertEquals(response.toString(), out.toString());
+        }
+    }
+    
+    @Test
+    public void testRun_profileReadsOneCountPerDenomination() throws IOException {
+        StringWriter out = new StringWriter();
+        CommandReader reader = new CommandReader(new ByteArrayInputStream(
+                "put 1 2 3 4\nchange 6\ntake 1 1 1\n".getBytes(StandardCharsets.US_ASCII)));
+        Main.run(reader, new Bank(new CurrencyProfile("test", 25, 10, 5, 1)), out, false);
+        
+        assertEquals("ready" + NL 
+                + "$64 1 2 3 4" + NL 
+                + "$58 1 2 2 3" + NL 
+                + "Sorry - Invalid Amount" + NL, out.toString());
+    }
+}
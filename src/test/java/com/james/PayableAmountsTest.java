@@ -0,0 +1,149 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class PayableAmountsTest {
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testCanPay_validEmptyPaysZeroOnly() {
+        Bank bank = new Bank();
+        bank.setPayableAmounts(new PayableAmounts(bank.getProfile(), 100));
+        
+        PayableAmounts payable = bank.getPayableAmounts();
+        assertTrue(payable.canPay(0));
+        assertFalse(payable.canPay(1));
+        assertEquals(1, payable.countPayable());
+        assertEquals(-1, payable.nextPayable(1));
+    }
+    
+    @Test
+    public void testCanPay_validFollowsPutAndTake() throws SimpleException {
+        Bank bank = new Bank(0, 0, 1, 2, 0);
+        PayableAmounts payable = new PayableAmounts(bank.getProfile(), 50);
+        bank.setPayableAmounts(payable);
+        
+        // 0 2 4 5 7 9
+        assertTrue(payable.canPay(9));
+        assertFalse(payable.canPay(3));
+        assertEquals(7, payable.nextPayable(6));
+        assertEquals(-1, payable.nextPayable(10));
+        
+        bank.put(new Bank(0, 0, 0, 0, 1));
+        assertTrue(payable.canPay(3));
+        assertTrue(payable.canPay(10));
+        
+        // 2 + 2 + 1 still pays 5
+        bank.take(new Bank(0, 0, 1, 0, 0));
+        assertTrue(payable.canPay(5));
+        assertEquals(-1, payable.nextPayable(6));
+        
+        bank.changeAndTake(4, new int[5]);
+        assertEquals(0, payable.nextPayable(0));
+        assertEquals(1, payable.nextPayable(1));
+        assertEquals(-1, payable.nextPayable(2));
+    }
+    
+    @Test
+    public void testNextPayable_validAcrossSummaryWords() throws SimpleException {
+        CurrencyProfile profile = new CurrencyProfile("test", 9000, 1);
+        Bank bank = new Bank(profile, 2, 0);
+        PayableAmounts payable = new PayableAmounts(profile, 20000);
+        bank.setPayableAmounts(payable);
+        
+        assertEquals(9000, payable.nextPayable(1));
+        assertEquals(18000, payable.nextPayable(9001));
+        assertEquals(-1, payable.nextPayable(18001));
+        assertEquals(-1, payable.nextPayable(30000));
+    }
+    
+    @Test
+    public void testUpdate_matchesBruteForce() throws IOException, SimpleException {
+        for(String name : new String[] { "default", "lsd", "usd" }) {
+            CurrencyProfile profile = name.equals("default") ? CurrencyProfile.DEFAULT : CurrencyProfile.load(name);
+            int ceiling = 3 * profile.getDenomination(0) + 7;
+            Bank bank = new Bank(profile);
+            PayableAmounts payable = new PayableAmounts(profile, ceiling);
+            bank.setPayableAmounts(payable);
+            
+            Random random = new Random(5);
+            int[] numOfBills = new int[profile.size()];
+            for(int n = 0; n < 300; n++) {
+                int index = random.nextInt(profile.size());
+                numOfBills[index] = 1 + random.nextInt(3);
+                
+                Bank bills = new Bank(profile, numOfBills);
+                if(random.nextInt(3) == 0) {
+                    bank.tryTake(bills);
+                } else if(random.nextInt(4) == 0) {
+                    bank.tryChangeAndTake(random.nextInt(ceiling), new int[profile.size()]);
+                } else {
+                    bank.put(bills);
+                }
+                numOfBills[index] = 0;
+                
+                boolean[] expected = reachable(bank, ceiling);
+                int count = 0;
+                for(int amount = 0; amount <= ceiling; amount++) {
+                    assertEquals(name + " amount " + amount, expected[amount], payable.canPay(amount));
+                    count += expected[amount] ? 1 : 0;
+                }
+                assertEquals(count, payable.countPayable());
+            }
+        }
+    }
+    
+    @Test
+    public void testTransaction_validUpdatedOnCommit() throws SimpleException {
+        Bank bank = new Bank(0, 0, 0, 0, 0);
+        PayableAmounts payable = new PayableAmounts(bank.getProfile(), 40);
+        bank.setPayableAmounts(payable);
+        
+        Bank.Transaction transaction = bank.begin();
+        transaction.put(new Bank(1, 0, 0, 0, 0));
+        assertFalse(payable.canPay(20));
+        
+        transaction.commit();
+        assertTrue(payable.canPay(20));
+    }
+    
+    @Test
+    public void testCanPay_InvalidAboveCeiling() {
+        thrown.expect(IllegalArgumentException.class);
+        new PayableAmounts(CurrencyProfile.DEFAULT, 100).canPay(101);
+    }
+    
+    @Test
+    public void testSetPayableAmounts_InvalidProfile() {
+        thrown.expect(IllegalArgumentException.class);
+        new Bank().setPayableAmounts(new PayableAmounts(new CurrencyProfile("test", 5, 1), 100));
+    }
+    
+    /**
+     * Bounded knapsack over the bank's counts, one bill at a time.
+     */
+    private static boolean[] reachable(final Bank bank, final int ceiling) {
+        boolean[] reachable = new boolean[ceiling + 1];
+        reachable[0] = true;
+        for(int i = 0; i < bank.getProfile().size(); i++) {
+            int denomination = bank.getProfile().getDenomination(i);
+            for(int n = 0; n < bank.getNumOfBills(i); n++) {
+                for(int amount = ceiling; amount >= denomination; amount--) {
+                    reachable[amount] |= reachable[amount - denomination];
+                }
+            }
+        }
+        return reachable;
+    }
+}
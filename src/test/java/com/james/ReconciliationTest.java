@@ -0,0 +1,154 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.Reconciliation.Discrepancy;
+import com.james.Reconciliation.Kind;
+
+public class ReconciliationTest {
+    
+    private static final int NUM_REGISTERS = 3 * Reconciliation.CHUNK_SIZE + 17;
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testReconcile_validBalanced() {
+        Bank[] registers = new Bank[NUM_REGISTERS];
+        int[][] expectedCounts = new int[NUM_REGISTERS][];
+        long[] totals = fill(registers, expectedCounts, new Random(1));
+        
+        Reconciliation reconciliation = Reconciliation.reconcile(registers, expectedCounts);
+        
+        assertTrue(reconciliation.isBalanced());
+        assertEquals(NUM_REGISTERS, reconciliation.getNumRegisters());
+        assertEquals(0, reconciliation.getNumRegistersWithDiscrepancies());
+        
+        long totalValue = 0;
+        for(int i = 0; i < totals.length; i++) {
+            assertEquals(totals[i], reconciliation.getTotal(i));
+            assertEquals(totals[i], reconciliation.getExpectedTotal(i));
+            totalValue += totals[i] * CurrencyProfile.DEFAULT.getDenomination(i);
+        }
+        assertEquals(totalValue, reconciliation.getTotalValue());
+        assertEquals(totalValue, reconciliation.getExpectedTotalValue());
+    }
+    
+    @Test
+    public void testReconcile_validDiscrepanciesInRegisterOrder() throws SimpleException {
+        Bank[] registers = new Bank[NUM_REGISTERS];
+        int[][] expectedCounts = new int[NUM_REGISTERS][];
+        fill(registers, expectedCounts, new Random(2));
+        
+        registers[2500].put(new Bank(0, 1, 0, 0, 0));
+        registers[5].take(new Bank(0, 0, 0, 0, registers[5].getNumOfBills(4)));
+        registers[5].put(new Bank(1, 0, 0, 0, 0));
+        registers[900] = new Bank(0, -3, 0, 0, 0);
+        expectedCounts[900] = new int[5];
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Reconciliation reconciliation = Reconciliation.reconcile(registers, expectedCounts, pool);
+            
+            assertFalse(reconciliation.isBalanced());
+            assertEquals(3, reconciliation.getNumRegistersWithDiscrepancies());
+            
+            List<Discrepancy> discrepancies = reconciliation.getDiscrepancies();
+            assertEquals(4, discrepancies.size());
+            
+            assertDiscrepancy(discrepancies.get(0), 5, Kind.COUNT, 0, expectedCounts[5][0],
+                    expectedCounts[5][0] + 1);
+            assertDiscrepancy(discrepancies.get(1), 5, Kind.COUNT, 4, expectedCounts[5][4], 0);
+            assertDiscrepancy(discrepancies.get(2), 900, Kind.NEGATIVE_COUNT, 1, 0, -3);
+            assertDiscrepancy(discrepancies.get(3), 2500, Kind.COUNT, 1, expectedCounts[2500][1],
+                    expectedCounts[2500][1] + 1);
+            
+            // + $10 in 2500, + $20 less the ones in 5, - $30 in 900
+            assertEquals(-expectedCounts[5][4], reconciliation.getTotalValue() - reconciliation.getExpectedTotalValue());
+            assertTrue(reconciliation.getReport().contains("register 2500 COUNT $10 expected="
+                    + expectedCounts[2500][1] + " actual=" + (expectedCounts[2500][1] + 1)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void testReconcile_validSameOnAnyPool() {
+        Bank[] registers = new Bank[NUM_REGISTERS];
+        int[][] expectedCounts = new int[NUM_REGISTERS][];
+        fill(registers, expectedCounts, new Random(3));
+        for(int n = 0; n < NUM_REGISTERS; n += 7) {
+            expectedCounts[n][n % 5]++;
+        }
+        
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            String report = Reconciliation.reconcile(registers, expectedCounts, one).getReport();
+            assertEquals(report, Reconciliation.reconcile(registers, expectedCounts, four).getReport());
+            assertEquals(report, Reconciliation.reconcile(registers, expectedCounts).getReport());
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+    
+    @Test
+    public void testReconcile_validEmpty() {
+        Reconciliation reconciliation = Reconciliation.reconcile(new Bank[0], new int[0][]);
+        assertTrue(reconciliation.isBalanced());
+        assertEquals(0, reconciliation.getTotalValue());
+    }
+    
+    @Test
+    public void testReconcile_InvalidNumOfRows() {
+        thrown.expect(IllegalArgumentException.class);
+        Reconciliation.reconcile(new Bank[] { new Bank() }, new int[2][5]);
+    }
+    
+    @Test
+    public void testReconcile_InvalidMixedProfiles() {
+        Bank[] registers = { new Bank(), new Bank(new CurrencyProfile("test", 5, 1)) };
+        
+        thrown.expect(IllegalArgumentException.class);
+        Reconciliation.reconcile(registers, new int[][] { new int[5], new int[2] });
+    }
+    
+    /**
+     * Fills random registers, each expected to hold what it holds.
+     * 
+     * @return number of bills per denomination across the registers
+     */
+    private static long[] fill(final Bank[] registers, final int[][] expectedCounts, final Random random) {
+        long[] totals = new long[5];
+        for(int n = 0; n < registers.length; n++) {
+            int[] counts = new int[5];
+            for(int i = 0; i < counts.length; i++) {
+                counts[i] = random.nextInt(50);
+                totals[i] += counts[i];
+            }
+            registers[n] = new Bank(CurrencyProfile.DEFAULT, counts);
+            expectedCounts[n] = counts.clone();
+        }
+        return totals;
+    }
+    
+    private static void assertDiscrepancy(final Discrepancy discrepancy, final int registerIndex, final Kind kind,
+            final int denominationIndex, final long expected, final long actual) {
+        assertEquals(registerIndex, discrepancy.getRegisterIndex());
+        assertEquals(kind, discrepancy.getKind());
+        assertEquals(denominationIndex, discrepancy.getDenominationIndex());
+        assertEquals(expected, discrepancy.getExpected());
+        assertEquals(actual, discrepancy.getActual());
+    }
+}
@@ -0,0 +1,186 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.james.RegisterJournal.Durability;
+
+public class RegisterCheckpointerTest {
+    
+    private Path journalFile;
+    private Path snapshotFile;
+    
+    @Before
+    public void setUp() throws IOException {
+        journalFile = Files.createTempFile("register", ".journal");
+        Files.delete(journalFile);
+        snapshotFile = journalFile.resolveSibling(journalFile.getFileName() + ".snapshot");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(journalFile);
+        Files.deleteIfExists(snapshotFile);
+    }
+    
+    
+    
+    @Test
+    public void testRecover_snapshotPlusTail() throws IOException, SimpleException {
+        Bank first = new Bank();
+        Bank second = new Bank();
+        
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            first.setJournal(journal, 0);
+            second.setJournal(journal, 1);
+            
+            try (RegisterCheckpointer checkpointer = new RegisterCheckpointer(journal, snapshotFile, 2)) {
+                first.put(new Bank(1, 2, 3, 0, 5));
+                second.put(new Bank(0, 0, 0, 4, 0));
+                assertEquals(2, checkpointer.checkpoint());
+                
+                first.changeAndTake(11, new int[5]);
+                second.take(new Bank(0, 0, 0, 1, 0));
+                assertEquals(2, checkpointer.getCheckpointSequence());
+            }
+        }
+        
+        Bank recoveredFirst = new Bank();
+        Bank recoveredSecond = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            // closing the checkpointer wrote a final snapshot, nothing left to replay
+            assertEquals(0, RegisterCheckpointer.recover(journal, snapshotFile, recoveredFirst, recoveredSecond));
+        }
+        assertEquals(first.show(), recoveredFirst.show());
+        assertEquals(second.show(), recoveredSecond.show());
+    }
+    
+    @Test
+    public void testRecover_replaysOnlyTail() throws IOException, SimpleException {
+        Bank register = new Bank();
+        
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            register.setJournal(journal, 0);
+            RegisterCheckpointer checkpointer = new RegisterCheckpointer(journal, snapshotFile, 1);
+            
+            for(int i = 0; i < 100; i++) {
+                register.put(new Bank(0, 0, 0, 0, 1));
+            }
+            checkpointer.checkpoint();
+            
+            // crash before the next checkpoint
+            register.changeAndTake(7, new int[5]);
+            register.put(new Bank(1, 0, 0, 0, 0));
+        }
+        
+        Bank recovered = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            assertEquals(2, RegisterCheckpointer.recover(journal, snapshotFile, recovered));
+        }
+        assertEquals("$113 1 0 0 0 93", recovered.show());
+    }
+    
+    @Test
+    public void testCheckpoint_syncsJournalFirst() throws IOException, SimpleException {
+        Bank register = new Bank();
+        
+        // the flusher would not force within the test
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC, 1, 60000)) {
+            register.setJournal(journal, 0);
+            RegisterCheckpointer checkpointer = new RegisterCheckpointer(journal, snapshotFile, 1);
+            
+            for(int i = 0; i < 10; i++) {
+                register.put(new Bank(0, 0, 0, 0, 1));
+            }
+            assertEquals(0, journal.getLastSyncedSequence());
+            
+            // the snapshot cannot be written, as if the machine crashed before rolling the journal
+            Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            Files.createDirectory(temporary);
+            try {
+                checkpointer.checkpoint();
+                fail("snapshot written over a directory");
+            } catch(IOException e) {
+                assertEquals(10, journal.getLastSyncedSequence());
+            } finally {
+                Files.delete(temporary);
+            }
+        }
+    }
+    
+    @Test
+    public void testCheckpoint_rollsJournal() throws IOException, SimpleException {
+        Bank register = new Bank();
+        
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            register.setJournal(journal, 0);
+            RegisterCheckpointer checkpointer = new RegisterCheckpointer(journal, snapshotFile, 1);
+            
+            for(int i = 0; i < 100; i++) {
+                register.put(new Bank(0, 0, 0, 0, 1));
+            }
+            assertEquals(100, checkpointer.checkpoint());
+            assertEquals(100, journal.getStartSequence());
+            
+            register.put(new Bank(0, 0, 0, 1, 0));
+        }
+        
+        Bank recovered = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            assertEquals(100, journal.getStartSequence());
+            assertEquals(1, RegisterCheckpointer.recover(journal, snapshotFile, recovered));
+        }
+        assertEquals("$102 0 0 0 1 100", recovered.show());
+    }
+    
+    @Test
+    public void testCheckpoint_whileWriting() throws Exception {
+        Bank register = new Bank();
+        
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            register.setJournal(journal, 0);
+            
+            try (RegisterCheckpointer checkpointer = new RegisterCheckpointer(journal, snapshotFile, 1)) {
+                Thread writer = new Thread(() -> {
+                    Bank one = new Bank(0, 0, 0, 0, 1);
+                    for(int i = 0; i < 20_000; i++) {
+                        register.tryPut(one);
+                    }
+                });
+                writer.start();
+                
+                long previous = 0;
+                while(writer.isAlive()) {
+                    long sequence = checkpointer.checkpoint();
+                    assertTrue(sequence >= previous);
+                    previous = sequence;
+                }
+                writer.join();
+            }
+            
+            // every snapshot is the state at its sequence, so the last covers every put
+            Bank recovered = new Bank();
+            assertEquals(0, RegisterCheckpointer.recover(journal, snapshotFile, recovered));
+            assertEquals("$20000 0 0 0 0 20000", recovered.show());
+        }
+    }
+    
+    @Test
+    public void testRecover_noSnapshotReplaysAll() throws IOException, SimpleException {
+        try (RegisterJournal journal = new RegisterJournal(journalFile, Durability.ASYNC)) {
+            journal.append(0, RegisterOp.put, new int[] { 0, 0, 2, 0, 0 });
+            journal.append(0, RegisterOp.take, new int[] { 0, 0, 1, 0, 0 });
+            
+            Bank recovered = new Bank();
+            assertEquals(2, RegisterCheckpointer.recover(journal, snapshotFile, recovered));
+            assertEquals("$5 0 0 1 0 0", recovered.show());
+        }
+    }
+}
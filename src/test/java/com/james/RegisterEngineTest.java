@@ -0,0 +1,138 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class RegisterEngineTest {
+    
+    private RegisterEngine engine;
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    @After
+    public void tearDown() {
+        if(engine != null) {
+            engine.close();
+        }
+    }
+    
+    
+    
+    @Test
+    public void testRequests_validAppliedInOrder() throws Exception {
+        engine = new RegisterEngine(new Bank());
+        int[] out = new int[5];
+        
+        CompletableFuture<String> put = engine.put(new Bank(1, 2, 3, 4, 5));
+        CompletableFuture<String> take = engine.take(new Bank(1, 0, 0, 0, 0));
+        CompletableFuture<String> change = engine.changeAndTake(11, out);
+        CompletableFuture<String> show = engine.show();
+        
+        assertEquals("$68 1 2 3 4 5", put.get());
+        assertEquals("$48 0 2 3 4 5", take.get());
+        assertEquals("$37 0 1 3 4 4", change.get());
+        assertArrayEquals(new int[] { 0, 1, 0, 0, 1 }, out);
+        assertEquals("$37 0 1 3 4 4", show.get());
+    }
+    
+    @Test
+    public void testTake_InsufficientFundsCompletesExceptionally() throws Exception {
+        engine = new RegisterEngine(new Bank(0, 0, 1, 0, 0));
+        
+        CompletableFuture<String> take = engine.take(new Bank(0, 1, 0, 0, 0));
+        CompletableFuture<String> change = engine.changeAndTake(3, null);
+        
+        assertSame(SimpleException.Error.InsufficientFunds, errorOf(take));
+        assertSame(SimpleException.Error.InsufficientFunds, errorOf(change));
+        assertEquals("$5 0 0 1 0 0", engine.show().get());
+    }
+    
+    @Test
+    public void testPut_InvalidAmountByNull() throws Exception {
+        engine = new RegisterEngine(new Bank());
+        assertSame(SimpleException.Error.InvalidAmount, errorOf(engine.put(null)));
+    }
+    
+    @Test
+    public void testRequests_validManyPublishersSmallRing() throws Exception {
+        engine = new RegisterEngine(new Bank(0, 0, 0, 0, 0), 4);
+        
+        int numThreads = 4;
+        int numPuts = 2000;
+        List<Thread> threads = new ArrayList<>();
+        List<CompletableFuture<String>> last = new ArrayList<>();
+        for(int t = 0; t < numThreads; t++) {
+            CompletableFuture<String> done = new CompletableFuture<>();
+            last.add(done);
+            Thread thread = new Thread(() -> {
+                Bank one = new Bank(0, 0, 0, 0, 1);
+                CompletableFuture<String> future = null;
+                for(int n = 0; n < numPuts; n++) {
+                    future = engine.put(one);
+                    if(n % 2 == 1) {
+                        engine.changeAndTake(1, null);
+                    }
+                }
+                future.whenComplete((response, error) -> done.complete(response));
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        for(CompletableFuture<String> done : last) {
+            done.get();
+        }
+        
+        // every put and change applied exactly once, in some order
+        assertEquals("$" + numThreads * numPuts / 2 + " 0 0 0 0 " + numThreads * numPuts / 2, engine.show().get());
+        assertEquals(numThreads * numPuts * 3 / 2 + 1, engine.getNumApplied());
+        assertTrue(engine.getNumBatches() <= engine.getNumApplied());
+    }
+    
+    @Test
+    public void testClose_validAppliesPublished() throws Exception {
+        engine = new RegisterEngine(new Bank());
+        CompletableFuture<String> put = engine.put(new Bank(0, 0, 0, 0, 7));
+        engine.close();
+        
+        assertTrue(put.isDone());
+        assertEquals("$7 0 0 0 0 7", engine.getRegister().show());
+    }
+    
+    @Test
+    public void testClose_InvalidPublishAfter() {
+        engine = new RegisterEngine(new Bank());
+        engine.close();
+        
+        thrown.expect(IllegalStateException.class);
+        engine.show();
+    }
+    
+    @Test
+    public void testConstructor_InvalidCapacity() {
+        thrown.expect(IllegalArgumentException.class);
+        new RegisterEngine(new Bank(), 1000);
+    }
+    
+    private static SimpleException.Error errorOf(final CompletableFuture<String> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("completed normally");
+            return null;
+        } catch(ExecutionException e) {
+            return ((SimpleException) e.getCause()).getError();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.RegisterFeed.Event;
+import com.james.RegisterFeed.Overflow;
+import com.james.RegisterFeed.Subscription;
+
+public class RegisterFeedTest {
+    
+    private RegisterFeed feed;
+    private Bank register;
+    private LinkedBlockingQueue<Event> received;
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    @Before
+    public void setUp() {
+        feed = new RegisterFeed();
+        register = new Bank();
+        register.setFeed(feed, 3);
+        received = new LinkedBlockingQueue<>();
+    }
+    
+    @After
+    public void tearDown() {
+        feed.close();
+    }
+    
+    
+    
+    @Test
+    public void testRecord_validAppliedAndRejected() throws Exception {
+        feed.subscribe("audit", received::addAll);
+        
+        register.put(new Bank(1, 1, 1, 1, 1));
+        assertEquals(Status.InsufficientFunds, register.tryTake(new Bank(0, 2, 0, 0, 0)));
+        register.changeAndTake(11, new int[5]);
+        assertEquals(Status.InsufficientFunds, register.tryChangeAndTake(4, new int[5]));
+        
+        Event put = next();
+        assertEquals(1, put.getSequence());
+        assertEquals(3, put.getRegisterId());
+        assertEquals(RegisterOp.put, put.getOp());
+        assertEquals(38, put.getAmount());
+        assertEquals(38, put.getTotalValue());
+        assertEquals(1, put.getDelta(4));
+        assertTrue(put.isApplied());
+        
+        Event take = next();
+        assertEquals(RegisterOp.take, take.getOp());
+        assertEquals(SimpleException.Error.InsufficientFunds, take.getError());
+        assertEquals(0, take.getDelta(1));
+        assertEquals(38, take.getTotalValue());
+        
+        Event change = next();
+        assertEquals("#3 register 3 change $11 0 -1 0 0 -1 total $27", change.toString());
+        
+        Event declined = next();
+        assertEquals(4, declined.getSequence());
+        assertFalse(declined.isApplied());
+        assertEquals(4, declined.getAmount());
+    }
+    
+    @Test
+    public void testRecord_validBatchAndTransaction() throws Exception {
+        feed.subscribe("forecast", received::addAll);
+        register.put(new Bank(0, 0, 2, 0, 0));
+        
+        // the second five is gone by the third amount
+        int[] out = new int[15];
+        assertEquals(2, register.changeAndTakeEach(new int[] { 5, 5, 5 }, out));
+        
+        Bank.Transaction transaction = register.begin();
+        transaction.put(new Bank(1, 0, 0, 0, 0)).take(new Bank(0, 0, 0, 0, 0));
+        transaction.commit();
+        
+        next();
+        assertEquals(5, next().getTotalValue());
+        assertEquals(0, next().getTotalValue());
+        assertEquals(SimpleException.Error.InsufficientFunds, next().getError());
+        
+        Event commit = next();
+        assertEquals(RegisterOp.transaction, commit.getOp());
+        assertEquals(20, commit.getAmount());
+        assertEquals(1, commit.getDelta(0));
+    }
+    
+    @Test
+    public void testOverflow_validDropNewest() throws Exception {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Subscription subscription = feed.subscribe("slow", blockingUntil(delivering, release), Overflow.DROP_NEWEST,
+                2, 16);
+        
+        // the first is taken for delivery and held, two fill the buffer, the rest are dropped
+        register.put(new Bank(0, 0, 0, 0, 1));
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+        for(int n = 0; n < 5; n++) {
+            register.put(new Bank(0, 0, 0, 0, 1));
+        }
+        
+        assertEquals(3, subscription.getNumDropped());
+        assertEquals(6, subscription.getLag());
+        assertTrue(subscription.getLagNanos() > 0);
+        
+        release.countDown();
+        awaitDelivered(subscription, 3);
+        
+        List<Long> sequences = new ArrayList<>();
+        for(Event event : received) {
+            sequences.add(event.getSequence());
+        }
+        assertEquals("[1, 2, 3]", sequences.toString());
+        assertEquals(2, subscription.getNumBatches());
+        assertEquals(3, subscription.getLag());
+    }
+    
+    @Test
+    public void testOverflow_validDropOldest() throws Exception {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Subscription subscription = feed.subscribe("slow", blockingUntil(delivering, release), Overflow.DROP_OLDEST,
+                2, 16);
+        
+        register.put(new Bank(0, 0, 0, 0, 1));
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+        for(int n = 0; n < 5; n++) {
+            register.put(new Bank(0, 0, 0, 0, 1));
+        }
+        
+        release.countDown();
+        awaitDelivered(subscription, 3);
+        
+        List<Long> sequences = new ArrayList<>();
+        for(Event event : received) {
+            sequences.add(event.getSequence());
+        }
+        assertEquals("[1, 5, 6]", sequences.toString());
+        assertEquals(3, subscription.getNumDropped());
+        assertEquals(0, subscription.getLag());
+    }
+    
+    @Test
+    public void testOverflow_validBlockDropsNothing() throws Exception {
+        Subscription subscription = feed.subscribe("ledger", events -> {
+            received.addAll(events);
+            try {
+                Thread.sleep(1);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, Overflow.BLOCK, 4, 2);
+        
+        for(int n = 0; n < 50; n++) {
+            register.put(new Bank(0, 0, 0, 0, 1));
+        }
+        
+        awaitDelivered(subscription, 50);
+        assertEquals(0, subscription.getNumDropped());
+        assertEquals(50, received.size());
+    }
+    
+    @Test
+    public void testOverflow_validBlockDropsOnceCancelled() throws Exception {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Subscription subscription = feed.subscribe("slow", blockingUntil(delivering, release), Overflow.BLOCK, 1, 1);
+        
+        register.put(new Bank(0, 0, 0, 0, 1));
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+        register.put(new Bank(0, 0, 0, 0, 1));
+        
+        // waits for room the stuck subscriber never makes
+        Thread recording = new Thread(() -> register.tryPut(new Bank(0, 0, 0, 0, 1)));
+        Thread cancelling = new Thread(subscription::cancel);
+        try {
+            recording.start();
+            while(recording.getState() != Thread.State.TIMED_WAITING
+                    && recording.getState() != Thread.State.WAITING) {
+                assertTrue("not waiting for room", recording.isAlive());
+                Thread.sleep(1);
+            }
+            
+            cancelling.start();
+            recording.join(5000);
+            assertFalse("still waiting once cancelled", recording.isAlive());
+            assertEquals(1, subscription.getNumDropped());
+        } finally {
+            release.countDown();
+            cancelling.join(5000);
+        }
+        assertEquals(2, received.size());
+    }
+    
+    @Test
+    public void testCancel_validDeliversBuffered() throws Exception {
+        Subscription subscription = feed.subscribe("audit", received::addAll);
+        register.put(new Bank(0, 0, 0, 0, 1));
+        subscription.cancel();
+        
+        assertEquals(1, received.size());
+        assertTrue(feed.getSubscriptions().isEmpty());
+        
+        // nothing recorded without subscribers
+        register.put(new Bank(0, 0, 0, 0, 1));
+        assertEquals(1, feed.getLastSequence());
+    }
+    
+    @Test
+    public void testSubscriber_failureDoesNotStopDelivery() throws Exception {
+        Subscription subscription = feed.subscribe("flaky", events -> {
+            received.addAll(events);
+            throw new IllegalStateException("downstream unavailable");
+        });
+        
+        register.put(new Bank(0, 0, 0, 0, 1));
+        awaitDelivered(subscription, 1);
+        register.put(new Bank(0, 0, 0, 0, 1));
+        awaitDelivered(subscription, 2);
+        
+        assertEquals(2, received.size());
+        assertEquals(2, subscription.getNumFailedBatches());
+        assertTrue(feed.getReport().contains("flaky DROP_NEWEST delivered=2 dropped=0 batches=2 failed=2 lag=0"));
+    }
+    
+    @Test
+    public void testSubscriber_errorDoesNotStopDelivery() throws Exception {
+        Subscription subscription = feed.subscribe("broken", events -> {
+            received.addAll(events);
+            throw new AssertionError("subscriber bug");
+        }, Overflow.BLOCK, 1, 1);
+        
+        // each put waits for room only the deliverer can make
+        for(int n = 1; n <= 5; n++) {
+            register.put(new Bank(0, 0, 0, 0, 1));
+            awaitDelivered(subscription, n);
+        }
+        
+        assertEquals(5, received.size());
+        assertEquals(5, subscription.getNumFailedBatches());
+        assertEquals(0, subscription.getNumDropped());
+    }
+    
+    @Test
+    public void testSetFeed_InvalidProfile() {
+        thrown.expect(IllegalArgumentException.class);
+        new Bank(new CurrencyProfile("test", 5, 1)).setFeed(feed, 0);
+    }
+    
+    private Event next() throws InterruptedException {
+        Event event = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no event", event);
+        return event;
+    }
+    
+    /**
+     * Subscriber that collects its events, holding the first batch until released
+     */
+    private RegisterFeed.Subscriber blockingUntil(final CountDownLatch delivering, final CountDownLatch release) {
+        return events -> {
+            delivering.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.addAll(events);
+        };
+    }
+    
+    private static void awaitDelivered(final Subscription subscription, final long numDelivered)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(subscription.getNumDelivered() < numDelivered) {
+            assertTrue("not delivered", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
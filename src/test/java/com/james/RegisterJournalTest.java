@@ -0,0 +1,341 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.james.RegisterJournal.Durability;
+
+public class RegisterJournalTest {
+    
+    private Path file;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("register", ".journal");
+        Files.delete(file);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+    
+    private static void runSession(final Bank register) throws SimpleException {
+        register.put(new Bank(1, 2, 3, 0, 5));
+        register.changeAndTake(11, new int[5]);
+        register.take(new Bank(0, 0, 1, 0, 0));
+        
+        // declined, so not journaled
+        assertEquals(Status.InsufficientFunds, register.tryChangeAndTake(1000, new int[5]));
+    }
+    
+    
+    
+    @Test
+    public void testReplay_rebuildsRegister() throws IOException, SimpleException {
+        Bank register = new Bank();
+        
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            register.setJournal(journal, 0);
+            runSession(register);
+            assertEquals(3, journal.getLastSequence());
+            assertEquals(3, journal.getLastSyncedSequence());
+        }
+        
+        Bank recovered = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            assertEquals(3, journal.getLastSequence());
+            assertEquals(3, journal.replay(recovered));
+        }
+        
+        assertEquals(register.show(), recovered.show());
+        assertEquals("$44 1 1 2 0 4", recovered.show());
+    }
+    
+    @Test
+    public void testReplay_transactionIsOneRecord() throws IOException, SimpleException {
+        Bank register = new Bank(0, 1, 0, 0, 0);
+        
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            register.setJournal(journal, 0);
+            
+            Bank.Transaction transaction = register.begin();
+            transaction.put(new Bank(1, 0, 0, 0, 0)).take(new Bank(0, 1, 0, 0, 0));
+            transaction.change(20, new int[5]);
+            transaction.commit();
+            assertEquals(1, journal.getLastSequence());
+        }
+        
+        // a transaction of its own, not a put of counts that may be negative
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "r")) {
+            raw.seek(RegisterJournal.HEADER_SIZE + 12);
+            assertEquals(RegisterOp.transaction, RegisterOp.ofCode(raw.readInt()));
+        }
+        
+        // replayed onto the counts held when the journal was attached
+        Bank recovered = new Bank(0, 1, 0, 0, 0);
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            assertEquals(1, journal.replay(recovered));
+        }
+        
+        assertEquals("$0 0 0 0 0 0", register.show());
+        assertEquals(register.show(), recovered.show());
+    }
+    
+    @Test
+    public void testReopen_appendsContinueSequence() throws IOException, SimpleException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.ASYNC)) {
+            journal.append(0, RegisterOp.put, new int[] { 1, 0, 0, 0, 0 });
+        }
+        
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.ASYNC)) {
+            assertEquals(2, journal.append(1, RegisterOp.put, new int[] { 0, 1, 0, 0, 0 }));
+        }
+        
+        Bank first = new Bank();
+        Bank second = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.ASYNC)) {
+            assertEquals(2, journal.replay(first, second));
+        }
+        assertEquals("$20 1 0 0 0 0", first.show());
+        assertEquals("$10 0 1 0 0 0", second.show());
+    }
+    
+    @Test
+    public void testBatched_forcesOncePerBatch() throws IOException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.BATCHED, 4, 
+                RegisterJournal.DEFAULT_FLUSH_INTERVAL_MILLIS)) {
+            
+            int[] numOfBills = { 0, 0, 0, 0, 1 };
+            for(int i = 0; i < 6; i++) {
+                journal.append(0, RegisterOp.put, numOfBills);
+            }
+            assertEquals(4, journal.getLastSyncedSequence());
+            
+            journal.sync();
+            assertEquals(6, journal.getLastSyncedSequence());
+        }
+    }
+    
+    @Test
+    public void testAsync_flusherForcesWhileAppending() throws IOException, InterruptedException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.ASYNC, 
+                RegisterJournal.DEFAULT_BATCH_SIZE, 1)) {
+            
+            int[] numOfBills = { 0, 0, 0, 0, 1 };
+            long deadline = System.currentTimeMillis() + 10000;
+            while(journal.getLastSyncedSequence() < 1000 && System.currentTimeMillis() < deadline) {
+                journal.append(0, RegisterOp.put, numOfBills);
+            }
+            assertTrue(journal.getLastSyncedSequence() >= 1000);
+            
+            long last = journal.append(0, RegisterOp.put, numOfBills);
+            while(journal.getLastSyncedSequence() < last && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(last, journal.getLastSyncedSequence());
+        }
+    }
+    
+    @Test
+    public void testTornRecord_endsJournal() throws IOException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            journal.append(0, RegisterOp.put, new int[] { 1, 0, 0, 0, 0 });
+            journal.append(0, RegisterOp.put, new int[] { 0, 1, 0, 0, 0 });
+        }
+        
+        // corrupt the second record's counts
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(RegisterJournal.HEADER_SIZE + RegisterJournal.recordSize(5) + 16);
+            raw.writeInt(7);
+        }
+        
+        Bank recovered = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            assertEquals(1, journal.getLastSequence());
+            assertEquals(1, journal.replay(recovered));
+            
+            // the torn record is overwritten
+            assertEquals(2, journal.append(0, RegisterOp.put, new int[] { 0, 0, 1, 0, 0 }));
+        }
+        assertEquals("$20 1 0 0 0 0", recovered.show());
+    }
+    
+    @Test
+    public void testAppend_opWrittenAsItsCode() throws IOException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            journal.append(0, RegisterOp.take, new int[] { 0, 0, 0, 0, 0 });
+        }
+        
+        // codes are fixed, whatever order the operations are declared in
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "r")) {
+            raw.seek(RegisterJournal.HEADER_SIZE + 12);
+            assertEquals(2, raw.readInt());
+        }
+        assertEquals(RegisterOp.take, RegisterOp.ofCode(2));
+        assertNull(RegisterOp.ofCode(0));
+    }
+    
+    @Test
+    public void testMissingRecord_endsJournalBeforeIt() throws IOException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.ASYNC)) {
+            for(int i = 0; i < 3; i++) {
+                journal.append(0, RegisterOp.put, new int[] { 0, 0, 0, 0, 1 });
+            }
+        }
+        
+        // the second record's page never reached the disk, the third's did
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(RegisterJournal.HEADER_SIZE + RegisterJournal.recordSize(5));
+            raw.write(new byte[RegisterJournal.recordSize(5)]);
+        }
+        
+        Bank recovered = new Bank();
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            assertEquals(1, journal.getLastSequence());
+            assertEquals(1, journal.replay(recovered));
+            assertEquals(2, journal.append(0, RegisterOp.put, new int[] { 1, 0, 0, 0, 0 }));
+        }
+        assertEquals("$1 0 0 0 0 1", recovered.show());
+        
+        // the third record was cleared, so it is not taken to follow the new second
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            assertEquals(2, journal.getLastSequence());
+        }
+    }
+    
+    @Test
+    public void testRoll_keepsOnlyRecordsAfter() throws IOException, SimpleException {
+        Bank register = new Bank();
+        
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            register.setJournal(journal, 0);
+            runSession(register);
+            
+            journal.roll(2);
+            assertEquals(2, journal.getStartSequence());
+            assertEquals(3, journal.getLastSequence());
+            
+            register.put(new Bank(0, 0, 0, 0, 2));
+            assertEquals(4, journal.getLastSequence());
+            
+            // rolling back or to where it starts drops nothing
+            journal.roll(1);
+            assertEquals(2, journal.getStartSequence());
+        }
+        
+        Bank recovered = new Bank(0, 0, 1, 0, 0);
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            assertEquals(2, journal.getStartSequence());
+            assertEquals(4, journal.getLastSequence());
+            assertEquals(2, journal.replay(2, recovered));
+            assertEquals(5, journal.append(0, RegisterOp.put, new int[] { 0, 0, 0, 0, 1 }));
+        }
+        assertEquals("$2 0 0 0 0 2", recovered.show());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testReplay_rolledAway() throws IOException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            journal.append(0, RegisterOp.put, new int[] { 1, 0, 0, 0, 0 });
+            journal.append(0, RegisterOp.put, new int[] { 1, 0, 0, 0, 0 });
+            journal.roll(1);
+            journal.replay(new Bank());
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRoll_pastLastRecord() throws IOException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            journal.append(0, RegisterOp.put, new int[] { 1, 0, 0, 0, 0 });
+            journal.roll(2);
+        }
+    }
+    
+    @Test
+    public void testAppendFails_registerUnchanged() throws IOException, SimpleException {
+        Bank register = new Bank(1, 1, 1, 1, 1);
+        PayableAmounts payable = new PayableAmounts(CurrencyProfile.DEFAULT, 100);
+        register.setPayableAmounts(payable);
+        
+        RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP);
+        register.setJournal(journal, 0);
+        journal.close();
+        
+        int[] out = new int[5];
+        try {
+            register.tryPut(new Bank(0, 0, 0, 0, 1));
+            fail("put journaled to a closed journal");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+        try {
+            register.tryTake(new Bank(0, 0, 0, 0, 1));
+            fail("take journaled to a closed journal");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+        try {
+            register.tryChangeAndTake(7, out);
+            fail("change journaled to a closed journal");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+        try {
+            register.changeAndTakeEach(new int[] { 1, 2 }, new int[10]);
+            fail("batch journaled to a closed journal");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+        try {
+            register.begin().put(new Bank(1, 0, 0, 0, 0)).commit();
+            fail("transaction journaled to a closed journal");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+        
+        assertEquals("$38 1 1 1 1 1", register.show());
+        assertEquals(38, payable.nextPayable(38));
+        assertEquals(-1, payable.nextPayable(39));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testReplay_unknownRegister() throws IOException {
+        try (RegisterJournal journal = new RegisterJournal(file, Durability.PER_OP)) {
+            journal.append(3, RegisterOp.put, new int[] { 1, 0, 0, 0, 0 });
+            journal.replay(new Bank());
+        }
+    }
+    
+    @Test
+    public void testProfile_replaysEveryDenomination() throws IOException, SimpleException {
+        CurrencyProfile eur = CurrencyProfile.load("eur");
+        Bank register = new Bank(eur);
+        
+        try (RegisterJournal journal = new RegisterJournal(file, eur, Durability.PER_OP)) {
+            register.setJournal(journal, 0);
+            register.put(new Bank(eur, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3, 7));
+            register.changeAndTake(13, new int[eur.size()]);
+        }
+        
+        Bank recovered = new Bank(eur);
+        try (RegisterJournal journal = new RegisterJournal(file, eur, Durability.PER_OP)) {
+            assertEquals(2, journal.replay(recovered));
+        }
+        assertEquals(register.show(), recovered.show());
+    }
+    
+    @Test(expected = IOException.class)
+    public void testProfile_reopenedWithAnother() throws IOException {
+        new RegisterJournal(file, Durability.PER_OP).close();
+        new RegisterJournal(file, CurrencyProfile.load("eur"), Durability.PER_OP).close();
+    }
+}
@@ -0,0 +1,149 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.james.Bank;
+import com.james.CommandReader;
+import com.james.Main;
+import com.james.RegisterMetrics;
+import com.james.SimpleException;
+
+public class RegisterMetricsTest {
+    
+    private Bank register;
+    private RegisterMetrics metrics;
+    
+    @Before
+    public void setUp() throws Exception {
+        register = new Bank();
+        metrics = new RegisterMetrics(1);
+        register.setMetrics(metrics);
+    }
+    
+    private String runSession(final String input) throws IOException {
+        StringWriter out = new StringWriter();
+        CommandReader reader = new CommandReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+        Main.run(reader, register, out, false);
+        return out.toString();
+    }
+    
+    
+    
+    @Test
+    public void testBank_operationsTimedAndSolverWorkRecorded() throws SimpleException {
+        register.put(new Bank(0, 0, 1, 3, 0));
+        register.changeAndTake(6, new int[5]); // greedy's 5 leaves 1 with no ones, so the solver searches
+        register.tryTake(new Bank(5, 0, 0, 0, 0));
+        
+        assertEquals(1, metrics.getOperationCount(RegisterOp.put));
+        assertEquals(1, metrics.getOperationCount(RegisterOp.change));
+        assertEquals(1, metrics.getOperationCount(RegisterOp.take));
+        assertEquals(1, metrics.getOperationLatency(RegisterOp.change).getCount());
+        
+        assertEquals(1, metrics.getSolverNodes().getCount());
+        assertTrue(metrics.getSolverNodes().getMax() > 0);
+    }
+    
+    @Test
+    public void testBank_noMetricsRecordsNothing() throws SimpleException {
+        register.setMetrics(null);
+        register.put(new Bank(1, 1, 1, 1, 1));
+        
+        assertEquals(0, metrics.getOperationCount(RegisterOp.put));
+    }
+    
+    @Test
+    public void testRun_commandsAndErrorsCounted() throws IOException {
+        runSession("put 1 1 1 1 1\nchange 200\nbogus\nshow\n");
+        
+        assertEquals(1, metrics.getCommandCount(Main.VALID_CMDS.put));
+        assertEquals(1, metrics.getCommandCount(Main.VALID_CMDS.change));
+        assertEquals(1, metrics.getCommandCount(Main.VALID_CMDS.show));
+        
+        // counted once, by the register, and an unknown command never reaches it
+        assertEquals(1, metrics.getErrorCount(SimpleException.Error.InsufficientFunds));
+        assertEquals(0, metrics.getErrorCount(SimpleException.Error.InvalidCommand));
+        assertEquals(0, metrics.getErrorCount(SimpleException.Error.InvalidAmount));
+    }
+    
+    @Test
+    public void testBank_rejectedOperationsCountErrors() throws SimpleException {
+        register.put(new Bank(0, 0, 1, 0, 0));
+        assertEquals(Status.InsufficientFunds, register.tryTake(new Bank(1, 0, 0, 0, 0)));
+        assertEquals(Status.InsufficientFunds, register.tryChangeAndTake(3, new int[5]));
+        assertEquals(Status.InvalidAmount, register.tryChange(-1, new int[5]));
+        assertEquals(Status.OK, register.tryChangeAndTake(5, new int[5]));
+        
+        assertEquals(2, metrics.getErrorCount(SimpleException.Error.InsufficientFunds));
+        assertEquals(1, metrics.getErrorCount(SimpleException.Error.InvalidAmount));
+    }
+    
+    @Test
+    public void testRun_statsReport() throws IOException {
+        String output = runSession("put 1 1 1 1 1\nchange 8\nstats\n");
+        
+        assertTrue(output, output.contains("command put count=1 sampled=1 "));
+        assertTrue(output, output.contains("operation change count=1 "));
+        assertTrue(output, output.contains("errors InsufficientFunds=0 "));
+        assertTrue(output, output.contains("solver runs=1 "));
+    }
+    
+    @Test
+    public void testSampleInterval_countsAllTimesSome() throws SimpleException {
+        RegisterMetrics sampled = new RegisterMetrics(4);
+        register.setMetrics(sampled);
+        for(int i = 0; i < 10; i++) {
+            register.put(new Bank(0, 0, 0, 0, 1));
+        }
+        
+        assertEquals(10, sampled.getOperationCount(RegisterOp.put));
+        assertEquals(2, sampled.getOperationLatency(RegisterOp.put).getCount());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstruct_sampleIntervalNotPowerOfTwo() {
+        new RegisterMetrics(3);
+    }
+    
+    @Test
+    public void testRun_statsOffWithoutMetrics() throws IOException {
+        register.setMetrics(null);
+        
+        assertTrue(runSession("stats\n").endsWith("stats off" + System.lineSeparator()));
+    }
+    
+    @Test
+    public void testRegisterMBean_readableOverJmx() throws JMException, SimpleException {
+        register.put(new Bank(1, 0, 0, 0, 0));
+        
+        ObjectName name = metrics.registerMBean("test-" + System.nanoTime());
+        try {
+            assertNotNull(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "OperationCounts"));
+            assertEquals(0L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SolverRuns"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+    
+    @Test
+    public void testReset_clearsEverything() throws SimpleException {
+        register.put(new Bank(1, 0, 0, 0, 0));
+        metrics.recordError(SimpleException.Error.InvalidAmount);
+        metrics.reset();
+        
+        assertEquals(0, metrics.getOperationCount(RegisterOp.put));
+        assertEquals(0, metrics.getErrorCount(SimpleException.Error.InvalidAmount));
+    }
+}
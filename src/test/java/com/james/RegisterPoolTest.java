@@ -0,0 +1,153 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.Bank;
+import com.james.RegisterPool;
+import com.james.SimpleException;
+
+public class RegisterPoolTest {
+    
+    private RegisterPool pool;
+    
+    @Before
+    public void setUp() throws Exception {
+        pool = new RegisterPool(3);
+        pool.put(0, new Bank(1, 0, 0, 0, 0));
+        pool.put(1, new Bank(0, 1, 1, 0, 0));
+        pool.put(2, new Bank(0, 0, 1, 3, 0));
+    }
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testConstruct_InvalidNumShards() {
+        thrown.expect(IllegalArgumentException.class);
+        new RegisterPool(0);
+    }
+    
+    @Test
+    public void testShow_validAggregate() {
+        assertEquals("$46 1 1 2 3 0", pool.show());
+        assertEquals(46, pool.getTotalValue());
+        
+        assertEquals("$20 1 0 0 0 0", pool.showShard(0));
+        assertEquals("$15 0 1 1 0 0", pool.showShard(1));
+        assertEquals("$11 0 0 1 3 0", pool.showShard(2));
+    }
+    
+    @Test
+    public void testPut_validToLocalShard() throws SimpleException {
+        pool.put(new Bank(0, 0, 0, 0, 1));
+        assertTrue(pool.showShard(pool.localShard()).endsWith(" 1"));
+        assertEquals("$47 1 1 2 3 1", pool.show());
+    }
+    
+    @Test
+    public void testChangeAndTake_validFromOwnShard() throws SimpleException {
+        int[] out = new int[5];
+        assertEquals(2, pool.changeAndTake(1, 15, out));
+        assertArrayEquals(new int[] {0, 1, 1, 0, 0}, out);
+        assertEquals("$0 0 0 0 0 0", pool.showShard(1));
+    }
+    
+    @Test
+    public void testChangeAndTake_validStolenFromOtherShard() throws SimpleException {
+        int[] out = new int[5];
+        assertEquals(3, pool.changeAndTake(0, 6, out));
+        assertArrayEquals(new int[] {0, 0, 0, 3, 0}, out);
+        assertEquals("$20 1 0 0 0 0", pool.showShard(0));
+        assertEquals("$5 0 0 1 0 0", pool.showShard(2));
+    }
+    
+    @Test
+    public void testChangeAndTake_validAcrossShards() throws SimpleException {
+        int[] out = new int[5];
+        
+        // no one shard holds 41, the pool does
+        assertEquals(6, pool.changeAndTake(1, 41, out));
+        assertArrayEquals(new int[] {1, 1, 1, 3, 0}, out);
+        assertEquals("$5 0 0 1 0 0", pool.show());
+    }
+    
+    @Test
+    public void testChangeAndTake_InsufficientFundsWholePool() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            pool.changeAndTake(0, 47, new int[5]);
+        } finally {
+            assertEquals("$46 1 1 2 3 0", pool.show());
+        }
+    }
+    
+    @Test
+    public void testTake_validAcrossShards() throws SimpleException {
+        pool.take(0, new Bank(1, 1, 0, 1, 0));
+        assertEquals("$14 0 0 2 2 0", pool.show());
+        assertEquals("$0 0 0 0 0 0", pool.showShard(0));
+    }
+    
+    @Test
+    public void testTake_InsufficientFundsWholePool() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            pool.take(0, new Bank(2, 0, 0, 0, 0));
+        } finally {
+            assertEquals("$46 1 1 2 3 0", pool.show());
+        }
+    }
+    
+    @Test
+    public void testTake_InvalidAmountWholePoolOverflows() throws SimpleException {
+        pool.put(1, new Bank(0, 0, 0, 0, Integer.MAX_VALUE));
+        pool.put(2, new Bank(0, 0, 0, 0, 1));
+        assertEquals("$2147483694 1 1 2 3 2147483648", pool.show());
+        
+        // no one shard holds the bills, and the pool's cannot be counted in one bank
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        try {
+            pool.take(0, new Bank(0, 0, 0, 0, 2));
+        } finally {
+            assertEquals("$2147483694 1 1 2 3 2147483648", pool.show());
+        }
+    }
+    
+    @Test
+    public void testConcurrent_conservesValue() throws Exception {
+        final RegisterPool concurrentPool = new RegisterPool(4);
+        List<Thread> lanes = new ArrayList<>();
+        
+        for(int lane = 0; lane < 4; lane++) {
+            final int shard = lane;
+            lanes.add(new Thread(() -> {
+                int[] out = new int[5];
+                try {
+                    for(int op = 0; op < 5000; op++) {
+                        concurrentPool.put(shard, new Bank(0, 0, 1, 1, 1));
+                        concurrentPool.changeAndTake((shard + 1) % 4, 8, out);
+                    }
+                } catch(SimpleException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        
+        lanes.forEach(Thread::start);
+        for(Thread lane : lanes) {
+            lane.join();
+        }
+        
+        assertEquals(0, concurrentPool.getTotalValue());
+    }
+}
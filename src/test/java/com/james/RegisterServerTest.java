@@ -0,0 +1,171 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegisterServerTest {
+    
+    private static final String NL = System.lineSeparator();
+    
+    private Bank register;
+    private RegisterServer server;
+    
+    @Before
+    public void setUp() throws IOException {
+        register = new Bank();
+        server = new RegisterServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), register);
+        server.start();
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+    
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+    
+    private static String readLine(final InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while((b = in.read()) >= 0) {
+            line.append((char) b);
+            if(b == '\n') {
+                break;
+            }
+        }
+        return line.toString();
+    }
+    
+    
+    
+    @Test
+    public void testText_pipelinedSession() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(
+                    "show\nput 1 2 3 0 5\nchange 11\nbogus\ntake 0 0 0 0 x\nquit\n".getBytes(StandardCharsets.US_ASCII));
+            
+            InputStream in = socket.getInputStream();
+            assertEquals("ready" + NL, readLine(in));
+            assertEquals("$0 0 0 0 0 0" + NL, readLine(in));
+            assertEquals("$60 1 2 3 0 5" + NL, readLine(in));
+            assertEquals("$49 1 1 3 0 4" + NL, readLine(in));
+            assertEquals("Sorry - Invalid Command" + NL, readLine(in));
+            assertEquals("Sorry - Invalid Amount" + NL, readLine(in));
+            
+            // quit closes the connection
+            assertEquals(-1, in.read());
+        }
+    }
+    
+    @Test
+    public void testText_connectionsShareRegister() throws IOException {
+        try (Socket first = connect(); Socket second = connect()) {
+            InputStream firstIn = first.getInputStream();
+            InputStream secondIn = second.getInputStream();
+            readLine(firstIn);
+            readLine(secondIn);
+            
+            first.getOutputStream().write("put 1 0 0 0 0\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("$20 1 0 0 0 0" + NL, readLine(firstIn));
+            
+            second.getOutputStream().write("change 20\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("$0 0 0 0 0 0" + NL, readLine(secondIn));
+        }
+    }
+    
+    @Test
+    public void testText_failedOperationAnsweredAndServerRuns() throws IOException {
+        Path file = Files.createTempFile("register", ".journal");
+        Files.delete(file);
+        try {
+            RegisterJournal journal = new RegisterJournal(file, RegisterJournal.Durability.PER_OP);
+            register.setJournal(journal, 0);
+            journal.close();
+            
+            try (Socket socket = connect()) {
+                socket.getOutputStream().write("put 1 0 0 0 0\nshow\n".getBytes(StandardCharsets.US_ASCII));
+                
+                InputStream in = socket.getInputStream();
+                assertEquals("ready" + NL, readLine(in));
+                assertEquals("java.lang.IllegalStateException: journal closed" + NL, readLine(in));
+                assertEquals("$0 0 0 0 0 0" + NL, readLine(in));
+            }
+            
+            try (Socket socket = connect()) {
+                socket.getOutputStream().write("show\n".getBytes(StandardCharsets.US_ASCII));
+                
+                InputStream in = socket.getInputStream();
+                assertEquals("ready" + NL, readLine(in));
+                assertEquals("$0 0 0 0 0 0" + NL, readLine(in));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    @Test
+    public void testBinary_session() throws IOException {
+        try (Socket socket = connect()) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.write(RegisterServer.BINARY_MAGIC);
+            out.write(Main.VALID_CMDS.put.ordinal());
+            for(int count : new int[] { 1, 2, 3, 0, 5 }) {
+                out.writeInt(count);
+            }
+            out.write(Main.VALID_CMDS.change.ordinal());
+            out.writeInt(11);
+            out.write(Main.VALID_CMDS.change.ordinal());
+            out.writeInt(1000);
+            out.write(Main.VALID_CMDS.quit.ordinal());
+            out.flush();
+            
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertEquals("ready" + NL, readLine(in));
+            
+            assertEquals(Status.OK.ordinal(), in.readByte());
+            assertEquals(60, in.readLong());
+            assertCounts(in, 1, 2, 3, 0, 5);
+            
+            assertEquals(Status.OK.ordinal(), in.readByte());
+            assertEquals(49, in.readLong());
+            assertCounts(in, 1, 1, 3, 0, 4);
+            
+            assertEquals(Status.InsufficientFunds.ordinal(), in.readByte());
+            assertEquals(49, in.readLong());
+            assertCounts(in, 1, 1, 3, 0, 4);
+            
+            assertEquals(-1, in.read());
+        }
+    }
+    
+    @Test
+    public void testLoadClient_allResponsesArrive() throws Exception {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        
+        // throws if a connection fails or closes with responses outstanding
+        assertTrue(RegisterLoadClient.run(address, 4, 2_000, false) > 0);
+        assertTrue(RegisterLoadClient.run(address, 4, 2_000, true) > 0);
+    }
+    
+    private static void assertCounts(final DataInputStream in, final int... expected) throws IOException {
+        for(int count : expected) {
+            assertEquals(count, in.readInt());
+        }
+    }
+}
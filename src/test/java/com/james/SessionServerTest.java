@@ -0,0 +1,116 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionServerTest {
+    
+    private static final String NL = System.lineSeparator();
+    
+    private SessionServer server;
+    
+    @Before
+    public void setUp() throws IOException {
+        server = new SessionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new Bank(), 
+                SessionServer.virtualThreadSessions());
+        server.start();
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+    
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+    
+    private static String readLine(final InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while((b = in.read()) >= 0) {
+            line.append((char) b);
+            if(b == '\n') {
+                break;
+            }
+        }
+        return line.toString();
+    }
+    
+    
+    
+    @Test
+    public void testSession_pipelined() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(
+                    "show\nput 1 2 3 0 5\nchange 11\nbogus\ntake 0 0 0 0 x\nquit\nshow\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            
+            InputStream in = socket.getInputStream();
+            assertEquals("ready" + NL, readLine(in));
+            assertEquals("$0 0 0 0 0 0" + NL, readLine(in));
+            assertEquals("$60 1 2 3 0 5" + NL, readLine(in));
+            assertEquals("$49 1 1 3 0 4" + NL, readLine(in));
+            assertEquals("Sorry - Invalid Command" + NL, readLine(in));
+            assertEquals("Sorry - Invalid Amount" + NL, readLine(in));
+            
+            // quit ends the session, nothing after it runs
+            assertEquals(-1, in.read());
+        }
+    }
+    
+    @Test
+    public void testSession_sessionsShareRegister() throws IOException {
+        try (Socket first = connect(); Socket second = connect()) {
+            InputStream firstIn = first.getInputStream();
+            InputStream secondIn = second.getInputStream();
+            readLine(firstIn);
+            readLine(secondIn);
+            
+            first.getOutputStream().write("put 1 0 0 0 0\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("$20 1 0 0 0 0" + NL, readLine(firstIn));
+            
+            second.getOutputStream().write("change 20\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("$0 0 0 0 0 0" + NL, readLine(secondIn));
+        }
+    }
+    
+    @Test
+    public void testSession_partialLineDoesNotHoldRegister() throws IOException {
+        try (Socket slow = connect(); Socket fast = connect()) {
+            InputStream slowIn = slow.getInputStream();
+            InputStream fastIn = fast.getInputStream();
+            readLine(slowIn);
+            readLine(fastIn);
+            
+            slow.getOutputStream().write("put 1 0".getBytes(StandardCharsets.US_ASCII));
+            
+            fast.getOutputStream().write("show\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("$0 0 0 0 0 0" + NL, readLine(fastIn));
+            
+            slow.getOutputStream().write(" 0 0 0\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("$20 1 0 0 0 0" + NL, readLine(slowIn));
+        }
+    }
+    
+    @Test
+    public void testFixedPool_queuedSessionsComplete() throws Exception {
+        try (SessionServer pooled = new SessionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 
+                new Bank(), SessionServer.fixedThreadSessions(2))) {
+            pooled.start();
+            
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), pooled.getPort());
+            assertTrue(RegisterLoadClient.run(address, 8, 500, false, true) > 0);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TransactionTest {
+    
+    private Bank register;
+    private Bank.Transaction transaction;
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    @Before
+    public void setUp() throws Exception {
+        register = new Bank(1, 1, 1, 1, 1);
+        transaction = register.begin();
+    }
+    
+    
+    
+    @Test
+    public void testCommit_validAppliesNetChange() throws SimpleException {
+        transaction.put(new Bank(0, 0, 2, 0, 0)).take(new Bank(1, 0, 0, 0, 1));
+        
+        assertEquals("$38 1 1 1 1 1", register.show());
+        assertEquals(-11, transaction.getStagedValue());
+        
+        transaction.commit();
+        assertEquals("$27 0 1 3 1 0", register.show());
+        assertEquals(0, transaction.getStagedValue());
+    }
+    
+    @Test
+    public void testTake_validAgainstStagedPut() throws SimpleException {
+        // the second twenty only exists once the put is staged
+        transaction.put(new Bank(1, 0, 0, 0, 0)).take(new Bank(2, 0, 0, 0, 0));
+        transaction.commit();
+        
+        assertEquals("$18 0 1 1 1 1", register.show());
+    }
+    
+    @Test
+    public void testTake_InsufficientFundsNotStaged() throws SimpleException {
+        transaction.take(new Bank(0, 1, 0, 0, 0));
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            transaction.take(new Bank(0, 1, 1, 0, 0));
+        } finally {
+            assertEquals(-10, transaction.getStagedValue());
+            assertEquals(0, transaction.getStagedNumOfBills(2));
+            assertEquals("$38 1 1 1 1 1", register.show());
+        }
+    }
+    
+    @Test
+    public void testPut_InvalidAmountByCountOverflow() throws SimpleException {
+        transaction.put(new Bank(0, 0, 0, 0, Integer.MAX_VALUE - 1));
+        
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        try {
+            transaction.put(new Bank(0, 0, 0, 0, 1));
+        } finally {
+            assertEquals(Integer.MAX_VALUE - 1, transaction.getStagedNumOfBills(4));
+        }
+    }
+    
+    @Test
+    public void testPut_MismatchDenomination() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.MismatchDenomination.getMessage());
+        transaction.put(new Bank(new CurrencyProfile("test", 5, 1), 1, 1));
+    }
+    
+    @Test
+    public void testChange_validFromStagedCounts() throws SimpleException {
+        int[] out = new int[5];
+        
+        // 40 needs the staged twenty, and the ten already staged out cannot be used for the 15
+        transaction.put(new Bank(1, 0, 0, 0, 0)).take(new Bank(0, 1, 0, 0, 0));
+        assertEquals(2, transaction.change(40, out));
+        assertArrayEquals(new int[] { 2, 0, 0, 0, 0 }, out);
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            transaction.change(15, out);
+        } finally {
+            assertEquals(-30, transaction.getStagedValue());
+            assertEquals("$38 1 1 1 1 1", register.show());
+        }
+    }
+    
+    @Test
+    public void testChange_InvalidAmountByNegative() throws SimpleException {
+        thrown.expectMessage(SimpleException.Error.InvalidAmount.getMessage());
+        transaction.change(-1, new int[5]);
+    }
+    
+    @Test
+    public void testChange_InsufficientFundsAfterBankChanged() throws SimpleException {
+        transaction.take(new Bank(0, 0, 1, 0, 0));
+        register.take(new Bank(0, 0, 1, 0, 0));
+        
+        // the five staged for taking is gone, so the staged counts are no longer a drawer to make change from
+        int[] out = new int[5];
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            transaction.change(2, out);
+        } finally {
+            assertEquals(-5, transaction.getStagedValue());
+            assertEquals(-1, transaction.getStagedNumOfBills(2));
+            assertEquals(0, transaction.getStagedNumOfBills(4));
+        }
+    }
+    
+    @Test
+    public void testRollback_validBankUntouched() throws SimpleException {
+        transaction.take(new Bank(1, 1, 1, 1, 1)).put(new Bank(0, 0, 0, 0, 3));
+        transaction.rollback();
+        transaction.commit();
+        
+        assertEquals("$38 1 1 1 1 1", register.show());
+        
+        // reusable after rolling back
+        transaction.put(new Bank(0, 0, 0, 0, 3)).commit();
+        assertEquals("$41 1 1 1 1 4", register.show());
+    }
+    
+    @Test
+    public void testCommit_InsufficientFundsAfterBankChanged() throws SimpleException {
+        transaction.take(new Bank(0, 1, 1, 0, 0));
+        register.take(new Bank(0, 0, 1, 0, 0));
+        
+        thrown.expectMessage(SimpleException.Error.InsufficientFunds.getMessage());
+        try {
+            transaction.commit();
+        } finally {
+            assertEquals("$33 1 1 0 1 1", register.show());
+            assertEquals(-15, transaction.getStagedValue());
+        }
+    }
+    
+}
@@ -0,0 +1,175 @@
+package com.james;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.james.WorkloadGenerator.Op;
+import com.james.WorkloadGenerator.Result;
+
+public class WorkloadGeneratorTest {
+    
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    
+    
+    
+    @Test
+    public void testGenerate_validSameSeedSameStream() {
+        WorkloadGenerator generator = new WorkloadGenerator(CurrencyProfile.DEFAULT).setRate(10_000)
+                .setBursts(100, 10, 4);
+        
+        assertEquals(render(generator.generate(1000, 7)), render(generator.generate(1000, 7)));
+        assertNotEquals(render(generator.generate(1000, 7)), render(generator.generate(1000, 8)));
+        
+        Op[] ops = generator.generate(1000, 7);
+        Op[] again = generator.generate(1000, 7);
+        for(int n = 0; n < ops.length; n++) {
+            assertEquals(ops[n].getDueNanos(), again[n].getDueNanos());
+            if(n > 0) {
+                assertTrue(ops[n].getDueNanos() > ops[n - 1].getDueNanos());
+            }
+        }
+    }
+    
+    @Test
+    public void testGenerate_validFollowsMixes() {
+        WorkloadGenerator generator = new WorkloadGenerator(CurrencyProfile.DEFAULT)
+                .setOperationMix(1, 0, 1)
+                .setDepositMix(0, 0, 1, 0, 3)
+                .setMaxBillsPerDeposit(2)
+                .setChangeAmounts(60, 1);
+        
+        int[] hostile = generator.greedyHostileAmounts();
+        long[] bills = new long[5];
+        int numPuts = 0;
+        
+        for(Op op : generator.generate(10_000, 3)) {
+            assertEquals(0, op.getDueNanos());
+            switch (op.getCommand()) {
+                case put:
+                    numPuts++;
+                    int numOfBills = 0;
+                    for(int i = 0; i < 5; i++) {
+                        bills[i] += op.getNumOfBills(i);
+                        numOfBills += op.getNumOfBills(i);
+                    }
+                    assertTrue(numOfBills >= 1 && numOfBills <= 2);
+                    break;
+                
+                case change:
+                    assertTrue(Arrays.binarySearch(hostile, op.getAmount()) >= 0);
+                    break;
+                
+                default:
+                    fail("unexpected " + op);
+            }
+        }
+        
+        assertTrue(numPuts > 4500 && numPuts < 5500);
+        assertEquals(0, bills[0] + bills[1] + bills[3]);
+        // three ones to every five
+        assertEquals(3.0, (double) bills[4] / bills[2], 0.2);
+    }
+    
+    @Test
+    public void testGreedyHostileAmounts_validDefaultProfile() {
+        int[] hostile = new WorkloadGenerator(CurrencyProfile.DEFAULT).greedyHostileAmounts();
+        
+        // 5 + 1, 5 + 2 + 1 and 20 + 10 + 5 + 1 have answers without the one
+        assertTrue(Arrays.binarySearch(hostile, 6) >= 0);
+        assertTrue(Arrays.binarySearch(hostile, 8) >= 0);
+        assertTrue(Arrays.binarySearch(hostile, 36) >= 0);
+        // no answer without the one, or greedy finds it
+        assertTrue(Arrays.binarySearch(hostile, 1) < 0);
+        assertTrue(Arrays.binarySearch(hostile, 3) < 0);
+        assertTrue(Arrays.binarySearch(hostile, 40) < 0);
+        assertTrue(Arrays.binarySearch(hostile, 12) < 0);
+    }
+    
+    @Test
+    public void testReplay_validCommandsMatchBank() {
+        WorkloadGenerator generator = new WorkloadGenerator(CurrencyProfile.DEFAULT).setChangeAmounts(60, 0.5);
+        Op[] ops = generator.generate(5000, 11);
+        int[] openingFloat = ChangeSimulation.openingFloat(CurrencyProfile.DEFAULT);
+        
+        Result inProcess = WorkloadGenerator.replay(new Bank(CurrencyProfile.DEFAULT, openingFloat), ops, false);
+        Result commands = WorkloadGenerator.replay(new Bank(CurrencyProfile.DEFAULT, openingFloat), ops, true);
+        
+        assertEquals(5000, inProcess.getNumOps());
+        assertEquals(inProcess.getClosingDrawer(), commands.getClosingDrawer());
+        for(RegisterOp command : new RegisterOp[] { RegisterOp.put, RegisterOp.take,
+                RegisterOp.change }) {
+            assertEquals(inProcess.getNumOps(command), commands.getNumOps(command));
+            assertEquals(inProcess.getNumDeclined(command), commands.getNumDeclined(command));
+            assertEquals(inProcess.getNumOps(command), inProcess.getLatency(command).getCount());
+        }
+        assertEquals(0, inProcess.getNumDeclined(RegisterOp.put));
+        assertTrue(inProcess.getNumDeclined(RegisterOp.take) > 0);
+        assertTrue(inProcess.getReport().contains("change"));
+    }
+    
+    @Test
+    public void testReplay_validCountsDeclines() {
+        WorkloadGenerator generator = new WorkloadGenerator(CurrencyProfile.DEFAULT).setOperationMix(0, 1, 1);
+        
+        // an empty drawer declines everything
+        Result result = WorkloadGenerator.replay(new Bank(), generator.generate(200, 5), false);
+        
+        assertEquals(200, result.getNumOps());
+        assertEquals(1.0, result.getDeclineRate(RegisterOp.take), 0);
+        assertEquals(1.0, result.getDeclineRate(RegisterOp.change), 0);
+        assertEquals("$0 0 0 0 0 0", result.getClosingDrawer());
+    }
+    
+    @Test
+    public void testReplay_validPacedAtRate() {
+        WorkloadGenerator generator = new WorkloadGenerator(CurrencyProfile.DEFAULT).setRate(20_000);
+        Op[] ops = generator.generate(2000, 1);
+        
+        Result result = WorkloadGenerator.replay(new Bank(), ops, false);
+        
+        // 2,000 at 20,000 a second take about 100 ms, never less than the last is due
+        assertTrue(result.getElapsedNanos() >= ops[ops.length - 1].getDueNanos());
+        assertTrue(result.getThroughput() < 40_000);
+    }
+    
+    @Test
+    public void testWrite_validOneCommandPerLine() throws Exception {
+        Op[] ops = new WorkloadGenerator(CurrencyProfile.DEFAULT).generate(50, 2);
+        StringWriter out = new StringWriter();
+        WorkloadGenerator.write(ops, out);
+        
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertEquals(50, lines.length);
+        for(int n = 0; n < lines.length; n++) {
+            assertEquals(ops[n].toString(), lines[n]);
+            assertTrue(lines[n].matches("(put|take)( \\d+){5}|change \\d+"));
+        }
+    }
+    
+    @Test
+    public void testSetDepositMix_InvalidNumOfWeights() {
+        thrown.expect(IllegalArgumentException.class);
+        new WorkloadGenerator(CurrencyProfile.DEFAULT).setDepositMix(1, 1, 1);
+    }
+    
+    @Test
+    public void testSetBursts_InvalidLongerThanPeriod() {
+        thrown.expect(IllegalArgumentException.class);
+        new WorkloadGenerator(CurrencyProfile.DEFAULT).setBursts(100, 200, 2);
+    }
+    
+    private static String render(final Op[] ops) {
+        StringBuilder rendered = new StringBuilder();
+        for(Op op : ops) {
+            op.appendCommand(rendered).append('\n');
+        }
+        return rendered.toString();
+    }
+}